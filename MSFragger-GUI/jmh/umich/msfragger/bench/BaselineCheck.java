@@ -0,0 +1,203 @@
+package umich.msfragger.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the results of a JMH run with the baseline checked in next to the benchmarks. Both
+ * are in the CSV format of JMH ({@code -rf csv}). All benchmarks measure the average time of
+ * an operation, so a higher score is worse. A benchmark has regressed if it got slower by
+ * more than the threshold, and by more than the error margins of both scores together.
+ * <p>
+ * A score whose error margin is larger than the max error of the score says little, such
+ * scores are not compared. In the baseline they are an error, the baseline should be recorded
+ * again on a quiet machine.
+ * <pre>
+ * BaselineCheck &lt;baseline.csv&gt; &lt;results.csv&gt; [threshold percent, default 20]
+ *     [max error percent, default 10]
+ * </pre>
+ * Exits with 1 if any benchmark regressed or the baseline is too noisy. Benchmarks that are
+ * only in one of the files are listed, but are not an error.
+ */
+public class BaselineCheck {
+  public static final double DEFAULT_THRESHOLD_PCT = 20;
+  public static final double DEFAULT_MAX_ERROR_PCT = 10;
+
+  static class Score {
+    final double score;
+    final double error;
+    final String unit;
+
+    Score(double score, double error, String unit) {
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+    }
+
+    double errorPct() {
+      return score > 0 ? error / score * 100 : Double.POSITIVE_INFINITY;
+    }
+  }
+
+  private BaselineCheck() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: BaselineCheck <baseline.csv> <results.csv> [threshold percent]"
+          + " [max error percent]");
+      System.exit(2);
+    }
+    final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PCT;
+    final double maxError = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_MAX_ERROR_PCT;
+    final Path baselinePath = Paths.get(args[0]);
+    if (!Files.exists(baselinePath)) {
+      System.out.println("No baseline to compare to: " + baselinePath);
+      return;
+    }
+    Map<String, Score> baseline = load(baselinePath);
+    Map<String, Score> results = load(Paths.get(args[1]));
+    int regressed = compare(baseline, results, threshold, maxError, System.out);
+    List<String> noisy = noisy(baseline, maxError);
+    if (!noisy.isEmpty()) {
+      System.out.println(String.format(Locale.ROOT,
+          "%d baseline score(s) with an error of more than %.0f%%, record the baseline again on a"
+              + " quiet machine: %s", noisy.size(), maxError, String.join(", ", noisy)));
+    }
+    if (regressed > 0) {
+      System.out.println(String.format(Locale.ROOT,
+          "%d benchmark(s) slower than the baseline by more than %.0f%%", regressed, threshold));
+    }
+    if (regressed > 0 || !noisy.isEmpty()) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * @return Number of regressed benchmarks.
+   */
+  static int compare(Map<String, Score> baseline, Map<String, Score> results, double thresholdPct,
+      double maxErrorPct, Appendable out) throws IOException {
+    int regressed = 0;
+    out.append(String.format(Locale.ROOT, "%-70s %12s %12s %8s%n", "Benchmark", "Baseline",
+        "Now", "Change"));
+    for (Map.Entry<String, Score> kv : results.entrySet()) {
+      final Score now = kv.getValue();
+      final Score was = baseline.get(kv.getKey());
+      if (was == null) {
+        out.append(String.format(Locale.ROOT, "%-70s %12s %12.3f %8s%n", kv.getKey(), "-",
+            now.score, "new"));
+        continue;
+      }
+      if (!was.unit.equals(now.unit)) {
+        out.append(String.format(Locale.ROOT, "%-70s units differ: %s and %s%n", kv.getKey(),
+            was.unit, now.unit));
+        continue;
+      }
+      if (was.errorPct() > maxErrorPct || now.errorPct() > maxErrorPct) {
+        out.append(String.format(Locale.ROOT, "%-70s %12.3f %12.3f   error %.0f%% and %.0f%%,"
+            + " not compared%n", kv.getKey(), was.score, now.score, was.errorPct(),
+            now.errorPct()));
+        continue;
+      }
+      final double change = (now.score - was.score) / was.score * 100;
+      final boolean isRegressed = change > thresholdPct
+          && now.score - was.score > was.error + now.error;
+      if (isRegressed) {
+        regressed++;
+      }
+      out.append(String.format(Locale.ROOT, "%-70s %12.3f %12.3f %+7.1f%%%s%n", kv.getKey(),
+          was.score, now.score, change, isRegressed ? "  SLOWER" : ""));
+    }
+    for (String name : baseline.keySet()) {
+      if (!results.containsKey(name)) {
+        out.append(String.format(Locale.ROOT, "%-70s not run%n", name));
+      }
+    }
+    return regressed;
+  }
+
+  /**
+   * @return Names of the scores whose error is more than the max error of the score.
+   */
+  static List<String> noisy(Map<String, Score> scores, double maxErrorPct) {
+    List<String> noisy = new ArrayList<>();
+    for (Map.Entry<String, Score> kv : scores.entrySet()) {
+      if (kv.getValue().errorPct() > maxErrorPct) {
+        noisy.add(kv.getKey());
+      }
+    }
+    return noisy;
+  }
+
+  /**
+   * @return Scores by benchmark name with the parameters appended, in the order of the file.
+   */
+  static Map<String, Score> load(Path csv) throws IOException {
+    List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+    Map<String, Score> scores = new LinkedHashMap<>();
+    if (lines.isEmpty()) {
+      return scores;
+    }
+    final List<String> header = split(lines.get(0));
+    final int iName = header.indexOf("Benchmark");
+    final int iScore = header.indexOf("Score");
+    final int iError = header.indexOf("Score Error (99.9%)");
+    final int iUnit = header.indexOf("Unit");
+    if (iName < 0 || iScore < 0 || iError < 0 || iUnit < 0) {
+      throw new IOException("Not a JMH result file: " + csv);
+    }
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      List<String> cols = split(line);
+      List<String> params = new ArrayList<>();
+      for (int i = 0; i < header.size() && i < cols.size(); i++) {
+        if (header.get(i).startsWith("Param: ") && !cols.get(i).isEmpty()) {
+          params.add(header.get(i).substring("Param: ".length()) + "=" + cols.get(i));
+        }
+      }
+      final String name = params.isEmpty() ? cols.get(iName)
+          : cols.get(iName) + " [" + String.join(", ", params) + "]";
+      final double error = Double.parseDouble(cols.get(iError));
+      scores.put(name, new Score(Double.parseDouble(cols.get(iScore)),
+          Double.isNaN(error) ? 0 : error, cols.get(iUnit)));
+    }
+    return scores;
+  }
+
+  /**
+   * Splits a line of CSV, quotes around a value are removed.
+   */
+  static List<String> split(String line) {
+    List<String> cols = new ArrayList<>();
+    StringBuilder cur = new StringBuilder();
+    boolean isQuoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        if (isQuoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          cur.append('"');
+          i++;
+        } else {
+          isQuoted = !isQuoted;
+        }
+      } else if (c == ',' && !isQuoted) {
+        cols.add(cur.toString());
+        cur.setLength(0);
+      } else {
+        cur.append(c);
+      }
+    }
+    cols.add(cur.toString());
+    return cols;
+  }
+}
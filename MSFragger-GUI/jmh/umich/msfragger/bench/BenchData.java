@@ -0,0 +1,131 @@
+package umich.msfragger.bench;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Inputs for the benchmarks, the same for every run.
+ */
+public class BenchData {
+  private static final long SEED = 42;
+  private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+  private BenchData() {}
+
+  /**
+   * UniProt-like accessions, every second one is a decoy with the "rev_" prefix.
+   */
+  public static List<String> accessions(int count) {
+    Random rnd = new Random(SEED);
+    List<String> list = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String acc = accession(rnd);
+      list.add(i % 2 == 0 ? acc : "rev_" + acc);
+    }
+    return list;
+  }
+
+  /**
+   * A database with target and decoy entries, headers like
+   * {@code >sp|P12345|GENE_HUMAN Protein name OS=Homo sapiens}.
+   */
+  public static Path fasta(Path path, int entries) throws IOException {
+    Random rnd = new Random(SEED);
+    StringBuilder seq = new StringBuilder();
+    try (BufferedWriter w = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < entries / 2; i++) {
+        final String acc = accession(rnd);
+        final String gene = String.format(Locale.ROOT, "G%04d_HUMAN", rnd.nextInt(10000));
+        seq.setLength(0);
+        for (int j = 300 + rnd.nextInt(400); j > 0; j--) {
+          seq.append(AMINO_ACIDS.charAt(rnd.nextInt(AMINO_ACIDS.length())));
+        }
+        for (String prefix : new String[]{"", "rev_"}) {
+          w.write(">" + prefix + (rnd.nextInt(4) == 0 ? "tr" : "sp") + "|" + acc + "|" + gene
+              + " Protein " + i + " OS=Homo sapiens OX=9606 GN=G" + i + " PE=1 SV=1\n");
+          for (int from = 0; from < seq.length(); from += 60) {
+            w.append(seq, from, Math.min(from + 60, seq.length()));
+            w.write('\n');
+          }
+          seq.reverse();
+        }
+      }
+    }
+    return path;
+  }
+
+  /**
+   * Output of an external process as it arrives at the console: progress lines, some of them
+   * colored with ANSI escape codes like Philosopher does.
+   */
+  public static String processOutput(int lines) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      if (i % 10 == 0) {
+        sb.append("\u001B[36mINFO\u001B[0m[12:00:").append(String.format(Locale.ROOT, "%02d", i % 60))
+            .append("] Executing PeptideProphet  v3.2.0\n");
+      } else {
+        sb.append(String.format(Locale.ROOT,
+            "Processing batch %d of %d, 12345 spectra, 5678 candidates, elapsed 00:%02d:%02d\n",
+            i, lines, i / 60 % 60, i % 60));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Text of a file split after every newline, the way tools that flush every line deliver it.
+   *
+   * @param path The file to read, if empty the resource next to the class is read instead.
+   */
+  public static List<String> lines(Class<?> cls, String resource, String path)
+      throws IOException {
+    final String text;
+    if (path.isEmpty()) {
+      try (InputStream is = cls.getResourceAsStream(resource)) {
+        if (is == null) {
+          throw new IOException("Sample not on the classpath: " + resource);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = is.read(buf)) != -1) {
+          bytes.write(buf, 0, read);
+        }
+        text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+      }
+    } else {
+      text = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+    }
+    List<String> lines = new ArrayList<>();
+    int from = 0;
+    while (from < text.length()) {
+      int nl = text.indexOf('\n', from);
+      int to = nl < 0 ? text.length() : nl + 1;
+      lines.add(text.substring(from, to));
+      from = to;
+    }
+    return lines;
+  }
+
+  private static String accession(Random rnd) {
+    StringBuilder sb = new StringBuilder(6);
+    sb.append("OPQ".charAt(rnd.nextInt(3)));
+    sb.append(rnd.nextInt(10));
+    for (int k = 0; k < 3; k++) {
+      sb.append((char) ('A' + rnd.nextInt(26)));
+    }
+    sb.append(rnd.nextInt(10));
+    return sb.toString();
+  }
+}
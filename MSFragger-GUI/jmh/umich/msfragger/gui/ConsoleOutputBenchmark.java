@@ -0,0 +1,100 @@
+package umich.msfragger.gui;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import umich.msfragger.bench.BenchData;
+import umich.swing.console.TextConsole;
+
+/**
+ * Replays the output of a FragPipe run to the console one line at a time, the way the pump
+ * threads deliver it from tools that flush every line. {@code direct} appends every line on
+ * the EDT by itself, as the console was written to before {@link ConsoleOutputChannel}.
+ * {@code batched} offers the lines to the channel and flushes it on the EDT once per frame of
+ * {@link #frameLines} lines.
+ * <p>
+ * The log next to this class has the output of MSFragger, PeptideProphet and Philosopher in
+ * the format of a run log, without ANSI codes, as run logs are written. Replay another log
+ * with {@code -p log=<path>}, e.g. a {@code log-fragpipe-run-at_*.log} from a FragPipe output
+ * directory. {@link umich.swing.console.AnsiParserBenchmark} measures the parsing of colored
+ * tool output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ConsoleOutputBenchmark {
+  private static final String SAMPLE = "fragpipe-run.log";
+
+  /** Path of a run log to replay, empty for the sample. */
+  @Param({""})
+  public String log;
+
+  /** Lines arriving within one frame of the channel. */
+  @Param({"50"})
+  public int frameLines;
+
+  private List<String> lines;
+
+  @Setup
+  public void setup() throws IOException {
+    lines = BenchData.lines(ConsoleOutputBenchmark.class, SAMPLE, log);
+  }
+
+  private static TextConsole newConsole() {
+    TextConsole console = new TextConsole();
+    // the default limits of the main window
+    console.setMaxLines(5000);
+    console.setMaxChars(1024 * 1024);
+    return console;
+  }
+
+  @Benchmark
+  public int direct() throws InterruptedException, InvocationTargetException {
+    final TextConsole console = newConsole();
+    for (String line : lines) {
+      SwingUtilities.invokeLater(() -> console.appendANSI(line));
+    }
+    return awaitEdt(console);
+  }
+
+  @Benchmark
+  public int batched() throws InterruptedException, InvocationTargetException {
+    final TextConsole console = newConsole();
+    final ConsoleOutputChannel channel = new ConsoleOutputChannel(
+        ConsoleOutputChannel.consoleSink(console), ConsoleOutputChannel.DEFAULT_MAX_PENDING_CHARS, 0);
+    for (int i = 0; i < lines.size(); i++) {
+      channel.offer("MSFragger", null, lines.get(i));
+      if ((i + 1) % frameLines == 0) {
+        SwingUtilities.invokeLater(channel::flush);
+      }
+    }
+    SwingUtilities.invokeLater(channel::flush);
+    return awaitEdt(console);
+  }
+
+  /**
+   * Waits until everything scheduled on the EDT so far is done.
+   */
+  private static int awaitEdt(TextConsole console)
+      throws InterruptedException, InvocationTargetException {
+    final int[] length = new int[1];
+    SwingUtilities.invokeAndWait(() -> length[0] = console.getDocument().getLength());
+    return length[0];
+  }
+}
@@ -0,0 +1,428 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.messages.MessageAppendToConsole;
+import umich.msfragger.messages.MessageExternalProcessOutput;
+import umich.msfragger.messages.MessageStageFinished;
+import umich.msfragger.util.FileDelete;
+
+/**
+ * Measures the time FragPipe itself adds to a run, separately from the time the tools take.
+ * Plans a closed search with the real {@code Cmd*} classes and runs it with
+ * {@link ProcessManager}, but MSFragger, Philosopher and the bundled Java tools are replaced
+ * by a shell script that prints a realistic amount of output, writes placeholder pepXML
+ * files and sleeps for a fixed time. Linux and macOS only.
+ * <p>
+ * Not a JMH benchmark, the run is too long for it. Run with {@code gradle benchOrchestration},
+ * or directly with the jmh classpath:
+ * <pre>
+ * java -Djava.awt.headless=true umich.msfragger.gui.OrchestrationBenchmark \
+ *     --sizes 10,100,1000,5000 --sleep-ms 50 --lines 40
+ * </pre>
+ * Reported for each number of LC/MS files:
+ * <ul>
+ *   <li>planning - configuring the tools, flattening them into tasks, making the runnables</li>
+ *   <li>dispatch - from the end of the last task before a task started to its start, i.e.
+ *   how long a task waited for the scheduler once a slot or its inputs were free</li>
+ *   <li>per process - time of a stub process in excess of its sleep: starting it, reading its
+ *   output, measuring its resources</li>
+ *   <li>console - process output posted to the event bus, and how much of it the console
+ *   of the main window would have shown</li>
+ *   <li>overhead - wall time minus the time at least one stub was sleeping</li>
+ * </ul>
+ */
+public class OrchestrationBenchmark {
+
+  private static final String USAGE = "Options:\n"
+      + "  --sizes <n,n,...>    Numbers of LC/MS files, default 10,100,1000,5000.\n"
+      + "  --per-experiment <n> LC/MS files per experiment, default 100.\n"
+      + "  --sleep-ms <n>       How long every stub process sleeps, default 50.\n"
+      + "  --lines <n>          Output lines of every stub process, default 40.\n"
+      + "  --lines-per-file <n> Additional output lines per LC/MS file given to a stub, default 20.\n"
+      + "  --crystalc           Also run Crystal-C, needs its jars unpacked next to the classes.\n"
+      + "  --keep               Don't delete the directories of the runs.\n";
+
+  private static final String STUB_JAVA = "java";
+  private static final String STUB_PHILOSOPHER = "philosopher";
+
+  private int filesPerExperiment = 100;
+  private int sleepMs = 50;
+  private int lines = 40;
+  private int linesPerFile = 20;
+  private boolean isCrystalc = false;
+  private boolean isKeep = false;
+
+  /**
+   * When a task ran.
+   */
+  private static class Timing {
+    final boolean isExternal;
+    volatile long startNanos;
+    volatile long endNanos;
+
+    Timing(boolean isExternal) {
+      this.isExternal = isExternal;
+    }
+  }
+
+  /**
+   * Counts process output and passes it through the same channel the console of the main
+   * window uses.
+   */
+  public static class ConsoleCounter {
+    final AtomicLong chars = new AtomicLong();
+    final AtomicLong shownChars = new AtomicLong();
+    final ConsoleOutputChannel channel = new ConsoleOutputChannel((source, color, text) -> {
+      // notes about dropped lines are written in color, process output is not
+      if (color == null) {
+        shownChars.addAndGet(text.length());
+      }
+    }, ConsoleOutputChannel.DEFAULT_MAX_PENDING_CHARS, ConsoleOutputChannel.DEFAULT_FRAME_MILLIS);
+
+    @Subscribe(threadMode = ThreadMode.POSTING)
+    public void onMessageExternalProcessOutput(MessageExternalProcessOutput m) {
+      if (m.output == null) {
+        return;
+      }
+      chars.addAndGet(m.output.length());
+      channel.offer(m.procName, null, m.output);
+    }
+
+    @Subscribe(threadMode = ThreadMode.POSTING)
+    public void onMessageAppendToConsole(MessageAppendToConsole m) {
+      // only output of the processes is counted
+    }
+
+    @Subscribe(threadMode = ThreadMode.POSTING)
+    public void onMessageStageFinished(MessageStageFinished m) {
+      // there's no run manifest to record it in
+    }
+  }
+
+  static class Result {
+    int files;
+    int tasks;
+    int processes;
+    double planMs;
+    double configureMs;
+    double wallMs;
+    double stubMs;
+    double[] dispatchMs;
+    double[] perProcessMs;
+    long consoleChars;
+    long consoleShownChars;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.setProperty("java.awt.headless", "true");
+    Locale.setDefault(Locale.ROOT);
+    OrchestrationBenchmark bench = new OrchestrationBenchmark();
+    List<Integer> sizes = Arrays.asList(10, 100, 1000, 5000);
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--sizes":
+            sizes = Arrays.stream(value(args, ++i).split(",")).map(String::trim)
+                .map(Integer::parseInt).collect(Collectors.toList());
+            break;
+          case "--per-experiment": bench.filesPerExperiment = Integer.parseInt(value(args, ++i)); break;
+          case "--sleep-ms": bench.sleepMs = Integer.parseInt(value(args, ++i)); break;
+          case "--lines": bench.lines = Integer.parseInt(value(args, ++i)); break;
+          case "--lines-per-file": bench.linesPerFile = Integer.parseInt(value(args, ++i)); break;
+          case "--crystalc": bench.isCrystalc = true; break;
+          case "--keep": bench.isKeep = true; break;
+          default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.print(USAGE);
+      System.exit(2);
+    }
+
+    ProcessManager.get().init();
+    List<Result> results = new ArrayList<>();
+    for (int files : sizes) {
+      results.add(bench.run(files));
+      System.out.println(format(results.subList(results.size() - 1, results.size())));
+    }
+    System.out.println("~~~~~~~~~~~~~~~~~~~~~~");
+    System.out.println(String.format(Locale.ROOT,
+        "Stubs sleep %d ms and print %d lines + %d per LC/MS file, %d files per experiment, %d cores",
+        bench.sleepMs, bench.lines, bench.linesPerFile, bench.filesPerExperiment,
+        Runtime.getRuntime().availableProcessors()));
+    System.out.println(format(results));
+    System.exit(0);
+  }
+
+  private static String value(String[] args, int i) {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("Missing value for option: " + args[i - 1]);
+    }
+    return args[i];
+  }
+
+  Result run(int files) throws Exception {
+    final Path dir = Files.createTempDirectory("fragpipe-bench-" + files + "-");
+    try {
+      return run(files, dir);
+    } finally {
+      if (isKeep) {
+        System.out.println("Kept: " + dir);
+      } else {
+        FileDelete.deleteFileOrFolder(dir);
+      }
+    }
+  }
+
+  private Result run(int files, Path dir) throws Exception {
+    final Path stubs = Files.createDirectories(dir.resolve("stubs"));
+    final Path java = writeStub(stubs.resolve(STUB_JAVA));
+    final Path philosopher = writeStub(stubs.resolve(STUB_PHILOSOPHER));
+    final Path jar = Files.write(stubs.resolve("MSFragger-bench.jar"), new byte[0]);
+    final Path fasta = Files.write(dir.resolve("db.fasta"), Arrays.asList(
+        ">sp|P00001|PROT_HUMAN Protein", "MPEPTIDEKRAPEPTIDER",
+        ">rev_sp|P00001|PROT_HUMAN Protein", "REDITPEPARKEDITPEPM"), UTF_8);
+
+    final Path data = dir.resolve("data");
+    final List<InputLcmsFile> lcmsFiles = new ArrayList<>();
+    for (int i = 0; i < files; i++) {
+      final String experiment = String.format(Locale.ROOT, "exp%03d", i / filesPerExperiment + 1);
+      final Path file = Files.createDirectories(data.resolve(experiment))
+          .resolve(String.format(Locale.ROOT, "run_%05d.mzML", i + 1));
+      lcmsFiles.add(new InputLcmsFile(Files.createFile(file), experiment, null));
+    }
+    final Map<String, LcmsFileGroup> groups = new TreeMap<>();
+    lcmsFiles.stream().collect(Collectors.groupingBy(InputLcmsFile::getGroup))
+        .forEach((group, list) -> groups.put(group, new LcmsFileGroup(group, list)));
+
+    final FragpipeHeadless form = new FragpipeHeadless(config(isCrystalc), groups);
+    form.binMsfragger = jar.toString();
+    form.binPhilosopher = philosopher.toString();
+    form.fastaPath = fasta.toString();
+    form.decoyTag = "rev_";
+
+    final Result r = new Result();
+    r.files = files;
+    final Path wd = Files.createDirectories(dir.resolve("out"));
+    final long planStart = System.nanoTime();
+    final List<ProcessBuildersDescriptor> pbDescs = new ArrayList<>();
+    if (!RunPlanner.plan(null, form, wd, false, pbDescs)) {
+      throw new IllegalStateException("Planning failed for " + files + " files");
+    }
+    r.configureMs = millis(System.nanoTime() - planStart);
+    final Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage = new IdentityHashMap<>();
+    final List<ProcessBuilderInfo> pbis = RunPlanner.toPbis(pbDescs, wd.resolve("logs"), pbiToStage);
+    // the bundled Java tools and MSFragger are started as "java ..."
+    for (ProcessBuilderInfo pbi : pbis) {
+      if (pbi.pb != null && STUB_JAVA.equals(pbi.pb.command().get(0))) {
+        List<String> cmd = new ArrayList<>(pbi.pb.command());
+        cmd.set(0, java.toString());
+        pbi.pb.command(cmd);
+      }
+    }
+    final RunUsageReport usage = new RunUsageReport(RunUsageReport.path(wd, "bench"));
+    final List<RunnableDescription> planned = RunPlanner.toRunnables(pbis, pbiToStage, wd,
+        pbi -> { }, null, usage);
+    r.planMs = millis(System.nanoTime() - planStart);
+
+    final List<Timing> timings = new ArrayList<>();
+    final List<RunnableDescription> toRun = new ArrayList<>();
+    for (int i = 0; i < planned.size(); i++) {
+      final RunnableDescription rd = planned.get(i);
+      final Timing t = new Timing(pbis.get(i).fileOps == null);
+      timings.add(t);
+      toRun.add(new RunnableDescription(rd.description, () -> {
+        t.startNanos = System.nanoTime();
+        try {
+          rd.runnable.run();
+        } finally {
+          t.endNanos = System.nanoTime();
+        }
+      }, rd.parallelGroup, rd.stage, rd.ramGb, rd.threads));
+    }
+    r.tasks = toRun.size();
+    r.processes = (int) timings.stream().filter(t -> t.isExternal).count();
+
+    final ConsoleCounter console = new ConsoleCounter();
+    EventBus.getDefault().register(console);
+    final long runStart = System.nanoTime();
+    try {
+      ProcessManager.get().start("bench-" + files, toRun, wd, false).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Run failed for " + files + " files", e.getCause());
+    } finally {
+      EventBus.getDefault().unregister(console);
+    }
+    final long runEnd = System.nanoTime();
+    console.channel.flush();
+
+    r.wallMs = millis(runEnd - runStart);
+    r.stubMs = millis(stubNanos(timings, TimeUnit.MILLISECONDS.toNanos(sleepMs)));
+    r.dispatchMs = dispatchMillis(timings, runStart);
+    r.perProcessMs = timings.stream().filter(t -> t.isExternal)
+        .mapToDouble(t -> millis(t.endNanos - t.startNanos) - sleepMs).sorted().toArray();
+    r.consoleChars = console.chars.get();
+    r.consoleShownChars = console.shownChars.get();
+    return r;
+  }
+
+  /**
+   * Closed search with the downstream tools run by Philosopher.
+   *
+   * @param isCrystalc Also run Crystal-C, a bundled Java tool.
+   */
+  private static Map<String, String> config(boolean isCrystalc) {
+    Map<String, String> config = new HashMap<>();
+    config.put("output_format", "PEP_XML");
+    config.put("num_threads", "0");
+    config.put("misc.ram", "0");
+    config.put("misc.slice-db", "1");
+    config.put("ui.name.crystalc.run-crystalc", Boolean.toString(isCrystalc));
+    config.put(FragpipeHeadless.UI_RUN_PEP_PROPH, "true");
+    config.put(FragpipeHeadless.UI_PEP_PROPH_CMD,
+        "--decoyprobs --ppm --accmass --nonparam --expectscore");
+    config.put(FragpipeHeadless.UI_RUN_PROT_PROPH, "true");
+    config.put(FragpipeHeadless.UI_PROT_PROPH_CMD, "--maxppmdiff 2000000");
+    // all files of a large run don't fit on one ProteinProphet command line
+    config.put(FragpipeHeadless.UI_SEPARATE_PROTXML, "true");
+    config.put("ui.name.report.generate-report", "true");
+    config.put("ui.name.report.check.multiexp", "false");
+    config.put("ui.name.report.text.filter", "--sequential --razor --prot 0.01");
+    config.put("ui.freequant.is-run", "true");
+    config.put("ui.imquant.is-run", "false");
+    config.put("ui.name.report.run-shepherd", "false");
+    config.put(FragpipeHeadless.UI_GEN_SPECLIB, "false");
+    return config;
+  }
+
+  /**
+   * The same script stands in for every tool. It writes a placeholder pepXML next to every
+   * mzML file it's given, on the command line or in an argument file.
+   */
+  private Path writeStub(Path path) throws Exception {
+    final String script = "#!/bin/sh\n"
+        + "inputs=$(for a in \"$@\"; do\n"
+        + "  case \"$a\" in\n"
+        + "    *.mzML) echo \"$a\" ;;\n"
+        + "    *.args) [ -f \"$a\" ] && grep '\\.mzML$' \"$a\" ;;\n"
+        + "  esac\n"
+        + "done)\n"
+        + "n=0\n"
+        + "if [ -n \"$inputs\" ]; then\n"
+        + "  n=$(printf '%s\\n' \"$inputs\" | wc -l)\n"
+        + "  printf '%s\\n' \"$inputs\" | while IFS= read -r f; do\n"
+        + "    printf '<?xml version=\"1.0\" encoding=\"UTF-8\"?>\\n<msms_pipeline_analysis/>\\n'"
+        + " > \"${f%.mzML}.pepXML\"\n"
+        + "  done\n"
+        + "fi\n"
+        + "awk -v n=$((" + lines + " + n * " + linesPerFile + ")) -v tool=\"$(basename \"$0\")\" "
+        + "'BEGIN { for (i = 1; i <= n; i++) printf \"%s: processed block %d of %d, "
+        + "12345 spectra, elapsed 00:00:%02d\\n\", tool, i, n, i % 60 }'\n"
+        + "sleep " + String.format(Locale.ROOT, "%.3f", sleepMs / 1000.0) + "\n";
+    Files.write(path, script.getBytes(UTF_8));
+    Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwxr-xr-x"));
+    return path;
+  }
+
+  /**
+   * Length of the union of the times stubs were sleeping, taken as the last part of each
+   * external task.
+   */
+  static long stubNanos(List<Timing> timings, long sleepNanos) {
+    List<long[]> spans = new ArrayList<>();
+    for (Timing t : timings) {
+      if (t.isExternal) {
+        long end = t.endNanos;
+        spans.add(new long[]{Math.max(t.startNanos, end - sleepNanos), end});
+      }
+    }
+    spans.sort((a, b) -> Long.compare(a[0], b[0]));
+    long total = 0;
+    long from = Long.MIN_VALUE;
+    long to = Long.MIN_VALUE;
+    for (long[] s : spans) {
+      if (s[0] > to) {
+        total += to - from;
+        from = s[0];
+        to = s[1];
+      } else {
+        to = Math.max(to, s[1]);
+      }
+    }
+    return spans.isEmpty() ? 0 : total + (to - from);
+  }
+
+  /**
+   * For every task, the time from the end of the last task that ended before it started, or
+   * from the start of the run, to its start. Sorted.
+   */
+  static double[] dispatchMillis(List<Timing> timings, long runStart) {
+    final long[] ends = timings.stream().mapToLong(t -> t.endNanos).sorted().toArray();
+    final double[] dispatch = new double[timings.size()];
+    for (int i = 0; i < timings.size(); i++) {
+      final long start = timings.get(i).startNanos;
+      int idx = Arrays.binarySearch(ends, start);
+      idx = idx >= 0 ? idx : -idx - 2;
+      final long ready = idx >= 0 ? Math.max(runStart, ends[idx]) : runStart;
+      dispatch[i] = millis(start - ready);
+    }
+    Arrays.sort(dispatch);
+    return dispatch;
+  }
+
+  static double percentile(double[] sorted, double p) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  static String format(List<Result> results) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "%6s %6s %6s %10s %10s %10s %10s %8s %20s %14s %10s %8s%n",
+        "files", "tasks", "procs", "plan ms", "config ms", "wall s", "overhead s", "overhead",
+        "dispatch p50/95/max", "proc p50/95 ms", "console", "shown"));
+    for (Result r : results) {
+      final double overheadMs = r.wallMs - r.stubMs;
+      final double secs = r.wallMs / 1000.0;
+      sb.append(String.format(Locale.ROOT,
+          "%6d %6d %6d %10.1f %10.1f %10.2f %10.2f %7.1f%% %20s %14s %10s %7.1f%%%n",
+          r.files, r.tasks, r.processes, r.planMs, r.configureMs, secs, overheadMs / 1000.0,
+          r.wallMs > 0 ? 100.0 * overheadMs / r.wallMs : 0.0,
+          String.format(Locale.ROOT, "%.1f/%.1f/%.1f", percentile(r.dispatchMs, 50),
+              percentile(r.dispatchMs, 95), percentile(r.dispatchMs, 100)),
+          String.format(Locale.ROOT, "%.1f/%.1f", percentile(r.perProcessMs, 50),
+              percentile(r.perProcessMs, 95)),
+          String.format(Locale.ROOT, "%.1f MB/s", secs > 0 ? r.consoleChars / 1e6 / secs : 0.0),
+          r.consoleChars > 0 ? 100.0 * r.consoleShownChars / r.consoleChars : 100.0));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,60 @@
+package umich.msfragger.params;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import umich.msfragger.params.fragger.MsfraggerParams;
+import umich.msfragger.params.umpire.UmpireParams;
+
+/**
+ * Reading and writing the parameter files of the tools, done on every run and whenever a
+ * panel loads its defaults.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropsBenchmark {
+
+  private byte[] fraggerParams;
+  private UmpireParams umpireParams;
+
+  @Setup
+  public void setup() throws IOException {
+    try (InputStream is = MsfraggerParams.class
+        .getResourceAsStream(MsfraggerParams.DEFAULT_FILE_CLOSEDSEARCH)) {
+      fraggerParams = IOUtils.toByteArray(is);
+    }
+    umpireParams = new UmpireParams();
+    umpireParams.loadDefault();
+  }
+
+  @Benchmark
+  public Props readProps() throws IOException {
+    Props props = new Props();
+    props.load(new ByteArrayInputStream(fraggerParams));
+    return props;
+  }
+
+  @Benchmark
+  public int write() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(8192);
+    umpireParams.write(bos);
+    return bos.size();
+  }
+}
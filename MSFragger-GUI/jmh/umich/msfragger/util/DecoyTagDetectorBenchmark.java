@@ -0,0 +1,73 @@
+package umich.msfragger.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import umich.msfragger.bench.BenchData;
+
+/**
+ * What the "Try auto-detect" button of the decoy tag does: reading the headers of a database
+ * and finding the prefixes and suffixes in them. {@code scan} does both in one pass over the
+ * memory-mapped file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoyTagDetectorBenchmark {
+
+  @Param({"40000"})
+  public int entries;
+
+  private Path dir;
+  private Path fasta;
+  private List<List<String>> columns;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("decoy-bench");
+    fasta = BenchData.fasta(dir.resolve("db.fasta"), entries);
+    columns = DecoyTagDetector.readHeaderColumns(fasta);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileDelete.deleteFileOrFolder(dir);
+  }
+
+  @Benchmark
+  public List<List<String>> readHeaderColumns() throws IOException {
+    return DecoyTagDetector.readHeaderColumns(fasta);
+  }
+
+  @Benchmark
+  public DecoyTagDetector.Candidates detect() {
+    return DecoyTagDetector.detect(columns);
+  }
+
+  @Benchmark
+  public DecoyTagDetector.Candidates scanSingleThread() throws IOException {
+    return DecoyTagDetector.scan(fasta, 1, null, null);
+  }
+
+  @Benchmark
+  public DecoyTagDetector.Candidates scan() throws IOException {
+    return DecoyTagDetector.scan(fasta, Runtime.getRuntime().availableProcessors(), null, null);
+  }
+}
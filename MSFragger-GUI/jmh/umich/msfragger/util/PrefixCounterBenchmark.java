@@ -0,0 +1,78 @@
+package umich.msfragger.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import umich.msfragger.bench.BenchData;
+
+/**
+ * Counting prefixes of protein accessions, as done for every column of the FASTA headers when
+ * detecting the decoy tag. Run with {@code -prof gc} to see the allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixCounterBenchmark {
+
+  /** About the size of a human database with decoys. */
+  @Param({"40000"})
+  public int entries;
+
+  private List<String> accessions;
+  private PrefixCounter counter;
+  /** Counters of the accessions split in 4 parts, as counted by 4 threads. */
+  private List<PrefixCounter> parts;
+
+  @Setup
+  public void setup() {
+    accessions = BenchData.accessions(entries);
+    counter = add();
+    parts = new ArrayList<>();
+    for (int part = 0; part < 4; part++) {
+      PrefixCounter c = new PrefixCounter(PrefixCounter.Mode.FWD, DecoyTagDetector.MAX_DEPTH);
+      for (int i = part; i < accessions.size(); i += 4) {
+        c.add(accessions.get(i));
+      }
+      parts.add(c);
+    }
+  }
+
+  @Benchmark
+  public PrefixCounter add() {
+    PrefixCounter c = new PrefixCounter(PrefixCounter.Mode.FWD, DecoyTagDetector.MAX_DEPTH);
+    for (String acc : accessions) {
+      c.add(acc);
+    }
+    return c;
+  }
+
+  @Benchmark
+  public long iterPrefixCounts() {
+    final long[] hits = {0};
+    counter.iterPrefixCounts(DecoyTagDetector.MAX_DEPTH, (n, mode) -> hits[0] += n.getHits());
+    return hits[0];
+  }
+
+  @Benchmark
+  public PrefixCounter addAll() {
+    PrefixCounter c = new PrefixCounter(PrefixCounter.Mode.FWD, DecoyTagDetector.MAX_DEPTH);
+    for (PrefixCounter part : parts) {
+      c.addAll(part);
+    }
+    return c;
+  }
+}
@@ -0,0 +1,34 @@
+package umich.msfragger.util;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splitting the options typed in the tool panels, done for every command built for a run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringUtilsBenchmark {
+
+  private final String cmd = "--decoyprobs --ppm --accmass --nonparam --expectscore"
+      + " --decoy rev_ --database '/data/My Databases/2019-08-01-decoys-reviewed-UP000005640.fas'"
+      + " --minprob 0.05 --masswidth 1000.0 --clevel -2 \"/data/run 1/interact-a.pep.xml\"";
+
+  @Benchmark
+  public List<String> splitCommandLine() {
+    return StringUtils.splitCommandLine(cmd);
+  }
+}
@@ -0,0 +1,40 @@
+package umich.msfragger.util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import umich.msfragger.params.fragger.FraggerMigPanel;
+
+/**
+ * Collecting the values of the MSFragger panel, the biggest one, as done when saving the
+ * settings or a workflow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SwingUtilsBenchmark {
+
+  private FraggerMigPanel panel;
+
+  @Setup
+  public void setup() {
+    panel = new FraggerMigPanel();
+  }
+
+  @Benchmark
+  public Map<String, String> valuesToMap() {
+    return SwingUtils.valuesToMap(panel);
+  }
+}
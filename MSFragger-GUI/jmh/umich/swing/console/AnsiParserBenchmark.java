@@ -0,0 +1,222 @@
+package umich.swing.console;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import umich.msfragger.bench.BenchData;
+
+/**
+ * The ANSI handling of the console before and after {@link AnsiParser}, on tool output
+ * delivered one line at a time. The sample next to this class is the output of MSFragger,
+ * PeptideProphet and Philosopher as it comes from the processes, Philosopher colors its log
+ * levels. Replay other output with {@code -p output=<path>}.
+ * <p>
+ * {@code legacyParse} and {@code parse} only split the text into styled runs.
+ * {@code legacyAppend} and {@code appendANSI} also insert them into a console with the limits
+ * of the main window. The legacy versions are the former code of {@link TextConsole}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AnsiParserBenchmark {
+  private static final String SAMPLE = "tool-output.txt";
+
+  /** Path of a file with tool output, empty for the sample. */
+  @Param({""})
+  public String output;
+
+  private List<String> lines;
+
+  @Setup
+  public void setup() throws IOException {
+    lines = BenchData.lines(AnsiParserBenchmark.class, SAMPLE, output);
+  }
+
+  private static TextConsole newConsole() {
+    TextConsole console = new TextConsole();
+    // the default limits of the main window
+    console.setMaxLines(5000);
+    console.setMaxChars(1024 * 1024);
+    return console;
+  }
+
+  @Benchmark
+  public void legacyParse(Blackhole bh) {
+    final LegacyAnsi ansi = new LegacyAnsi();
+    final StyleContext sc = StyleContext.getDefaultStyleContext();
+    for (String line : lines) {
+      ansi.appendANSI(line, (color, text) -> {
+        // the attributes were created for every run of text
+        bh.consume(sc.addAttribute(SimpleAttributeSet.EMPTY, StyleConstants.Foreground, color));
+        bh.consume(text);
+      });
+    }
+  }
+
+  @Benchmark
+  public void parse(Blackhole bh) {
+    final AnsiParser parser = new AnsiParser();
+    for (String line : lines) {
+      parser.parse(line, (attrs, text) -> {
+        bh.consume(attrs);
+        bh.consume(text);
+      });
+    }
+  }
+
+  @Benchmark
+  public int legacyAppend() {
+    final TextConsole console = newConsole();
+    final LegacyAnsi ansi = new LegacyAnsi();
+    for (String line : lines) {
+      ansi.appendANSI(line, (color, text) -> {
+        StyleContext sc = StyleContext.getDefaultStyleContext();
+        AttributeSet aset = sc.addAttribute(SimpleAttributeSet.EMPTY, StyleConstants.Foreground, color);
+        console.setCaretPosition(console.getDocument().getLength());
+        console.setCharacterAttributes(aset, false);
+        console.replaceSelection(text.replace("\r\n", "\n").replace("\r", "\n"));
+        console.evictIfNeeded();
+      });
+    }
+    return console.getDocument().getLength();
+  }
+
+  @Benchmark
+  public int appendANSI() {
+    final TextConsole console = newConsole();
+    for (String line : lines) {
+      console.appendANSI(line);
+    }
+    return console.getDocument().getLength();
+  }
+
+  /**
+   * Escape sequence handling of {@link TextConsole} before {@link AnsiParser}.
+   */
+  static class LegacyAnsi {
+    private Color colorCurrent = TextConsole.cReset;
+    private String remaining = "";
+
+    void appendANSI(String s, BiConsumer<Color, String> append) {
+      int aPos = 0;
+      int aIndex;
+      int mIndex;
+      String tmpString;
+      String addString = remaining + s;
+      remaining = "";
+
+      if (addString.length() > 0) {
+        aIndex = addString.indexOf("\u001B");
+        if (aIndex == -1) {
+          append.accept(colorCurrent, addString);
+          return;
+        }
+        if (aIndex > 0) {
+          tmpString = addString.substring(0, aIndex);
+          append.accept(colorCurrent, tmpString);
+          aPos = aIndex;
+        }
+        boolean stillSearching = true;
+        while (stillSearching) {
+          mIndex = addString.indexOf("m", aPos);
+          if (mIndex < 0) {
+            remaining = addString.substring(aPos);
+            stillSearching = false;
+            continue;
+          } else {
+            tmpString = addString.substring(aPos, mIndex + 1);
+            colorCurrent = getANSIColor(tmpString);
+          }
+          aPos = mIndex + 1;
+          aIndex = addString.indexOf("\u001B", aPos);
+          if (aIndex == -1) {
+            tmpString = addString.substring(aPos);
+            append.accept(colorCurrent, tmpString);
+            stillSearching = false;
+            continue;
+          }
+          tmpString = addString.substring(aPos, aIndex);
+          aPos = aIndex;
+          append.accept(colorCurrent, tmpString);
+        }
+      }
+    }
+
+    static Color getANSIColor(String ANSIColor) {
+      if (ANSIColor.equals("\u001B[30m")) {
+        return TextConsole.D_Black;
+      } else if (ANSIColor.equals("\u001B[31m")) {
+        return TextConsole.D_Red;
+      } else if (ANSIColor.equals("\u001B[32m")) {
+        return TextConsole.D_Green;
+      } else if (ANSIColor.equals("\u001B[33m")) {
+        return TextConsole.D_Yellow;
+      } else if (ANSIColor.equals("\u001B[34m")) {
+        return TextConsole.D_Blue;
+      } else if (ANSIColor.equals("\u001B[35m")) {
+        return TextConsole.D_Magenta;
+      } else if (ANSIColor.equals("\u001B[36m")) {
+        return TextConsole.D_Cyan;
+      } else if (ANSIColor.equals("\u001B[37m")) {
+        return TextConsole.D_White;
+      } else if (ANSIColor.equals("\u001B[0;30m")) {
+        return TextConsole.D_Black;
+      } else if (ANSIColor.equals("\u001B[0;31m")) {
+        return TextConsole.D_Red;
+      } else if (ANSIColor.equals("\u001B[0;32m")) {
+        return TextConsole.D_Green;
+      } else if (ANSIColor.equals("\u001B[0;33m")) {
+        return TextConsole.D_Yellow;
+      } else if (ANSIColor.equals("\u001B[0;34m")) {
+        return TextConsole.D_Blue;
+      } else if (ANSIColor.equals("\u001B[0;35m")) {
+        return TextConsole.D_Magenta;
+      } else if (ANSIColor.equals("\u001B[0;36m")) {
+        return TextConsole.D_Cyan;
+      } else if (ANSIColor.equals("\u001B[0;37m")) {
+        return TextConsole.D_White;
+      } else if (ANSIColor.equals("\u001B[1;30m")) {
+        return TextConsole.B_Black;
+      } else if (ANSIColor.equals("\u001B[1;31m")) {
+        return TextConsole.B_Red;
+      } else if (ANSIColor.equals("\u001B[1;32m")) {
+        return TextConsole.B_Green;
+      } else if (ANSIColor.equals("\u001B[1;33m")) {
+        return TextConsole.B_Yellow;
+      } else if (ANSIColor.equals("\u001B[1;34m")) {
+        return TextConsole.B_Blue;
+      } else if (ANSIColor.equals("\u001B[1;35m")) {
+        return TextConsole.B_Magenta;
+      } else if (ANSIColor.equals("\u001B[1;36m")) {
+        return TextConsole.B_Cyan;
+      } else if (ANSIColor.equals("\u001B[1;37m")) {
+        return TextConsole.B_White;
+      } else if (ANSIColor.equals("\u001B[0m")) {
+        return TextConsole.cReset;
+      } else {
+        return TextConsole.D_Black;
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package umich.swing.console;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import umich.msfragger.bench.BenchData;
+
+/**
+ * Appending a batch of process output to the console, with the size limit of the main window
+ * so that old text is evicted once the console is full.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TextConsoleBenchmark {
+
+  /** Lines in one batch. */
+  @Param({"100"})
+  public int lines;
+
+  private TextConsole console;
+  private String output;
+
+  @Setup
+  public void setup() {
+    console = new TextConsole();
+    // the default limits of the main window
+    console.setMaxLines(5000);
+    console.setMaxChars(1024 * 1024);
+    output = BenchData.processOutput(lines);
+  }
+
+  @Benchmark
+  public int appendANSI() {
+    console.appendANSI(output);
+    return console.getDocument().getLength();
+  }
+}
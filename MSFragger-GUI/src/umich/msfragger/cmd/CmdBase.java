@@ -4,9 +4,13 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.swing.JOptionPane;
@@ -15,6 +19,8 @@ import org.slf4j.LoggerFactory;
 import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.LcmsFileGroup;
 import umich.msfragger.params.ThisAppProps;
+import umich.msfragger.util.ArgFileLauncher;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.JarUtils;
 import umich.msfragger.util.OsUtils;
 import umich.msfragger.util.StringUtils;
@@ -27,6 +33,10 @@ public abstract class CmdBase {
   final LinkedList<ProcessBuilderInfo> pbis;
   final String fileCaptureStdout;
   final String fileCaptureStderr;
+  /** Files and directories read by the commands. See {@link #isIoDeclared()}. */
+  final Set<Path> inputs;
+  /** Files and directories written by the commands. See {@link #isIoDeclared()}. */
+  final Set<Path> outputs;
   boolean isConfigured;
 
   public CmdBase(
@@ -36,6 +46,8 @@ public abstract class CmdBase {
     this.fileCaptureStdout = fileCaptureStdout;
     this.fileCaptureStderr = fileCaptureStderr;
     this.pbis = new LinkedList<>();
+    this.inputs = new LinkedHashSet<>();
+    this.outputs = new LinkedHashSet<>();
   }
 
   public CmdBase(
@@ -45,6 +57,8 @@ public abstract class CmdBase {
     this.fileCaptureStdout = "";
     this.fileCaptureStderr = "";
     this.pbis = new LinkedList<>();
+    this.inputs = new LinkedHashSet<>();
+    this.outputs = new LinkedHashSet<>();
   }
 
   public static String constructClasspathString(List<Path> jarDepsPaths, Path ... additionalJars) {
@@ -57,6 +71,76 @@ public abstract class CmdBase {
     return OsUtils.isWindows() ? "\"" + classpath + "\"" : classpath;
   }
 
+  /**
+   * Longest command line we start directly. Windows limits the whole command line to 32K
+   * characters, which we keep to on all systems.
+   */
+  public static final int COMMAND_LENGTH_LIMIT = 1 << 15;
+
+  public static int commandLength(List<String> cmd) {
+    int len = Math.max(0, cmd.size() - 1);
+    for (String s : cmd) {
+      len += s.length();
+    }
+    return len;
+  }
+
+  /**
+   * If a java command is too long to be started directly, rewrites it to start the program
+   * through {@link ArgFileLauncher}, with the jar or main class and all program arguments
+   * moved to an argument file. Options for the JVM itself stay on the command line.
+   * Shorter commands are returned unchanged.
+   *
+   * @param cmd Command of the form {@code java [options] -jar <jar> [args]} or
+   * {@code java [options] -cp <classpath> <main class> [args]}.
+   * @param argFile Where to write the arguments.
+   * @param isDryRun The file is only written for real runs.
+   */
+  public static List<String> fitJavaCommandLine(List<String> cmd, Path argFile, boolean isDryRun)
+      throws IOException {
+    if (commandLength(cmd) <= COMMAND_LENGTH_LIMIT) {
+      return cmd;
+    }
+    List<String> jvmOpts = new ArrayList<>();
+    List<String> target = new ArrayList<>();
+    boolean isJar = false;
+    int i = 1;
+    for (; i < cmd.size(); i++) {
+      String arg = cmd.get(i);
+      if ("-jar".equals(arg)) {
+        isJar = true;
+      } else if ("-cp".equals(arg) || "-classpath".equals(arg)) {
+        target.add("-cp");
+        target.add(cmd.get(++i));
+      } else if (arg.startsWith("-")) {
+        jvmOpts.add(arg);
+      } else {
+        break;
+      }
+    }
+    if (i >= cmd.size()) {
+      throw new IllegalArgumentException("No jar or main class in java command: " + cmd.get(0));
+    }
+    if (isJar) {
+      target.clear();
+      target.add("-jar");
+    }
+    target.add(cmd.get(i));
+    if (!isDryRun) {
+      ArgFileLauncher.write(argFile, target, cmd.subList(i + 1, cmd.size()));
+    }
+
+    List<String> fitted = new ArrayList<>();
+    fitted.add(cmd.get(0));
+    fitted.addAll(jvmOpts);
+    fitted.add("-cp");
+    fitted.add(constructClasspathString(Collections.singletonList(ArgFileLauncher.classpathOfLauncher())));
+    fitted.add(ArgFileLauncher.class.getName());
+    fitted.add(argFile.toAbsolutePath().normalize().toString());
+    log.debug("Command line too long ({} chars), arguments moved to: {}", commandLength(cmd), argFile);
+    return fitted;
+  }
+
   public static List<String> getNotSupportedExts(Map<LcmsFileGroup, Path> mapGroupsToProtxml, List<String> supportedExts) {
     List<String> supportedLoCase = supportedExts.stream().map(String::toLowerCase)
         .collect(Collectors.toList());
@@ -92,7 +176,7 @@ public abstract class CmdBase {
     } catch (IOException e) {
       String msg = String.format("Could not unpack %s to temp dir", nameForErrorMsgs);
       log.error(msg, e);
-      JOptionPane.showMessageDialog(null,
+      Dialogs.showMessageDialog(null,
           "Could not unpack tools to a temporary directory.\n"
               + "Try disabling " + nameForErrorMsgs + ".", "Can't unpack", JOptionPane.ERROR_MESSAGE);
       return false;
@@ -100,6 +184,72 @@ public abstract class CmdBase {
     return true;
   }
 
+  /**
+   * Philosopher keeps its state in a `.meta` directory inside the directory it is run in.
+   * All Philosopher commands run in the same directory read and write this workspace.
+   */
+  public static Path philosopherWorkspace(Path dir) {
+    return dir.resolve(".meta");
+  }
+
+  protected void addInputs(Collection<Path> paths) {
+    paths.forEach(this::addInput);
+  }
+
+  protected void addInput(Path path) {
+    inputs.add(path.toAbsolutePath().normalize());
+  }
+
+  protected void addOutputs(Collection<Path> paths) {
+    paths.forEach(this::addOutput);
+  }
+
+  protected void addOutput(Path path) {
+    outputs.add(path.toAbsolutePath().normalize());
+  }
+
+  /**
+   * Philosopher commands both read and write the workspace in the directory they're run in.
+   */
+  protected void addPhilosopherWorkspace(Path dir) {
+    addInput(philosopherWorkspace(dir));
+    addOutput(philosopherWorkspace(dir));
+  }
+
+  /**
+   * Commands that didn't declare any inputs or outputs are treated as barriers by
+   * {@link umich.msfragger.gui.ProcessManager}: they wait for everything scheduled before
+   * them and everything scheduled after them waits for them.
+   */
+  public boolean isIoDeclared() {
+    return !inputs.isEmpty() || !outputs.isEmpty();
+  }
+
+  /**
+   * Commands whose results are fully determined by the declared inputs and their command
+   * lines can override this to allow skipping them when nothing changed since the last run.
+   * Commands relying on state that is not a declared file, like the contents of a
+   * Philosopher workspace, must not.
+   */
+  protected boolean isSkippableIfUpToDate() {
+    return false;
+  }
+
+  /**
+   * Heap size a JVM started by us will get: the requested amount or, when -Xmx is not given,
+   * the JVM default of a quarter of physical memory.
+   */
+  protected static int jvmRamGb(int ramGb) {
+    return ramGb > 0 ? ramGb : Math.max(1, OsUtils.getTotalPhysicalMemoryGb() / 4);
+  }
+
+  /**
+   * Number of threads a tool will use: the requested number or all cores when not set.
+   */
+  protected static int threadsOrAllCores(int threads) {
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
   public boolean isRun() {
     return isRun;
   }
@@ -120,8 +270,13 @@ public abstract class CmdBase {
   public ProcessBuildersDescriptor getBuilderDescriptor() {
     if (!isConfigured)
       throw new IllegalStateException("Call to #getBuilderDescriptor() before calling #configure()");
-    return new ProcessBuildersDescriptor(getCmdName(), getPriority(), fileCaptureStdout,
-        fileCaptureStderr).addAll(pbis);
+    ProcessBuildersDescriptor pbd = new ProcessBuildersDescriptor(getCmdName(), getPriority(),
+        fileCaptureStdout, fileCaptureStderr).addAll(pbis);
+    if (isIoDeclared()) {
+      pbd.setIo(inputs, outputs);
+      pbd.setSkippable(isSkippableIfUpToDate());
+    }
+    return pbd;
   }
 
 }
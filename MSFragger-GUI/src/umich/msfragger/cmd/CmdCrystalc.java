@@ -4,6 +4,7 @@ import java.awt.Component;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -21,6 +22,7 @@ import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.MsfraggerGuiFrame;
 import umich.msfragger.params.crystalc.CrystalcParams;
 import umich.msfragger.params.fragger.FraggerMigPanel;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.StringUtils;
 
 public class CmdCrystalc extends CmdBase {
@@ -76,7 +78,7 @@ public class CmdCrystalc extends CmdBase {
   private boolean checkCompatibleFormats(Component comp, Map<InputLcmsFile, Path> pepxmlFiles, List<String> supportedFormats) {
     List<String> notSupportedExts = getNotSupportedExts1(pepxmlFiles, supportedFormats);
     if (!notSupportedExts.isEmpty()) {
-      JOptionPane.showMessageDialog(comp, String.format(
+      Dialogs.showMessageDialog(comp, String.format(
           "<html>%s can't work with '.%s' files.<br/>"
               + "Compatible formats are: %s<br/>"
               + "Either remove files from input or disable %s<br/>"
@@ -110,7 +112,7 @@ public class CmdCrystalc extends CmdBase {
     }
 
     if (StringUtils.isNullOrWhitespace(fastaPath)) {
-      JOptionPane.showMessageDialog(comp, "Fasta file [Crystal-C] path can't be empty.",
+      Dialogs.showMessageDialog(comp, "Fasta file [Crystal-C] path can't be empty.",
           "Warning", JOptionPane.WARNING_MESSAGE);
       return false;
     }
@@ -124,7 +126,7 @@ public class CmdCrystalc extends CmdBase {
 
     final String pepxmlExt = fp.getOutputFileExt();
     if (!"pepxml".equals(pepxmlExt.toLowerCase())) {
-      JOptionPane.showMessageDialog(comp,
+      Dialogs.showMessageDialog(comp,
           "Crystal-C only accepts pepXML file extension.\n"
               + "Switch to pepXML in MSFragger options or disable Crystal-C :\\",
           "Not supported by Crystal-C", JOptionPane.ERROR_MESSAGE);
@@ -159,7 +161,7 @@ public class CmdCrystalc extends CmdBase {
           ccp.save(Files.newOutputStream(ccParamsPath, StandardOpenOption.CREATE));
         }
       } catch (IOException e) {
-        JOptionPane.showMessageDialog(comp,
+        Dialogs.showMessageDialog(comp,
             "Could not create Crystal-C parameter file.\n" + e.getMessage(),
             "Error", JOptionPane.ERROR_MESSAGE);
         return false;
@@ -180,13 +182,24 @@ public class CmdCrystalc extends CmdBase {
       cmd.add(pepxml.toString());
       ProcessBuilder pb = new ProcessBuilder(cmd);
       pb.directory(outDir.toFile());
-      pbis.add(PbiBuilder.from(pb));
+      pbis.add(PbiBuilder.from(pb, jvmRamGb(ramGb), threadsOrAllCores(ccp.getThread())));
+
+      addInput(lcms.getPath());
+      addInput(pepxml);
+      addOutput(ccParamsPath);
     }
+    addInput(Paths.get(fastaPath));
+    addOutputs(outputs(pepxmlFiles, pepxmlExt).values());
 
     isConfigured = true;
     return true;
   }
 
+  @Override
+  protected boolean isSkippableIfUpToDate() {
+    return true;
+  }
+
   @Override
   public int getPriority() {
     return 80;
@@ -1,6 +1,7 @@
 package umich.msfragger.cmd;
 
 import java.awt.Component;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -16,6 +17,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.LcmsFileGroup;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.OsUtils;
 
 public class CmdImquant extends CmdBase {
@@ -29,6 +31,8 @@ public class CmdImquant extends CmdBase {
   public static final List<String> SUPPORTED_FORMATS = Arrays.asList("mzML", "mzXML");
 
   private static final String UNPACK_SUBDIR_IN_TEMP = "fragpipe";
+  /** List of input files when there are too many of them to fit on the command line. */
+  private static final String ARG_FILE = "imquant.args";
 
   public CmdImquant(boolean isRun, Path workDir, String fileCaptureStdout,
       String fileCaptureStderr) {
@@ -45,7 +49,7 @@ public class CmdImquant extends CmdBase {
     return NAME;
   }
 
-  public boolean configure(Component comp, Path binFragger, int ramGb,
+  public boolean configure(Component comp, boolean isDryRun, Path binFragger, int ramGb,
       Map<String, String> uiCompsRepresentation,
       Map<InputLcmsFile, Path> lcmsToFraggerPepxml,
       Map<LcmsFileGroup, Path> mapGroupsToProtxml) {
@@ -119,9 +123,31 @@ public class CmdImquant extends CmdBase {
       cmd.add(wd.relativize(pepxml).toString());
     }
 
-    ProcessBuilder pb = new ProcessBuilder(cmd);
+    List<String> cmdFitted;
+    try {
+      cmdFitted = fitJavaCommandLine(cmd, wd.resolve(ARG_FILE), isDryRun);
+    } catch (IOException e) {
+      Dialogs.showMessageDialog(comp,
+          "Could not write IMQuant argument file to working dir.\n",
+          "Error", JOptionPane.ERROR_MESSAGE);
+      return false;
+    }
+
+    ProcessBuilder pb = new ProcessBuilder(cmdFitted);
     pb.directory(wd.toFile());
-    pbis.add(PbiBuilder.from(pb));
+    pbis.add(PbiBuilder.from(pb, jvmRamGb(ramGb), threadsOrAllCores(0)));
+    addOutput(wd.resolve(ARG_FILE));
+
+    // IMQuant adds intensities to Philosopher's tables in place
+    for (LcmsFileGroup group : mapGroupsToProtxml.keySet()) {
+      addInput(group.outputDir(wd).resolve("psm.tsv"));
+      addOutputs(CmdReportReport.REPORT_FNS.stream().map(group.outputDir(wd)::resolve)
+          .collect(Collectors.toList()));
+    }
+    for (Entry<InputLcmsFile, Path> e : lcmsToFraggerPepxml.entrySet()) {
+      addInput(e.getKey().getPath());
+      addInput(e.getValue());
+    }
 
     isConfigured = true;
     return true;
@@ -157,7 +183,7 @@ public class CmdImquant extends CmdBase {
       sb.append(String.format("Either remove files from input or disable %s<br/>", NAME));
       sb.append("You can also convert files using <i>msconvert</i> from ProteoWizard.");
 
-      JOptionPane.showMessageDialog(comp, sb.toString(), NAME + " error", JOptionPane.WARNING_MESSAGE);
+      Dialogs.showMessageDialog(comp, sb.toString(), NAME + " error", JOptionPane.WARNING_MESSAGE);
       return false;
     }
     return true;
@@ -47,7 +47,11 @@ public class CmdIprophet extends CmdBase {
 
     ProcessBuilder pb = new ProcessBuilder(cmd);
     pb.directory(wd.toFile());
-    pbis.add(PbiBuilder.from(pb));
+    pbis.add(PbiBuilder.from(pb, 0, threads));
+
+    addInputs(pepxmlFiles.values());
+    addPhilosopherWorkspace(wd);
+    addOutput(wd.resolve("combined.pep.xml"));
 
     isConfigured = true;
     return true;
@@ -32,7 +32,7 @@ public class CmdMsAdjuster extends CmdBase {
     return !isCleanup ? NAME : NAME + " (Cleanup)";
   }
 
-  public boolean configure(Component comp, Path jarFragpipe, FraggerMigPanel fp,
+  public boolean configure(Component comp, FraggerMigPanel fp,
       List<InputLcmsFile> lcmsFiles, boolean doCleanup, int priority) {
     pbis.clear();
     isCleanup = doCleanup;
@@ -64,7 +64,7 @@ public class CmdMsAdjuster extends CmdBase {
 
         ProcessBuilder pb = new ProcessBuilder(cmd);
         pb.directory(f.outputDir(wd).toFile());
-        pbis.add(PbiBuilder.from(pb));
+        pbis.add(PbiBuilder.from(pb, jvmRamGb(ramGb), 1));
 
       } else {
         // run MsAdjuster cleanup
@@ -73,9 +73,8 @@ public class CmdMsAdjuster extends CmdBase {
         Path origin = Paths.get(StringUtils.upToLastDot(f.getPath().toString()) + ".ma");
         Path destination = f.outputDir(wd);
         if (!destination.equals(origin.getParent())) {
-          List<ProcessBuilder> pbsMove = ToolingUtils
-              .pbsMoveFiles(jarFragpipe, destination, Collections.singletonList(origin));
-          pbis.addAll(PbiBuilder.from(pbsMove));
+          pbis.addAll(ToolingUtils
+              .pbisMoveFiles(destination, Collections.singletonList(origin)));
         }
       }
     }
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -29,6 +30,7 @@ import umich.msfragger.gui.ProcessManager;
 import umich.msfragger.params.dbslice.DbSlice;
 import umich.msfragger.params.fragger.FraggerMigPanel;
 import umich.msfragger.params.fragger.MsfraggerParams;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.OsUtils;
 import umich.msfragger.util.PythonInfo;
 import umich.msfragger.util.StringUtils;
@@ -37,6 +39,8 @@ import umich.msfragger.util.UsageTrigger;
 public class CmdMsfragger extends CmdBase {
   private static final Logger log = LoggerFactory.getLogger(CmdMsfragger.class);
   public static final String NAME = "MsFragger";
+  /** List of LCMS files for a search with too many files to fit on the command line. */
+  private static final String ARG_FILE = "fragger.args";
 
   private static volatile FileFilter ff = null;
   private static volatile Predicate<File> supportedFilePredicate = null;
@@ -243,16 +247,18 @@ public class CmdMsfragger extends CmdBase {
   }
 
   public boolean configure(Component comp, boolean isDryRun,
-      FraggerMigPanel fp, Path jarFragpipe, UsageTrigger binFragger, String pathFasta,
+      FraggerMigPanel fp, UsageTrigger binFragger, String pathFasta,
       List<InputLcmsFile> lcmsFiles, final String decoyTag) {
 
     pbis.clear();
+    inputs.clear();
+    outputs.clear();
     final int numSlices = fp.getNumDbSlices();
     final boolean isSlicing = numSlices > 1;
     if (isSlicing) {
       // slicing requested
       if (!DbSlice.get().isInitialized()) {
-        JOptionPane.showMessageDialog(comp,
+        Dialogs.showMessageDialog(comp,
             "MSFragger: database splitting in more than 1 chunk.\n"
                 + "However not all preconditions for enabling slicing were met.\n"
                 + "Check the bottom of \"Config\" tab for details.",
@@ -262,13 +268,13 @@ public class CmdMsfragger extends CmdBase {
     }
 
     if (StringUtils.isNullOrWhitespace(binFragger.getBin())) {
-      JOptionPane
+      Dialogs
           .showMessageDialog(comp, "Binary for running Fragger can not be an empty string.\n",
               "Error", JOptionPane.ERROR_MESSAGE);
       return false;
     }
     if (testFilePath(binFragger.getBin(), "") == null) {
-      JOptionPane
+      Dialogs
           .showMessageDialog(comp, "Binary for running Fragger not found or could not be run.\n"
                   + "Neither on PATH, nor in the working directory",
               "Error", JOptionPane.ERROR_MESSAGE);
@@ -280,7 +286,7 @@ public class CmdMsfragger extends CmdBase {
       Path fraggerJarLoc = Paths.get(binFragger.getBin()).getParent();
       Path libs = searchExtLibsThermo(Collections.singletonList(fraggerJarLoc));
       if (libs == null) {
-        JOptionPane
+        Dialogs
             .showMessageDialog(comp, "Thermo RAW files were used as input.\n"
                     + "'ext/thermo' folder was not found next to MSFragger jar file.\n"
                     + "You can obtain it by upgrading your MSFragger from the Config tab.\n",
@@ -291,7 +297,7 @@ public class CmdMsfragger extends CmdBase {
 
     // Fasta file
     if (pathFasta == null) {
-      JOptionPane.showMessageDialog(comp, "Fasta file path (Fragger) can't be empty",
+      Dialogs.showMessageDialog(comp, "Fasta file path (Fragger) can't be empty",
           "Error", JOptionPane.ERROR_MESSAGE);
       return false;
     }
@@ -307,7 +313,7 @@ public class CmdMsfragger extends CmdBase {
         // cache the params
         params.save();
       } catch (IOException ex) {
-        JOptionPane.showMessageDialog(comp,
+        Dialogs.showMessageDialog(comp,
             "Could not save fragger.params file to working dir.\n",
             "Error", JOptionPane.ERROR_MESSAGE);
         return false;
@@ -318,10 +324,10 @@ public class CmdMsfragger extends CmdBase {
         (int) (((com.sun.management.OperatingSystemMXBean) java.lang.management.ManagementFactory
             .getOperatingSystemMXBean()).getFreePhysicalMemorySize() / 1024.0 / 1024.0 / 1024.0);
 
-    // 32k symbols splitting for regular command.
-    // But for slicing it's all up to the python script.
-    //final int commandLenLimit = isSlicing ? Integer.MAX_VALUE : 1 << 15;
-    final int commandLenLimit = 1 << 15;
+    // A regular search runs once over all the files, a long list of files is passed in
+    // an argument file. The slicing script builds MSFragger command lines itself, so for
+    // slicing the files are still split into batches of at most 32k symbols.
+    final int commandLenLimit = isSlicing ? COMMAND_LENGTH_LIMIT : Integer.MAX_VALUE;
 
     if (isSlicing) {
       // schedule to always try to delete the temp dir when FragPipe finishes execution
@@ -369,7 +375,7 @@ public class CmdMsfragger extends CmdBase {
       // check if the command length is ok so far
       sb.append(String.join(" ", cmd));
       if (sb.length() > commandLenLimit) {
-        JOptionPane.showMessageDialog(comp,
+        Dialogs.showMessageDialog(comp,
             "MSFragger command line length too large even for a single file.",
             "Error", JOptionPane.ERROR_MESSAGE);
         return false;
@@ -389,15 +395,29 @@ public class CmdMsfragger extends CmdBase {
         fileIndex++;
       }
 
-      ProcessBuilder pb = new ProcessBuilder(cmd);
+      List<String> cmdFitted = cmd;
+      if (!isSlicing) {
+        try {
+          cmdFitted = fitJavaCommandLine(cmd, wd.resolve(ARG_FILE), isDryRun);
+        } catch (IOException e) {
+          Dialogs.showMessageDialog(comp,
+              "Could not write MSFragger argument file to working dir.\n",
+              "Error", JOptionPane.ERROR_MESSAGE);
+          return false;
+        }
+      }
+
+      ProcessBuilder pb = new ProcessBuilder(cmdFitted);
       PythonInfo.modifyEnvironmentVariablesForPythonSubprocesses(pb);
       pb.directory(wd.toFile());
       pb.environment().put("PYTHONIOENCODING", "utf-8");
-      pbis.add(PbiBuilder.from(pb));
+      pbis.add(PbiBuilder.from(pb, ramGb, threadsOrAllCores(fp.getThreads())));
       sb.setLength(0);
 
       // move the pepxml files if the output directory is not the same as where
-      // the lcms files were
+      // the lcms files were, one in-process task per destination directory
+      Map<Path, Path> pepxmlMoves = new LinkedHashMap<>();
+      Map<Path, Path> tsvMoves = new LinkedHashMap<>();
       for (InputLcmsFile f : addedLcmsFiles) {
         Path pepxmlWhereItShouldBe = mapLcmsToPepxml.get(f);
         if (pepxmlWhereItShouldBe == null)
@@ -405,27 +425,43 @@ public class CmdMsfragger extends CmdBase {
         String pepxmlFn = pepxmlWhereItShouldBe.getFileName().toString();
         Path pepxmlAsCreatedByFragger = f.getPath().getParent().resolve(pepxmlFn);
         if (!pepxmlAsCreatedByFragger.equals(pepxmlWhereItShouldBe)) {
-          List<ProcessBuilder> pbsMove = ToolingUtils
-              .pbsMoveFiles(jarFragpipe, pepxmlWhereItShouldBe.getParent(),
-                  Collections.singletonList(pepxmlAsCreatedByFragger));
-          pbis.addAll(PbiBuilder.from(pbsMove));
+          pepxmlMoves.put(pepxmlAsCreatedByFragger, pepxmlWhereItShouldBe.getParent());
         }
         Path tsvWhereItShouldBe = mapLcmsToTsv.get(f);
         String tsvFn = tsvWhereItShouldBe.getFileName().toString();
         Path tsvAsCreatedByFragger = f.getPath().getParent().resolve(tsvFn);
         if (!tsvAsCreatedByFragger.equals(tsvWhereItShouldBe) && params.getShiftedIons()) {
-          List<ProcessBuilder> pbsMove = ToolingUtils
-              .pbsMoveFiles(jarFragpipe, tsvWhereItShouldBe.getParent(), true,
-                  Collections.singletonList(tsvAsCreatedByFragger));
-          pbis.addAll(PbiBuilder.from(pbsMove));
+          tsvMoves.put(tsvAsCreatedByFragger, tsvWhereItShouldBe.getParent());
         }
       }
+      pbis.addAll(ToolingUtils.pbisMoveFiles(pepxmlMoves, false));
+      pbis.addAll(ToolingUtils.pbisMoveFiles(tsvMoves, true));
+    }
+
+    addInputs(lcmsFiles.stream().map(InputLcmsFile::getPath).collect(Collectors.toList()));
+    addInput(Paths.get(pathFasta));
+    addOutput(savedParamsPath);
+    addOutput(wd.resolve(ARG_FILE));
+    addOutputs(mapLcmsToPepxml.values());
+    addOutputs(mapLcmsToTsv.values());
+    // pepxml/tsv are first written next to LCMS files, then moved
+    for (InputLcmsFile f : lcmsFiles) {
+      addOutput(f.getPath().getParent().resolve(mapLcmsToPepxml.get(f).getFileName()));
+      addOutput(f.getPath().getParent().resolve(mapLcmsToTsv.get(f).getFileName()));
+    }
+    if (isSlicing) {
+      addOutput(wd.resolve("split_peptide_index_tempdir"));
     }
 
     isConfigured = true;
     return true;
   }
 
+  @Override
+  protected boolean isSkippableIfUpToDate() {
+    return true;
+  }
+
   @Override
   public int getPriority() {
     return 50;
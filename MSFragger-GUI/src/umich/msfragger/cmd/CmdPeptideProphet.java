@@ -29,8 +29,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.ProcessManager;
+import umich.msfragger.gui.RunManifest;
 import umich.msfragger.params.pepproph.PeptideProphetParams;
 import umich.msfragger.params.philosopher.PhilosopherProps;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.FileDelete;
 import umich.msfragger.util.FileListing;
 import umich.msfragger.util.StringUtils;
@@ -102,6 +104,9 @@ public class CmdPeptideProphet extends CmdBase {
       fl.setIncludeDirectories(false);
       pepxmlsToDelete.addAll(fl.findFiles());
     }
+    // outputs of a previous run tracked by the run manifest are reused or overwritten
+    final Set<Path> tracked = RunManifest.trackedOutputs(wd);
+    pepxmlsToDelete.removeIf(p -> tracked.contains(p.toAbsolutePath().normalize()));
     return pepxmlsToDelete;
   }
 
@@ -135,9 +140,9 @@ public class CmdPeptideProphet extends CmdBase {
       panel.add(new JScrollPane(table), BorderLayout.CENTER);
 
       String[] options = {"Yes - Delete now", "No - Continue as is", "Cancel"};
-      int confirmation = JOptionPane
+      int confirmation = Dialogs
           .showOptionDialog(comp, panel, "Delete the files?",
-              JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[0]);
+              JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE, options, options[0], 1);
       switch (confirmation) {
         case 0:
           for (Path path : forDeletion) {
@@ -161,7 +166,7 @@ public class CmdPeptideProphet extends CmdBase {
   /**
    * @param pepxmlFiles Either pepxml files after search or after Crystal-C.
    */
-  public boolean configure(Component comp, UsageTrigger phi, Path jarFragpipe, boolean isDryRun,
+  public boolean configure(Component comp, UsageTrigger phi, boolean isDryRun,
       String fastaPath, String decoyTag, String textPepProphCmd, boolean combine, String enzymeName,
       Map<InputLcmsFile, Path> pepxmlFiles) {
 
@@ -177,7 +182,7 @@ public class CmdPeptideProphet extends CmdBase {
           + "however the checkbox to combine pepxml files wasn't selected.<br/><br/>"
           + "This is just an information message to bring that to your attention.<br/><br/>"
           + "PeptideProphet will be launched as if the 'combine pepxmls' checkbox was selected.");
-      JOptionPane.showMessageDialog(comp, msg, "Inconsistent options for PeptideProphet", JOptionPane.INFORMATION_MESSAGE);
+      Dialogs.showMessageDialog(comp, msg, "Inconsistent options for PeptideProphet", JOptionPane.INFORMATION_MESSAGE);
     }
     combine = combine || cmdLineContainsCombine;
 
@@ -197,6 +202,7 @@ public class CmdPeptideProphet extends CmdBase {
       LinkedList<ProcessBuilderInfo> pbisPreParallel = new LinkedList<>();
       LinkedList<ProcessBuilderInfo> pbisParallel = new LinkedList<>();
       LinkedList<ProcessBuilderInfo> pbisPostParallel = new LinkedList<>();
+      List<Path> temps = new ArrayList<>();
 
       for (Map.Entry<InputLcmsFile, Path> e : pepxmlFiles.entrySet()) {
         final Path pepxmlPath = e.getValue();
@@ -253,19 +259,19 @@ public class CmdPeptideProphet extends CmdBase {
         setupEnv(temp, pbPp);
         pbisParallel.add(new PbiBuilder()
             .setPb(pbPp)
+            .setThreads(1)
             .setParallelGroup(getCmdName()).create());
 
-        // delete temp dir
         workspacesToBeCleaned.add(temp);
-        List<ProcessBuilder> pbsDeleteTemp = ToolingUtils
-            .pbsDeleteFiles(jarFragpipe, Collections.singletonList(temp));
-        pbisPostParallel.addAll(pbsDeleteTemp.stream()
-            .map(pb -> new PbiBuilder()
-                .setPb(pb)
-                .setParallelGroup(ProcessBuilderInfo.GROUP_SEQUENTIAL)
-                .setName(getCmdName() + ": Delete temp").create())
-            .collect(Collectors.toList()));
+        temps.add(temp);
+      }
 
+      // delete temp dirs after all of them have finished
+      if (!temps.isEmpty()) {
+        pbisPostParallel.add(new PbiBuilder()
+            .setFileOps(new FileOps(FileOps.Op.DELETE, null, false, temps))
+            .setParallelGroup(ProcessBuilderInfo.GROUP_SEQUENTIAL)
+            .setName(getCmdName() + ": Delete temp").create());
       }
       pbis.addAll(pbisPreParallel);
       pbis.addAll(pbisParallel);
@@ -283,7 +289,7 @@ public class CmdPeptideProphet extends CmdBase {
           String msg = String.format("When 'combine'd PeptideProphet processing requested all files "
               + "for each experiment must be located in the same folder. We found experiment: "
               + "%s with files from %d folders.", exp.get(0).getKey().getGroup(), pepxmlDirs.size());
-          JOptionPane.showMessageDialog(comp, msg, "Experiment/Group files in different folders", JOptionPane.WARNING_MESSAGE);
+          Dialogs.showMessageDialog(comp, msg, "Experiment/Group files in different folders", JOptionPane.WARNING_MESSAGE);
           return false;
         }
 
@@ -310,6 +316,15 @@ public class CmdPeptideProphet extends CmdBase {
     // update global cleanup
     ProcessManager.addFilesToDelete(workspacesToBeCleaned);
 
+    addInputs(pepxmlFiles.values());
+    addInput(Paths.get(fastaPath));
+    addOutputs(outputs(pepxmlFiles, "pepxml", combine).values());
+    addOutputs(workspacesToBeCleaned);
+    if (combine) {
+      pepxmlFiles.values().stream().map(Path::getParent).distinct()
+          .forEach(this::addPhilosopherWorkspace);
+    }
+
     isConfigured = true;
     return true;
   }
@@ -29,6 +29,8 @@ public class CmdPhilosopherWorkspaceClean extends CmdBase {
       pbis.add(PbiBuilder.from(pb));
     }
 
+    addPhilosopherWorkspace(wd);
+
     isConfigured = true;
     return true;
   }
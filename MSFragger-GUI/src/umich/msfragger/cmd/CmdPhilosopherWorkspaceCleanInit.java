@@ -45,6 +45,8 @@ public class CmdPhilosopherWorkspaceCleanInit extends CmdBase {
       pbis.add(PbiBuilder.from(pb));
     }
 
+    addPhilosopherWorkspace(wd);
+
     isConfigured = true;
     return true;
   }
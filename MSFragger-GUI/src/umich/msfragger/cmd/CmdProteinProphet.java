@@ -27,8 +27,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.LcmsFileGroup;
+import umich.msfragger.gui.RunManifest;
 import umich.msfragger.params.philosopher.PhilosopherProps;
 import umich.msfragger.params.protproph.ProteinProphetParams;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.FileListing;
 import umich.msfragger.util.StringUtils;
 import umich.msfragger.util.UsageTrigger;
@@ -100,6 +102,9 @@ public class CmdProteinProphet extends CmdBase {
       fl.setIncludeDirectories(false);
       toDelete.addAll(fl.findFiles());
     }
+    // outputs of a previous run tracked by the run manifest are reused or overwritten
+    final Set<Path> tracked = RunManifest.trackedOutputs(wd);
+    toDelete.removeIf(p -> tracked.contains(p.toAbsolutePath().normalize()));
     return toDelete;
   }
 
@@ -133,9 +138,9 @@ public class CmdProteinProphet extends CmdBase {
       panel.add(new JScrollPane(table), BorderLayout.CENTER);
 
       String[] options = {"Yes - Delete now", "No - Continue as is", "Cancel"};
-      int confirmation = JOptionPane
+      int confirmation = Dialogs
           .showOptionDialog(comp, panel, "Delete the files?",
-              JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[0]);
+              JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE, options, options[0], 1);
       switch (confirmation) {
         case 0:
           for (Path path : forDeletion) {
@@ -195,7 +200,7 @@ public class CmdProteinProphet extends CmdBase {
 
       Set<Path> interactProtXmls = new HashSet<>(groupToProtxml.values());
       if (interactProtXmls.size() > 1) {
-        JOptionPane.showMessageDialog(comp, "[Protein Prophet]\n"
+        Dialogs.showMessageDialog(comp, "[Protein Prophet]\n"
             + "Report to developers, more than one interact protxml file when\n"
             + "processing experimental groups together.");
         return false;
@@ -204,8 +209,13 @@ public class CmdProteinProphet extends CmdBase {
       if (!protxml.getParent().equals(wd)) {
         throw new IllegalStateException("Protxml not in global output directory when groups processed together.");
       }
+      // Philosopher can't read arguments from a file, paths relative to the directory
+      // it's run in keep the command line short
+      final Path protxmlDir = protxml.getParent();
       List<String> pepxmlsPaths = pepxmlFiles.entrySet().stream()
-          .map(pepxml -> pepxml.getValue().toString())
+          .map(pepxml -> pepxml.getValue().startsWith(protxmlDir)
+              ? protxmlDir.relativize(pepxml.getValue()).toString()
+              : pepxml.getValue().toString())
           .distinct()
           .collect(Collectors.toList());
       List<String> cmd = createCmdStub(usePhilosopher, protxml.getParent(), proteinProphetParams);
@@ -217,6 +227,20 @@ public class CmdProteinProphet extends CmdBase {
       // END: !isProcessGroupsSeparately
     }
 
+    for (ProcessBuilderInfo pbi : pbis) {
+      if (commandLength(pbi.pb.command()) > COMMAND_LENGTH_LIMIT) {
+        Dialogs.showMessageDialog(comp, "[Protein Prophet]\n"
+                + "Command line is too long, there are too many pepxml files.\n"
+                + "Try processing experiments/groups separately.",
+            "Protein Prophet configuration Error", JOptionPane.ERROR_MESSAGE);
+        return false;
+      }
+    }
+
+    addInputs(pepxmlFiles.values());
+    addOutputs(groupToProtxml.values());
+    groupToProtxml.values().stream().map(Path::getParent).distinct()
+        .forEach(this::addPhilosopherWorkspace);
 
     // by this point each process builder should have its working dir set
     for (ProcessBuilderInfo pbi : pbis) {
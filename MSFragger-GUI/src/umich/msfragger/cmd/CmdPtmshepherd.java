@@ -19,8 +19,10 @@ import javax.swing.JOptionPane;
 import org.apache.commons.codec.Charsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.LcmsFileGroup;
 import umich.msfragger.params.ptmshepherd.PtmshepherdParams;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.SwingUtils;
 
 
@@ -37,6 +39,9 @@ public class CmdPtmshepherd extends CmdBase {
   public static final String FN_CAPTURE_STDERR = "ptm-shepherd.log";
   public static final List<String> SUPPORTED_FORMATS = Arrays.asList("mzML", "mzXML");
   private static final String THERMO_RAW_EXT = "RAW";
+  /** Summary files PTM-Shepherd writes into the global work dir. */
+  private static final List<String> OUTPUT_FNS = Arrays
+      .asList("global.profile.tsv", "global.modsummary.tsv");
 
   public CmdPtmshepherd(boolean isRun, Path workDir) {
     super(isRun, workDir, FN_CAPTURE_STDOUT, FN_CAPTURE_STDERR);
@@ -50,7 +55,7 @@ public class CmdPtmshepherd extends CmdBase {
   private boolean checkCompatibleFormats(Component comp, Map<LcmsFileGroup, Path> mapGroupsToProtxml, List<String> supportedExts) {
     List<String> notSupportedExts = getNotSupportedExts(mapGroupsToProtxml, supportedExts);
     if (!notSupportedExts.isEmpty()) {
-      JOptionPane.showMessageDialog(comp, String.format(
+      Dialogs.showMessageDialog(comp, String.format(
           "<html>%s doesn't support '.%s' files.<br/>"
               + "Either remove them from input or disable %s<br/>"
               + "You can convert files using <i>msconvert</i> from ProteoWizard.", NAME, String.join(", ", notSupportedExts), NAME),
@@ -147,7 +152,18 @@ public class CmdPtmshepherd extends CmdBase {
     cmd.add(pathConfig.toString());
     ProcessBuilder pb = new ProcessBuilder(cmd);
     pb.directory(wd.toFile());
-    pbis.add(PbiBuilder.from(pb));
+    int threads = additionalProps.containsKey("threads")
+        ? Integer.parseInt(additionalProps.get("threads")) : 0;
+    pbis.add(PbiBuilder.from(pb, jvmRamGb(ramGb), threadsOrAllCores(threads)));
+
+    addInput(db);
+    for (LcmsFileGroup group : mapGroupsToProtxml.keySet()) {
+      addInput(group.outputDir(wd).resolve("psm.tsv"));
+      addInputs(group.lcmsFiles.stream().map(InputLcmsFile::getPath).collect(Collectors.toList()));
+    }
+    addOutput(pathConfig);
+    addOutput(wd.resolve(FN_CAPTURE_STDOUT));
+    addOutputs(OUTPUT_FNS.stream().map(wd::resolve).collect(Collectors.toList()));
 
     isConfigured = true;
     return true;
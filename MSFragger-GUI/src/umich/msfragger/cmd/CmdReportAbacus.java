@@ -153,6 +153,11 @@ public class CmdReportAbacus extends CmdBase {
       ProcessBuilder pb = new ProcessBuilder(cmd);
       pb.directory(executeInDir.toFile());
       pbis.add(PbiBuilder.from(pb));
+
+      addInput(protxml);
+      addInputs(outputDirsForProtxml.stream().map(CmdBase::philosopherWorkspace)
+          .collect(Collectors.toList()));
+      addPhilosopherWorkspace(executeInDir);
     }
 
     isConfigured = true;
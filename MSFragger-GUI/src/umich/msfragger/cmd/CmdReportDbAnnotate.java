@@ -2,6 +2,7 @@ package umich.msfragger.cmd;
 
 import java.awt.Component;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -12,6 +13,7 @@ import javax.swing.JOptionPane;
 import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.LcmsFileGroup;
 import umich.msfragger.params.philosopher.PhilosopherProps;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.UsageTrigger;
 
 public class CmdReportDbAnnotate extends CmdBase {
@@ -33,7 +35,7 @@ public class CmdReportDbAnnotate extends CmdBase {
 
     pbis.clear();
     if (dbPath == null) {
-      JOptionPane.showMessageDialog(comp, "Fasta file path can't be empty (Report)",
+      Dialogs.showMessageDialog(comp, "Fasta file path can't be empty (Report)",
           "Warning", JOptionPane.WARNING_MESSAGE);
       return false;
     }
@@ -54,7 +56,9 @@ public class CmdReportDbAnnotate extends CmdBase {
       ProcessBuilder pb = new ProcessBuilder(cmd);
       pb.directory(pepxmlDir.toFile());
       pbis.add(PbiBuilder.from(pb));
+      addPhilosopherWorkspace(pepxmlDir);
     }
+    addInput(Paths.get(dbPath));
 
     isConfigured = true;
     return true;
@@ -59,6 +59,14 @@ public class CmdReportFilter extends CmdBase {
       ProcessBuilder pb = new ProcessBuilder(cmd);
       pb.directory(groupWd.toFile());
       pbis.add(PbiBuilder.from(pb));
+
+      // filter picks up all pepxml files in the directory
+      addInput(groupWd);
+      if (!dontUseFilterProtxml) {
+        addInput(protxml);
+      }
+      addPhilosopherWorkspace(groupWd);
+      addOutput(groupWd.resolve(FN_CAPTURE_STDOUT));
     }
 
     isConfigured = true;
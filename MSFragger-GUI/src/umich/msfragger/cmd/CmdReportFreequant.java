@@ -9,8 +9,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.swing.JOptionPane;
+import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.LcmsFileGroup;
 import umich.msfragger.params.philosopher.PhilosopherProps;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.StringUtils;
 import umich.msfragger.util.UsageTrigger;
 
@@ -31,7 +33,7 @@ public class CmdReportFreequant extends CmdBase {
   private boolean checkCompatibleFormats(Component comp, Map<LcmsFileGroup, Path> mapGroupsToProtxml) {
     List<String> notSupportedExts = getNotSupportedExts(mapGroupsToProtxml, SUPPORTED_FORMATS);
     if (!notSupportedExts.isEmpty()) {
-      JOptionPane.showMessageDialog(comp, String.format(
+      Dialogs.showMessageDialog(comp, String.format(
           "<html>%s doesn't support '.%s' files.<br/>"
               + "Either remove them from input or disable %s<br/>"
               + "You can convert files using <i>msconvert</i> from ProteoWizard.", NAME, String.join(", ", notSupportedExts), NAME),
@@ -59,7 +61,7 @@ public class CmdReportFreequant extends CmdBase {
       if (lcmsDirsForProtxml.size() > 1) {
         String msg = "All LCMS input files for an experiment/group must be\n"
             + "located in the same directory for Freequant to work.";
-        JOptionPane.showMessageDialog(comp, msg, "Freequant Error", JOptionPane.WARNING_MESSAGE);
+        Dialogs.showMessageDialog(comp, msg, "Freequant Error", JOptionPane.WARNING_MESSAGE);
         return false;
       }
 
@@ -78,6 +80,9 @@ public class CmdReportFreequant extends CmdBase {
       pb.directory(groupWd.toFile());
 
       pbis.add(PbiBuilder.from(pb));
+
+      addInputs(group.lcmsFiles.stream().map(InputLcmsFile::getPath).collect(Collectors.toList()));
+      addPhilosopherWorkspace(groupWd);
     }
 
     isConfigured = true;
@@ -3,6 +3,7 @@ package umich.msfragger.cmd;
 import java.awt.Component;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -14,6 +15,9 @@ import umich.msfragger.util.UsageTrigger;
 public class CmdReportReport extends CmdBase {
 
   public static final String NAME = "ReportReport";
+  /** Tables written by `philosopher report` into the directory it's run in. */
+  public static final List<String> REPORT_FNS = Arrays
+      .asList("psm.tsv", "ion.tsv", "peptide.tsv", "protein.tsv", "protein.fas");
 
   public CmdReportReport(boolean isRun, Path workDir) {
     super(isRun, workDir);
@@ -43,6 +47,9 @@ public class CmdReportReport extends CmdBase {
       ProcessBuilder pb = new ProcessBuilder(cmd);
       pb.directory(groupWd.toFile());
       pbis.add(PbiBuilder.from(pb));
+
+      addPhilosopherWorkspace(groupWd);
+      addOutputs(REPORT_FNS.stream().map(groupWd::resolve).collect(Collectors.toList()));
     }
 
     isConfigured = true;
@@ -2,17 +2,20 @@ package umich.msfragger.cmd;
 
 import java.awt.Component;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.stream.Collectors;
 import javax.swing.JOptionPane;
 import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.LcmsFileGroup;
 import umich.msfragger.params.speclib.SpecLibGen;
-import umich.msfragger.util.OsUtils;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.PythonInfo;
 import umich.msfragger.util.UsageTrigger;
 
@@ -29,20 +32,20 @@ public class CmdSpecLibGen extends CmdBase {
     return NAME;
   }
 
-  public boolean configure(Component comp, UsageTrigger usePhilosopher, Path jarFragpipe,
+  public boolean configure(Component comp, UsageTrigger usePhilosopher,
       Map<LcmsFileGroup, Path> mapGroupsToProtxml, String fastaPath, boolean isRunProteinProphet) {
 
     pbis.clear();
     final SpecLibGen slg = SpecLibGen.get();
     if (!slg.isInitialized()) {
-      JOptionPane.showMessageDialog(comp,
+      Dialogs.showMessageDialog(comp,
           "Spectral Library Generation scripts did not initialize correctly.",
           "Spectral Library Generation Error", JOptionPane.ERROR_MESSAGE);
       return false;
     }
 
     if (mapGroupsToProtxml.size() > 1) {
-      int res = JOptionPane.showConfirmDialog(comp,
+      int res = Dialogs.showConfirmDialog(comp,
           "<html>You have more than 1 experiment/group and spectral<br/>"
               + "library generation is turned on. In that case a separate<br/>"
               + "spectral library is created for each group.<br/><br/>"
@@ -51,7 +54,8 @@ public class CmdSpecLibGen extends CmdBase {
               + "from ALL input files.<br/>"
               + "Change Experiment/Group configuration on LCMS files tab.<br/>"
               + "E.g. press the <i>Clear Experiments</i> button there.",
-          "SpecLibGen config warning", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+          "SpecLibGen config warning", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE,
+          JOptionPane.YES_OPTION);
       if (JOptionPane.YES_OPTION != res) {
         return false;
       }
@@ -63,7 +67,7 @@ public class CmdSpecLibGen extends CmdBase {
       final Path groupWd = group.outputDir(wd);
 
       if (!isRunProteinProphet && !Files.exists(protxml)) {
-        JOptionPane.showMessageDialog(comp,
+        Dialogs.showMessageDialog(comp,
             "Protein Prophet not selected and the output directory:\n"
                 + "    " + groupWd.toString() + "\n"
                 + "does not contain a '" + protxml.getFileName().toString() + "' file.\n\n"
@@ -74,25 +78,24 @@ public class CmdSpecLibGen extends CmdBase {
 
       // for current implementation of speclibgen scripts mzml files need to be
       // located next to pepxml files
-      final List<ProcessBuilder> pbsDeleteLcmsFiles = new ArrayList<>();
+      final List<Path> lcmsToStage = new ArrayList<>();
+      final List<Path> lcmsStagedToDelete = new ArrayList<>();
       for (InputLcmsFile lcms : group.lcmsFiles) {
         if (!groupWd.equals(lcms.getPath().getParent())) {
-          final Path copy = groupWd.resolve(lcms.getPath().getFileName());
-          final boolean isWindows = OsUtils.isWindows();
-          if (!Files.exists(copy)) {
+          final Path staged = groupWd.resolve(lcms.getPath().getFileName());
+          if (!Files.exists(staged, LinkOption.NOFOLLOW_LINKS)) {
             // Directory of LCMS file is different from pepxml file
             // and the file does not yet exist.
-            // Copy over the file and schedule for deletion.
-            List<ProcessBuilder> pbCopy = ToolingUtils
-                .pbsCopyFiles(jarFragpipe, groupWd, Collections.singletonList(lcms.getPath()));
-            pbis.addAll(PbiBuilder.from(pbCopy));
-            pbsDeleteLcmsFiles.addAll(ToolingUtils
-                .pbsDeleteFiles(jarFragpipe, Collections.singletonList(groupWd.resolve(
-                    lcms.getPath().getFileName()))));
+            // Link (or copy) the file and schedule for deletion.
+            lcmsToStage.add(lcms.getPath());
+            lcmsStagedToDelete.add(staged);
           }
         }
       }
 
+      // staged files are also removed with other temp files if the run stops before the delete task
+      pbis.addAll(ToolingUtils.pbisStageFiles(groupWd, lcmsToStage));
+
       List<String> cmd = new ArrayList<>();
       cmd.add(slg.getPi().getCommand());
       cmd.add("-u"); // PYTHONUNBUFFERED: when mixing subprocess output with Python output, use this to keep the outputs in order
@@ -110,8 +113,17 @@ public class CmdSpecLibGen extends CmdBase {
       pb.environment().put("PYTHONIOENCODING", "utf-8");
 
       pbis.add(PbiBuilder.from(pb));
-      pbis.addAll(PbiBuilder.from(pbsDeleteLcmsFiles));
+      pbis.addAll(ToolingUtils.pbisDeleteFiles(lcmsStagedToDelete));
+
+      addInput(protxml);
+      addInputs(group.lcmsFiles.stream().map(InputLcmsFile::getPath).collect(Collectors.toList()));
+      addInputs(CmdReportReport.REPORT_FNS.stream().map(groupWd::resolve).collect(Collectors.toList()));
+      addOutputs(group.lcmsFiles.stream().map(f -> groupWd.resolve(f.getPath().getFileName()))
+          .collect(Collectors.toList()));
+      // the scripts run Philosopher in the output directory
+      addPhilosopherWorkspace(groupWd);
     }
+    addInput(Paths.get(fastaPath));
 
     isConfigured = true;
     return true;
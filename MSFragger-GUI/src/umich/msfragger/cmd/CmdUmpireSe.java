@@ -21,6 +21,7 @@ import umich.msfragger.params.ThisAppProps;
 import umich.msfragger.params.umpire.UmpirePanel;
 import umich.msfragger.params.umpire.UmpireParams;
 import umich.msfragger.params.umpire.UmpireSeGarbageFiles;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.JarUtils;
 import umich.msfragger.util.PropertiesUtils;
 import umich.msfragger.util.StringUtils;
@@ -60,7 +61,7 @@ public class CmdUmpireSe extends CmdBase {
   }
 
   public boolean configure(Component errMsgParent, boolean isDryRun,
-      Path jarFragpipe, UsageTrigger philo, UmpirePanel umpirePanel,
+      UsageTrigger philo, UmpirePanel umpirePanel,
       List<InputLcmsFile> lcmsFiles) {
 
     pbis.clear();
@@ -76,7 +77,7 @@ public class CmdUmpireSe extends CmdBase {
           + "It can be downloaded as part of ProteoWizard:<br/>\n"
           + "<a href='http://proteowizard.sourceforge.net/index.html'>http://proteowizard.sourceforge.net/index.html</a>");
       SwingUtils.makeDialogResizable(message);
-      JOptionPane.showMessageDialog(errMsgParent, SwingUtils.wrapInScrollForDialog(message),
+      Dialogs.showMessageDialog(errMsgParent, SwingUtils.wrapInScrollForDialog(message),
           "DIA Umpire SE: Error", JOptionPane.ERROR_MESSAGE);
       return false;
     }
@@ -85,7 +86,7 @@ public class CmdUmpireSe extends CmdBase {
     boolean hasNonMzxml = lcmsFiles.stream().map(f -> f.getPath().getFileName().toString().toLowerCase())
         .anyMatch(p -> !p.endsWith(".mzxml"));
     if (hasNonMzxml) {
-      JOptionPane.showMessageDialog(errMsgParent,
+      Dialogs.showMessageDialog(errMsgParent,
           "Not all input files are mzXML.\n"
               + "DIA-Umpire only supports mzXML inputs.",
           "DIA Umpire SE: Error", JOptionPane.ERROR_MESSAGE);
@@ -99,7 +100,7 @@ public class CmdUmpireSe extends CmdBase {
           ThisAppProps.UNPACK_TEMP_SUBDIR, true, true);
 
     } catch (IOException | NullPointerException ex) {
-      JOptionPane.showMessageDialog(errMsgParent,
+      Dialogs.showMessageDialog(errMsgParent,
           "Could not unpack UmpireSE jar to a temporary directory.\n",
           "Can't unpack", JOptionPane.ERROR_MESSAGE);
       return false;
@@ -117,7 +118,7 @@ public class CmdUmpireSe extends CmdBase {
         FileOutputStream fos = new FileOutputStream(umpireParamsFilePath.toFile());
         PropertiesUtils.writePropertiesContent(collectedUmpireParams, fos);
       } catch (FileNotFoundException | FileWritingException e) {
-        JOptionPane.showMessageDialog(errMsgParent,
+        Dialogs.showMessageDialog(errMsgParent,
             "[DIA Umpire SE]\nCould not write property file, thus can't run DIA-Umpire",
             "Error", JOptionPane.ERROR_MESSAGE);
         return false;
@@ -147,7 +148,7 @@ public class CmdUmpireSe extends CmdBase {
         cmd.add(umpireParamsFilePath.toString());
 
         ProcessBuilder pbUmpireSe = new ProcessBuilder(cmd);
-        pbis.add(PbiBuilder.from(pbUmpireSe));
+        pbis.add(PbiBuilder.from(pbUmpireSe, jvmRamGb(ram), threadsOrAllCores(0)));
       }
 
       // check if the working dir is the dir where the mzXML file was
@@ -160,8 +161,7 @@ public class CmdUmpireSe extends CmdBase {
         // destination dir is different from mzXML file location
         // need to move output and cleanup
         List<Path> garbage = UmpireSeGarbageFiles.getGarbageFiles(f.getPath());
-        List<ProcessBuilder> pbsMove = ToolingUtils.pbsMoveFiles(jarFragpipe, destDir, garbage);
-        pbis.addAll(PbiBuilder.from(pbsMove));
+        pbis.addAll(ToolingUtils.pbisMoveFiles(destDir, garbage));
       }
 
       List<String> mgfs = getGeneratedMgfFnsForMzxml(inputFn.toString());
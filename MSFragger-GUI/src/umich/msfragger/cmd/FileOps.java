@@ -0,0 +1,113 @@
+package umich.msfragger.cmd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import umich.msfragger.gui.ProcessManager;
+import umich.msfragger.util.FileCopy;
+import umich.msfragger.util.FileDelete;
+import umich.msfragger.util.FileMove;
+import umich.msfragger.util.FileStage;
+
+/**
+ * Copying, moving, staging or deleting a batch of files. Runs inside the FragPipe JVM using
+ * the same logic as {@link FileCopy}, {@link FileMove} and {@link FileDelete}, instead of
+ * starting a separate java process for every file. Staging is described in {@link FileStage}.
+ * <p>
+ * Staged files are temporary. Each one is registered with
+ * {@link ProcessManager#addFilesToDelete} once it has been created, so that it is removed
+ * if the run stops before the task that deletes it.
+ */
+public class FileOps {
+  public enum Op {COPY, MOVE, STAGE, DELETE}
+
+  public final Op op;
+  /** Null for {@link Op#DELETE}. */
+  public final Path destDir;
+  public final boolean ignoreMissingFiles;
+  public final List<Path> files;
+
+  public FileOps(Op op, Path destDir, boolean ignoreMissingFiles, List<Path> files) {
+    if (op != Op.DELETE && destDir == null) {
+      throw new IllegalArgumentException("Destination directory is required for " + op);
+    }
+    this.op = op;
+    this.destDir = destDir;
+    this.ignoreMissingFiles = ignoreMissingFiles;
+    this.files = Collections.unmodifiableList(new ArrayList<>(files));
+  }
+
+  private Path target(Path file) {
+    return destDir.resolve(file.getFileName());
+  }
+
+  /**
+   * Processes the files in order, stopping at the first error.
+   *
+   * @throws InterruptedIOException If the thread was interrupted, the remaining files are
+   * left untouched.
+   */
+  public void run() throws IOException {
+    run(msg -> {});
+  }
+
+  /**
+   * @param messages Receives notes about how the files were processed, e.g. which way
+   * a file was staged.
+   */
+  public void run(Consumer<String> messages) throws IOException {
+    for (Path file : files) {
+      if (Thread.currentThread().isInterrupted()) {
+        throw new InterruptedIOException("Interrupted before processing: " + file);
+      }
+      switch (op) {
+        case COPY:
+          FileCopy.copy(file, target(file));
+          break;
+        case MOVE:
+          FileMove.move(file, target(file), ignoreMissingFiles);
+          break;
+        case STAGE:
+          FileStage.Method method = FileStage.stage(file, target(file));
+          ProcessManager.addFilesToDelete(Collections.singleton(target(file)));
+          messages.accept("Staged " + file.getFileName() + " as " + method.description);
+          break;
+        case DELETE:
+          FileDelete.delete(file);
+          break;
+        default:
+          throw new IllegalStateException("Unknown enum value: " + op.toString());
+      }
+    }
+  }
+
+  /**
+   * One line per file, printed to the console in place of a command line.
+   */
+  public List<String> describe() {
+    List<String> lines = new ArrayList<>(files.size());
+    for (Path file : files) {
+      switch (op) {
+        case COPY:
+          lines.add("Copy " + file + " -> " + target(file));
+          break;
+        case MOVE:
+          lines.add("Move " + file + " -> " + target(file));
+          break;
+        case STAGE:
+          lines.add("Stage " + file + " -> " + target(file));
+          break;
+        case DELETE:
+          lines.add("Delete " + file);
+          break;
+        default:
+          throw new IllegalStateException("Unknown enum value: " + op.toString());
+      }
+    }
+    return lines;
+  }
+}
@@ -7,16 +7,24 @@ import java.util.stream.Collectors;
 public class PbiBuilder {
 
   private ProcessBuilder pb;
+  private FileOps fileOps;
   private String name;
   private String fnStdOut;
   private String fnStdErr;
   private String parallelGroup;
+  private int ramGb;
+  private int threads;
 
   public PbiBuilder setPb(ProcessBuilder pb) {
     this.pb = pb;
     return this;
   }
 
+  public PbiBuilder setFileOps(FileOps fileOps) {
+    this.fileOps = fileOps;
+    return this;
+  }
+
   public PbiBuilder setName(String name) {
     this.name = name;
     return this;
@@ -37,15 +45,34 @@ public class PbiBuilder {
     return this;
   }
 
+  public PbiBuilder setRamGb(int ramGb) {
+    this.ramGb = ramGb;
+    return this;
+  }
+
+  public PbiBuilder setThreads(int threads) {
+    this.threads = threads;
+    return this;
+  }
+
   public ProcessBuilderInfo create() {
-    return new ProcessBuilderInfo(pb, name, fnStdOut, fnStdErr, parallelGroup);
+    return new ProcessBuilderInfo(pb, fileOps, name, fnStdOut, fnStdErr, parallelGroup, ramGb,
+        threads);
   }
 
   public static List<ProcessBuilderInfo> from (List<ProcessBuilder> pbs) {
     return pbs.stream().map(pb -> new PbiBuilder().setPb(pb).create()).collect(Collectors.toList());
   }
 
+  public static ProcessBuilderInfo from (FileOps fileOps) {
+    return new PbiBuilder().setFileOps(fileOps).create();
+  }
+
   public static ProcessBuilderInfo from (ProcessBuilder pb) {
     return new PbiBuilder().setPb(pb).create();
   }
+
+  public static ProcessBuilderInfo from (ProcessBuilder pb, int ramGb, int threads) {
+    return new PbiBuilder().setPb(pb).setRamGb(ramGb).setThreads(threads).create();
+  }
 }
@@ -2,6 +2,7 @@ package umich.msfragger.cmd;
 
 import java.awt.Color;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.util.Locale;
 import java.util.function.Consumer;
@@ -12,33 +13,97 @@ import umich.msfragger.gui.MsfraggerGuiFrame;
 import umich.msfragger.gui.ProcessResult;
 import umich.msfragger.messages.MessageAppendToConsole;
 import umich.msfragger.messages.MessageExternalProcessOutput;
-import umich.msfragger.messages.MessageKillAll;
 import umich.msfragger.messages.MessageKillAll.REASON;
+import umich.msfragger.util.ProcessUsage;
+import umich.msfragger.util.ProcessUsageSampler;
 
 public class ProcessBuilderInfo {
   private static final Logger log = LoggerFactory.getLogger(ProcessBuilderInfo.class);
+  /** Null for tasks that run inside this JVM, see {@link #fileOps}. */
   public final ProcessBuilder pb;
+  /** File operations run inside this JVM instead of an external process, null otherwise. */
+  public final FileOps fileOps;
   public final String name;
   public final String fnStdout;
   public final String fnStderr;
   public final String parallelGroup;
+  /** Memory the process is expected to use, zero if not declared. */
+  public final int ramGb;
+  /** Number of threads the process is expected to use, zero if not declared. */
+  public final int threads;
   public static final String GROUP_SEQUENTIAL = "SEQUENTIAL EXECUTION";
+  /** How long to wait for the remaining output after a process exits. */
+  private static final long PUMP_DRAIN_TIMEOUT_MS = 5000;
+
+  /**
+   * Thrown by the runnables created in {@link #toRunnable} when the task didn't finish
+   * successfully. The failure has already been reported to the console by then, the
+   * exception only lets the caller know not to treat the task as done. Stopping the rest of
+   * the run is up to {@link umich.msfragger.gui.ProcessManager}.
+   */
+  public static class TaskFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    public final REASON reason;
+
+    public TaskFailedException(String message) {
+      this(REASON.NO_REASON, message);
+    }
+
+    public TaskFailedException(REASON reason, String message) {
+      super(message);
+      this.reason = reason;
+    }
+  }
 
   public ProcessBuilderInfo(ProcessBuilder pb, String name, String fnStdout,
       String fnStderr, String parallelGroup) {
+    this(pb, name, fnStdout, fnStderr, parallelGroup, 0, 0);
+  }
+
+  public ProcessBuilderInfo(ProcessBuilder pb, String name, String fnStdout,
+      String fnStderr, String parallelGroup, int ramGb, int threads) {
+    this(pb, null, name, fnStdout, fnStderr, parallelGroup, ramGb, threads);
+  }
+
+  public ProcessBuilderInfo(ProcessBuilder pb, FileOps fileOps, String name, String fnStdout,
+      String fnStderr, String parallelGroup, int ramGb, int threads) {
+    if ((pb == null) == (fileOps == null)) {
+      throw new IllegalArgumentException("Exactly one of process builder or file ops must be given");
+    }
     this.pb = pb;
+    this.fileOps = fileOps;
     this.name = name;
     this.fnStdout = fnStdout;
     this.fnStderr = fnStderr;
     this.parallelGroup = parallelGroup;
+    this.ramGb = ramGb;
+    this.threads = threads;
   }
 
+  /**
+   * @return Throws {@link TaskFailedException} if the process couldn't be started, was
+   * interrupted or returned a non-zero exit code.
+   */
   public static Runnable toRunnable(final ProcessBuilderInfo pbi, final Path wdPath,
       Consumer<ProcessBuilderInfo> pbiPrinter) {
+    return toRunnable(pbi, wdPath, pbiPrinter, null);
+  }
+
+  /**
+   * @param usage Receives the resources used by the process once it has exited or was
+   * killed, null to not measure them.
+   */
+  public static Runnable toRunnable(final ProcessBuilderInfo pbi, final Path wdPath,
+      Consumer<ProcessBuilderInfo> pbiPrinter, Consumer<ProcessUsage> usage) {
+    if (pbi.fileOps != null) {
+      return () -> runFileOps(pbi, pbiPrinter);
+    }
     return () -> {
 
             final ProcessResult pr = new ProcessResult(pbi);
             Process started;
+            ProcessUsageSampler.Tracker tracker = null;
+            int exitValue = (int) ProcessUsage.UNKNOWN;
             try {
               log.debug("Starting: {}", pbi.name);
               if (pbiPrinter != null) {
@@ -46,58 +111,30 @@ public class ProcessBuilderInfo {
               }
               started = pr.start();
               log.debug("Started: {}", pbi.name);
+              if (usage != null) {
+                tracker = ProcessUsageSampler.get().track(pbi.name,
+                    String.join(" ", pbi.pb.command()), started);
+              }
             } catch (IOException e) {
               log.error("Error while starting process: " + pbi.name + ", stopping", e);
-              EventBus.getDefault().post(new MessageKillAll(REASON.CANT_START_PROCESS));
-              return;
+              throw new TaskFailedException(REASON.CANT_START_PROCESS,
+                  "Could not start: " + pbi.name);
             }
 
-            // main loop reading process' output
+            // output is pumped by separate threads as soon as it's available
+            pr.startPumps(
+                out -> EventBus.getDefault().post(new MessageExternalProcessOutput(false, out, pbi.name)),
+                err -> EventBus.getDefault().post(new MessageExternalProcessOutput(true, err, pbi.name)));
             try {
-              while (true) {
-
-                Thread.sleep(200L);
-                final byte[] pollErr = pr.pollStdErr();
-                final String errStr = pr.appendErr(pollErr);
-                if (errStr != null) {
-                  EventBus.getDefault().post(new MessageExternalProcessOutput(true, errStr,
-                      pbi.name));
-                }
-                final byte[] pollOut = pr.pollStdOut();
-                final String outStr = pr.appendOut(pollOut);
-                if (outStr != null) {
-                  EventBus.getDefault().post(new MessageExternalProcessOutput(false, outStr,
-                      pbi.name));
-                }
-                if (started.isAlive()) {
-                  continue;
-                }
-
-                try {
-                  log.debug("Checking exit value: {}", pbi.name);
-                  final int exitValue = started.exitValue();
-                  log.debug("Exit value '{}': {}", exitValue, pbi.name);
-                  Color c = exitValue == 0
-                      ? MsfraggerGuiFrame.COLOR_GREEN_DARKER
-                      : MsfraggerGuiFrame.COLOR_RED;
-                  String msg = String.format(Locale.ROOT,
-                      "Process '%s' finished, exit code: %d\n", pbi.name, exitValue);
-                  EventBus.getDefault().post(new MessageAppendToConsole(msg, c));
-                  if (exitValue != 0) {
-                    log.debug("Exit value not zero, killing all processes");
-                    EventBus.getDefault().post(new MessageAppendToConsole(
-                        "Process returned non-zero exit code, stopping", MsfraggerGuiFrame.COLOR_RED));
-                    EventBus.getDefault().post(new MessageKillAll(REASON.NON_ZERO_RETURN_FROM_PROCESS));
-                  }
-
-                } catch (IllegalThreadStateException ex) {
-                  log.warn("Checking for exit value when subprocess was not alive threw exception.");
-                }
-                break;
+              exitValue = started.waitFor();
+              if (tracker != null) {
+                // wall time ends here, not after the output has been drained
+                tracker.finish(exitValue);
               }
-
-            } catch (IOException e) {
-              log.error("Error while starting process " + pbi.name, e);
+              log.debug("Exit value '{}': {}", exitValue, pbi.name);
+              // make sure everything the process wrote gets to the console before the exit code
+              pr.awaitPumps(PUMP_DRAIN_TIMEOUT_MS);
+              reportExitValue(pbi, exitValue);
 
             } catch (InterruptedException e) {
               // graceful stop request
@@ -106,6 +143,7 @@ public class ProcessBuilderInfo {
               EventBus.getDefault()
                   .post(new MessageAppendToConsole(msg, MsfraggerGuiFrame.COLOR_RED_DARKEST));
               // all the cleanup is done in the finally block
+              throw new TaskFailedException("Interrupted: " + pbi.name);
 
             } finally {
               // in the end whatever happens always try to kill the process
@@ -113,6 +151,9 @@ public class ProcessBuilderInfo {
                 log.debug("Killing underlying external process");
                 started.destroyForcibly();
               }
+              if (tracker != null) {
+                usage.accept(tracker.finish(exitValue));
+              }
               try {
                 pr.close();
               } catch (Exception e) {
@@ -121,4 +162,52 @@ public class ProcessBuilderInfo {
             }
           };
   }
+
+  /**
+   * File operations are reported to the console the same way as an external process would be,
+   * a failure stops the run like a non-zero exit code.
+   */
+  private static void runFileOps(ProcessBuilderInfo pbi, Consumer<ProcessBuilderInfo> pbiPrinter) {
+    log.debug("Starting: {}", pbi.name);
+    if (pbiPrinter != null) {
+      pbiPrinter.accept(pbi);
+    }
+    int exitValue = 0;
+    try {
+      pbi.fileOps.run(msg -> EventBus.getDefault()
+          .post(new MessageExternalProcessOutput(false, msg + "\n", pbi.name)));
+    } catch (InterruptedIOException e) {
+      String msg = "Processing interrupted, stopping " + pbi.name;
+      log.debug(msg, e);
+      EventBus.getDefault()
+          .post(new MessageAppendToConsole(msg, MsfraggerGuiFrame.COLOR_RED_DARKEST));
+      throw new TaskFailedException("Interrupted: " + pbi.name);
+    } catch (IOException e) {
+      log.error("Error in file operation: " + pbi.name, e);
+      EventBus.getDefault().post(new MessageExternalProcessOutput(true, e.toString() + "\n", pbi.name));
+      exitValue = 1;
+    }
+    reportExitValue(pbi, exitValue);
+  }
+
+  /**
+   * Reports the exit code to the console.
+   *
+   * @throws TaskFailedException If the exit code is not zero.
+   */
+  public static void reportExitValue(ProcessBuilderInfo pbi, int exitValue) {
+    Color c = exitValue == 0
+        ? MsfraggerGuiFrame.COLOR_GREEN_DARKER
+        : MsfraggerGuiFrame.COLOR_RED;
+    String msg = String.format(Locale.ROOT,
+        "Process '%s' finished, exit code: %d\n", pbi.name, exitValue);
+    EventBus.getDefault().post(new MessageAppendToConsole(msg, c));
+    if (exitValue != 0) {
+      log.debug("Exit value not zero, stopping the run");
+      EventBus.getDefault().post(new MessageAppendToConsole(
+          "Process returned non-zero exit code, stopping", MsfraggerGuiFrame.COLOR_RED));
+      throw new TaskFailedException(REASON.NON_ZERO_RETURN_FROM_PROCESS,
+          "Exit code " + exitValue + ": " + pbi.name);
+    }
+  }
 }
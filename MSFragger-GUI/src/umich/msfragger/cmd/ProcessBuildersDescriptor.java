@@ -1,8 +1,12 @@
 package umich.msfragger.cmd;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class ProcessBuildersDescriptor {
   public final List<ProcessBuilderInfo> pbis;
@@ -11,6 +15,11 @@ public class ProcessBuildersDescriptor {
   public final String fnStderr;
   public final int priority;
   private String parallelGroup = null;
+  /** Null means the descriptor didn't declare what it reads. */
+  private Set<Path> inputs = null;
+  /** Null means the descriptor didn't declare what it writes. */
+  private Set<Path> outputs = null;
+  private boolean isSkippable = false;
 
   public ProcessBuildersDescriptor(String name, int priority,
       String fnStdout, String fnStderr) {
@@ -29,6 +38,35 @@ public class ProcessBuildersDescriptor {
     this.parallelGroup = parallelGroup;
   }
 
+  public void setIo(Collection<Path> inputs, Collection<Path> outputs) {
+    this.inputs = Collections.unmodifiableSet(new LinkedHashSet<>(inputs));
+    this.outputs = Collections.unmodifiableSet(new LinkedHashSet<>(outputs));
+  }
+
+  public Set<Path> getInputs() {
+    return inputs;
+  }
+
+  public Set<Path> getOutputs() {
+    return outputs;
+  }
+
+  /**
+   * Results depend only on the declared inputs and the command lines, so the commands don't
+   * need to be run again when none of them changed. See {@code RunManifest}.
+   */
+  public boolean isSkippable() {
+    return isSkippable;
+  }
+
+  public void setSkippable(boolean skippable) {
+    isSkippable = skippable;
+  }
+
+  public boolean isIoDeclared() {
+    return inputs != null && outputs != null;
+  }
+
   public int size() {
     return pbis.size();
   }
@@ -46,6 +84,4 @@ public class ProcessBuildersDescriptor {
     pbis.addAll(c);
     return this;
   }
-
-
 }
@@ -16,8 +16,9 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -26,15 +27,13 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.swing.JOptionPane;
+import umich.msfragger.cmd.FileOps.Op;
 import umich.msfragger.gui.InputLcmsFile;
 import umich.msfragger.gui.MsfraggerGuiFrame;
 import umich.msfragger.params.ThisAppProps;
-import umich.msfragger.util.FileCopy;
-import umich.msfragger.util.FileDelete;
-import umich.msfragger.util.FileMove;
+import umich.msfragger.util.Dialogs;
 import umich.msfragger.util.Holder;
 import umich.msfragger.util.OsUtils;
-import umich.msfragger.util.PathUtils;
 import umich.msfragger.util.StringUtils;
 
 public class ToolingUtils {
@@ -53,94 +52,90 @@ public class ToolingUtils {
     return workingDir.resolve(combinedProtFn).normalize().toAbsolutePath();
   }
 
-  private enum Op {COPY, MOVE, DELETE}
-
   /**
-   * @param jarFragpipe Use {@link PathUtils#getCurrentJarUri()} to get that from the current Jar.
+   * Copies files in-process, one task per destination directory.
+   * Files that are already in their destination directory are skipped.
    */
-  public static List<ProcessBuilder> pbsCopyFiles(Path jarFragpipe, Path dest,
-      boolean ignoreMissingFiles, List<Path> files) {
-    return pbsCopyMoveDeleteFiles(jarFragpipe, Op.COPY, dest, ignoreMissingFiles, files);
+  public static List<ProcessBuilderInfo> pbisCopyFiles(Path dest, List<Path> files) {
+    return pbisCopyMoveFiles(Op.COPY, toDestMap(dest, files), false);
   }
 
   /**
-   * @param jarFragpipe Use {@link PathUtils#getCurrentJarUri()} to get that from the current Jar.
+   * Makes files available in another directory, preferring hard links, then symbolic links,
+   * and copying only when links can't be created. One task per destination directory,
+   * files that are already in their destination directory are skipped.
    */
-  public static List<ProcessBuilder> pbsCopyFiles(Path jarFragpipe, Path dest, List<Path> files) {
-    return pbsCopyMoveDeleteFiles(jarFragpipe, Op.COPY, dest, files);
+  public static List<ProcessBuilderInfo> pbisStageFiles(Path dest, List<Path> files) {
+    return pbisCopyMoveFiles(Op.STAGE, toDestMap(dest, files), false);
   }
 
   /**
-   * @param jarFragpipe Use {@link PathUtils#getCurrentJarUri()} to get that from the current Jar.
+   * Moves files in-process, one task per destination directory.
+   * Files that are already in their destination directory are skipped.
    */
-  public static List<ProcessBuilder> pbsMoveFiles(Path jarFragpipe, Path dest,
-      boolean ignoreMissingFiles, List<Path> files) {
-    return pbsCopyMoveDeleteFiles(jarFragpipe, Op.MOVE, dest, ignoreMissingFiles, files);
+  public static List<ProcessBuilderInfo> pbisMoveFiles(Path dest, boolean ignoreMissingFiles,
+      List<Path> files) {
+    return pbisCopyMoveFiles(Op.MOVE, toDestMap(dest, files), ignoreMissingFiles);
   }
 
   /**
-   * @param jarFragpipe Use {@link PathUtils#getCurrentJarUri()} to get that from the current Jar.
+   * Moves files in-process, one task per destination directory.
+   * Files that are already in their destination directory are skipped.
    */
-  public static List<ProcessBuilder> pbsMoveFiles(Path jarFragpipe, Path dest, List<Path> files) {
-    return pbsCopyMoveDeleteFiles(jarFragpipe, Op.MOVE, dest, files);
+  public static List<ProcessBuilderInfo> pbisMoveFiles(Path dest, List<Path> files) {
+    return pbisMoveFiles(dest, false, files);
   }
 
   /**
-   * @param jarFragpipe Use {@link PathUtils#getCurrentJarUri()} to get that from the current Jar.
+   * Moves files in-process, one task per distinct destination directory, so that moving the
+   * outputs of hundreds of input files is a handful of tasks.
+   *
+   * @param fileToDestDir Files to move mapped to the directories they should be moved into.
    */
-  public static List<ProcessBuilder> pbsDeleteFiles(Path jarFragpipe, List<Path> files) {
-    return pbsCopyMoveDeleteFiles(jarFragpipe, Op.DELETE, null, files);
+  public static List<ProcessBuilderInfo> pbisMoveFiles(Map<Path, Path> fileToDestDir,
+      boolean ignoreMissingFiles) {
+    return pbisCopyMoveFiles(Op.MOVE, fileToDestDir, ignoreMissingFiles);
   }
 
   /**
-   * @param jarFragpipe Use {@link PathUtils#getCurrentJarUri()} to get that from the current Jar.
+   * Deletes files or directories in-process as a single task.
+   * @return Empty list if there is nothing to delete.
    */
-  private static List<ProcessBuilder> pbsCopyMoveDeleteFiles(Path jarFragpipe, Op operation, Path dest,
-      List<Path> files) {
-    return pbsCopyMoveDeleteFiles(jarFragpipe, operation, dest, false, files);
+  public static List<ProcessBuilderInfo> pbisDeleteFiles(List<Path> files) {
+    if (files.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Path> normalized = files.stream().map(f -> f.toAbsolutePath().normalize())
+        .collect(Collectors.toList());
+    return Collections.singletonList(
+        PbiBuilder.from(new FileOps(Op.DELETE, null, false, normalized)));
   }
 
-  /**
-   * @param jarFragpipe Use {@link PathUtils#getCurrentJarUri()} to get that from the current Jar.
-   */
-  private static List<ProcessBuilder> pbsCopyMoveDeleteFiles(Path jarFragpipe, Op operation, Path dest,
-      boolean ignoreMissingFiles, List<Path> files) {
-    if (jarFragpipe == null) {
-      throw new IllegalArgumentException("jar can't be null");
+  private static Map<Path, Path> toDestMap(Path dest, List<Path> files) {
+    Map<Path, Path> m = new LinkedHashMap<>();
+    for (Path file : files) {
+      m.put(file, dest);
     }
+    return m;
+  }
 
-    List<ProcessBuilder> pbs = new LinkedList<>();
-    for (Path file : files) {
-      if (Objects.equals(file.getParent(), (dest))) {
+  private static List<ProcessBuilderInfo> pbisCopyMoveFiles(Op operation,
+      Map<Path, Path> fileToDestDir, boolean ignoreMissingFiles) {
+    Map<Path, List<Path>> byDest = new LinkedHashMap<>();
+    for (Map.Entry<Path, Path> e : fileToDestDir.entrySet()) {
+      Path file = e.getKey();
+      Path dest = e.getValue();
+      if (Objects.equals(file.getParent(), dest)) {
         continue;
       }
-      List<String> cmd = new ArrayList<>();
-      cmd.add("java");
-      cmd.add("-cp");
-      cmd.add(jarFragpipe.toAbsolutePath().toString());
-      switch (operation) {
-        case COPY:
-          cmd.add(FileCopy.class.getCanonicalName());
-          break;
-        case MOVE:
-          cmd.add(FileMove.class.getCanonicalName());
-          break;
-        case DELETE:
-          cmd.add(FileDelete.class.getCanonicalName());
-          break;
-        default:
-          throw new IllegalStateException("Unknown enum value: " + operation.toString());
-      }
-      if (ignoreMissingFiles) {
-        cmd.add(FileMove.NO_ERR);
-      }
-      cmd.add(file.toAbsolutePath().normalize().toString());
-      if (dest != null)
-        cmd.add(dest.resolve(file.getFileName()).toString());
-      ProcessBuilder pb = new ProcessBuilder(cmd);
-      pbs.add(pb);
+      byDest.computeIfAbsent(dest, k -> new ArrayList<>())
+          .add(file.toAbsolutePath().normalize());
+    }
+    List<ProcessBuilderInfo> pbis = new ArrayList<>(byDest.size());
+    for (Map.Entry<Path, List<Path>> e : byDest.entrySet()) {
+      pbis.add(PbiBuilder.from(new FileOps(operation, e.getKey(), ignoreMissingFiles, e.getValue())));
     }
-    return pbs;
+    return pbis;
   }
 
   public static Map<InputLcmsFile, Path> getPepxmlFilePathsAfterSearch(List<InputLcmsFile> lcmsFiles, String ext) {
@@ -158,7 +153,7 @@ public class ToolingUtils {
         return binJava;
       }
     }
-    JOptionPane.showMessageDialog(errroDialogParent, "Java could not be found.\n"
+    Dialogs.showMessageDialog(errroDialogParent, "Java could not be found.\n"
         + "please make sure you have it installed \n"
         + "and that java.exe can be found on PATH", "Error", JOptionPane.ERROR_MESSAGE);
     return null;
@@ -0,0 +1,405 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import umich.msfragger.cmd.CmdCrystalc;
+import umich.msfragger.cmd.FileOps;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.gui.StageGraph.Stage;
+import umich.msfragger.worker.WorkerTask;
+
+/**
+ * Writes the tasks of a run as bash scripts for a batch scheduler, so that a run planned on
+ * a workstation can be processed on a cluster:
+ * <ul>
+ *   <li>{@code jobs/NN-<stage>.sh} - one job per step of a stage. Tasks that may run side by
+ *   side become an array job with one array task each, otherwise the tasks of the job are
+ *   run one after another.</li>
+ *   <li>{@code submit-slurm.sh} - submits the jobs with {@code sbatch}, each one waiting for
+ *   the jobs it depends on to succeed. Dependencies come from the {@link StageGraph}.</li>
+ *   <li>{@code run-local.sh} - runs the same job scripts on this machine, in order, with
+ *   array tasks in parallel. Stands in for the scheduler when testing the scripts.</li>
+ * </ul>
+ * Tools, input files and the output directory must be at the same paths on the nodes.
+ */
+public class ClusterScripts {
+  public static final String DIR_JOBS = "jobs";
+  public static final String DIR_LOGS = "logs";
+  public static final String SUBMIT_SCRIPT = "submit-slurm.sh";
+  public static final String LOCAL_SCRIPT = "run-local.sh";
+  /**
+   * Tools that run once per input file, with each command only touching the files of its
+   * own input, so consecutive commands don't need to wait for each other.
+   */
+  private static final Set<String> PER_FILE = Collections.singleton(CmdCrystalc.NAME);
+
+  /**
+   * A script submitted to the scheduler.
+   */
+  public static class Job {
+    /** Also the name of the script, without extension. */
+    public final String name;
+    public final boolean isArray;
+    /** Array tasks for array jobs, otherwise run in this order. */
+    public final List<ProcessBuilderInfo> tasks;
+    public final List<Job> deps;
+
+    Job(String name, boolean isArray, List<ProcessBuilderInfo> tasks, List<Job> deps) {
+      this.name = name;
+      this.isArray = isArray;
+      this.tasks = Collections.unmodifiableList(new ArrayList<>(tasks));
+      this.deps = Collections.unmodifiableList(new ArrayList<>(deps));
+    }
+
+    /** Memory of the most demanding task, zero if not known. */
+    public int ramGb() {
+      return tasks.stream().mapToInt(pbi -> pbi.ramGb).max().orElse(0);
+    }
+
+    /** Threads of the most demanding task, zero if not known. */
+    public int threads() {
+      return tasks.stream().mapToInt(pbi -> pbi.threads).max().orElse(0);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private ClusterScripts() {}
+
+  /**
+   * Splits the tasks into jobs. The first job of a stage depends on the last job of every
+   * stage it waits for, the other jobs of a stage on the job before them.
+   *
+   * @param pbis In the order they would be executed sequentially.
+   */
+  public static List<Job> toJobs(List<ProcessBuilderInfo> pbis,
+      Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage) {
+    final Map<RunnableDescription, ProcessBuilderInfo> rdToPbi = new IdentityHashMap<>();
+    final List<RunnableDescription> rds = new ArrayList<>();
+    for (ProcessBuilderInfo pbi : pbis) {
+      RunnableDescription rd = new RunnableDescription(RunPlanner.describe(pbi), () -> {},
+          pbi.parallelGroup, pbiToStage.get(pbi));
+      rdToPbi.put(rd, pbi);
+      rds.add(rd);
+    }
+
+    final List<Job> jobs = new ArrayList<>();
+    final Map<Stage, Job> lastJobOfStage = new HashMap<>();
+    for (Stage stage : StageGraph.build(rds).getStages()) {
+      // groups of the stage graph, with consecutive per-file commands merged
+      List<List<ProcessBuilderInfo>> steps = new ArrayList<>();
+      for (List<RunnableDescription> group : stage.groups) {
+        List<ProcessBuilderInfo> tasks = group.stream().map(rdToPbi::get)
+            .collect(Collectors.toList());
+        List<ProcessBuilderInfo> last = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+        if (tasks.size() == 1 && last != null && isPerFile(tasks.get(0))
+            && isPerFile(last.get(0)) && tasks.get(0).name.equals(last.get(0).name)) {
+          last.add(tasks.get(0));
+        } else {
+          steps.add(new ArrayList<>(tasks));
+        }
+      }
+
+      List<Job> deps = stage.deps.stream().map(lastJobOfStage::get)
+          .collect(Collectors.toList());
+      List<ProcessBuilderInfo> sequential = new ArrayList<>();
+      for (List<ProcessBuilderInfo> step : steps) {
+        if (step.size() == 1) {
+          sequential.add(step.get(0));
+          continue;
+        }
+        if (!sequential.isEmpty()) {
+          deps = addJob(jobs, stage, false, sequential, deps);
+          sequential.clear();
+        }
+        deps = addJob(jobs, stage, true, step, deps);
+      }
+      if (!sequential.isEmpty()) {
+        addJob(jobs, stage, false, sequential, deps);
+      }
+      lastJobOfStage.put(stage, jobs.get(jobs.size() - 1));
+    }
+    return jobs;
+  }
+
+  private static boolean isPerFile(ProcessBuilderInfo pbi) {
+    return pbi.pb != null && PER_FILE.contains(pbi.name);
+  }
+
+  /**
+   * @return Dependencies of the next job of the stage.
+   */
+  private static List<Job> addJob(List<Job> jobs, Stage stage, boolean isArray,
+      List<ProcessBuilderInfo> tasks, List<Job> deps) {
+    String name = String.format(Locale.ROOT, "%02d-%s", jobs.size() + 1,
+        stage.name.replaceAll("[^A-Za-z0-9._-]+", "-"));
+    Job job = new Job(name, isArray, tasks, deps);
+    jobs.add(job);
+    return Collections.singletonList(job);
+  }
+
+  /**
+   * Writes all the scripts, replacing the ones of an earlier export to the same directory.
+   *
+   * @param wd Output directory of the run, where tasks without a working directory run.
+   */
+  public static void write(Path dir, Path wd, List<Job> jobs) throws IOException {
+    dir = dir.toAbsolutePath().normalize();
+    final Path jobsDir = dir.resolve(DIR_JOBS);
+    Files.createDirectories(jobsDir);
+    try (DirectoryStream<Path> old = Files.newDirectoryStream(jobsDir, "*.sh")) {
+      for (Path path : old) {
+        Files.delete(path);
+      }
+    }
+    Files.createDirectories(dir.resolve(DIR_LOGS));
+    for (Job job : jobs) {
+      writeScript(jobsDir.resolve(job.name + ".sh"), jobScript(job, wd, dir.resolve(DIR_LOGS)));
+    }
+    writeScript(dir.resolve(SUBMIT_SCRIPT), submitScript(jobs));
+    writeScript(dir.resolve(LOCAL_SCRIPT), localScript(jobs));
+  }
+
+  private static void writeScript(Path path, String text) throws IOException {
+    Files.write(path, text.getBytes(UTF_8));
+    try {
+      Set<PosixFilePermission> perms = EnumSet.copyOf(Files.getPosixFilePermissions(path));
+      perms.add(PosixFilePermission.OWNER_EXECUTE);
+      perms.add(PosixFilePermission.GROUP_EXECUTE);
+      Files.setPosixFilePermissions(path, perms);
+    } catch (UnsupportedOperationException ignored) {
+      // not a posix filesystem, the scripts are run with bash explicitly
+    }
+  }
+
+  static String jobScript(Job job, Path wd, Path logsDir) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("#!/bin/bash\n");
+    sb.append("#SBATCH --job-name=fragpipe-").append(job.name).append("\n");
+    String log = logsDir.resolve(job.name + (job.isArray ? "_%A_%a.log" : "_%j.log")).toString();
+    sb.append("#SBATCH --output=").append(log).append("\n");
+    if (job.isArray) {
+      sb.append("#SBATCH --array=0-").append(job.tasks.size() - 1).append("\n");
+    }
+    if (job.threads() > 0) {
+      sb.append("#SBATCH --cpus-per-task=").append(job.threads()).append("\n");
+    }
+    if (job.ramGb() > 0) {
+      sb.append("#SBATCH --mem=").append(job.ramGb()).append("G\n");
+    }
+    sb.append(job.isArray
+        ? "# Written by FragPipe, every array task runs one of the commands below\n"
+        : "# Written by FragPipe, the commands below run in order\n");
+    sb.append("set -eo pipefail\n");
+    sb.append("cd ").append(quote(wd.toString())).append("\n\n");
+    if (job.isArray) {
+      sb.append("TASK_ID=\"${SLURM_ARRAY_TASK_ID:-0}\"\n");
+      sb.append("case \"$TASK_ID\" in\n");
+      for (int i = 0; i < job.tasks.size(); i++) {
+        sb.append("  ").append(i).append(")\n");
+        appendTask(sb, job.tasks.get(i), "    ");
+        sb.append("    ;;\n");
+      }
+      sb.append("  *)\n");
+      sb.append("    echo \"No task $TASK_ID in job ").append(job.name).append("\" >&2\n");
+      sb.append("    exit 1\n");
+      sb.append("    ;;\n");
+      sb.append("esac\n");
+    } else {
+      for (ProcessBuilderInfo pbi : job.tasks) {
+        appendTask(sb, pbi, "");
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Every task runs in a subshell, so the working directory and environment of one task
+   * don't leak into the next.
+   */
+  private static void appendTask(StringBuilder sb, ProcessBuilderInfo pbi, String indent) {
+    sb.append(indent).append("echo ").append(quote("=== " + pbi.name)).append("\n");
+    sb.append(indent).append("(\n");
+    final String in = indent + "  ";
+    if (pbi.fileOps != null) {
+      appendFileOps(sb, pbi.fileOps, in);
+    } else {
+      final ProcessBuilder pb = pbi.pb;
+      if (pb.directory() != null) {
+        sb.append(in).append("cd ").append(quote(pb.directory().toString())).append("\n");
+      }
+      WorkerTask.changedEnv(pb).forEach((k, v) -> {
+        // names bash can't export, e.g. "ProgramFiles(x86)" on Windows
+        if (k.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+          sb.append(in).append("export ").append(k).append("=").append(quote(v)).append("\n");
+        }
+      });
+      sb.append(in).append(pb.command().stream().map(ClusterScripts::quote)
+          .collect(Collectors.joining(" ")));
+      final Path out = redirect(pb, pbi.fnStdout);
+      final Path err = redirect(pb, pbi.fnStderr);
+      if (out != null && out.equals(err)) {
+        // the local runner writes the output to the file and to the console
+        sb.append(" 2>&1 | tee ").append(quote(out.toString()));
+      } else {
+        if (out != null) {
+          sb.append(" > ").append(quote(out.toString()));
+        }
+        if (err != null) {
+          sb.append(" 2> ").append(quote(err.toString()));
+        }
+      }
+      sb.append("\n");
+    }
+    sb.append(indent).append(")\n");
+  }
+
+  /**
+   * Same rules as the output redirects of {@link ProcessResult}: relative paths are relative
+   * to the working directory of the process, if it has one.
+   */
+  private static Path redirect(ProcessBuilder pb, String fn) {
+    if (fn == null || fn.trim().isEmpty()) {
+      return null;
+    }
+    Path path = Paths.get(fn);
+    if (!path.isAbsolute()) {
+      if (pb.directory() == null) {
+        return null;
+      }
+      path = pb.directory().toPath().resolve(path);
+    }
+    return path;
+  }
+
+  private static void appendFileOps(StringBuilder sb, FileOps ops, String in) {
+    for (Path file : ops.files) {
+      final String src = quote(file.toString());
+      final String dest = ops.destDir == null ? null
+          : quote(ops.destDir.resolve(file.getFileName()).toString());
+      switch (ops.op) {
+        case COPY:
+          sb.append(in).append("cp -f ").append(src).append(" ").append(dest).append("\n");
+          break;
+        case MOVE:
+          if (ops.ignoreMissingFiles) {
+            sb.append(in).append("if [ -e ").append(src).append(" ]; then mv -f ").append(src)
+                .append(" ").append(dest).append("; fi\n");
+          } else {
+            sb.append(in).append("mv -f ").append(src).append(" ").append(dest).append("\n");
+          }
+          break;
+        case STAGE:
+          // hard link, symbolic link, copy: same order as FileStage
+          sb.append(in).append("rm -f ").append(dest).append("\n");
+          sb.append(in).append("ln ").append(src).append(" ").append(dest)
+              .append(" 2>/dev/null || ln -s ").append(src).append(" ").append(dest)
+              .append(" 2>/dev/null || cp -f ").append(src).append(" ").append(dest)
+              .append("\n");
+          break;
+        case DELETE:
+          sb.append(in).append("rm -rf ").append(src).append("\n");
+          break;
+        default:
+          throw new IllegalStateException("Unknown enum value: " + ops.op.toString());
+      }
+    }
+  }
+
+  static String submitScript(List<Job> jobs) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("#!/bin/bash\n");
+    sb.append("# Submits the jobs of a FragPipe run to SLURM. Each job starts once the jobs it\n");
+    sb.append("# depends on have succeeded. Arguments are passed on to every sbatch call,\n");
+    sb.append("# e.g. --partition=name or --account=name.\n");
+    sb.append("set -eo pipefail\n");
+    sb.append("DIR=\"$(cd \"$(dirname \"${BASH_SOURCE[0]}\")\" && pwd)\"\n\n");
+    for (Job job : jobs) {
+      final String var = var(job);
+      sb.append(var).append("=$(sbatch --parsable");
+      if (!job.deps.isEmpty()) {
+        sb.append(" --dependency=afterok:").append(job.deps.stream()
+            .map(d -> "$" + var(d)).collect(Collectors.joining(":")));
+      }
+      sb.append(" \"$@\" \"$DIR/").append(DIR_JOBS).append("/").append(job.name)
+          .append(".sh\")\n");
+      // --parsable prints "id;cluster" on multi-cluster setups
+      sb.append(var).append("=\"${").append(var).append("%%;*}\"\n");
+      sb.append("echo \"Submitted ").append(job.name).append(": $").append(var).append("\"\n");
+    }
+    return sb.toString();
+  }
+
+  static String localScript(List<Job> jobs) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("#!/bin/bash\n");
+    sb.append("# Runs the jobs of a FragPipe run on this machine, one job at a time in an order\n");
+    sb.append("# that satisfies their dependencies, stopping at the first failure. Tasks of an\n");
+    sb.append("# array job run in parallel, at most FRAGPIPE_LOCAL_SLOTS at once (default:\n");
+    sb.append("# number of cores). The output of every task goes to the logs directory.\n");
+    sb.append("DIR=\"$(cd \"$(dirname \"${BASH_SOURCE[0]}\")\" && pwd)\"\n");
+    sb.append("SLOTS=\"${FRAGPIPE_LOCAL_SLOTS:-$(nproc 2>/dev/null || echo 1)}\"\n");
+    sb.append("LOGS=\"$DIR/").append(DIR_LOGS).append("\"\n");
+    sb.append("STATUS=\"$LOGS/.status\"\n");
+    sb.append("mkdir -p \"$STATUS\"\n\n");
+    sb.append("run_job() {\n");
+    sb.append("  local name=\"$1\" count=\"$2\" i\n");
+    sb.append("  echo \"Running $name\"\n");
+    sb.append("  rm -f \"$STATUS/$name\".*\n");
+    sb.append("  for ((i = 0; i < count; i++)); do\n");
+    sb.append("    while [ \"$(jobs -pr | wc -l)\" -ge \"$SLOTS\" ]; do\n");
+    sb.append("      wait -n 2>/dev/null || sleep 1\n");
+    sb.append("    done\n");
+    sb.append("    (\n");
+    sb.append("      SLURM_ARRAY_TASK_ID=$i bash \"$DIR/").append(DIR_JOBS)
+        .append("/$name.sh\" > \"$LOGS/${name}_local_$i.log\" 2>&1\n");
+    sb.append("      echo $? > \"$STATUS/$name.$i\"\n");
+    sb.append("    ) &\n");
+    sb.append("  done\n");
+    sb.append("  wait\n");
+    sb.append("  for ((i = 0; i < count; i++)); do\n");
+    sb.append("    if [ \"$(cat \"$STATUS/$name.$i\" 2>/dev/null)\" != \"0\" ]; then\n");
+    sb.append("      echo \"Job $name failed, see $LOGS/${name}_local_$i.log\" >&2\n");
+    sb.append("      return 1\n");
+    sb.append("    fi\n");
+    sb.append("  done\n");
+    sb.append("}\n\n");
+    for (Job job : jobs) {
+      sb.append("run_job ").append(job.name).append(" ")
+          .append(job.isArray ? job.tasks.size() : 1).append(" || exit 1\n");
+    }
+    sb.append("echo \"All jobs finished\"\n");
+    return sb.toString();
+  }
+
+  private static String var(Job job) {
+    return "JOB_" + job.name.substring(0, job.name.indexOf('-'));
+  }
+
+  /**
+   * Single quotes for bash, nothing inside is expanded.
+   */
+  static String quote(String s) {
+    return "'" + s.replace("'", "'\\''") + "'";
+  }
+}
@@ -0,0 +1,213 @@
+package umich.msfragger.gui;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import javax.swing.Timer;
+import umich.msfragger.util.Diagnostics;
+import umich.swing.console.AnsiParser;
+import umich.swing.console.TextConsole;
+
+/**
+ * Buffers text going to the console and writes it in batches at a capped rate, instead of
+ * scheduling a separate EDT update for every chunk of output.
+ * <p>
+ * Pending text is merged per source (process name + color), so output of many parallel
+ * processes turns into a few large appends per frame. Offering text never blocks. When the
+ * amount of pending text exceeds the limit, whole lines are dropped from the beginning of the
+ * pending output of the source that is offering, and a note with the number of dropped lines
+ * is printed in their place. Text offered as non-droppable (messages from the GUI itself) is
+ * never dropped.
+ */
+public class ConsoleOutputChannel {
+  public static final int DEFAULT_MAX_PENDING_CHARS = 4 * 1024 * 1024;
+  /** About 10 frames per second is plenty for a log console. */
+  public static final int DEFAULT_FRAME_MILLIS = 100;
+
+  public interface Sink {
+    /**
+     * @param source Process the text came from, null for messages from the GUI itself.
+     * @param color Null means the text may contain ANSI color codes.
+     */
+    void write(String source, Color color, String text);
+  }
+
+  static class Chunk {
+    final String source;
+    final Color color;
+    final boolean isDroppable;
+    final StringBuilder text = new StringBuilder();
+    int droppedLines = 0;
+
+    Chunk(String source, Color color, boolean isDroppable) {
+      this.source = source;
+      this.color = color;
+      this.isDroppable = isDroppable;
+    }
+
+    boolean isSameKey(String source, Color color, boolean isDroppable) {
+      return this.isDroppable == isDroppable && Objects.equals(this.source, source)
+          && Objects.equals(this.color, color);
+    }
+  }
+
+  private final Sink sink;
+  private final int maxPendingChars;
+  private final Timer timer;
+  private final LinkedList<Chunk> pending = new LinkedList<>();
+  /** Last pending chunk of each source, new text of the source is merged into it. */
+  private final Map<String, Chunk> lastBySource = new HashMap<>();
+  private int pendingChars = 0;
+  private boolean isScheduled = false;
+
+  /**
+   * @param frameMillis Minimum time between writes to the sink. If zero or less, pending text
+   * is only written by calling {@link #flush()}.
+   */
+  public ConsoleOutputChannel(Sink sink, int maxPendingChars, int frameMillis) {
+    this.sink = sink;
+    this.maxPendingChars = Math.max(1, maxPendingChars);
+    if (frameMillis > 0) {
+      timer = new Timer(frameMillis, e -> flush());
+      timer.setRepeats(false);
+    } else {
+      timer = null;
+    }
+  }
+
+  public static ConsoleOutputChannel forConsole(TextConsole console) {
+    return new ConsoleOutputChannel(consoleSink(console), DEFAULT_MAX_PENDING_CHARS,
+        DEFAULT_FRAME_MILLIS);
+  }
+
+  /**
+   * Writes to the console, each source's ANSI codes are parsed separately, so a color left on
+   * or a sequence split between batches of one process doesn't affect output of the others.
+   */
+  public static Sink consoleSink(TextConsole console) {
+    final Map<String, AnsiParser> parsers = new HashMap<>();
+    return (source, color, text) -> {
+      if (color != null) {
+        console.append(color, text);
+      } else if (source == null) {
+        console.appendANSI(text);
+      } else {
+        console.appendANSI(parsers.computeIfAbsent(source, s -> new AnsiParser()), text);
+      }
+    };
+  }
+
+  /**
+   * Output of an external process, may be dropped if the console can't keep up.
+   *
+   * @param color Null if the text may contain ANSI color codes.
+   */
+  public void offer(String source, Color color, String text) {
+    offer(source, color, text, true);
+  }
+
+  /**
+   * Text that must always make it to the console.
+   */
+  public void offerAlways(Color color, String text) {
+    offer(null, color, text, false);
+  }
+
+  private void offer(String source, Color color, String text, boolean isDroppable) {
+    if (text == null || text.isEmpty()) {
+      return;
+    }
+    boolean doSchedule;
+    synchronized (this) {
+      if (!isDroppable && pending.peekLast() != lastBySource.get(null)) {
+        // text from the GUI itself keeps its place relative to everything else, output
+        // offered after it must not be merged into earlier chunks
+        lastBySource.clear();
+      }
+      Chunk chunk = lastBySource.get(source);
+      if (chunk == null || !chunk.isSameKey(source, color, isDroppable)) {
+        chunk = new Chunk(source, color, isDroppable);
+        pending.add(chunk);
+        lastBySource.put(source, chunk);
+      }
+      chunk.text.append(text);
+      pendingChars += text.length();
+      if (isDroppable && pendingChars > maxPendingChars) {
+        dropLines(chunk);
+      }
+      doSchedule = !isScheduled;
+      isScheduled = true;
+    }
+    if (doSchedule && timer != null) {
+      timer.restart();
+    }
+  }
+
+  /**
+   * Drops whole lines from the beginning of the chunk until the pending text fits the limit.
+   * The last line is kept if it's not finished yet, unless it alone exceeds the limit.
+   */
+  private void dropLines(Chunk chunk) {
+    final StringBuilder sb = chunk.text;
+    int from = 0;
+    while (pendingChars - from > maxPendingChars && from < sb.length()) {
+      int nl = sb.indexOf("\n", from);
+      from = nl < 0 ? sb.length() : nl + 1;
+      chunk.droppedLines++;
+    }
+    sb.delete(0, from);
+    pendingChars -= from;
+  }
+
+  /**
+   * Takes all pending text out of the channel.
+   */
+  synchronized List<Chunk> drain() {
+    List<Chunk> chunks = new ArrayList<>(pending);
+    pending.clear();
+    lastBySource.clear();
+    pendingChars = 0;
+    isScheduled = false;
+    return chunks;
+  }
+
+  /**
+   * Writes all pending text to the sink. Call on the EDT if the sink is a Swing component.
+   */
+  public void flush() {
+    final List<Chunk> chunks = drain();
+    if (chunks.isEmpty()) {
+      return;
+    }
+    int chars = 0;
+    int droppedLines = 0;
+    for (Chunk c : chunks) {
+      chars += c.text.length();
+      droppedLines += c.droppedLines;
+    }
+    final Diagnostics.Op op = Diagnostics.consoleFlush(chunks.size(), chars, droppedLines);
+    for (Chunk c : chunks) {
+      if (c.droppedLines > 0) {
+        sink.write(c.source, MsfraggerGuiFrame.COLOR_RED_DARKEST, String.format(Locale.ROOT,
+            "\n[... %d lines of output from '%s' not shown, console could not keep up ...]\n",
+            c.droppedLines, c.source));
+      }
+      if (c.text.length() > 0) {
+        sink.write(c.source, c.color, c.text.toString());
+      }
+    }
+    op.end(true);
+  }
+
+  /**
+   * Discards all pending text.
+   */
+  public void clear() {
+    drain();
+  }
+}
@@ -0,0 +1,730 @@
+package umich.msfragger.gui;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.messages.MessageAppendToConsole;
+import umich.msfragger.messages.MessageExternalProcessOutput;
+import umich.msfragger.messages.MessageStageFinished;
+import umich.msfragger.params.ThisAppProps;
+import umich.msfragger.params.crystalc.CrystalcPanel;
+import umich.msfragger.params.dbslice.DbSlice;
+import umich.msfragger.params.enums.FraggerOutputType;
+import umich.msfragger.params.fragger.FraggerMigPanel;
+import umich.msfragger.params.fragger.MsfraggerProps;
+import umich.msfragger.params.imquant.QuantJPanel;
+import umich.msfragger.params.philosopher.ReportPanel;
+import umich.msfragger.params.ptmshepherd.PtmshepherdJPanel;
+import umich.msfragger.params.speclib.SpecLibGen;
+import umich.msfragger.params.umpire.UmpirePanel;
+import umich.msfragger.util.Diagnostics;
+import umich.msfragger.util.PropertiesUtils;
+import umich.msfragger.util.PythonInfo;
+import umich.msfragger.util.StringUtils;
+import umich.msfragger.util.SwingUtils;
+import umich.msfragger.worker.Spool;
+import umich.msfragger.worker.WorkerAgent;
+import umich.msfragger.worker.WorkerDispatcher;
+
+/**
+ * Runs a workflow saved by the GUI ({@code fragpipe_<timestamp>.config} in the output
+ * directory of any run) without a display, e.g. on a compute node:
+ * <pre>
+ * java -Djava.awt.headless=true -cp FragPipe.jar umich.msfragger.gui.FragpipeHeadless \
+ *     --config fragpipe.config --manifest files.tsv --workdir /path/to/output
+ * </pre>
+ * The manifest lists LC/MS files one per line: path, then optionally experiment and
+ * replicate, separated by tabs. Relative paths are relative to the manifest.
+ * <p>
+ * Several workflows, e.g. a batch of datasets to process overnight, can be given in a queue
+ * file instead, one per line: config, manifest, output directory and optionally the FASTA
+ * file, separated by tabs. All of them are planned up front and run with
+ * {@link WorkflowQueue}, {@code --jobs} at a time. Process output then only goes to the
+ * console, the log file of each workflow has its commands and the outcome.
+ * <p>
+ * With {@code --worker-spool} the tools that can run on another machine are handed to
+ * {@link WorkerAgent}s watching the same directory, the rest runs here.
+ * <p>
+ * With {@code --export-scripts} nothing is run, the planned commands are written as job
+ * scripts for a cluster instead, see {@link ClusterScripts}. For a queue every workflow gets
+ * a directory of its own inside the given one.
+ * <p>
+ * The tool settings come from the config, the same way the GUI loads them. Tool locations,
+ * the FASTA file and the decoy tag are not part of the config, they are taken from the
+ * command line or, if omitted, from what was last used in the GUI on this machine.
+ * Questions the GUI would ask are answered so that the run goes on with the settings
+ * as given, without deleting anything.
+ */
+public class FragpipeHeadless implements WorkflowForm {
+  private static final Logger log = LoggerFactory.getLogger(FragpipeHeadless.class);
+
+  private static final String USAGE = "Options:\n"
+      + "  --config <file>       Config saved by FragPipe, required without --queue.\n"
+      + "  --manifest <file>     LC/MS files: path[<TAB>experiment[<TAB>replicate]] per line, required without --queue.\n"
+      + "  --workdir <dir>       Output directory, required without --queue.\n"
+      + "  --queue <file>        Workflows to run: config<TAB>manifest<TAB>workdir[<TAB>fasta] per line.\n"
+      + "  --jobs <n>            How many workflows of the queue run at the same time, default 1.\n"
+      + "  --msfragger <jar>     MSFragger jar.\n"
+      + "  --philosopher <bin>   Philosopher binary.\n"
+      + "  --fasta <file>        Sequence database.\n"
+      + "  --decoy-tag <tag>     Decoy protein prefix.\n"
+      + "  --combined-pepxml     Run PeptideProphet on all pepxml files of an experiment at once,\n"
+      + "                        even if the config doesn't say so.\n"
+      + "  --diaumpire           Run DIA-Umpire SE if it's enabled in the config.\n"
+      + "  --dry-run             Only print the commands.\n"
+      + "  --skip-up-to-date     Don't run stages whose results are up to date.\n"
+      + "  --resume              Continue the unfinished run in the output directory.\n"
+      + "  --export-scripts <dir> Write batch scripts for SLURM and a local runner instead of running.\n"
+      + "  --worker-spool <dir>  Send MSFragger, Crystal-C and PeptideProphet to workers via this shared directory.\n"
+      + "  --loopback-worker <n> Also run a worker with n slots in this process.\n"
+      + "  --diagnostics <file>  Record a Java Flight Recorder file of the whole run, for reporting slowness.\n"
+      + "  --history             Print how long stages took in past runs and exit.\n";
+
+  // names of the form components of the main window that are not on the tool panels
+  static final String UI_RUN_PEP_PROPH = "ui.name.downstream.check.run-pep-proph";
+  static final String UI_PEP_PROPH_CMD = "ui.name.downstream.text.pep-proph-cmd";
+  static final String UI_COMBINE_PEPXML = "ui.name.downstream.check.combine-pepxml";
+  static final String UI_RUN_PROT_PROPH = "ui.name.downstream.check.run-prot-proph";
+  static final String UI_SEPARATE_PROTXML = "ui.name.downstream.check.separate-protxml";
+  static final String UI_PROT_PROPH_CMD = "ui.name.downstream.text.prot-proph-cmd";
+  static final String UI_GEN_SPECLIB = "ui.name.report.check.genspeclib";
+
+  private final Map<String, String> config;
+  private final Map<String, LcmsFileGroup> lcmsFileGroups;
+  String binMsfragger;
+  String binPhilosopher;
+  String fastaPath;
+  String decoyTag;
+  /** Set from the command line, turns combined PeptideProphet on regardless of the config. */
+  boolean isCombinedPepxml;
+  private boolean isDiaumpire;
+
+  private final UmpirePanel umpirePanel = new UmpirePanel();
+  private final FraggerMigPanel fraggerPanel = new FraggerMigPanel();
+  private final CrystalcPanel crystalcPanel = new CrystalcPanel();
+  private final ReportPanel reportPanel = new ReportPanel();
+  private final QuantJPanel quantPanel = new QuantJPanel();
+  private final PtmshepherdJPanel ptmshepherdPanel = new PtmshepherdJPanel();
+
+  private volatile RunLogWriter runLog;
+  /** Tasks planned by {@link #prepare}, null if there's nothing to run. */
+  private List<RunnableDescription> toRun;
+  private RunUsageReport usage;
+  private RunHistory.Recorder history;
+
+  /**
+   * One workflow of the queue.
+   */
+  static class JobSpec {
+    final Path config;
+    final Path manifest;
+    final Path wd;
+    /** Overrides the FASTA file given on the command line, can be null. */
+    final String fasta;
+
+    JobSpec(Path config, Path manifest, Path wd, String fasta) {
+      this.config = config;
+      this.manifest = manifest;
+      this.wd = wd;
+      this.fasta = fasta;
+    }
+  }
+
+  FragpipeHeadless(Map<String, String> config, Map<String, LcmsFileGroup> lcmsFileGroups) {
+    this.config = config;
+    this.lcmsFileGroups = lcmsFileGroups;
+    this.binMsfragger = ThisAppProps.load(ThisAppProps.PROP_BIN_PATH_MSFRAGGER, "");
+    this.binPhilosopher = ThisAppProps.load(ThisAppProps.PROP_BIN_PATH_PHILOSOPHER, "");
+    this.fastaPath = ThisAppProps.load(ThisAppProps.PROP_DB_FILE_IN, "");
+    this.decoyTag = ThisAppProps.load(ThisAppProps.PROP_TEXTFIELD_DECOY_TAG, "rev_");
+    for (java.awt.Container panel : new java.awt.Container[]{umpirePanel, fraggerPanel,
+        crystalcPanel, reportPanel, quantPanel, ptmshepherdPanel}) {
+      SwingUtils.valuesFromMap(panel, config);
+    }
+  }
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    Locale.setDefault(Locale.ROOT);
+    try {
+      System.exit(run(args));
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println();
+      System.err.print(USAGE);
+      System.exit(2);
+    } catch (Exception e) {
+      log.error("Run failed", e);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * @return Exit code.
+   */
+  static int run(String[] args) throws IOException, InterruptedException {
+    Path configPath = null;
+    Path manifestPath = null;
+    Path wd = null;
+    Path queuePath = null;
+    int jobs = 1;
+    Path workerSpool = null;
+    Path exportDir = null;
+    Path diagnosticsPath = null;
+    int loopbackSlots = 0;
+    String binMsfragger = null;
+    String binPhilosopher = null;
+    String fasta = null;
+    String decoyTag = null;
+    boolean isCombinedPepxml = false;
+    boolean isDiaumpire = false;
+    boolean isDryRun = false;
+    boolean isSkipUpToDate = false;
+    boolean isResume = false;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--config": configPath = Paths.get(value(args, ++i)); break;
+        case "--manifest": manifestPath = Paths.get(value(args, ++i)); break;
+        case "--workdir": wd = Paths.get(value(args, ++i)).toAbsolutePath().normalize(); break;
+        case "--queue": queuePath = Paths.get(value(args, ++i)); break;
+        case "--jobs": jobs = intValue(args, ++i); break;
+        case "--worker-spool": workerSpool = Paths.get(value(args, ++i)); break;
+        case "--loopback-worker": loopbackSlots = intValue(args, ++i); break;
+        case "--msfragger": binMsfragger = value(args, ++i); break;
+        case "--philosopher": binPhilosopher = value(args, ++i); break;
+        case "--fasta": fasta = value(args, ++i); break;
+        case "--decoy-tag": decoyTag = value(args, ++i); break;
+        case "--combined-pepxml": isCombinedPepxml = true; break;
+        case "--diaumpire": isDiaumpire = true; break;
+        case "--dry-run": isDryRun = true; break;
+        case "--skip-up-to-date": isSkipUpToDate = true; break;
+        case "--resume": isResume = true; break;
+        case "--export-scripts": exportDir = Paths.get(value(args, ++i)); break;
+        case "--diagnostics": diagnosticsPath = Paths.get(value(args, ++i)); break;
+        case "--history":
+          System.out.print(RunHistory.trends(RunHistory.get().load()));
+          return 0;
+        default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+    final List<JobSpec> specs;
+    if (queuePath != null) {
+      if (configPath != null || manifestPath != null || wd != null) {
+        throw new IllegalArgumentException(
+            "--queue can't be combined with --config, --manifest or --workdir");
+      }
+      specs = loadQueue(queuePath);
+    } else if (configPath == null || manifestPath == null || wd == null) {
+      throw new IllegalArgumentException("--config, --manifest and --workdir are required");
+    } else {
+      specs = Collections.singletonList(new JobSpec(configPath, manifestPath, wd, null));
+    }
+
+    WorkerDispatcher workers = null;
+    WorkerAgent loopback = null;
+    if (workerSpool != null || loopbackSlots > 0) {
+      Spool spool = new Spool(workerSpool != null ? workerSpool
+          : Files.createTempDirectory("fragpipe-spool")).init();
+      workers = new WorkerDispatcher(spool);
+      if (loopbackSlots > 0) {
+        loopback = WorkerAgent.startLoopback(spool, loopbackSlots);
+      }
+    }
+
+    // started before planning, which is recorded too
+    final Diagnostics.Capture diagnostics = diagnosticsPath == null ? null
+        : Diagnostics.record(diagnosticsPath);
+
+    final Output output = new Output();
+    final Map<Path, FragpipeHeadless> byWd = new ConcurrentHashMap<>();
+    final WorkflowQueue queue = new WorkflowQueue(jobs, job -> {
+      FragpipeHeadless fp = byWd.get(job.wd);
+      if (fp != null) {
+        fp.onJobStateChanged(job, specs.size() > 1);
+      }
+    });
+    boolean isOk = true;
+    EventBus.getDefault().register(output);
+    ProcessManager.get().init();
+    try {
+      for (int i = 0; i < specs.size(); i++) {
+        final JobSpec spec = specs.get(i);
+        FragpipeHeadless fp = new FragpipeHeadless(loadConfig(spec.config),
+            loadManifest(spec.manifest));
+        if (binMsfragger != null) {
+          fp.binMsfragger = binMsfragger;
+        }
+        if (binPhilosopher != null) {
+          fp.binPhilosopher = binPhilosopher;
+        }
+        if (spec.fasta != null) {
+          fp.fastaPath = spec.fasta;
+        } else if (fasta != null) {
+          fp.fastaPath = fasta;
+        }
+        if (decoyTag != null) {
+          fp.decoyTag = decoyTag;
+        }
+        fp.isCombinedPepxml = isCombinedPepxml;
+        fp.isDiaumpire = isDiaumpire;
+        if (specs.size() == 1) {
+          output.runLog = fp::getRunLog;
+        }
+        Path scriptsDir = exportDir == null || specs.size() == 1 ? exportDir
+            : exportDir.resolve(String.format(Locale.ROOT, "%02d-%s", i + 1, spec.wd.getFileName()));
+        if (!fp.prepare(spec.config, spec.wd, isDryRun, isSkipUpToDate, isResume, output,
+            workers, scriptsDir)) {
+          isOk = false;
+          fp.closeRunLog();
+          continue;
+        }
+        if (fp.toRun == null) {
+          fp.closeRunLog();
+          continue;
+        }
+        byWd.put(spec.wd, fp);
+        queue.add(spec.wd.getFileName().toString(), spec.wd, fp.toRun, isResume);
+      }
+      isOk &= queue.awaitAll();
+    } finally {
+      EventBus.getDefault().unregister(output);
+      byWd.values().forEach(FragpipeHeadless::closeRunLog);
+      if (loopback != null) {
+        loopback.stop();
+      }
+      if (diagnostics != null) {
+        diagnostics.close();
+        System.out.println("Diagnostics recorded to: " + diagnostics.getPath());
+      }
+    }
+    return isOk ? 0 : 1;
+  }
+
+  private static int intValue(String[] args, int i) {
+    String v = value(args, i);
+    try {
+      return Integer.parseInt(v);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a number: " + args[i - 1] + " " + v);
+    }
+  }
+
+  private static String value(String[] args, int i) {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("Missing value for option: " + args[i - 1]);
+    }
+    return args[i];
+  }
+
+  static Map<String, String> loadConfig(Path path) throws IOException {
+    Properties props = new Properties();
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+      props.load(is);
+    }
+    return PropertiesUtils.to(props);
+  }
+
+  /**
+   * Groups LC/MS files listed in a manifest by experiment, like the file table of the GUI.
+   */
+  static Map<String, LcmsFileGroup> loadManifest(Path path) throws IOException {
+    final Path dir = path.toAbsolutePath().getParent();
+    List<InputLcmsFile> files = new ArrayList<>();
+    for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+      if (line.trim().isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] cols = line.split("\t");
+      Path file = dir.resolve(cols[0].trim()).normalize();
+      String experiment = cols.length > 1 ? cols[1].trim() : "";
+      Integer replicate = null;
+      if (cols.length > 2 && !cols[2].trim().isEmpty()) {
+        try {
+          replicate = Integer.parseInt(cols[2].trim());
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Replicate must be a number: " + line);
+        }
+      }
+      files.add(new InputLcmsFile(file, experiment, replicate));
+    }
+    if (files.isEmpty()) {
+      throw new IllegalArgumentException("No LC/MS files in manifest: " + path);
+    }
+    Map<String, LcmsFileGroup> groups = new TreeMap<>();
+    files.stream().collect(Collectors.groupingBy(InputLcmsFile::getGroup))
+        .forEach((group, list) -> groups.put(group, new LcmsFileGroup(group, list)));
+    return groups;
+  }
+
+  /**
+   * Reads the workflows listed in a queue file. Relative paths are relative to the file.
+   */
+  static List<JobSpec> loadQueue(Path path) throws IOException {
+    final Path dir = path.toAbsolutePath().getParent();
+    List<JobSpec> specs = new ArrayList<>();
+    Map<Path, Integer> wds = new HashMap<>();
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (line.trim().isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] cols = line.split("\t");
+      if (cols.length < 3) {
+        throw new IllegalArgumentException(String.format(
+            "Line %d of queue %s needs config, manifest and workdir: %s", i + 1, path, line));
+      }
+      Path wd = dir.resolve(cols[2].trim()).normalize();
+      Integer other = wds.put(wd, i + 1);
+      if (other != null) {
+        throw new IllegalArgumentException(String.format(
+            "Lines %d and %d of queue %s have the same workdir: %s", other, i + 1, path, wd));
+      }
+      String fasta = cols.length > 3 && !cols[3].trim().isEmpty()
+          ? dir.resolve(cols[3].trim()).normalize().toString() : null;
+      specs.add(new JobSpec(dir.resolve(cols[0].trim()).normalize(),
+          dir.resolve(cols[1].trim()).normalize(), wd, fasta));
+    }
+    if (specs.isEmpty()) {
+      throw new IllegalArgumentException("No workflows in queue: " + path);
+    }
+    return specs;
+  }
+
+  /**
+   * Plans the run and prints the commands. The tasks to run are left in {@link #toRun}.
+   *
+   * @param scriptsDir Where to write cluster scripts instead of running, null to run.
+   * @return False if the run can't go ahead.
+   */
+  private boolean prepare(Path configPath, Path wd, boolean isDryRun, boolean isSkipUpToDate,
+      boolean isResume, Output output, WorkerDispatcher workers, Path scriptsDir)
+      throws IOException {
+    if (isResume && !RunCheckpoint.exists(wd)) {
+      System.err.println("There is no unfinished run to resume in: " + wd);
+      return false;
+    }
+    if (!isDryRun) {
+      Files.createDirectories(wd);
+    }
+    if (fraggerPanel.isRun() && fraggerPanel.getOutputType().equals(FraggerOutputType.TSV)
+        && (isRunPeptideProphet() || isRunProteinProphet() || reportPanel.isGenerateReport())) {
+      log.warn("MSFragger output is TSV, downstream tools only support PepXML input");
+    }
+    initTools();
+
+    final List<ProcessBuildersDescriptor> pbDescs = new ArrayList<>();
+    if (!RunPlanner.plan(null, this, wd, isDryRun, pbDescs)) {
+      return false;
+    }
+
+    final String runTimestamp = LocalDateTime.now()
+        .format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+    final Path processLogsDir = wd.resolve(ThisAppProps.LOG_FILE_NAME + "_" + runTimestamp);
+    final Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage = new IdentityHashMap<>();
+    final List<ProcessBuilderInfo> pbis = RunPlanner.toPbis(pbDescs, processLogsDir, pbiToStage);
+    final RunManifest manifest = RunManifest.load(wd);
+    if (isSkipUpToDate) {
+      RunPlanner.skipUpToDate(pbis, pbiToStage, manifest, this::println);
+    }
+    if (isResume) {
+      RunPlanner.skipFinished(pbis, pbiToStage, wd, this::println);
+    }
+
+    if (!isDryRun) {
+      try {
+        runLog = new RunLogWriter(wd.resolve(
+            ThisAppProps.LOG_FILE_NAME + "_" + runTimestamp + ThisAppProps.LOG_FILE_EXT));
+      } catch (IOException e) {
+        log.error("Could not create run log file", e);
+      }
+    }
+    println(String.format(Locale.ROOT, "%d commands to execute:", pbis.size()));
+    pbis.forEach(this::printProcessDescription);
+    // jar and binary names stand in for the tool versions, which aren't checked here
+    history = new RunHistory.Recorder(pbis, pbiToStage, RunHistory.Features.of(this),
+        Collections.emptyMap());
+    final String estimates = RunHistory.get().estimates(history.getPlanned());
+    if (!estimates.isEmpty()) {
+      println(estimates);
+    }
+    println("~~~~~~~~~~~~~~~~~~~~~~");
+    if (isDryRun) {
+      println("It's a dry-run, not running the commands.");
+      return true;
+    }
+    if (scriptsDir != null) {
+      List<ClusterScripts.Job> jobs = ClusterScripts.toJobs(pbis, pbiToStage);
+      ClusterScripts.write(scriptsDir, wd, jobs);
+      Files.copy(configPath, wd.resolve("fragpipe_" + runTimestamp + ".config"));
+      println(String.format(Locale.ROOT, "Wrote %d jobs to: %s", jobs.size(), scriptsDir));
+      println(String.format(Locale.ROOT, "Submit them with %s, or run them here with %s.",
+          ClusterScripts.SUBMIT_SCRIPT, ClusterScripts.LOCAL_SCRIPT));
+      return true;
+    }
+
+    output.addManifest(pbiToStage.values(), manifest);
+    manifest.invalidate(pbis.stream().map(pbiToStage::get).distinct()
+        .collect(Collectors.toList()));
+    Files.copy(configPath, wd.resolve("fragpipe_" + runTimestamp + ".config"));
+
+    usage = new RunUsageReport(RunUsageReport.path(wd, runTimestamp));
+    toRun = history.wrap(RunPlanner.toRunnables(pbis, pbiToStage, wd,
+        this::printProcessDescription, workers, usage));
+    return true;
+  }
+
+  private void onJobStateChanged(WorkflowQueue.Job job, boolean isQueue) {
+    if (isQueue) {
+      System.out.println(String.format(Locale.ROOT, "~~~~~~~~~~~~~~~~~~~~~~\nWorkflow '%s': %s",
+          job.name, job.getState()));
+    }
+    if (job.isFinished() && history != null) {
+      // stages that finished count even if a later one failed
+      RunHistory.get().append(history.getFinished(usage));
+      history = null;
+    }
+    if (job.isFinished() && usage != null && !usage.getRecords().isEmpty()) {
+      println("Resources used, also saved to " + usage.getPath() + ":\n" + usage.summary());
+    }
+    switch (job.getState()) {
+      case DONE:
+        println("=== Done");
+        break;
+      case FAILED:
+        println("Run stopped: " + job.getFailure().getMessage());
+        break;
+      case CANCELLED:
+        println("Run stopped: cancelled");
+        break;
+      default:
+        return;
+    }
+    closeRunLog();
+  }
+
+  private RunLogWriter getRunLog() {
+    return runLog;
+  }
+
+  private void closeRunLog() {
+    RunLogWriter rl = runLog;
+    runLog = null;
+    if (rl != null) {
+      rl.close();
+    }
+  }
+
+  /**
+   * Same checks the GUI runs at startup, only for the tools that will be used.
+   */
+  private void initTools() {
+    final boolean needsSlicing = fraggerPanel.isRun() && fraggerPanel.getNumDbSlices() > 1;
+    final boolean needsSpecLibGen = isGenerateSpecLib();
+    if (!needsSlicing && !needsSpecLibGen) {
+      return;
+    }
+    String python = ThisAppProps.load(ThisAppProps.PROP_BIN_PATH_PYTHON);
+    try {
+      if (StringUtils.isNullOrWhitespace(python) || !PythonInfo.get().setPythonCommand(python)) {
+        PythonInfo.get().findPythonCommand();
+      }
+    } catch (Exception e) {
+      log.warn("Python not found", e);
+    }
+    if (needsSlicing) {
+      DbSlice.get().init(MsfraggerProps.testJar(binMsfragger).version);
+    }
+    if (needsSpecLibGen) {
+      SpecLibGen.get().init();
+    }
+  }
+
+  private void println(String text) {
+    System.out.println(text);
+    RunLogWriter rl = runLog;
+    if (rl != null) {
+      rl.append(null, text + "\n");
+    }
+  }
+
+  private void printProcessDescription(ProcessBuilderInfo pbi) {
+    StringBuilder sb = new StringBuilder(String.valueOf(pbi.name));
+    if (pbi.pb != null && pbi.pb.directory() != null) {
+      sb.append(" [Work dir: ").append(pbi.pb.directory()).append("]");
+    }
+    sb.append("\n").append(pbi.fileOps != null
+        ? String.join("\n", pbi.fileOps.describe())
+        : String.join(" ", pbi.pb.command()));
+    println(sb.toString());
+  }
+
+  /**
+   * Prints the output of all running workflows and records their finished stages.
+   */
+  public static class Output {
+    /** Log of the only workflow, process output isn't logged with several. */
+    volatile Supplier<RunLogWriter> runLog = () -> null;
+    private final Map<ProcessBuildersDescriptor, RunManifest> manifests =
+        Collections.synchronizedMap(new IdentityHashMap<>());
+
+    void addManifest(Collection<ProcessBuildersDescriptor> stages, RunManifest manifest) {
+      stages.forEach(stage -> manifests.put(stage, manifest));
+    }
+
+    @Subscribe(threadMode = ThreadMode.POSTING)
+    public void onMessageExternalProcessOutput(MessageExternalProcessOutput m) {
+      if (m.output == null) {
+        return;
+      }
+      (m.isError ? System.err : System.out).print(m.output);
+      RunLogWriter rl = runLog.get();
+      if (rl != null) {
+        rl.append(m.procName, m.output);
+      }
+    }
+
+    @Subscribe(threadMode = ThreadMode.POSTING)
+    public void onMessageAppendToConsole(MessageAppendToConsole m) {
+      System.out.println(m.text);
+      RunLogWriter rl = runLog.get();
+      if (rl != null) {
+        rl.append(null, m.text + "\n");
+      }
+    }
+
+    @Subscribe(threadMode = ThreadMode.POSTING)
+    public void onMessageStageFinished(MessageStageFinished m) {
+      RunManifest manifest = manifests.get(m.descriptor);
+      if (manifest == null) {
+        return;
+      }
+      try {
+        manifest.record(m.descriptor);
+      } catch (IOException e) {
+        log.warn("Could not record finished stage in run manifest: " + manifest.getPath(), e);
+      }
+    }
+  }
+
+  @Override
+  public Map<String, LcmsFileGroup> getLcmsFileGroups() {
+    return lcmsFileGroups;
+  }
+
+  @Override
+  public String getMsfraggerBin() {
+    return binMsfragger;
+  }
+
+  @Override
+  public String getPhilosopherBin() {
+    return binPhilosopher;
+  }
+
+  @Override
+  public String getFastaPath() {
+    return fastaPath;
+  }
+
+  @Override
+  public String getDecoyTag() {
+    return decoyTag;
+  }
+
+  @Override
+  public boolean isRunUmpireSe() {
+    return isDiaumpire && umpirePanel.checkRunUmpireSe.isSelected();
+  }
+
+  @Override
+  public UmpirePanel getUmpirePanel() {
+    return umpirePanel;
+  }
+
+  @Override
+  public FraggerMigPanel getFraggerPanel() {
+    return fraggerPanel;
+  }
+
+  @Override
+  public CrystalcPanel getCrystalcPanel() {
+    return crystalcPanel;
+  }
+
+  @Override
+  public boolean isRunPeptideProphet() {
+    return Boolean.parseBoolean(config.get(UI_RUN_PEP_PROPH));
+  }
+
+  @Override
+  public String getPeptideProphetCmd() {
+    return config.getOrDefault(UI_PEP_PROPH_CMD, "").trim();
+  }
+
+  @Override
+  public boolean isCombinedPepxml() {
+    return isCombinedPepxml || Boolean.parseBoolean(config.get(UI_COMBINE_PEPXML));
+  }
+
+  @Override
+  public boolean isRunProteinProphet() {
+    return Boolean.parseBoolean(config.get(UI_RUN_PROT_PROPH));
+  }
+
+  @Override
+  public String getProteinProphetCmd() {
+    return config.getOrDefault(UI_PROT_PROPH_CMD, "").trim();
+  }
+
+  @Override
+  public boolean isProcessGroupsSeparately() {
+    return Boolean.parseBoolean(config.get(UI_SEPARATE_PROTXML));
+  }
+
+  @Override
+  public ReportPanel getReportPanel() {
+    return reportPanel;
+  }
+
+  @Override
+  public QuantJPanel getQuantPanel() {
+    return quantPanel;
+  }
+
+  @Override
+  public PtmshepherdJPanel getPtmshepherdPanel() {
+    return ptmshepherdPanel;
+  }
+
+  @Override
+  public boolean isGenerateSpecLib() {
+    return Boolean.parseBoolean(config.get(UI_GEN_SPECLIB));
+  }
+}
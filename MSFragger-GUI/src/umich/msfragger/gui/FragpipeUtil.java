@@ -135,7 +135,10 @@ public class FragpipeUtil {
                     .setName(pb.toString()).setFnStdOut(null).setFnStdErr(null)
                     .setParallelGroup(null).create();
                 ProcessResult pr = new ProcessResult(pbi);
-                pr.start().waitFor(5, TimeUnit.MINUTES);
+                pr.start();
+                pr.startPumps(null, null);
+                pr.getProcess().waitFor(5, TimeUnit.MINUTES);
+                pr.awaitPumps(5000);
                 log.info("Process output: {}", pr.getOutput().toString());
                 final int exitValue = pr.getProcess().exitValue();
                 if (!cmd.toLowerCase().contains("workspace") && exitValue != 0) {
@@ -44,6 +44,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -67,9 +68,9 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -79,8 +80,11 @@ import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -93,6 +97,7 @@ import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
+import javax.swing.GroupLayout;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -107,6 +112,8 @@ import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JSplitPane;
 import javax.swing.JTable;
 import javax.swing.SwingUtilities;
 import javax.swing.ToolTipManager;
@@ -127,24 +134,7 @@ import org.greenrobot.eventbus.SubscriberExceptionEvent;
 import org.greenrobot.eventbus.ThreadMode;
 import org.slf4j.LoggerFactory;
 import umich.msfragger.Version;
-import umich.msfragger.cmd.CmdCrystalc;
-import umich.msfragger.cmd.CmdImquant;
-import umich.msfragger.cmd.CmdIprophet;
-import umich.msfragger.cmd.CmdMsAdjuster;
 import umich.msfragger.cmd.CmdMsfragger;
-import umich.msfragger.cmd.CmdPeptideProphet;
-import umich.msfragger.cmd.CmdPhilosopherWorkspaceClean;
-import umich.msfragger.cmd.CmdPhilosopherWorkspaceCleanInit;
-import umich.msfragger.cmd.CmdProteinProphet;
-import umich.msfragger.cmd.CmdPtmshepherd;
-import umich.msfragger.cmd.CmdReportAbacus;
-import umich.msfragger.cmd.CmdReportDbAnnotate;
-import umich.msfragger.cmd.CmdReportFilter;
-import umich.msfragger.cmd.CmdReportFreequant;
-import umich.msfragger.cmd.CmdReportReport;
-import umich.msfragger.cmd.CmdSpecLibGen;
-import umich.msfragger.cmd.CmdUmpireSe;
-import umich.msfragger.cmd.PbiBuilder;
 import umich.msfragger.cmd.ProcessBuilderInfo;
 import umich.msfragger.cmd.ProcessBuildersDescriptor;
 import umich.msfragger.cmd.ToolingUtils;
@@ -173,12 +163,14 @@ import umich.msfragger.messages.MessageSaveCache;
 import umich.msfragger.messages.MessageSaveLog;
 import umich.msfragger.messages.MessageSearchType;
 import umich.msfragger.messages.MessageShowAboutDialog;
+import umich.msfragger.messages.MessageStageFinished;
 import umich.msfragger.messages.MessageStartProcesses;
 import umich.msfragger.messages.MessageTipNotification;
 import umich.msfragger.messages.MessageValidityFragger;
 import umich.msfragger.messages.MessageValidityMassCalibration;
 import umich.msfragger.messages.MessageValidityMsadjuster;
 import umich.msfragger.params.ThisAppProps;
+import umich.msfragger.params.crystalc.CrystalcPanel;
 import umich.msfragger.params.crystalc.CrystalcParams;
 import umich.msfragger.params.dbslice.DbSlice;
 import umich.msfragger.params.dbslice.DbSlice.MessageInitDone;
@@ -190,9 +182,14 @@ import umich.msfragger.params.fragger.MsfraggerVersionComparator;
 import umich.msfragger.params.fragger.MsfraggerVersionFetcherGithub;
 import umich.msfragger.params.fragger.MsfraggerVersionFetcherLocal;
 import umich.msfragger.params.fragger.MsfraggerVersionFetcherServer;
+import umich.msfragger.params.imquant.QuantJPanel;
 import umich.msfragger.params.philosopher.PhilosopherProps;
+import umich.msfragger.params.philosopher.ReportPanel;
+import umich.msfragger.params.ptmshepherd.PtmshepherdJPanel;
 import umich.msfragger.params.speclib.SpecLibGen;
 import umich.msfragger.params.umpire.UmpirePanel;
+import umich.msfragger.util.DecoyTagDetector;
+import umich.msfragger.util.Diagnostics;
 import umich.msfragger.util.FileDrop;
 import umich.msfragger.util.FileListing;
 import umich.msfragger.util.GhostText;
@@ -201,14 +198,11 @@ import umich.msfragger.util.IValidateString;
 import umich.msfragger.util.LogUtils;
 import umich.msfragger.util.OsUtils;
 import umich.msfragger.util.PathUtils;
-import umich.msfragger.util.PrefixCounter;
-import umich.msfragger.util.Proc2;
 import umich.msfragger.util.PropertiesUtils;
 import umich.msfragger.util.PythonInfo;
 import umich.msfragger.util.StringUtils;
 import umich.msfragger.util.SwingUtils;
 import umich.msfragger.util.Tuple2;
-import umich.msfragger.util.UsageTrigger;
 import umich.msfragger.util.ValidateTrue;
 import umich.msfragger.util.VersionComparator;
 import umich.msfragger.util.swing.ISimpleTextComponent;
@@ -217,13 +211,25 @@ import umich.swing.console.TextConsole;
 /**
  * @author dattam
  */
-public class MsfraggerGuiFrame extends javax.swing.JFrame {
+public class MsfraggerGuiFrame extends javax.swing.JFrame implements WorkflowForm {
 
   private static final org.slf4j.Logger log = LoggerFactory.getLogger(MsfraggerGuiFrame.class);
   private final Object procRunLock = new Object();
 
   private FraggerMigPanel fraggerMigPanel;
   private TextConsole console;
+  private ConsoleOutputChannel consoleOut;
+  /** The user has been told that older text was removed from the console. */
+  private volatile boolean isConsoleTrimNoticeShown;
+  /** Log of the current run, written as the run goes. Null when no run is in progress. */
+  private volatile RunLogWriter runLog;
+  /** Flight Recorder recording of the current run, if asked for. */
+  private volatile Diagnostics.Capture diagnostics;
+  /** Stages of the current run are recorded here as they finish. */
+  private volatile RunManifest runManifest;
+  private static final int CONSOLE_MAX_LINES_DEFAULT = 5000;
+  /** Guards against a few very long lines, e.g. progress output without line breaks. */
+  private static final int CONSOLE_MAX_CHARS_DEFAULT = 1024 * 1024;
   private ExecutorService exec = Executors.newFixedThreadPool(1);;
 
 
@@ -445,9 +451,29 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
 
   }
 
+  /**
+   * Saves the text shown in the console. It's only the last part of the output if the console
+   * had to remove older text, the complete log of a run is written by {@link RunLogWriter}.
+   */
   private void saveLogToFile(Path path) {
-    final String text = console.getText();
-    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    // console text is only modified on the EDT
+    final String[] text = new String[1];
+    Runnable snapshot = () -> {
+      consoleOut.flush();
+      text[0] = console.getText();
+    };
+    try {
+      if (SwingUtilities.isEventDispatchThread()) {
+        snapshot.run();
+      } else {
+        SwingUtilities.invokeAndWait(snapshot);
+      }
+    } catch (InterruptedException | InvocationTargetException e) {
+      log.error("Could not get console text for writing the log", e);
+      return;
+    }
+
+    byte[] bytes = text[0].getBytes(StandardCharsets.UTF_8);
     try {
       Files.write(path, bytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
     } catch (IOException e) {
@@ -455,6 +481,36 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     }
   }
 
+  /**
+   * The console only keeps the last part of the output. Tells the user once where to find all
+   * of it. Called on the EDT.
+   */
+  private void onConsoleEviction(String text) {
+    if (isConsoleTrimNoticeShown) {
+      return;
+    }
+    isConsoleTrimNoticeShown = true;
+    final RunLogWriter rl = runLog;
+    final String where = rl != null
+        ? "the complete log of this run is in: " + rl.getPath()
+        : "the complete log of a run is saved in its output directory";
+    consoleOut.offerAlways(COLOR_RED_DARKEST,
+        "\n[Older output was removed from the console to save memory, " + where + "]\n");
+  }
+
+  private static int loadIntProp(String propName, int defaultVal) {
+    String s = ThisAppProps.load(propName);
+    if (s == null) {
+      return defaultVal;
+    }
+    try {
+      return Integer.parseInt(s.trim());
+    } catch (NumberFormatException e) {
+      log.warn("Property '{}' is not an integer: {}", propName, s);
+      return defaultVal;
+    }
+  }
+
   private void addBottomHint(JComponent comp) {
 
   }
@@ -490,7 +546,21 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
       panelBottomHints.add(p);
     }
 
+    ThisAppProps.load(checkSkipUpToDate, ThisAppProps.PROP_RUN_SKIP_UP_TO_DATE);
+    ThisAppProps.load(checkRecordDiagnostics, ThisAppProps.PROP_RUN_RECORD_DIAGNOSTICS);
+    if (!Diagnostics.isAvailable()) {
+      checkRecordDiagnostics.setSelected(false);
+      checkRecordDiagnostics.setEnabled(false);
+      checkRecordDiagnostics.setToolTipText("Recording diagnostics needs Java with Flight Recorder, e.g. Java 11 or newer");
+    }
+
     console = new TextConsole();
+    consoleOut = ConsoleOutputChannel.forConsole(console);
+    console.setEvictionListener(this::onConsoleEviction);
+    console.setMaxLines(
+        loadIntProp(ThisAppProps.PROP_CONSOLE_MAX_LINES, CONSOLE_MAX_LINES_DEFAULT));
+    console.setMaxChars(
+        loadIntProp(ThisAppProps.PROP_CONSOLE_MAX_CHARS, CONSOLE_MAX_CHARS_DEFAULT));
     final Font currentFont = console.getFont();
     console.setFont(new Font(Font.MONOSPACED, currentFont.getStyle(), currentFont.getSize()));
     console.setContentType("text/plain; charset=UTF-8");
@@ -514,6 +584,14 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     });
     consoleScrollPane.setViewportView(console);
 
+    // running tools are shown next to the console
+    JSplitPane consoleSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, true);
+    ((GroupLayout) panelRun.getLayout()).replace(consoleScrollPane, consoleSplit);
+    consoleSplit.setLeftComponent(consoleScrollPane);
+    consoleSplit.setRightComponent(new ProcessMonitorPanel());
+    consoleSplit.setResizeWeight(1.0);
+    consoleSplit.setOneTouchExpandable(true);
+
     defTextColor = UIManager.getColor("TextField.foreground");
     if (defTextColor == null) {
       defTextColor = Color.BLACK;
@@ -993,6 +1071,7 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
   }
   //endregion
 
+  @Override
   public boolean isRunUmpireSe() {
     return checkEnableDiaumpire.isSelected() && umpirePanel != null && umpirePanel.checkRunUmpireSe
         .isSelected();
@@ -1225,6 +1304,7 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     panelReportOptions = new umich.msfragger.params.philosopher.ReportPanel();
     panelRun = new javax.swing.JPanel();
     btnStop = new javax.swing.JButton();
+    btnResume = new javax.swing.JButton();
     btnClearConsole = new javax.swing.JButton();
     consoleScrollPane = new javax.swing.JScrollPane();
     lblOutputDir = new javax.swing.JLabel();
@@ -1232,11 +1312,14 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     txtWorkingDir = new javax.swing.JTextField();
     btnAbout = new javax.swing.JButton();
     checkDryRun = new javax.swing.JCheckBox();
+    checkSkipUpToDate = new javax.swing.JCheckBox();
+    checkRecordDiagnostics = new javax.swing.JCheckBox();
     btnReportErrors = new javax.swing.JButton();
     btnRun = new javax.swing.JButton();
     btnExportLog = new javax.swing.JButton();
     btnOpenInExplorer = new javax.swing.JButton();
     btnPrintCommands = new javax.swing.JButton();
+    btnRunHistory = new javax.swing.JButton();
     btnSaveAllToolsConfig = new javax.swing.JButton();
     btnLoadAllToolsConfig = new javax.swing.JButton();
 
@@ -2230,6 +2313,14 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
       }
     });
 
+    btnResume.setText("Resume");
+    btnResume.setToolTipText("<html>Continue the last run in the output directory that was stopped or failed.<br/>\nStages that finished are not run again.");
+    btnResume.addActionListener(new java.awt.event.ActionListener() {
+      public void actionPerformed(java.awt.event.ActionEvent evt) {
+        btnResumeActionPerformed(evt);
+      }
+    });
+
     btnClearConsole.setText("Clear console");
     btnClearConsole.setToolTipText("Clear text in the console below");
     btnClearConsole.addActionListener(new java.awt.event.ActionListener() {
@@ -2265,6 +2356,22 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     checkDryRun.setText("Dry Run");
     checkDryRun.setToolTipText("<html>Only print the commands to execute, <br/>\nbut don't actually execute them.");
 
+    checkSkipUpToDate.setText("Skip up-to-date");
+    checkSkipUpToDate.setToolTipText("<html>Don't re-run MSFragger, Crystal-C and the Prophets if their inputs,<br/>\nparameters and tool versions are the same as in the last successful run<br/>\nin this output directory and their outputs haven't changed.");
+    checkSkipUpToDate.addActionListener(new java.awt.event.ActionListener() {
+      public void actionPerformed(java.awt.event.ActionEvent evt) {
+        checkSkipUpToDateActionPerformed(evt);
+      }
+    });
+
+    checkRecordDiagnostics.setText("Record diagnostics");
+    checkRecordDiagnostics.setToolTipText("<html>Record what FragPipe and Java are doing during the run to a .jfr file<br/>\nnext to the run log. Attach it to a bug report if FragPipe itself is slow.<br/>\nCan be opened with JDK Mission Control.");
+    checkRecordDiagnostics.addActionListener(new java.awt.event.ActionListener() {
+      public void actionPerformed(java.awt.event.ActionEvent evt) {
+        checkRecordDiagnosticsActionPerformed(evt);
+      }
+    });
+
     btnReportErrors.setText("Report Erorrs");
     btnReportErrors.setToolTipText("<html>Submit an issue ticket to the bug tracker.<br/>\nPlease attach the following:\n<ol>\n<li>Run log. Use the button \"Export Log\", or copy paste the contents of the log <br/>\nto the ticket text using <b>inside triple tilde block, like this: ```{your-log-text-here}```</b></li>\n<li>fragger.params file. You can find it in the output directory you specified.</li>\n<li>Any other relevant details, like what you were trying to do, which database you used, etc</li>\n</ol>");
     btnReportErrors.addActionListener(new java.awt.event.ActionListener() {
@@ -2305,6 +2412,14 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
       }
     });
 
+    btnRunHistory.setText("Run History");
+    btnRunHistory.setToolTipText("<html>How long each stage took in past runs on this computer.<br/>\nUsed to estimate the time of the stages of new runs.");
+    btnRunHistory.addActionListener(new java.awt.event.ActionListener() {
+      public void actionPerformed(java.awt.event.ActionEvent evt) {
+        btnRunHistoryActionPerformed(evt);
+      }
+    });
+
     btnSaveAllToolsConfig.setText("Save All Tools Config");
     btnSaveAllToolsConfig.setToolTipText("<html>Save parameters for the whole pipeline, including MSFragger,<br/>\nProtein and Peptide Prophets, Reports and all other to a file<br/>\nwhich can be loaded back using the `Load All Tools Config`<br/>\nbutton on the `Run` tab.<br/>\nDuring each run parameters are also saved to `fragpipe.config` file<br/>\nin the output directory.");
     btnSaveAllToolsConfig.addActionListener(new java.awt.event.ActionListener() {
@@ -2336,10 +2451,18 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(btnStop)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(btnResume)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(checkDryRun)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(checkSkipUpToDate)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(checkRecordDiagnostics)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 29, Short.MAX_VALUE)
                 .addComponent(btnPrintCommands)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(btnRunHistory)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(btnExportLog)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(btnReportErrors))
@@ -2378,12 +2501,16 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
         .addGroup(panelRunLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
           .addComponent(btnStop)
+          .addComponent(btnResume)
           .addComponent(btnClearConsole)
           .addComponent(btnReportErrors)
           .addComponent(btnRun, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
           .addComponent(btnExportLog)
           .addComponent(checkDryRun)
-          .addComponent(btnPrintCommands))
+          .addComponent(checkSkipUpToDate)
+          .addComponent(checkRecordDiagnostics)
+          .addComponent(btnPrintCommands)
+          .addComponent(btnRunHistory))
         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
         .addComponent(consoleScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 586, Short.MAX_VALUE)
         .addContainerGap())
@@ -2452,7 +2579,9 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
   }//GEN-LAST:event_btnSelectWrkingDirActionPerformed
 
   private void clearConsole() {
+    consoleOut.clear();
     console.setText("");
+    isConsoleTrimNoticeShown = false;
   }
   
   private void btnClearConsoleActionPerformed(
@@ -2467,6 +2596,12 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     EventBus.getDefault().post(new MessageKillAll(REASON.USER_ACTION));
   }//GEN-LAST:event_btnStopActionPerformed
 
+  private void btnResumeActionPerformed(
+      java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnResumeActionPerformed
+    EventBus.getDefault().post(new MessageRun(checkDryRun.isSelected(),
+        checkSkipUpToDate.isSelected(), true));
+  }//GEN-LAST:event_btnResumeActionPerformed
+
   @Subscribe
   public void onMessageKillAll(MessageKillAll m) {
     // try saving log
@@ -3355,10 +3490,91 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     return isValid;
   }
 
+  @Override
   public String getFastaPath() {
     return textSequenceDbPath.getText().trim();
   }
 
+  @Override
+  public String getMsfraggerBin() {
+    return textBinMsfragger.getText().trim();
+  }
+
+  @Override
+  public String getPhilosopherBin() {
+    return textBinPhilosopher.getText().trim();
+  }
+
+  @Override
+  public String getDecoyTag() {
+    return textDecoyTagSeqDb.getText().trim();
+  }
+
+  @Override
+  public UmpirePanel getUmpirePanel() {
+    return umpirePanel;
+  }
+
+  @Override
+  public FraggerMigPanel getFraggerPanel() {
+    return fraggerMigPanel;
+  }
+
+  @Override
+  public CrystalcPanel getCrystalcPanel() {
+    return panelCrystalc;
+  }
+
+  @Override
+  public boolean isRunPeptideProphet() {
+    return chkRunPeptideProphet.isEnabled() && chkRunPeptideProphet.isSelected();
+  }
+
+  @Override
+  public String getPeptideProphetCmd() {
+    return textPepProphCmd.getText().trim();
+  }
+
+  @Override
+  public boolean isCombinedPepxml() {
+    return checkCombinedPepxml.isSelected();
+  }
+
+  @Override
+  public boolean isRunProteinProphet() {
+    return SwingUtils.isEnabledAndChecked(chkRunProteinProphet);
+  }
+
+  @Override
+  public String getProteinProphetCmd() {
+    return txtProteinProphetCmdLineOpts.getText().trim();
+  }
+
+  @Override
+  public boolean isProcessGroupsSeparately() {
+    return checkProcessGroupsSeparately.isSelected();
+  }
+
+  @Override
+  public ReportPanel getReportPanel() {
+    return panelReportOptions;
+  }
+
+  @Override
+  public QuantJPanel getQuantPanel() {
+    return panelQuant;
+  }
+
+  @Override
+  public PtmshepherdJPanel getPtmshepherdPanel() {
+    return ptmshepherdPanel;
+  }
+
+  @Override
+  public boolean isGenerateSpecLib() {
+    return SwingUtils.isEnabledAndChecked(checkGenerateSpecLib);
+  }
+
   /**
    * Collects all tabs' components that have names with values from the map.
    */
@@ -3439,9 +3655,12 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
   @Subscribe
   public void onMessageSaveFormCaches(MessageSaveAllForms m) {
     log.debug("Writing form caches to: {}", m.path.toString());
+    final Diagnostics.Op op = Diagnostics.cache(m.path, true);
     try (OutputStream os = Files.newOutputStream(m.path)) {
       formWrite(os);
+      op.end(true);
     } catch (IOException e) {
+      op.end(false);
       log.error("Could not write fragpipe form cache to: {}", m.path.toString());
     }
   }
@@ -3449,9 +3668,12 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
   @Subscribe
   public void onMessageLoadFormCaches(MessageLoadAllForms m) {
     log.debug("Loading form caches from: {}", m.path.toString());
+    final Diagnostics.Op op = Diagnostics.cache(m.path, false);
     try (InputStream is = Files.newInputStream(m.path)) {
       formRead(is);
+      op.end(true);
     } catch (IOException e) {
+      op.end(false);
       log.error("Could not read fragpipe form cache from: {}", m.path.toString());
     }
   }
@@ -3507,6 +3729,13 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     final Path wdPath = testWdPath;
     EventBus.getDefault().postSticky(new MessageLastRunWorkDir(wdPath));
 
+    if (m.isResume && !RunCheckpoint.exists(wdPath)) {
+      JOptionPane.showMessageDialog(this, "There is no unfinished run to resume in the output directory:\n"
+          + wdPath, "Nothing to resume", JOptionPane.INFORMATION_MESSAGE);
+      resetRunButtons(true);
+      return;
+    }
+
     if (!isDryRun) {
       if (!Files.exists(wdPath)) {
         int confirmCreation = JOptionPane.showConfirmDialog(this,
@@ -3632,21 +3861,6 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     DateFormat df = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
     String dateString = df.format(new Date());
 
-    URI jarFragpipeUri = null;
-    Path jarFragpipePath = null;
-    try {
-      jarFragpipeUri = PathUtils.getCurrentJarUri();
-      jarFragpipePath = Paths.get(jarFragpipeUri);
-    } catch (Exception ignore) {
-      // don't care
-    }
-    if (jarFragpipeUri == null) {
-      JOptionPane.showMessageDialog(this, "Could not get the URI of the currently running jar",
-          "Errors", JOptionPane.ERROR_MESSAGE);
-      resetRunButtons(true);
-      return;
-    }
-
     // check fasta file path
     String fastaPathText = textSequenceDbPath.getText().trim();
     if (StringUtils.isNullOrWhitespace(fastaPathText)) {
@@ -3665,67 +3879,108 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
       return;
     }
 
-    final String binPhilosopher = textBinPhilosopher.getText().trim();
     final List<ProcessBuildersDescriptor> pbDescsToFill = new ArrayList<>();
 
+    final String runTimestamp = LocalDateTime.now()
+        .format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+    // started before planning, which is recorded too
+    if (!isDryRun && checkRecordDiagnostics.isSelected()) {
+      startDiagnostics(wdPath.resolve(
+          ThisAppProps.LOG_FILE_NAME + "_" + runTimestamp + Diagnostics.FILE_EXT));
+    }
+
     // main call to generate all the process builders
-    if (!processBuildersNew(wdPath, jarFragpipePath, binPhilosopher, isDryRun, pbDescsToFill)) {
+    if (!RunPlanner.plan(this, this, wdPath, isDryRun, pbDescsToFill)) {
+      stopDiagnostics();
       resetRunButtons(true);
       return;
     }
 
+    final Path runLogPath = wdPath.resolve(
+        ThisAppProps.LOG_FILE_NAME + "_" + runTimestamp + ThisAppProps.LOG_FILE_EXT);
+    // output of each process also goes to its own file next to the run log
+    final Path processLogsDir = wdPath.resolve(ThisAppProps.LOG_FILE_NAME + "_" + runTimestamp);
+    if (!isDryRun) {
+      startRunLog(runLogPath);
+    }
 
     String sbSysinfo = OsUtils.OsInfo() + "\n" + OsUtils.JavaInfo() + "\n";
-    LogUtils.println(console, String.format(Locale.ROOT, "System info:\n%s",
+    printlnRunInfo(String.format(Locale.ROOT, "System info:\n%s",
         sbSysinfo));
 
     StringBuilder sbVer = new StringBuilder();
     sbVer.append(Version.PROGRAM_TITLE).append(" version ").append(Version.version()).append("\n");
     sbVer.append("MSFragger version ").append(fraggerVer).append("\n");
     sbVer.append("Philosopher version ").append(philosopherVer).append("\n");
-    LogUtils.println(console, String.format(Locale.ROOT, "Version info:\n%s", sbVer.toString()));
-    LogUtils.println(console, "");
+    printlnRunInfo(String.format(Locale.ROOT, "Version info:\n%s", sbVer.toString()));
+    printlnRunInfo("");
 
-    LogUtils.println(console, String.format(Locale.ROOT, "LCMS files:", sbVer.toString()));
+    printlnRunInfo(String.format(Locale.ROOT, "LCMS files:", sbVer.toString()));
     for (Map.Entry<String, LcmsFileGroup> e : lcmsFileGroups.entrySet()) {
-      LogUtils.println(console,
+      printlnRunInfo(
           String.format(Locale.ROOT, "  Experiment/Group: %s", e.getValue().name));
       for (InputLcmsFile f : e.getValue().lcmsFiles) {
-        LogUtils.println(console, String.format(Locale.ROOT, "  - %s", f.getPath().toString()));
-      }
-    }
-    LogUtils.println(console, "");
-
-    // Converting process builders descriptors to process builder infos
-    final List<ProcessBuilderInfo> pbis = pbDescsToFill.stream()
-        .flatMap(pbd -> pbd.pbis.stream().map(pbi ->
-        {
-          PbiBuilder b = new PbiBuilder();
-          b.setPb(pbi.pb);
-          b.setName(pbi.name != null ? pbi.name : pbd.name);
-          b.setFnStdOut(pbi.fnStdout != null ? pbi.fnStdout : pbd.fnStdout);
-          b.setFnStdErr(pbi.fnStderr != null ? pbi.fnStderr : pbd.fnStderr);
-          b.setParallelGroup(pbi.parallelGroup != null ? pbi.parallelGroup : pbd.getParallelGroup());
-          return b.create();
-        }))
-        .collect(Collectors.toList());
+        printlnRunInfo(String.format(Locale.ROOT, "  - %s", f.getPath().toString()));
+      }
+    }
+    printlnRunInfo("");
+
+    // Converting process builders descriptors to process builder infos,
+    // remembering which descriptor each of them came from
+    final Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage = new IdentityHashMap<>();
+    final List<ProcessBuilderInfo> pbis = RunPlanner.toPbis(pbDescsToFill, processLogsDir, pbiToStage);
 
-    LogUtils.println(console, String.format(Locale.ROOT, "%d commands to execute:", pbis.size()));
+    // stages that would produce the same results as last time don't need to run
+    final RunManifest manifest = RunManifest.load(wdPath);
+    if (m.isSkipUpToDate) {
+      RunPlanner.skipUpToDate(pbis, pbiToStage, manifest, this::printlnRunInfo);
+    }
+
+    // stages whose every task finished in the run being resumed are not repeated
+    if (m.isResume) {
+      RunPlanner.skipFinished(pbis, pbiToStage, wdPath, this::printlnRunInfo);
+    }
+
+    printlnRunInfo(String.format(Locale.ROOT, "%d commands to execute:", pbis.size()));
 
     for (final ProcessBuilderInfo pbi : pbis) {
       printProcessDescription(pbi);
 
     }
-    LogUtils.println(console, "~~~~~~~~~~~~~~~~~~~~~~");
-    LogUtils.println(console, "");
-    LogUtils.println(console, "");
+
+    // how long the stages should take, judging by past runs
+    final Map<String, String> toolVersions = new HashMap<>();
+    if (!UNKNOWN_VERSION.equals(fraggerVer)) {
+      toolVersions.put("msfragger", fraggerVer);
+    }
+    if (!UNKNOWN_VERSION.equals(philosopherVer)) {
+      toolVersions.put("philosopher", philosopherVer);
+    }
+    final RunHistory.Recorder history = new RunHistory.Recorder(pbis, pbiToStage,
+        RunHistory.Features.of(this), toolVersions);
+    final String estimates = RunHistory.get().estimates(history.getPlanned());
+    if (!estimates.isEmpty()) {
+      printlnRunInfo(estimates);
+    }
+    printlnRunInfo("~~~~~~~~~~~~~~~~~~~~~~");
+    printlnRunInfo("");
+    printlnRunInfo("");
 
     if (isDryRun) {
-      LogUtils.println(console, "It's a dry-run, not running the commands.");
+      printlnRunInfo("It's a dry-run, not running the commands.");
       resetRunButtons(true);
       return;
     }
 
+    // stages about to run are not up to date anymore, whatever happens to the run
+    runManifest = manifest;
+    try {
+      manifest.invalidate(pbis.stream().map(pbiToStage::get).distinct()
+          .collect(Collectors.toList()));
+    } catch (IOException e) {
+      log.warn("Could not update run manifest: " + manifest.getPath(), e);
+    }
+
     // save all the options
     LocalDateTime time = LocalDateTime.now();
     String timestamp = time.format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
@@ -3742,33 +3997,32 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
     try {
       formWrite(baos);
-      LogUtils.println(console, "~~~~~~~~~ fragpipe.config ~~~~~~~~~");
-      LogUtils.println(console, baos.toString(Charsets.UTF_8.name()));
-      LogUtils.println(console, "~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
+      printlnRunInfo("~~~~~~~~~ fragpipe.config ~~~~~~~~~");
+      printlnRunInfo(baos.toString(Charsets.UTF_8.name()));
+      printlnRunInfo("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
     } catch (IOException e) {
       log.error("Could not collect form text representation for printing to console");
     }
 
-    // run everything
-    List<RunnableDescription> toRun = new ArrayList<>();
-    for (final ProcessBuilderInfo pbi : pbis) {
-      Runnable runnable = ProcessBuilderInfo.toRunnable(pbi, wdPath, this::printProcessDescription);
-      ProcessDescription.Builder b = new ProcessDescription.Builder().setName(pbi.name);
-      if (pbi.pb.directory() != null) {
-        b.setWorkDir(pbi.pb.directory().toString());
-      }
-      if (pbi.pb.command() != null && !pbi.pb.command().isEmpty()) {
-        b.setCommand(String.join(" ", pbi.pb.command()));
-      }
-      toRun.add(new RunnableDescription(b.create(), runnable, pbi.parallelGroup));
-    }
+    // run everything, measuring what each process uses
+    final RunUsageReport usage = new RunUsageReport(RunUsageReport.path(wdPath, runTimestamp));
+    List<RunnableDescription> toRun = history.wrap(RunPlanner.toRunnables(pbis, pbiToStage,
+        wdPath, this::printProcessDescription, null, usage));
 
     // add finalizer process
     final JButton btnStartPtr = btnRun;
     final JButton btnStopPtr = btnStop;
+    final JButton btnResumePtr = btnResume;
     Runnable finalizerRun = () -> {
       btnStartPtr.setEnabled(true);
+      btnResumePtr.setEnabled(true);
       btnStopPtr.setEnabled(false);
+      RunHistory.get().append(history.getFinished(usage));
+      if (!usage.getRecords().isEmpty()) {
+        EventBus.getDefault().post(new MessageAppendToConsole(
+            "Resources used, also saved to " + usage.getPath() + ":\n" + usage.summary(),
+            MsfraggerGuiFrame.COLOR_BLACK));
+      }
       String msg =
           "=========================\n" +
               "===\n" +
@@ -3781,45 +4035,120 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     };
     String finalizerDesc = "Finalizer task";
     toRun.add(new RunnableDescription(new Builder().setName("Finalizer Task").create(), finalizerRun));
-    EventBus.getDefault().post(new MessageStartProcesses(toRun));
+    EventBus.getDefault().post(new MessageStartProcesses(toRun, wdPath, m.isResume));
   }
 
   public void printProcessDescription(ProcessBuilderInfo pbi) {
+    // goes through the same channel as process output to keep the order
+    StringBuilder sb = new StringBuilder();
     if (!StringUtils.isNullOrWhitespace(pbi.name)) {
-      LogUtils.print(COLOR_TOOL, console, true, pbi.name, false);
+      consoleOut.offerAlways(COLOR_TOOL, pbi.name);
+      sb.append(pbi.name);
+    }
+    if (pbi.pb != null && pbi.pb.directory() != null) {
+      String wd = " [Work dir: " + pbi.pb.directory() + "]";
+      consoleOut.offerAlways(COLOR_WORKDIR, wd);
+      sb.append(wd);
+    }
+    consoleOut.offerAlways(COLOR_BLACK, "\n");
+    final String cmd = pbi.fileOps != null
+        ? String.join("\n", pbi.fileOps.describe())
+        : org.apache.commons.lang3.StringUtils.join(pbi.pb.command(), " ");
+    consoleOut.offerAlways(COLOR_CMDLINE, cmd + "\n");
+    sb.append("\n").append(cmd).append("\n");
+    appendToRunLog(null, sb.toString());
+  }
+
+  /**
+   * Prints a line to the console and to the log of the current run. Goes through the console
+   * channel, so it stays in order with the output of processes.
+   */
+  private void printlnRunInfo(String text) {
+    consoleOut.offerAlways(null, text + "\n");
+    appendToRunLog(null, text + "\n");
+  }
+
+  private void appendToRunLog(String source, String text) {
+    RunLogWriter rl = runLog;
+    if (rl != null) {
+      rl.append(source, text);
+    }
+  }
+
+  private void startRunLog(Path path) {
+    stopRunLog();
+    try {
+      runLog = new RunLogWriter(path);
+      isConsoleTrimNoticeShown = false;
+    } catch (IOException e) {
+      log.error("Could not create run log file, the log will only be saved at the end", e);
+    }
+  }
+
+  private void startDiagnostics(Path path) {
+    stopDiagnostics();
+    try {
+      diagnostics = Diagnostics.record(path);
+    } catch (IOException e) {
+      log.warn("Could not start recording diagnostics", e);
+      printlnRunInfo("Not recording diagnostics: " + e.getMessage());
+    }
+  }
+
+  private void stopDiagnostics() {
+    Diagnostics.Capture c = diagnostics;
+    diagnostics = null;
+    if (c == null) {
+      return;
+    }
+    try {
+      c.close();
+      log.info("Diagnostics recorded to: {}", c.getPath());
+    } catch (RuntimeException e) {
+      log.warn("Could not write diagnostics to: " + c.getPath(), e);
     }
-    if (pbi.pb.directory() != null) {
-      LogUtils.print(COLOR_WORKDIR, console, true, " [Work dir: " + pbi.pb.directory() + "]", false);
+  }
+
+  /**
+   * @return True if a run log was being written.
+   */
+  private boolean stopRunLog() {
+    RunLogWriter rl = runLog;
+    runLog = null;
+    if (rl == null) {
+      return false;
     }
-    LogUtils.println(console, "");
-    final String cmd = org.apache.commons.lang3.StringUtils.join(pbi.pb.command(), " ");
-    LogUtils.print(COLOR_CMDLINE, console, true, cmd, true);
+    rl.close();
+    return true;
   }
 
-  @Subscribe(threadMode = ThreadMode.MAIN_ORDERED)
+  /**
+   * Delivered on the posting (pump) thread, the text is batched by {@link ConsoleOutputChannel}
+   * and written to the console on the EDT at a limited rate.
+   */
+  @Subscribe(threadMode = ThreadMode.POSTING)
   public void onMessageExternalProcessOutput(MessageExternalProcessOutput m) {
     if (m.output == null) {
       log.warn("MessageExternalProcessOutput with null text, this is a bug, report to devs");
       return;
     }
 
+    appendToRunLog(m.procName, m.output);
+
     // special case, colorize output from MSFragger
-    if (CmdMsfragger.NAME.equals(m.procName)) {
-      if (m.isError) {
-        LogUtils.print(COLOR_RED_DARKEST, console, true, m.output, false);
-      } else {
-        LogUtils.printWithAnsiColorCodes(console, true, m.output, false);
-      }
+    if (CmdMsfragger.NAME.equals(m.procName) && m.isError) {
+      consoleOut.offer(m.procName, COLOR_RED_DARKEST, m.output);
       return;
     }
 
-    LogUtils.printWithAnsiColorCodes(console, true, m.output, false);
+    consoleOut.offer(m.procName, null, m.output);
   }
 
-  @Subscribe(threadMode = ThreadMode.MAIN_ORDERED)
+  @Subscribe(threadMode = ThreadMode.POSTING)
   public void onMessageAppendToConsole(MessageAppendToConsole m) {
     Color c = m.color == null ? COLOR_BLACK : m.color;
-    LogUtils.print(c, console, true, m.text, true);
+    consoleOut.offerAlways(c, m.text + "\n");
+    appendToRunLog(null, m.text + "\n");
   }
 
   @Subscribe(threadMode = ThreadMode.BACKGROUND)
@@ -3827,8 +4156,26 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     ThisAppProps.save(ThisAppProps.PROP_FILE_OUT, m.workDir.toAbsolutePath().toString());
   }
 
+  @Subscribe(threadMode = ThreadMode.BACKGROUND)
+  public void onMessageStageFinished(MessageStageFinished m) {
+    RunManifest manifest = runManifest;
+    if (manifest == null) {
+      return;
+    }
+    try {
+      manifest.record(m.descriptor);
+    } catch (IOException e) {
+      log.warn("Could not record finished stage in run manifest: " + manifest.getPath(), e);
+    }
+  }
+
   @Subscribe(threadMode = ThreadMode.BACKGROUND)
   public void onMessageSaveLog(MessageSaveLog m) {
+    stopDiagnostics();
+    if (stopRunLog()) {
+      // everything has already been written while running
+      return;
+    }
     final Path dir = m.workDir;
     final int numAttempts = 20;
     int attempt = 0;
@@ -3857,9 +4204,17 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
   private void btnRunActionPerformed(
       java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRunActionPerformed
     final boolean isDryRun = checkDryRun.isSelected();
-    EventBus.getDefault().post(new MessageRun(isDryRun));
+    EventBus.getDefault().post(new MessageRun(isDryRun, checkSkipUpToDate.isSelected()));
   }//GEN-LAST:event_btnRunActionPerformed
 
+  private void checkSkipUpToDateActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_checkSkipUpToDateActionPerformed
+    ThisAppProps.save(checkSkipUpToDate, ThisAppProps.PROP_RUN_SKIP_UP_TO_DATE);
+  }//GEN-LAST:event_checkSkipUpToDateActionPerformed
+
+  private void checkRecordDiagnosticsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_checkRecordDiagnosticsActionPerformed
+    ThisAppProps.save(checkRecordDiagnostics, ThisAppProps.PROP_RUN_RECORD_DIAGNOSTICS);
+  }//GEN-LAST:event_checkRecordDiagnosticsActionPerformed
+
 
   private void teeProcessStream(InputStream is, OutputStream... os) throws IOException {
     int available = is.available();
@@ -3892,363 +4247,6 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
   /**
    * @param wd Global working directory. LCMS file groups' output will be created inside this one.
    */
-  private boolean processBuildersNew(Path wd, Path jarFragpipe, String binPhilosopher, boolean isDryRun,
-      final List<ProcessBuildersDescriptor> pbDescsToFill) {
-
-    final List<ProcessBuildersDescriptor> pbDescs = new ArrayList<>();
-
-    // Collect input LCMS files
-    final Map<String, LcmsFileGroup> lcmsFileGroups = getLcmsFileGroups();
-    List<InputLcmsFile> lcmsFiles = lcmsFileGroups.values().stream()
-        .flatMap(g -> g.lcmsFiles.stream())
-        .collect(Collectors.toList());
-
-    final UsageTrigger usePhi = new UsageTrigger(binPhilosopher, "Philosopher");
-
-
-    // run DIA-Umpire SE
-    final CmdUmpireSe cmdUmpireSe = new CmdUmpireSe(isRunUmpireSe(), wd);
-    if (cmdUmpireSe.isRun()) {
-      if (!cmdUmpireSe.configure(this, isDryRun, jarFragpipe, usePhi,
-          umpirePanel, lcmsFiles))
-        return false;
-      pbDescs.add(cmdUmpireSe.getBuilderDescriptor());
-      lcmsFiles = cmdUmpireSe.outputs(lcmsFiles);
-    }
-
-
-    final FraggerMigPanel fp = fraggerMigPanel;
-
-    // run MSAdjuster
-    final CmdMsAdjuster cmdMsAdjuster = new CmdMsAdjuster(fp.isRun() && fp.isMsadjuster(), wd);
-    if (cmdMsAdjuster.isRun()) {
-      if (!cmdMsAdjuster.configure(this,
-          jarFragpipe, fp, lcmsFiles, false, 49)) {
-        return false;
-      }
-      pbDescs.add(cmdMsAdjuster.getBuilderDescriptor());
-      // MsAdjuster only makes files that are discovered by MsFragger
-      // automatically, so no file-list changes are needed
-    }
-
-
-    // run MsFragger
-    final String fastaFile = getFastaPath();
-    final UsageTrigger binMsfragger = new UsageTrigger(
-        textBinMsfragger.getText().trim(), "MsFragger");
-    final CmdMsfragger cmdMsfragger = new CmdMsfragger(fp.isRun(), wd);
-    if (cmdMsfragger.isRun()) {
-      final String decoyTag = textDecoyTagSeqDb.getText().trim();
-      if (!cmdMsfragger.configure(this,
-          isDryRun, fp, jarFragpipe, binMsfragger, fastaFile, lcmsFiles, decoyTag)) {
-        return false;
-      }
-      pbDescs.add(cmdMsfragger.getBuilderDescriptor());
-
-      String warn = ThisAppProps.load(ThisAppProps.PROP_MGF_WARNING, Boolean.TRUE.toString());
-      if (warn != null && Boolean.valueOf(warn)) {
-        for (InputLcmsFile f : lcmsFiles) {
-          if (f.getPath().toString().toLowerCase().endsWith(".mgf")) {
-            JCheckBox checkbox = new JCheckBox("Do not show this message again.");
-            String msg = "The list of input files contains MGF entries.\n"
-                + "MSFragger has limited MGF support (ProteoWizard output is OK).\n"
-                + "The search might fail unexpectedly with errors.\n"
-                + "Please consider converting files to mzML/mzXML with ProteoWizard.";
-            Object[] params = {msg, checkbox};
-            JOptionPane.showMessageDialog(this, params, "Warning",
-                JOptionPane.WARNING_MESSAGE);
-            if (checkbox.isSelected()) {
-              ThisAppProps.save(ThisAppProps.PROP_MGF_WARNING, Boolean.FALSE.toString());
-            }
-            break;
-          }
-        }
-      }
-    }
-    Map<InputLcmsFile, Path> pepxmlFiles = cmdMsfragger.outputs(
-        lcmsFiles, fp.getOutputFileExt(), wd);
-    final Map<InputLcmsFile, Path> pepxmlFilesFromMsfragger = new HashMap<>(pepxmlFiles);
-
-
-    // run MsAdjuster Cleanup
-    if (cmdMsAdjuster.isRun()) {
-      if (!cmdMsAdjuster.configure(this,
-          jarFragpipe, fp, lcmsFiles, true, 51)) {
-        return false;
-      }
-      pbDescs.add(cmdMsAdjuster.getBuilderDescriptor());
-    }
-
-
-    // run Crystalc
-    final CmdCrystalc cmdCrystalc = new CmdCrystalc(panelCrystalc.isRun(), wd);
-    if (cmdCrystalc.isRun()) {
-      CrystalcParams ccParams = panelCrystalc.toParams();
-      final int fraggerThreads = fraggerMigPanel.getThreads();
-      if (fraggerThreads > 0) {
-        ccParams.setThread(fraggerThreads);
-      }
-      if (!cmdCrystalc.configure(this,
-          fp, isDryRun, Paths.get(binMsfragger.getBin()), ccParams, fastaFile, pepxmlFiles)) {
-        return false;
-      }
-      pbDescs.add(cmdCrystalc.getBuilderDescriptor());
-      pepxmlFiles = cmdCrystalc.outputs(pepxmlFiles, fp.getOutputFileExt());
-    }
-
-    // run Peptide Prophet
-    final boolean isCombinedPepxml = checkCombinedPepxml.isSelected();
-    final String decoyTag = textDecoyTagSeqDb.getText().trim();
-    CmdPeptideProphet cmdPeptideProphet = new CmdPeptideProphet(
-        chkRunPeptideProphet.isEnabled() && chkRunPeptideProphet.isSelected(), wd);
-    if (cmdPeptideProphet.isRun()) {
-      final String pepProphCmd = textPepProphCmd.getText().trim();
-      final String enzymeName = fraggerMigPanel.getEnzymeName();
-      if (!cmdPeptideProphet.configure(this, usePhi, jarFragpipe, isDryRun,
-          fastaFile, decoyTag, pepProphCmd, isCombinedPepxml, enzymeName, pepxmlFiles)) {
-        return false;
-      }
-      pbDescs.add(cmdPeptideProphet.getBuilderDescriptor());
-    }
-    pepxmlFiles = cmdPeptideProphet.outputs(pepxmlFiles, fp.getOutputFileExt(), isCombinedPepxml);
-
-
-    // run Protein Prophet
-    final boolean isRunProteinProphet = SwingUtils.isEnabledAndChecked(chkRunProteinProphet);
-    final boolean isProcessGroupsSeparately = checkProcessGroupsSeparately.isSelected();
-    final boolean isMuiltiExperimentReport = panelReportOptions.isMultiExpReport();
-    final CmdProteinProphet cmdProteinProphet = new CmdProteinProphet(isRunProteinProphet, wd);
-    if (cmdProteinProphet.isRun()) {
-      final String protProphCmdStr = txtProteinProphetCmdLineOpts.getText().trim();
-      if (!cmdProteinProphet.configure(this,
-          usePhi, protProphCmdStr, isMuiltiExperimentReport,
-          isProcessGroupsSeparately, pepxmlFiles)) {
-        return false;
-      }
-      pbDescs.add(cmdProteinProphet.getBuilderDescriptor());
-    }
-    Map<LcmsFileGroup, Path> mapGroupsToProtxml = cmdProteinProphet.outputs(pepxmlFiles, isProcessGroupsSeparately, isMuiltiExperimentReport);
-
-
-    if (cmdPeptideProphet.isRun() || cmdProteinProphet.isRun()) {
-      // Check Decoy tags if any of the downstream tools are requested
-      if (StringUtils.isNullOrWhitespace(textDecoyTagSeqDb.getText())) {
-        int confirm = JOptionPane.showConfirmDialog(this,
-            "Downstream analysis tools require decoys in the database,\n"
-                + "but the decoy tag was left empty. It's recommended that\n"
-                + "you set it.\n\n"
-                + "Cancel operation and fix the problem (manually)?",
-            "Cancel run and fix parameters?\n", JOptionPane.YES_NO_OPTION);
-        if (JOptionPane.YES_OPTION == confirm) {
-          return false;
-        }
-      }
-    }
-
-    final boolean isReport = panelReportOptions.isGenerateReport();
-    if (isReport) {
-      // run Report - DbAnnotate
-      final boolean isDbAnnotate = true;
-      final CmdReportDbAnnotate cmdReportDbAnnotate = new CmdReportDbAnnotate(isDbAnnotate, wd);
-      if (cmdReportDbAnnotate.isRun()) {
-        if (!cmdReportDbAnnotate
-            .configure(this, usePhi, fastaFile, decoyTag, pepxmlFiles, mapGroupsToProtxml)) {
-          return false;
-        }
-        pbDescs.add(cmdReportDbAnnotate.getBuilderDescriptor());
-      }
-
-      // run Report - Filter
-      final boolean isFilter = isReport;
-      final CmdReportFilter cmdReportFilter = new CmdReportFilter(isFilter, wd);
-      if (cmdReportFilter.isRun()) {
-        final boolean isCheckFilterNoProtxml = panelReportOptions.isNoProtXml();
-
-        // if ProtProph is not run but protxml is there - query the user
-        boolean dontUseProtxmlInFilter;
-        if (!isRunProteinProphet) {
-          dontUseProtxmlInFilter = true; // default, but we will ask the user if the files are already there
-          boolean allProtxmlsExist = true;
-          String paths = mapGroupsToProtxml.values().stream().map(path -> "- " + path.toString()).collect(Collectors.joining("\n"));
-          log.debug("Checking for existence of all protxml files:\n{}\n", paths);
-          for (Entry<LcmsFileGroup, Path> kv : mapGroupsToProtxml.entrySet()) {
-            Path protxml = kv.getValue();
-            try {
-              if (protxml == null || !Files.exists(protxml)) {
-                allProtxmlsExist = false;
-                break;
-              }
-            } catch (Exception e) {
-              allProtxmlsExist = false;
-              break;
-            }
-          }
-          if (allProtxmlsExist) {
-            // ProtProph is not run, but all protxmls are there
-            int confirm = JOptionPane.showConfirmDialog(this,
-                "Protein Prophet is not run, but prot.xml files for all groups\n"
-                    + "do already exist:\n\n"
-                    + paths
-                    + "\n\n"
-                    + "Do you want to use them for the Filter command?\n",
-                "Use previously existing prot.xml files?\n", JOptionPane.YES_NO_OPTION);
-            if (JOptionPane.YES_OPTION == confirm) {
-              dontUseProtxmlInFilter = false;
-            }
-          }
-        } else { // if (!isRunProteinProphet) {
-          // protein prophet is run, respenct the checkFilterNoProtxml checkbox
-          dontUseProtxmlInFilter = isCheckFilterNoProtxml;
-        }
-
-        if (!cmdReportFilter.configure(this, usePhi,
-            decoyTag, panelReportOptions.getFilterCmdText(), dontUseProtxmlInFilter, mapGroupsToProtxml)) {
-          return false;
-        }
-        pbDescs.add(cmdReportFilter.getBuilderDescriptor());
-      }
-
-      // run Report - Report command itself
-      final CmdReportReport cmdReportReport = new CmdReportReport(isReport, wd);
-      final boolean doPrintDecoys = panelReportOptions.isPrintDecoys();
-//      final boolean doMzid = comboReportOutputFormat.getSelectedItem().toString().toLowerCase().contains("mzid");
-      final boolean doMzid = panelReportOptions.isWriteMzid();
-      if (cmdReportReport.isRun()) {
-        if (!cmdReportReport.configure(this, usePhi, doPrintDecoys, doMzid, mapGroupsToProtxml)) {
-          return false;
-        }
-        pbDescs.add(cmdReportReport.getBuilderDescriptor());
-      }
-
-      // run Report - Multi-Experiment report
-      final int nThreads = fraggerMigPanel.getThreads();
-      final CmdReportAbacus cmdReportAbacus = new CmdReportAbacus(isMuiltiExperimentReport, wd);
-      final boolean isMultiexpPepLevelSummary = panelReportOptions.isPepSummary();
-      if (cmdReportAbacus.isRun()) {
-
-        // run iProphet, will run right after Peptide Prophet because of priority setting
-        if (isMultiexpPepLevelSummary) { // iProphet is not needed if we don't generate peptide level summry
-          final CmdIprophet cmdIprophet = new CmdIprophet(cmdReportAbacus.isRun(), wd);
-          if (!cmdIprophet.configure(this, usePhi, decoyTag, nThreads, pepxmlFiles)) {
-            return false;
-          }
-          pbDescs.add(cmdIprophet.getBuilderDescriptor());
-        }
-
-        // run Abacus
-        if (!cmdReportAbacus.configure(this, usePhi, panelReportOptions.getFilterCmdText(),
-            isMultiexpPepLevelSummary, decoyTag, mapGroupsToProtxml)) {
-          return false;
-        }
-        pbDescs.add(cmdReportAbacus.getBuilderDescriptor());
-      }
-
-      // run Report - Freequant (Labelfree)
-      final boolean isFreequant = panelQuant.isFreequant();
-      final CmdReportFreequant cmdReportFreequant = new CmdReportFreequant(isFreequant, wd);
-      if (cmdReportFreequant.isRun()) {
-        if (!cmdReportFreequant.configure(this, usePhi, panelQuant.getFreequantOptsAsText(), mapGroupsToProtxml)) {
-          return false;
-        }
-        pbDescs.add(cmdReportFreequant.getBuilderDescriptor());
-      }
-
-      // run Report - IMQuant (Labelfree)
-      final boolean isImquant = panelQuant.isImquant();
-      final CmdImquant cmdImquant = new CmdImquant(isImquant, wd);
-      if (cmdImquant.isRun()) {
-        final int ramGb = fp.getRamGb() > 0 ? fp.getRamGb() :
-            (int) (((com.sun.management.OperatingSystemMXBean) java.lang.management.ManagementFactory
-                .getOperatingSystemMXBean()).getFreePhysicalMemorySize() / 1024.0 / 1024.0 / 1024.0);
-        if (!cmdImquant.configure(this, Paths.get(binMsfragger.getBin()), ramGb, panelQuant.toMap(),
-            pepxmlFilesFromMsfragger, mapGroupsToProtxml)) {
-          return false;
-        }
-        pbDescs.add(cmdImquant.getBuilderDescriptor());
-      }
-    }
-
-    // run PTMShepherd
-    final boolean isRunShepherd = ptmshepherdPanel.isRunShepherd();
-    final boolean isPtmsFormValid = ptmshepherdPanel.validateForm();
-    final CmdPtmshepherd cmdPtmshepherd = new CmdPtmshepherd(isRunShepherd, wd);
-    if (cmdPtmshepherd.isRun()) {
-      if (!isPtmsFormValid) {
-        JOptionPane.showMessageDialog(this,
-            "There are errors in PTM-Shepherd configuraiton panel on Report tab.",
-            "PTMShepherd Error", JOptionPane.ERROR_MESSAGE);
-        return false;
-      }
-      Path fastaPath = Paths.get(fastaFile);
-      int ramGb = fp.getRamGb();
-      int threads = fp.getThreads();
-      Map<String, String> additionalShepherdParams = ptmshepherdPanel.toMap();
-      if (threads > 0) {
-        additionalShepherdParams.put("threads", Integer.toString(threads));
-      }
-      if (!cmdPtmshepherd.configure(this, isDryRun, Paths.get(binMsfragger.getBin()),
-          ramGb, fastaPath, mapGroupsToProtxml, additionalShepherdParams)) {
-        return false;
-      }
-      pbDescs.add(cmdPtmshepherd.getBuilderDescriptor());
-    }
-
-
-    // run Spectral library generation
-    final boolean isRunSpeclibgen = SwingUtils.isEnabledAndChecked(checkGenerateSpecLib);
-    final CmdSpecLibGen cmdSpecLibGen = new CmdSpecLibGen(isRunSpeclibgen, wd);
-    if (cmdSpecLibGen.isRun()) {
-      if (!cmdSpecLibGen.configure(this, usePhi, jarFragpipe,
-          mapGroupsToProtxml, fastaFile, isRunProteinProphet)) {
-        return false;
-      }
-      pbDescs.add(cmdSpecLibGen.getBuilderDescriptor());
-    }
-
-
-    // run Philosopher clean/init in all directories where Philosopher will be invoked
-    for (Path pathPhiIsRunIn : usePhi.getWorkDirs()) {
-      CmdPhilosopherWorkspaceCleanInit cmdPhiCleanInit = new CmdPhilosopherWorkspaceCleanInit(
-          true, pathPhiIsRunIn);
-      cmdPhiCleanInit.configure(usePhi);
-      pbDescs.add(cmdPhiCleanInit.getBuilderDescriptor());
-      CmdPhilosopherWorkspaceClean cmdPhiClean = new CmdPhilosopherWorkspaceClean(
-          true, pathPhiIsRunIn);
-      cmdPhiClean.configure(usePhi);
-      pbDescs.add(cmdPhiClean.getBuilderDescriptor());
-    }
-
-    // make sure that all subfolders are created for groups/experiments
-    if (!isDryRun) {
-      List<Path> paths = Stream
-          .concat(pepxmlFiles.values().stream(), mapGroupsToProtxml.values().stream())
-          .map(Path::getParent).collect(Collectors.toList());
-      try {
-        for (Path path : paths) {
-          if (!Files.exists(path)) {
-            Files.createDirectories(path);
-          }
-        }
-      } catch (IOException e) {
-        JOptionPane.showMessageDialog(this,
-            "Not all directories could be created:\n" + e.getMessage());
-        return false;
-      }
-    }
-
-    final StringBuilder sb = new StringBuilder();
-    pbDescs.forEach(pbd -> sb.append(String.format("%03d", pbd.priority)).append(" : ").append(pbd.name).append("\n"));
-    log.debug("Descriptors before sorting:\n{}", sb.toString());
-
-    pbDescs.sort(Comparator.comparing(pbDesc -> pbDesc.priority, Integer::compare));
-    sb.setLength(0);
-    pbDescs.forEach(pbd -> sb.append(String.format("%03d", pbd.priority)).append(" : ").append(pbd.name).append("\n"));
-    log.debug("Descriptors after sorting:\n{}", sb.toString());
-
-    pbDescsToFill.addAll(pbDescs);
-    return true;
-  }
-
   private String getCombinedProtFn() {
     return "combined.prot.xml";
   }
@@ -4376,124 +4374,12 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
       return;
     }
 
-    List<String> descriptors = new ArrayList<>();
-    List<List<String>> ordered = new ArrayList<>();
-
-    try (BufferedReader br = new BufferedReader(new InputStreamReader(Files.newInputStream(p),
-        StandardCharsets.UTF_8))) {
-      String line;
-      while ((line = br.readLine()) != null) {
-        if (!line.startsWith(">")) {
-          continue;
-        }
-        int pos = 1, next;
-        int depth = 1;
-        while ((next = line.indexOf('|', pos)) >= 0 || pos < line.length() - 1) {
-          if (next < 0) {
-            next = line.length();
-          }
-          String desc = line.substring(pos, next).trim();
-          descriptors.add(desc);
-          if (ordered.size() < depth) {
-            ordered.add(new ArrayList<String>());
-          }
-          ordered.get(depth - 1).add(desc);
-          pos = next + 1;
-          depth++;
-        }
-      }
-    } catch (IOException ex) {
-      JOptionPane.showMessageDialog(btnTryDetectDecoyTag,
-          "<html>Error reading sequence database file", "Error",
-          JOptionPane.ERROR_MESSAGE);
+    final DecoyTagDetector.Candidates found = detectDecoyTag(p);
+    if (found == null) {
       return;
     }
-
-    List<List<Tuple2<String, Double>>> prefixesByCol = new ArrayList<>();
-    List<List<Tuple2<String, Double>>> suffixesByCol = new ArrayList<>();
-
-    for (int descCol = 0; descCol < ordered.size(); descCol++) {
-
-      List<String> descriptorCol = ordered.get(descCol);
-      final int maxDepth = 16;
-      PrefixCounter cntFwd = new PrefixCounter(PrefixCounter.Mode.FWD, maxDepth);
-      PrefixCounter cntRev = new PrefixCounter(PrefixCounter.Mode.REV, maxDepth);
-
-      for (int i = 0; i < descriptorCol.size(); i++) {
-        String descriptor = descriptorCol.get(i);
-        cntFwd.add(descriptor);
-        cntRev.add(descriptor);
-      }
-      final long total = descriptorCol.size();
-      final StringBuilder sb = new StringBuilder();
-
-      final double pctMin = 0.3;
-      final double pctMax = 0.7;
-
-      { // prefixes
-        final List<Tuple2<String, Double>> result = new ArrayList<>();
-        Proc2<PrefixCounter.Node, PrefixCounter.Mode> action = (n, mode) -> {
-
-          PrefixCounter.Node cur = n;
-          if (cur.getTerminals() > 0)
-              return; // no prefix or a suffix can be a whole protein id
-          double pct = cur.getHits() / (double) total;
-          if (pct < pctMin || pct > pctMax) {
-            return;
-          }
-          sb.setLength(0);
-          while (cur != null) {
-            if (cur.parent != null) {
-              sb.append(cur.ch);
-            }
-            cur = cur.parent;
-          }
-
-          if (sb.length() < 2) {
-            return; // no prefixes smaller than 2 characters
-          }
-
-          StringBuilder sbPrint = sb
-              .reverse();// mode == PrefixCounter.Mode.REV ? sb.reverse() : sb;
-          result.add(new Tuple2<>(sbPrint.toString(), pct));
-        };
-        cntFwd.iterPrefixCounts(maxDepth, action);
-        prefixesByCol.add(cleanUpDecoyTagCandidates(result));
-      }
-
-      { // suffixes
-        final List<Tuple2<String, Double>> result = new ArrayList<>();
-        Proc2<PrefixCounter.Node, PrefixCounter.Mode> action = new Proc2<PrefixCounter.Node, PrefixCounter.Mode>() {
-          @Override
-          public void call(PrefixCounter.Node n, PrefixCounter.Mode mode) {
-
-            PrefixCounter.Node cur = n;
-            if (cur.getTerminals() > 0)
-                return; // a prefix or a suffix can never be the whole protein id
-            double pct = cur.getHits() / (double) total;
-            if (pct < pctMin || pct > pctMax) {
-              return;
-            }
-            sb.setLength(0);
-            while (cur != null) {
-              if (cur.parent != null) {
-                sb.append(cur.ch);
-              }
-              cur = cur.parent;
-            }
-
-            if (sb.length() < 2) {
-              return; // no suffixes smaller than 2 chars
-            }
-
-            StringBuilder sbPrint = sb;// mode == PrefixCounter.Mode.REV ? sb.reverse() : sb;
-            result.add(new Tuple2<>(sbPrint.toString(), pct));
-          }
-        };
-        cntRev.iterPrefixCounts(maxDepth, action);
-        suffixesByCol.add(cleanUpDecoyTagCandidates(result));
-      }
-    }
+    List<List<Tuple2<String, Double>>> prefixesByCol = found.prefixesByCol;
+    List<List<Tuple2<String, Double>>> suffixesByCol = found.suffixesByCol;
 
     int totalCandidates = 0;
     int supportedPrefixes = 0;
@@ -4574,6 +4460,69 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
     }
   }//GEN-LAST:event_btnTryDetectDecoyTagActionPerformed
 
+  /**
+   * Scans the headers of a fasta file in the background, showing progress in a modal dialog
+   * that can cancel the scan.
+   *
+   * @return Null if cancelled or the file could not be read, the user has been told already.
+   */
+  private DecoyTagDetector.Candidates detectDecoyTag(Path fasta) {
+    final AtomicBoolean isCancelled = new AtomicBoolean(false);
+    final AtomicReference<DecoyTagDetector.Candidates> result = new AtomicReference<>();
+    final AtomicReference<Exception> error = new AtomicReference<>();
+
+    final JDialog dlg = new JDialog(this, "Detecting decoy tag", true);
+    dlg.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+    JProgressBar pb = new JProgressBar(0, 1000);
+    pb.setStringPainted(true);
+    pb.setString("Reading " + fasta.getFileName());
+    JButton btnCancel = new JButton("Cancel");
+    btnCancel.addActionListener(e -> isCancelled.set(true));
+    dlg.addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosing(WindowEvent e) {
+        isCancelled.set(true);
+      }
+    });
+    JPanel panelButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 5));
+    panelButtons.add(btnCancel);
+    pb.setPreferredSize(new Dimension(350, 25));
+    dlg.add(pb, BorderLayout.CENTER);
+    dlg.add(panelButtons, BorderLayout.SOUTH);
+    dlg.pack();
+    dlg.setLocationRelativeTo(this);
+
+    Thread scanThread = new Thread(() -> {
+      try {
+        result.set(DecoyTagDetector.scan(fasta, Runtime.getRuntime().availableProcessors(),
+            fraction -> SwingUtilities.invokeLater(() -> pb.setValue((int) (fraction * 1000))),
+            isCancelled::get));
+      } catch (CancellationException ex) {
+        log.debug("Decoy tag detection cancelled");
+      } catch (Exception ex) {
+        error.set(ex);
+      } finally {
+        // queued, so the dialog is hidden only after it was shown
+        SwingUtilities.invokeLater(() -> dlg.setVisible(false));
+      }
+    }, "Detect decoy tag");
+    scanThread.setDaemon(true);
+    scanThread.start();
+
+    // blocks until the scan thread hides the dialog
+    dlg.setVisible(true);
+    dlg.dispose();
+
+    if (error.get() != null) {
+      log.error("Error reading sequence database file", error.get());
+      JOptionPane.showMessageDialog(btnTryDetectDecoyTag,
+          "<html>Error reading sequence database file", "Error",
+          JOptionPane.ERROR_MESSAGE);
+      return null;
+    }
+    return result.get();
+  }
+
   private void appendFoundPrefixes(StringBuilder sb,
       List<List<Tuple2<String, Double>>> prefixesByCol,
       List<List<Tuple2<String, Double>>> suffixesByCol) {
@@ -4613,61 +4562,6 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
 
   }
 
-  private List<Tuple2<String, Double>> cleanUpDecoyTagCandidates(
-      List<Tuple2<String, Double>> candidates) {
-    List<Tuple2<String, Double>> result = new ArrayList<>();
-
-    Collections.sort(candidates, (t1, t2) -> {
-      int cmp0 = Double.compare(Math.abs(t1.item2 - 0.5), Math.abs(t2.item2 - 0.5));
-      if (cmp0 == 0) {
-        cmp0 = Integer.compare(t1.item1.length(), t2.item1.length());
-      }
-      return cmp0;
-    });
-
-    for (int i = 0; i < candidates.size(); i++) {
-      Tuple2<String, Double> cur = candidates.get(i);
-      String prefix = cur.item1;
-      double pct = cur.item2;
-
-      if (prefix.endsWith("-") || prefix.endsWith("_")) {
-        result.add(cur);
-        continue;
-      }
-
-      if (i + 1 < candidates.size()) {
-        Tuple2<String, Double> next = candidates.get(i + 1);
-        if (!next.item1.startsWith(prefix) || pct != next.item2) {
-          result.add(cur);
-          continue;
-        }
-      } else if ( i == candidates.size() - 1 && result.isEmpty()) {
-        result.add(cur);
-        continue;
-      }
-    }
-
-//    for (Tuple2<String, Double> cur : candidates) {
-//      boolean isBest = true;
-//      for (Tuple2<String, Double> other : candidates) {
-//        if (Double.compare(other.item2, cur.item2) == 0) {
-//          String curStr = cur.item1;
-//          String othStr = other.item1;
-//          if (othStr.length() > curStr.length()) {
-//            if (othStr.startsWith(curStr) || othStr.endsWith(curStr)) {
-//              isBest = false;
-//              break;
-//            }
-//          }
-//        }
-//      }
-//      if (isBest) {
-//        result.add(cur);
-//      }
-//    }
-    return result;
-  }
-
   private void formWindowOpened(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowOpened
 
   }//GEN-LAST:event_formWindowOpened
@@ -4900,9 +4794,21 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
 
   private void btnPrintCommandsActionPerformed(
       java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrintCommandsActionPerformed
-    EventBus.getDefault().post(new MessageRun(true));
+    EventBus.getDefault().post(new MessageRun(true, checkSkipUpToDate.isSelected()));
   }//GEN-LAST:event_btnPrintCommandsActionPerformed
 
+  private void btnRunHistoryActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRunHistoryActionPerformed
+    RunHistory history = RunHistory.get();
+    JTextArea text = new JTextArea(
+        RunHistory.trends(history.load()) + "\nHistory file: " + history.getPath());
+    text.setEditable(false);
+    Font font = text.getFont();
+    text.setFont(new Font(Font.MONOSPACED, font.getStyle(), font.getSize()));
+    JScrollPane scroll = new JScrollPane(text);
+    scroll.setPreferredSize(new Dimension(900, 400));
+    JOptionPane.showMessageDialog(this, scroll, "Run history", JOptionPane.INFORMATION_MESSAGE);
+  }//GEN-LAST:event_btnRunHistoryActionPerformed
+
   private void txtProteinProphetCmdLineOptsFocusLost(java.awt.event.FocusEvent evt) {//GEN-FIRST:event_txtProteinProphetCmdLineOptsFocusLost
     String val = txtProteinProphetCmdLineOpts.getText();
     ThisAppProps.save(ThisAppProps.PROP_TEXT_CMD_PROTEIN_PROPHET, val);
@@ -5439,10 +5345,12 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
 
   private void resetRunButtons(boolean runEnabled) {
     btnRun.setEnabled(runEnabled);
+    btnResume.setEnabled(runEnabled);
     btnStop.setEnabled(!runEnabled);
   }
 
-  private Map<String, LcmsFileGroup> getLcmsFileGroups() {
+  @Override
+  public Map<String, LcmsFileGroup> getLcmsFileGroups() {
     List<InputLcmsFile> lcmsInputs = tableModelRawFiles.dataCopy();
     Map<String, List<InputLcmsFile>> mapGroup2Files = lcmsInputs.stream()
         .collect(Collectors.groupingBy(InputLcmsFile::getGroup));
@@ -5640,6 +5548,7 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
   private javax.swing.JButton btnPhilosopherBinBrowse;
   private javax.swing.JButton btnPhilosopherBinDownload;
   private javax.swing.JButton btnPrintCommands;
+  private javax.swing.JButton btnRunHistory;
   private javax.swing.JButton btnProtProphDefaultsClosed;
   private javax.swing.JButton btnProtProphDefaultsOpen;
   private javax.swing.JButton btnRawAddFiles;
@@ -5650,10 +5559,13 @@ public class MsfraggerGuiFrame extends javax.swing.JFrame {
   private javax.swing.JButton btnRun;
   private javax.swing.JButton btnSaveAllToolsConfig;
   private javax.swing.JButton btnSelectWrkingDir;
+  private javax.swing.JButton btnResume;
   private javax.swing.JButton btnStop;
   private javax.swing.JButton btnTryDetectDecoyTag;
   private javax.swing.JCheckBox checkCombinedPepxml;
   private javax.swing.JCheckBox checkDryRun;
+  private javax.swing.JCheckBox checkRecordDiagnostics;
+  private javax.swing.JCheckBox checkSkipUpToDate;
   private javax.swing.JCheckBox checkEnableDiaumpire;
   private javax.swing.JCheckBox checkGenerateSpecLib;
   private javax.swing.JCheckBox checkProcessGroupsSeparately;
@@ -3,18 +3,23 @@ package umich.msfragger.gui;
 import java.io.IOException;
 import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -24,26 +29,108 @@ import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuilderInfo.TaskFailedException;
+import umich.msfragger.gui.RunTrace.Span;
+import umich.msfragger.gui.RunTrace.Track;
+import umich.msfragger.gui.StageGraph.Stage;
 import umich.msfragger.messages.MessageAppendToConsole;
 import umich.msfragger.messages.MessageDeletePaths;
 import umich.msfragger.messages.MessageKillAll;
+import umich.msfragger.messages.MessageKillAll.REASON;
+import umich.msfragger.messages.MessageStageFinished;
 import umich.msfragger.messages.MessageStartProcesses;
-import umich.msfragger.params.speclib.SpecLibGen.Message;
+import umich.msfragger.util.Diagnostics;
 import umich.msfragger.util.FileDelete;
-import umich.msfragger.util.FileDrop.Event;
 
+/**
+ * Runs the tasks of workflows. Several workflows can run at the same time, they share the
+ * resource budget of one {@link ResourceScheduler}. A failed task stops only the workflow
+ * it belongs to, the Stop button stops everything.
+ * <p>
+ * The start and end of every stage, group and task are recorded in a {@link RunTrace},
+ * which is written next to the run checkpoint when the run ends. Tasks are also recorded as
+ * Flight Recorder events, see {@link Diagnostics}.
+ */
 public class ProcessManager {
   private static final Logger log = LoggerFactory.getLogger(ProcessManager.class);
 
   private static final ProcessManager instance = new ProcessManager();
   private final Object lock = new Object();
-  private final ConcurrentLinkedQueue<List<RunnableDescription>> taskGroups = new ConcurrentLinkedQueue<>();
-  private final ConcurrentLinkedQueue<CompletableFuture<?>> started = new ConcurrentLinkedQueue<>();
+  private final Set<Run> runs = ConcurrentHashMap.newKeySet();
+  /** The run started from the main window, replaced by the next one started from there. */
+  private Run interactiveRun;
 
-  private volatile CompletableFuture<Void> cf = CompletableFuture.completedFuture(null);
-  private ExecutorService execSingle;
   private ExecutorService execMulti;
+  private ResourceScheduler scheduler;
+
+  /**
+   * Tasks of one workflow.
+   */
+  private static class Run {
+    final String name;
+    final boolean isInteractive;
+    final AtomicInteger notStarted = new AtomicInteger(0);
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+    final RunTrace trace;
+    private final List<CompletableFuture<?>> futures = new ArrayList<>();
+    private final Set<Thread> running = new HashSet<>();
+    private boolean isStopped = false;
+    private volatile Throwable failure;
+
+    Run(String name, boolean isInteractive) {
+      this.name = name;
+      this.isInteractive = isInteractive;
+      this.trace = new RunTrace(name);
+    }
+
+    synchronized void add(CompletableFuture<?> f) {
+      if (isStopped) {
+        f.cancel(true);
+      } else {
+        futures.add(f);
+      }
+    }
+
+    /**
+     * Called by a task on the thread that runs it.
+     */
+    synchronized void enter() {
+      if (isStopped) {
+        throw new CancellationException("Run was stopped: " + name);
+      }
+      running.add(Thread.currentThread());
+    }
+
+    synchronized void exit() {
+      running.remove(Thread.currentThread());
+      // an interrupt meant for this run must not leak into the next task of the pool thread
+      Thread.interrupted();
+    }
+
+    synchronized boolean stop() {
+      return stop(null);
+    }
+
+    /**
+     * Cancels the tasks that haven't started and interrupts the running ones.
+     * @param failure Why the run is stopped, null if it was cancelled.
+     * @return False if the run was already stopped.
+     */
+    synchronized boolean stop(Throwable failure) {
+      if (isStopped) {
+        return false;
+      }
+      isStopped = true;
+      this.failure = failure;
+      futures.forEach(f -> f.cancel(true));
+      running.forEach(Thread::interrupt);
+      return true;
+    }
+
+    synchronized boolean isStopped() {
+      return isStopped;
+    }
+  }
 
   private ProcessManager() {
     init0();
@@ -59,30 +146,23 @@ public class ProcessManager {
     init0();
   }
 
-  private ExecutorService newSingleExecutor() {
-    return Executors.newFixedThreadPool(1);
-  }
-
+  /**
+   * Sized like the thread budget of {@link ResourceScheduler}, which admits tasks by their
+   * declared demands. The pool caps tasks that don't declare any.
+   */
   private ExecutorService newMultiExecutor() {
-    return Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    return Executors.newFixedThreadPool(ResourceScheduler.threadsForThisMachine());
   }
 
   private void init0() {
     synchronized (lock) {
-      taskGroups.clear();
-      started.forEach(cf -> cf.cancel(true));
-      started.clear();
-      cf.cancel(true);
-      cf = CompletableFuture.completedFuture(null);
-
-      if (execSingle != null) {
-        try {
-          execSingle.shutdownNow();
-          execSingle.awaitTermination(5, TimeUnit.SECONDS);
-        } catch (InterruptedException ex) {
-          log.error("Interrupted while waiting for sequential excutor shutdown", ex);
-        }
+      runs.forEach(Run::stop);
+      runs.clear();
+      interactiveRun = null;
+      if (scheduler != null) {
+        scheduler.cancelPending();
       }
+
       if (execMulti != null) {
         try {
           execMulti.shutdownNow();
@@ -91,8 +171,9 @@ public class ProcessManager {
           log.error("Interrupted while waiting for parallel excutor shutdown", ex);
         }
       }
-      execSingle = newSingleExecutor();
       execMulti = newMultiExecutor();
+      scheduler = ResourceScheduler.forThisMachine(execMulti, msg -> EventBus.getDefault()
+          .post(new MessageAppendToConsole(msg, MsfraggerGuiFrame.COLOR_GREEN_DARKEST)));
     }
   }
 
@@ -101,7 +182,8 @@ public class ProcessManager {
     if (m != null && !m.toDelete.isEmpty()) {
       for (Path path : m.toDelete) {
         try {
-          if (Files.exists(path)) {
+          // a staged link whose target is gone must still be deleted
+          if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
             log.debug("Deleting temp file/dir: {}", path);
 
             // try deleting every file a few times (up to 5 seconds)
@@ -131,116 +213,236 @@ public class ProcessManager {
   }
 
   private void stop() {
-    synchronized (lock) {
-      try {
-        for (Future<?> proc : started) {
-          proc.cancel(true);
-        }
-      } finally {
-        // whatever happens, kill the old executor service, start a new one, clear queues
-        init0();
-      }
-    }
+    // kill the old executor service, start a new one, clear queues
+    init0();
   }
 
+  /**
+   * Starts a run from the main window, stopping the previous one if it's still running.
+   * Runs started with {@link #start} are not affected.
+   */
   @Subscribe(threadMode = ThreadMode.BACKGROUND)
   public void onStartProcess(MessageStartProcesses m) {
     synchronized (lock) {
       if (m.runDescs.isEmpty()) {
         return;
       }
-      stop();
-
-      Iterator<RunnableDescription> it = m.runDescs.iterator();
-      final List<RunnableDescription> group = new ArrayList<>();
-      while (it.hasNext()) {
-        RunnableDescription next = it.next();
-
-        // are we starting a new group?
-        if (!group.isEmpty()) {
-          RunnableDescription last = group.get(group.size() - 1);
-          if (last.parallelGroup.equals(next.parallelGroup)) {
-            group.add(next);
-            continue;
-          } else {
-            processGroup(group);
-          }
-        }
-        // next is either a null/sequential group element or a new group element
-        group.add(next);
-        if (next.parallelGroup == null || next.parallelGroup.equals(ProcessBuilderInfo.GROUP_SEQUENTIAL)) {
-          processGroup(group);
-        }
-      }
-
-      if (taskGroups.isEmpty()) {
-        log.error("No runnable groups found");
-        return;
+      if (interactiveRun != null) {
+        interactiveRun.stop();
       }
-      submit();
-
+      interactiveRun = submit("FragPipe run", m.runDescs, m.checkpointDir, m.isResume, true);
     } // END: sync
+  }
 
+  /**
+   * Runs a workflow alongside the ones already running.
+   *
+   * @param name Used in console messages.
+   * @param checkpointDir Where to keep the run checkpoint and the run trace, null to not
+   * keep them.
+   * @return Completes when all tasks have finished. Completes exceptionally with the
+   * failure of the first failed task, or with {@link CancellationException} if the run was
+   * stopped. Cancelling it stops the run.
+   */
+  public CompletableFuture<Void> start(String name, List<RunnableDescription> runDescs,
+      Path checkpointDir, boolean isResume) {
+    if (runDescs.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return submit(name, runDescs, checkpointDir, isResume, false).done;
   }
 
-//  private CompletableFuture<Void> submit() {
-  private void submit() {
+  /**
+   * Each stage is started as soon as all the stages it depends on have finished.
+   */
+  private Run submit(String name, List<RunnableDescription> runDescs, Path checkpointDir,
+      boolean isResume, boolean isInteractive) {
     synchronized (lock) {
-      List<RunnableDescription> rds = taskGroups.poll();
-      if (rds == null) {
-        log.debug("No more groups to process, stopping");
-        stop();
-        return;
+      final StageGraph graph = StageGraph.build(runDescs);
+      log.debug("Stage dependencies of '{}':\n{}", name, graph.describe());
+      RunCheckpoint checkpoint = null;
+      if (checkpointDir != null) {
+        try {
+          checkpoint = RunCheckpoint.start(checkpointDir, runDescs, isResume);
+        } catch (IOException e) {
+          log.warn("Could not write run checkpoint, the run won't be resumable", e);
+        }
       }
-
-      if (rds.size() == 1) {
-        RunnableDescription rd = rds.get(0);
-        log.debug("Submitting for serial execution: [{}] {}", rd.description.name,
-            rd.description.command);
-        cf = CompletableFuture.runAsync(rd.runnable, execSingle)
-            .thenRunAsync(this::submit, execSingle);
-
-      } else {
-        String groupName = rds.stream().map(rd -> rd.parallelGroup).distinct()
-            .collect(Collectors.joining(", "));
-        String cmds = rds.stream().map(rd -> rd.description.command)
-            .collect(Collectors.joining("\n\t"));
-        log.debug("Submitting for parallel execution: [{}] {} commands:\n\t{}", groupName,
-            rds.size(), cmds);
-        List<CompletableFuture<Void>> cfs = new ArrayList<>();
-        for (RunnableDescription rd : rds) {
-          CompletableFuture<Void> f = CompletableFuture.runAsync(rd.runnable, execMulti);
-          cfs.add(f);
+      final RunCheckpoint cp = checkpoint;
+      final Path tracePath = checkpointDir == null ? null : RunTrace.path(checkpointDir,
+          LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss")));
+      final Run run = new Run(name, isInteractive);
+      runs.add(run);
+      run.done.whenComplete((v, t) -> {
+        if (run.done.isCancelled()) {
+          run.stop();
         }
-        final CompletableFuture<Void> f = CompletableFuture
-            .allOf(cfs.toArray(new CompletableFuture[0]));
-        cf = f.thenRunAsync(this::submit, execSingle);
+      });
+
+      final ResourceScheduler sched = scheduler;
+      log.debug("Resource budget: {} GB RAM, {} threads, {} runs", sched.getRamGbTotal(),
+          sched.getThreadsTotal(), runs.size());
+      final Map<Stage, CompletableFuture<Void>> finished = new HashMap<>();
+      for (Stage stage : graph.getStages()) {
+        run.notStarted.addAndGet(stage.tasks().size());
+        CompletableFuture<?>[] deps = stage.deps.stream().map(finished::get)
+            .toArray(CompletableFuture<?>[]::new);
+        CompletableFuture<Void> f = CompletableFuture.allOf(deps)
+            .thenCompose(v -> runStage(stage, sched, run, cp));
+        finished.put(stage, f);
+        run.add(f);
       }
+      CompletableFuture<Void> all = CompletableFuture
+          .allOf(finished.values().toArray(new CompletableFuture<?>[0]));
+      all.whenComplete((v, t) -> {
+        runs.remove(run);
+        if (tracePath != null) {
+          writeTrace(run, tracePath);
+        }
+        if (t == null) {
+          log.debug("No more stages to process in '{}', stopping", name);
+          if (cp != null) {
+            cp.finish();
+          }
+          if (runs.isEmpty()) {
+            // the run deleted its temp files itself, a later failed run must not delete
+            // them again if they have become regular outputs by then
+            EventBus.getDefault().postSticky(new MessageDeletePaths(Collections.emptySet()));
+          }
+          run.done.complete(null);
+        } else {
+          run.done.completeExceptionally(run.failure != null ? run.failure : t);
+        }
+      });
+      return run;
     }
   }
 
-  private void processGroup(List<RunnableDescription> group) {
-    final List<RunnableDescription> copy = new ArrayList<>(group);
+  private CompletableFuture<Void> runStage(Stage stage, ResourceScheduler sched, Run run,
+      RunCheckpoint checkpoint) {
+    log.debug("Starting stage: {}", stage);
+    final Span span = run.trace.begin(Track.STAGES, stage.name,
+        stage.descriptor == null ? "internal" : "stage");
+    span.arg("tasks", stage.tasks().size());
+    if (!stage.deps.isEmpty()) {
+      span.arg("waited for", stage.deps.stream().map(s -> s.name)
+          .collect(Collectors.joining(", ")));
+    }
+    CompletableFuture<Void> f = CompletableFuture.completedFuture(null);
+    for (List<RunnableDescription> group : stage.groups) {
+      f = f.thenCompose(v -> runGroup(group, sched, run, checkpoint, span));
+    }
+    // a failed task completes the future exceptionally, so this only runs on success
+    return f.whenComplete((v, t) -> span.end()).thenRun(() -> {
+      log.debug("Finished stage: {}", stage);
+      if (stage.descriptor != null) {
+        EventBus.getDefault().post(new MessageStageFinished(stage.descriptor));
+      }
+    });
+  }
+
+  private CompletableFuture<Void> runGroup(List<RunnableDescription> group,
+      ResourceScheduler sched, Run run, RunCheckpoint checkpoint, Span stageSpan) {
+    final String groupName = group.stream().map(rd -> rd.parallelGroup).distinct()
+        .collect(Collectors.joining(", "));
     if (group.size() == 1) {
-      RunnableDescription rd = copy.get(0);
-      log.debug("Scheduling for serial execution: [{}] {}", rd.description.name, rd.description.command);
+      RunnableDescription rd = group.get(0);
+      log.debug("Submitting for serial execution: [{}] {}", rd.description.name,
+          rd.description.command);
     } else {
-      // group of several processes to be run in parallel
-      String groupName = group.stream().map(rd -> rd.parallelGroup).distinct()
-          .collect(Collectors.joining(", "));
       String cmds = group.stream().map(rd -> rd.description.command)
           .collect(Collectors.joining("\n\t"));
-      log.debug("Scheduling for parallel execution: [{}] {} commands:\n\t{}", groupName,
+      log.debug("Submitting for parallel execution: [{}] {} commands:\n\t{}", groupName,
           group.size(), cmds);
     }
+    final Span groupSpan = stageSpan.child(
+        group.size() == 1 ? group.get(0).description.name : groupName, "group")
+        .arg("parallel group", group.get(0).parallelGroup).arg("tasks", group.size());
+    List<CompletableFuture<Void>> cfs = new ArrayList<>();
+    for (RunnableDescription rd : group) {
+      final long submittedNanos = System.nanoTime();
+      CompletableFuture<Void> f = sched.submit(rd, () -> {
+        run.notStarted.decrementAndGet();
+        run.enter();
+        // time spent waiting for the resource budget
+        final long queuedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedNanos);
+        final Span span = run.trace.begin(Track.TASKS, rd.description.name,
+            rd.stage == null ? "internal" : "task")
+            .arg("stage", rd.stage == null ? null : rd.stage.name)
+            .arg("parallel group", rd.parallelGroup)
+            .arg("command", rd.description.command)
+            .arg("ram GB", rd.ramGb)
+            .arg("threads", rd.threads)
+            .arg("queued ms", queuedMs);
+        final Diagnostics.Op op = Diagnostics.task(run.name,
+            rd.stage == null ? null : rd.stage.name, rd.description.name, queuedMs);
+        RuntimeException failure = null;
+        try {
+          rd.runnable.run();
+        } catch (RuntimeException e) {
+          failure = e;
+        } finally {
+          run.exit();
+          span.arg("result", failure == null ? "ok" : "failed").end();
+          op.end(failure == null);
+        }
+        if (failure != null) {
+          onTaskFailed(run, failure);
+          throw failure;
+        }
+        if (checkpoint != null) {
+          checkpoint.markDone(rd);
+        }
+      });
+      run.add(f);
+      cfs.add(f);
+    }
+    return CompletableFuture.allOf(cfs.toArray(new CompletableFuture<?>[0]))
+        .whenComplete((v, t) -> groupSpan.end());
+  }
 
-    taskGroups.add(copy);
-    group.clear();
+  private static void writeTrace(Run run, Path path) {
+    try {
+      run.trace.write(path);
+      log.info("Timeline of '{}' written to: {}", run.name, path);
+    } catch (IOException e) {
+      log.warn("Could not write run trace to: " + path, e);
+    }
   }
 
+  private void onTaskFailed(Run run, RuntimeException e) {
+    if (!run.stop(e)) {
+      // the run was being stopped anyway, the task was interrupted
+      return;
+    }
+    log.debug("Task of '{}' failed, stopping the run", run.name, e);
+    String msg = String.format(
+        "\n~~~~~~~~~~~~~~~~~~~~\nCancelling %d remaining tasks", run.notStarted.get());
+    if (!run.isInteractive) {
+      msg += " of " + run.name;
+    }
+    EventBus.getDefault()
+        .post(new MessageAppendToConsole(msg, MsfraggerGuiFrame.COLOR_RED_DARKEST));
+    if (runs.stream().allMatch(r -> r == run || r.isStopped())) {
+      deleteTempFiles();
+    }
+    if (run.isInteractive) {
+      REASON reason = e instanceof TaskFailedException
+          ? ((TaskFailedException) e).reason : REASON.NO_REASON;
+      EventBus.getDefault().post(new MessageKillAll(reason));
+    }
+  }
+
+  /**
+   * Task failures are handled in {@link #onTaskFailed}, this is for the Stop button,
+   * which stops all runs.
+   */
   @Subscribe(threadMode = ThreadMode.BACKGROUND)
   public void onMessageKillAll(MessageKillAll m) {
-    long notStarted = taskGroups.stream().mapToInt(List::size).sum();
+    if (m.reason != REASON.USER_ACTION) {
+      return;
+    }
+    int notStarted = runs.stream().mapToInt(r -> r.notStarted.get()).sum();
     String msg = String.format(
         "\n~~~~~~~~~~~~~~~~~~~~\nCancelling %d remaining tasks", notStarted);
     EventBus.getDefault()
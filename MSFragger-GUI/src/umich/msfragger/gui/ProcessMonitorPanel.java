@@ -0,0 +1,241 @@
+package umich.msfragger.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableCellRenderer;
+import umich.msfragger.gui.api.SimpleTableModel;
+import umich.msfragger.gui.api.TableModelColumn;
+import umich.msfragger.util.ProcessUsageSampler;
+import umich.msfragger.util.ProcessUsageSampler.Tracker;
+
+/**
+ * Table of the external processes running right now, with their CPU use, memory, threads
+ * and running time, so that a starved or memory-bound tool can be spotted without leaving
+ * the GUI. Values come from {@link ProcessUsageSampler}. The table is refreshed from a
+ * background thread every {@link #REFRESH_MS}, only while the panel is on screen.
+ */
+public class ProcessMonitorPanel extends JPanel {
+  private static final long serialVersionUID = 1L;
+  static final long REFRESH_MS = 2000;
+  /** RSS of a java process is highlighted above this fraction of its -Xmx. */
+  private static final double HEAP_WARNING = 0.9;
+  private static final Pattern XMX = Pattern.compile("-Xmx(\\d+)([kKmMgGtT]?)");
+  /** JVM options followed by a separate value. */
+  private static final Set<String> OPTIONS_WITH_VALUE = new HashSet<>(Arrays.asList(
+      "-cp", "-classpath", "--class-path", "-p", "--module-path", "--upgrade-module-path",
+      "--add-modules"));
+
+  private final ProcessUsageSampler sampler;
+  private final SimpleTableModel<Row> model;
+  private final JLabel status = new JLabel();
+  private ScheduledExecutorService timer;
+  /** Only used by the refresh thread. */
+  private Map<Tracker, Row> previous = new IdentityHashMap<>();
+
+  /**
+   * State of one process at one refresh.
+   */
+  static class Row {
+    final String name;
+    final long wallMs;
+    final long cpuMs;
+    /** Since the previous refresh, 100 is one busy core. */
+    final double cpuPercent;
+    final long rssBytes;
+    /** Zero if the process isn't java or the limit isn't given. */
+    final long maxHeapBytes;
+    final int threads;
+    final long ioBytes;
+    final long ioBytesPerSec;
+
+    Row(String name, long wallMs, long cpuMs, double cpuPercent, long rssBytes,
+        long maxHeapBytes, int threads, long ioBytes, long ioBytesPerSec) {
+      this.name = name;
+      this.wallMs = wallMs;
+      this.cpuMs = cpuMs;
+      this.cpuPercent = cpuPercent;
+      this.rssBytes = rssBytes;
+      this.maxHeapBytes = maxHeapBytes;
+      this.threads = threads;
+      this.ioBytes = ioBytes;
+      this.ioBytesPerSec = ioBytesPerSec;
+    }
+
+    /**
+     * Only an approximation of a full heap: the heap use of another JVM isn't visible here,
+     * and RSS also counts metaspace, thread stacks, code cache and direct buffers, while a
+     * heap that's reserved but not touched yet doesn't count. Good enough to point at a tool
+     * that might need a larger -Xmx.
+     */
+    boolean isRssNearMaxHeap() {
+      return maxHeapBytes > 0 && rssBytes >= HEAP_WARNING * maxHeapBytes;
+    }
+  }
+
+  public ProcessMonitorPanel() {
+    this(ProcessUsageSampler.get());
+  }
+
+  ProcessMonitorPanel(ProcessUsageSampler sampler) {
+    this.sampler = sampler;
+    List<TableModelColumn<Row, ?>> cols = Arrays.asList(
+        new TableModelColumn<>("Process", String.class, false, r -> r.name),
+        new TableModelColumn<>("CPU %", String.class, false,
+            r -> String.format(Locale.ROOT, "%.0f", r.cpuPercent)),
+        new TableModelColumn<>("RSS", String.class, false,
+            r -> RunUsageReport.bytes(r.rssBytes)),
+        new TableModelColumn<>("Max heap", String.class, false,
+            r -> r.maxHeapBytes > 0 ? RunUsageReport.bytes(r.maxHeapBytes) : ""),
+        new TableModelColumn<>("Threads", Integer.class, false, r -> r.threads),
+        new TableModelColumn<>("I/O per s", String.class, false,
+            r -> RunUsageReport.bytes(r.ioBytesPerSec)),
+        new TableModelColumn<>("Time", String.class, false,
+            r -> RunUsageReport.duration(r.wallMs)));
+    model = new SimpleTableModel<>(cols, 8);
+
+    JTable table = new JTable(model);
+    table.setFillsViewportHeight(true);
+    table.getColumnModel().getColumn(0).setPreferredWidth(140);
+    final DefaultTableCellRenderer right = new DefaultTableCellRenderer() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public Component getTableCellRendererComponent(JTable t, Object value,
+          boolean isSelected, boolean hasFocus, int row, int column) {
+        Component c = super.getTableCellRendererComponent(t, value, isSelected, hasFocus,
+            row, column);
+        if (column == 2 && model.dataGet(row).isRssNearMaxHeap()) {
+          c.setForeground(MsfraggerGuiFrame.COLOR_RED);
+        }
+        return c;
+      }
+    };
+    right.setHorizontalAlignment(SwingConstants.RIGHT);
+    for (int i = 1; i < cols.size(); i++) {
+      table.getColumnModel().getColumn(i).setCellRenderer(right);
+    }
+    table.setToolTipText("<html>Tools running now, refreshed every " + REFRESH_MS / 1000
+        + " seconds.<br/>CPU % of 100 is one busy core. RSS of java tools is shown "
+        + "in red<br/>when it gets close to their maximum heap size (-Xmx).<br/>"
+        + "This is only an approximation, RSS also includes memory outside the heap.");
+
+    setLayout(new BorderLayout());
+    add(new JScrollPane(table), BorderLayout.CENTER);
+    add(status, BorderLayout.SOUTH);
+    setPreferredSize(new Dimension(420, 100));
+    status.setText(sampler.isSupported() ? "No tools running"
+        : "Resource monitoring needs /proc (Linux)");
+  }
+
+  @Override
+  public void addNotify() {
+    super.addNotify();
+    if (!sampler.isSupported()) {
+      return;
+    }
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "process-monitor-panel");
+      t.setDaemon(true);
+      return t;
+    });
+    timer.scheduleWithFixedDelay(this::refresh, 0, REFRESH_MS, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void removeNotify() {
+    if (timer != null) {
+      timer.shutdownNow();
+      timer = null;
+    }
+    super.removeNotify();
+  }
+
+  private void refresh() {
+    final Map<Tracker, Row> current = new IdentityHashMap<>();
+    final List<Row> rows = new ArrayList<>();
+    for (Tracker t : sampler.getActive()) {
+      Row row = next(t.name, t.command, t.getWallMs(), t.getCpuMs(), t.getRssBytes(),
+          t.getThreads(), t.getIoBytes(), previous.get(t));
+      current.put(t, row);
+      rows.add(row);
+    }
+    previous = current;
+    SwingUtilities.invokeLater(() -> {
+      model.dataClear();
+      model.dataAddAll(rows);
+      status.setText(rows.isEmpty() ? "No tools running"
+          : String.format(Locale.ROOT, "%d running", rows.size()));
+    });
+  }
+
+  /**
+   * @param prev The same process at the previous refresh, null if it just started.
+   */
+  static Row next(String name, String command, long wallMs, long cpuMs, long rssBytes,
+      int threads, long ioBytes, Row prev) {
+    final long dWall = prev == null ? wallMs : wallMs - prev.wallMs;
+    final long dCpu = prev == null ? cpuMs : cpuMs - prev.cpuMs;
+    final long dIo = prev == null ? ioBytes : ioBytes - prev.ioBytes;
+    final double cpuPercent = dWall > 0 ? 100.0 * Math.max(0, dCpu) / dWall : 0;
+    final long ioPerSec = dWall > 0 ? Math.max(0, dIo) * 1000 / dWall : 0;
+    return new Row(name, wallMs, cpuMs, cpuPercent, rssBytes, maxHeapBytes(command), threads,
+        ioBytes, ioPerSec);
+  }
+
+  /**
+   * @return The -Xmx given on a java command line, zero if there is none. Only JVM options
+   * count, they end at the jar or main class, everything after that is passed to the program.
+   */
+  static long maxHeapBytes(String command) {
+    if (command == null) {
+      return 0;
+    }
+    final String[] tokens = command.trim().split("\\s+");
+    long bytes = 0;
+    // the first token is the executable
+    for (int i = 1; i < tokens.length; i++) {
+      final String t = tokens[i];
+      if (!t.startsWith("-")) {
+        break;
+      }
+      if (OPTIONS_WITH_VALUE.contains(t)) {
+        i++;
+        continue;
+      }
+      Matcher m = XMX.matcher(t);
+      if (!m.matches()) {
+        continue;
+      }
+      // the last one wins, like in java
+      long v = Long.parseLong(m.group(1));
+      switch (m.group(2).toLowerCase(Locale.ROOT)) {
+        case "k": bytes = v << 10; break;
+        case "m": bytes = v << 20; break;
+        case "g": bytes = v << 30; break;
+        case "t": bytes = v << 40; break;
+        default: bytes = v; break;
+      }
+    }
+    return bytes;
+  }
+}
@@ -23,22 +23,36 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.util.RotatingFileOutputStream;
 import umich.msfragger.util.StringUtils;
 
 public class ProcessResult implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(ProcessResult.class);
+  private static final int PUMP_BUF_SIZE = 8192;
+  private static final int REDIRECT_BUF_SIZE = 1 << 16;
+  /** Output redirected to files is rotated when a file reaches this size. */
+  public static final long REDIRECT_MAX_BYTES = 64L * 1024 * 1024;
+  /** Number of rotated files kept for each redirected output. */
+  public static final int REDIRECT_MAX_BACKUPS = 2;
 
   private final ProcessBuilderInfo pbi;
 
   private boolean started;
-  private StringBuilder output = new StringBuilder();
+  private final StringBuilder output = new StringBuilder();
   private Integer exitCode;
   private Process proc;
   private InputStream stdOut;
   private InputStream stdErr;
   private BufferedOutputStream stdErrRedirect;
   private BufferedOutputStream stdOutRedirect;
+  private final List<Thread> pumps = new ArrayList<>();
 
   public ProcessResult(ProcessBuilderInfo pbi) {
     this.pbi = pbi;
@@ -59,55 +73,161 @@ public class ProcessResult implements AutoCloseable {
     return proc;
   }
 
-  @Override
-  public void close() throws Exception {
-    if (stdOutRedirect != null) {
-      stdOutRedirect.close();
+  /**
+   * Instead of {@link #start()}, for a process running elsewhere, e.g. on a worker node.
+   * The streams are handled the same way as the output of a local process.
+   */
+  public void attach(InputStream stdOut, InputStream stdErr) throws IOException {
+    stdOutRedirect = redirectToFile(pbi.pb, pbi.fnStdout);
+    if (pbi.fnStderr != null && pbi.fnStderr.equals(pbi.fnStdout)) {
+      stdErrRedirect = stdOutRedirect;
+    } else {
+      stdErrRedirect = redirectToFile(pbi.pb, pbi.fnStderr);
     }
-    if (stdErrRedirect != null) {
-      stdErrRedirect.close();
+    this.stdOut = stdOut;
+    this.stdErr = stdErr;
+    started = true;
+  }
+
+  /**
+   * Starts a thread per output stream of the process. Each thread blocks on reading its stream
+   * and hands the text over to the consumer as soon as it arrives. The threads stop when the
+   * streams reach the end, which happens after the process exits and everything it has written
+   * has been read.
+   *
+   * @param onStdOut Receives decoded chunks of standard output. Called from the pump thread.
+   * @param onStdErr Receives decoded chunks of standard error. Called from the pump thread.
+   */
+  public void startPumps(Consumer<String> onStdOut, Consumer<String> onStdErr) {
+    if (!started) {
+      throw new IllegalStateException("Process must be started before pumping its output");
     }
+    pumps.add(startPump(stdOut, stdOutRedirect, onStdOut, "stdout"));
+    pumps.add(startPump(stdErr, stdErrRedirect, onStdErr, "stderr"));
   }
 
-  public Process getProcess() {
-    return proc;
+  private Thread startPump(InputStream is, BufferedOutputStream bos, Consumer<String> consumer,
+      String streamName) {
+    Thread t = new Thread(() -> pump(is, bos, consumer),
+        "pump-" + streamName + "-" + (pbi.name == null ? "process" : pbi.name));
+    t.setDaemon(true);
+    t.start();
+    return t;
   }
 
-  public byte[] pollStdOut() throws IOException {
-    return poll(stdOut);
+  /**
+   * Waits for the pump threads to drain the remaining output after the process has exited.
+   *
+   * @return False if some pump didn't finish in time. That happens when the process left
+   * children behind that keep the streams open.
+   */
+  public boolean awaitPumps(long timeoutMillis) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    for (Thread pump : pumps) {
+      pump.join(Math.max(1, deadline - System.currentTimeMillis()));
+      if (pump.isAlive()) {
+        log.warn("Output of '{}' was not fully drained in {} ms", pbi.name, timeoutMillis);
+        return false;
+      }
+    }
+    return true;
   }
 
-  public byte[] pollStdErr() throws IOException {
-    return poll(stdErr);
+  private void pump(InputStream is, BufferedOutputStream bos, Consumer<String> consumer) {
+    final byte[] buf = new byte[PUMP_BUF_SIZE];
+    int carry = 0;
+    try {
+      int read;
+      while ((read = is.read(buf, carry, buf.length - carry)) != -1) {
+        if (bos != null) {
+          synchronized (bos) {
+            bos.write(buf, carry, read);
+          }
+        }
+        final int len = carry + read;
+        final int complete = utf8CompleteLength(buf, len);
+        if (complete > 0) {
+          emit(new String(buf, 0, complete, UTF_8), consumer);
+        }
+        carry = len - complete;
+        System.arraycopy(buf, complete, buf, 0, carry);
+      }
+      if (carry > 0) {
+        emit(new String(buf, 0, carry, UTF_8), consumer);
+      }
+    } catch (IOException e) {
+      // the stream gets closed under us when the process is killed
+      log.debug("Stopped reading output of '{}': {}", pbi.name, e.getMessage());
+    }
   }
 
-  private static byte[] poll(InputStream is) throws IOException {
-    if (is == null) {
-      return null;
+  private void emit(String s, Consumer<String> consumer) {
+    synchronized (output) {
+      output.append(s);
+    }
+    if (consumer != null) {
+      consumer.accept(s);
+    }
+  }
+
+  /**
+   * Length of the longest prefix of the first `len` bytes that doesn't end in the middle of
+   * a multi-byte UTF-8 sequence. The rest is kept until more bytes arrive, so that characters
+   * split between two reads are not garbled.
+   */
+  static int utf8CompleteLength(byte[] b, int len) {
+    for (int i = len - 1; i >= Math.max(0, len - 3); i--) {
+      final int c = b[i] & 0xFF;
+      if ((c & 0x80) == 0) {
+        return len; // ASCII
+      }
+      if ((c & 0xC0) == 0xC0) { // lead byte of a multi-byte sequence
+        final int need = (c & 0xE0) == 0xC0 ? 2 : (c & 0xF0) == 0xE0 ? 3 : 4;
+        return len - i >= need ? len : i;
+      }
+      // continuation byte, keep looking for the lead byte
+    }
+    return len;
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (stdOutRedirect != null) {
+      synchronized (stdOutRedirect) {
+        stdOutRedirect.close();
+      }
     }
-    int available = is.available();
-    if (available > 0) {
-      byte[] bytes = new byte[available];
-      int read = is.read(bytes);
-      return bytes;
+    if (stdErrRedirect != null && stdErrRedirect != stdOutRedirect) {
+      synchronized (stdErrRedirect) {
+        stdErrRedirect.close();
+      }
     }
-    return null;
+  }
+
+  public Process getProcess() {
+    return proc;
   }
 
   /**
-   * Creates a new file output stream to the
+   * Creates a new buffered, size capped output stream to a file. Relative paths are resolved
+   * against the working directory of the process builder.
    */
   private static BufferedOutputStream redirectToFile(ProcessBuilder pb, String fn) throws IOException {
-    if (pb == null || pb.directory() == null || StringUtils.isNullOrWhitespace(fn)) {
+    if (pb == null || StringUtils.isNullOrWhitespace(fn)) {
       return null;
     }
-    final Path pathLogOut = pb.directory().toPath().resolve(fn);
+    Path pathLogOut = Paths.get(fn);
+    if (!pathLogOut.isAbsolute()) {
+      if (pb.directory() == null) {
+        return null;
+      }
+      pathLogOut = pb.directory().toPath().resolve(pathLogOut);
+    }
     if (!Files.exists(pathLogOut.getParent())) {
-      Files.createDirectories(pathLogOut);
+      Files.createDirectories(pathLogOut.getParent());
     }
-    return new BufferedOutputStream(Files
-        .newOutputStream(pathLogOut, StandardOpenOption.CREATE,
-            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    return new BufferedOutputStream(new RotatingFileOutputStream(pathLogOut,
+        REDIRECT_MAX_BYTES, REDIRECT_MAX_BACKUPS), REDIRECT_BUF_SIZE);
   }
 
   public ProcessBuilder getProcessBuilder() {
@@ -126,39 +246,6 @@ public class ProcessResult implements AutoCloseable {
     return output;
   }
 
-  /**
-   * @return String representation of whatever has been appended, not the whole string after
-   * appending!
-   */
-  public String appendOut(byte[] bytes) throws IOException {
-    return append(bytes, stdOutRedirect);
-  }
-
-  /**
-   * @return String representation of whatever has been appended, not the whole string after
-   * appending!
-   */
-  public String appendErr(byte[] bytes) throws IOException {
-    return append(bytes, stdErrRedirect);
-  }
-
-  /**
-   * @return String representation of whatever has been appended, not the whole string after
-   * appending!
-   */
-  private String append(byte[] bytes, BufferedOutputStream bos) throws IOException {
-    if (bytes == null || bytes.length == 0) {
-      return null;
-    }
-    String s = new String(bytes, UTF_8);
-    output.append(s);
-    if (bos != null) {
-      bos.write(bytes);
-      bos.flush();
-    }
-    return s;
-  }
-
   public Integer getExitCode() {
     return exitCode;
   }
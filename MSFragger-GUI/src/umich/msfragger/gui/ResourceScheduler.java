@@ -0,0 +1,182 @@
+package umich.msfragger.gui;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import umich.msfragger.util.OsUtils;
+
+/**
+ * Admits tasks for execution only when their declared memory and thread demands fit into
+ * the budget of the machine. Tasks that don't fit wait in a queue until running tasks
+ * release their resources. Waiting tasks are checked in submission order and any task that
+ * fits is started, so small tasks can fill the gaps left by large ones.
+ * <p>
+ * A task asking for more than the whole budget is scaled down to the budget, so it runs
+ * alone instead of never running.
+ */
+public class ResourceScheduler {
+  private static final Logger log = LoggerFactory.getLogger(ResourceScheduler.class);
+  /** Memory not handed out to tasks, left to the OS and everything else running. */
+  public static final int OS_RESERVE_GB = 2;
+
+  private final int ramGbTotal;
+  private final int threadsTotal;
+  private final ExecutorService exec;
+  private final Consumer<String> reporter;
+  private final LinkedList<Pending> queue = new LinkedList<>();
+  private int ramGbUsed = 0;
+  private int threadsUsed = 0;
+
+  private static class Pending {
+    final RunnableDescription rd;
+    final Runnable task;
+    final int ramGb;
+    final int threads;
+    final CompletableFuture<Void> f = new CompletableFuture<>();
+    boolean isReportedWaiting = false;
+
+    Pending(RunnableDescription rd, Runnable task, int ramGb, int threads) {
+      this.rd = rd;
+      this.task = task;
+      this.ramGb = ramGb;
+      this.threads = threads;
+    }
+  }
+
+  /**
+   * @param reporter Receives human readable descriptions of scheduling decisions.
+   */
+  public ResourceScheduler(int ramGbTotal, int threadsTotal, ExecutorService exec,
+      Consumer<String> reporter) {
+    this.ramGbTotal = Math.max(1, ramGbTotal);
+    this.threadsTotal = Math.max(1, threadsTotal);
+    this.exec = exec;
+    this.reporter = reporter;
+  }
+
+  /**
+   * Budget of the physical memory of this machine less what this JVM may take and
+   * {@link #OS_RESERVE_GB} for the OS, and of all cores but one, see {@link #threadsForThisMachine()}.
+   */
+  public static ResourceScheduler forThisMachine(ExecutorService exec, Consumer<String> reporter) {
+    int ownHeapGb = (int) Math.ceil(Runtime.getRuntime().maxMemory() / 1024.0 / 1024.0 / 1024.0);
+    return new ResourceScheduler(OsUtils.getTotalPhysicalMemoryGb() - ownHeapGb - OS_RESERVE_GB,
+        threadsForThisMachine(), exec, reporter);
+  }
+
+  /**
+   * All cores but one, which is left to the GUI and the OS.
+   */
+  public static int threadsForThisMachine() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  }
+
+  public int getRamGbTotal() {
+    return ramGbTotal;
+  }
+
+  public int getThreadsTotal() {
+    return threadsTotal;
+  }
+
+  /**
+   * @param task What to run once admitted. Resource demands are taken from `rd`.
+   * @return Completes when the task has finished running.
+   */
+  public CompletableFuture<Void> submit(RunnableDescription rd, Runnable task) {
+    Pending p = new Pending(rd, task, Math.min(Math.max(0, rd.ramGb), ramGbTotal),
+        Math.min(Math.max(0, rd.threads), threadsTotal));
+    synchronized (this) {
+      queue.add(p);
+    }
+    dispatch();
+    return p.f;
+  }
+
+  /**
+   * Drops all tasks that have not been started yet.
+   */
+  public void cancelPending() {
+    List<Pending> dropped;
+    synchronized (this) {
+      dropped = new ArrayList<>(queue);
+      queue.clear();
+    }
+    dropped.forEach(p -> p.f.cancel(false));
+  }
+
+  private void dispatch() {
+    List<Pending> toStart = new ArrayList<>();
+    List<String> messages = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Pending> it = queue.iterator();
+      while (it.hasNext()) {
+        Pending p = it.next();
+        if (p.f.isDone()) {
+          it.remove();
+          continue;
+        }
+        if (ramGbUsed + p.ramGb <= ramGbTotal && threadsUsed + p.threads <= threadsTotal) {
+          it.remove();
+          ramGbUsed += p.ramGb;
+          threadsUsed += p.threads;
+          toStart.add(p);
+          if (p.ramGb > 0 || p.isReportedWaiting) {
+            messages.add(String.format(Locale.ROOT,
+                "Resources: starting '%s' [%d GB, %d threads], in use %d/%d GB, %d/%d threads, %d waiting",
+                p.rd.description.name, p.ramGb, p.threads, ramGbUsed, ramGbTotal,
+                threadsUsed, threadsTotal, queue.size()));
+          }
+        } else if (!p.isReportedWaiting) {
+          p.isReportedWaiting = true;
+          messages.add(String.format(Locale.ROOT,
+              "Resources: '%s' [%d GB, %d threads] waits, in use %d/%d GB, %d/%d threads",
+              p.rd.description.name, p.ramGb, p.threads, ramGbUsed, ramGbTotal,
+              threadsUsed, threadsTotal));
+        }
+      }
+    }
+    for (String msg : messages) {
+      log.debug(msg);
+      if (reporter != null) {
+        reporter.accept(msg);
+      }
+    }
+    toStart.forEach(this::start);
+  }
+
+  private void start(Pending p) {
+    try {
+      exec.execute(() -> {
+        try {
+          p.task.run();
+          p.f.complete(null);
+        } catch (Throwable t) {
+          p.f.completeExceptionally(t);
+        } finally {
+          release(p);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      log.debug("Executor rejected task, it was probably shut down: {}", p.rd.description.name);
+      release(p);
+      p.f.completeExceptionally(e);
+    }
+  }
+
+  private void release(Pending p) {
+    synchronized (this) {
+      ramGbUsed -= p.ramGb;
+      threadsUsed -= p.threads;
+    }
+    dispatch();
+  }
+}
@@ -0,0 +1,140 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Progress of a run, kept in the working directory so that a failed or cancelled run can
+ * be resumed. The file lists the planned tasks, then a line is appended every time a task
+ * finishes successfully. The file is removed when the whole run finishes.
+ * <p>
+ * Tasks are identified by a hash of their stage, name, working directory and command line,
+ * so a task only counts as done if it would be run the same way again, up to the memory
+ * given to it.
+ */
+public class RunCheckpoint {
+  private static final Logger log = LoggerFactory.getLogger(RunCheckpoint.class);
+  public static final String FN = "fragpipe-run-checkpoint.txt";
+  private static final String PLAN = "plan";
+  private static final String DONE = "done";
+
+  private final Path path;
+
+  private RunCheckpoint(Path path) {
+    this.path = path;
+  }
+
+  public static boolean exists(Path wd) {
+    return Files.exists(wd.resolve(FN));
+  }
+
+  /**
+   * @param isResumed Keep the tasks recorded as done by the run being resumed, so that
+   * resuming the resumed run doesn't repeat them.
+   */
+  public static RunCheckpoint start(Path wd, List<RunnableDescription> plan, boolean isResumed)
+      throws IOException {
+    RunCheckpoint c = new RunCheckpoint(wd.resolve(FN));
+    StringBuilder sb = new StringBuilder();
+    for (RunnableDescription rd : plan) {
+      if (rd.stage != null) {
+        line(sb, PLAN, rd);
+      }
+    }
+    if (isResumed) {
+      Files.write(c.path, sb.toString().getBytes(UTF_8), StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+    } else {
+      Files.write(c.path, sb.toString().getBytes(UTF_8));
+    }
+    return c;
+  }
+
+  /**
+   * Task keys recorded as done, empty if there's no checkpoint.
+   */
+  public static Set<String> loadDone(Path wd) {
+    Set<String> done = new HashSet<>();
+    Path path = wd.resolve(FN);
+    if (!Files.exists(path)) {
+      return done;
+    }
+    try {
+      for (String line : Files.readAllLines(path, UTF_8)) {
+        String[] parts = line.split("\t", 3);
+        if (parts.length >= 2 && DONE.equals(parts[0])) {
+          done.add(parts[1]);
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Could not read run checkpoint: " + path, e);
+    }
+    return done;
+  }
+
+  /**
+   * Identifies a task of a stage. Memory options are left out like in the
+   * {@link RunManifest}, they're often computed from what's free when the run is planned.
+   */
+  public static String key(String stage, ProcessDescription desc) {
+    final String command = desc.command == null ? null
+        : RunManifest.withoutMemoryOptions(desc.command);
+    String s = stage + "\n" + desc.name + "\n" + desc.workDir + "\n" + command;
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(s.getBytes(UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 12; i++) {
+        sb.append(String.format("%02x", hash[i]));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is always available", e);
+    }
+  }
+
+  private static void line(StringBuilder sb, String type, RunnableDescription rd) {
+    sb.append(type).append('\t').append(key(rd.stage.name, rd.description)).append('\t')
+        .append(rd.stage.name).append(": ").append(rd.description.name).append('\n');
+  }
+
+  /**
+   * Records a successfully finished task. Written right away, so that the record survives
+   * the GUI being killed.
+   */
+  public synchronized void markDone(RunnableDescription rd) {
+    if (rd.stage == null) {
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    line(sb, DONE, rd);
+    try (Writer w = Files.newBufferedWriter(path, UTF_8, StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND)) {
+      w.write(sb.toString());
+    } catch (IOException e) {
+      log.warn("Could not update run checkpoint: " + path, e);
+    }
+  }
+
+  /**
+   * The run finished, nothing to resume.
+   */
+  public synchronized void finish() {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.warn("Could not delete run checkpoint: " + path, e);
+    }
+  }
+}
@@ -0,0 +1,582 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import umich.msfragger.Version;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.util.CacheUtils;
+import umich.msfragger.util.ProcessUsage;
+import umich.msfragger.util.StringUtils;
+
+/**
+ * Stages of past runs on this machine. Every stage that finished is appended as a line to a
+ * tab separated file in the FragPipe cache directory, shared by all runs, from the GUI and
+ * from the command line.
+ * <p>
+ * The history is used to show how stage times change over time and to estimate how long
+ * the stages of a new run will take: the estimate is the median time of the same stage in
+ * the most similar past runs. Runs are compared on the amount of LC/MS data, the number of
+ * files, the size of the FASTA file, the threads given to the tool and the tool version.
+ * A stage that ran alongside others was slowed down by them, this isn't corrected for.
+ */
+public class RunHistory {
+  private static final Logger log = LoggerFactory.getLogger(RunHistory.class);
+  public static final String FILE_NAME = "run-history.tsv";
+  static final String HEADER = "time\tstage\tversion\tfiles\tlcms_bytes\tfasta_bytes"
+      + "\tinput_bytes\tram_gb\tthreads\ttasks\twall_ms\tcpu_ms\tpeak_rss_bytes";
+  public static final long UNKNOWN = -1;
+  /** An estimate is based on at most this many past runs. */
+  static final int NEIGHBOURS = 5;
+  private static final int NAME_WIDTH = 28;
+
+  private final Path path;
+
+  /**
+   * One stage of one run. For a stage that is only planned, the measured values are
+   * {@link #UNKNOWN}.
+   */
+  public static class Record {
+    /** When the run ended, epoch millis. The same for all stages of a run. */
+    public final long time;
+    public final String stage;
+    /** Version of the tool, or the name of its jar or binary if not known. */
+    public final String version;
+    /** LC/MS files of the run. */
+    public final int files;
+    public final long lcmsBytes;
+    public final long fastaBytes;
+    /** Size of what the stage declared as its inputs, when it started. */
+    public final long inputBytes;
+    public final int ramGb;
+    public final int threads;
+    public final int tasks;
+    /** From the start of the first task of the stage to the end of the last one. */
+    public final long wallMs;
+    /** All processes of the stage together. */
+    public final long cpuMs;
+    /** Highest of the processes of the stage. */
+    public final long peakRssBytes;
+
+    public Record(long time, String stage, String version, int files, long lcmsBytes,
+        long fastaBytes, long inputBytes, int ramGb, int threads, int tasks, long wallMs,
+        long cpuMs, long peakRssBytes) {
+      this.time = time;
+      this.stage = stage;
+      this.version = version;
+      this.files = files;
+      this.lcmsBytes = lcmsBytes;
+      this.fastaBytes = fastaBytes;
+      this.inputBytes = inputBytes;
+      this.ramGb = ramGb;
+      this.threads = threads;
+      this.tasks = tasks;
+      this.wallMs = wallMs;
+      this.cpuMs = cpuMs;
+      this.peakRssBytes = peakRssBytes;
+    }
+
+    String toLine() {
+      return String.join("\t", Long.toString(time), clean(stage), clean(version),
+          Integer.toString(files), Long.toString(lcmsBytes), Long.toString(fastaBytes),
+          Long.toString(inputBytes), Integer.toString(ramGb), Integer.toString(threads),
+          Integer.toString(tasks), Long.toString(wallMs), Long.toString(cpuMs),
+          Long.toString(peakRssBytes));
+    }
+
+    /**
+     * @throws IllegalArgumentException If the line is not a record.
+     */
+    static Record parse(String line) {
+      String[] f = line.split("\t", -1);
+      if (f.length < 13) {
+        throw new IllegalArgumentException("Not a run history record: " + line);
+      }
+      return new Record(Long.parseLong(f[0]), f[1], f[2], Integer.parseInt(f[3]),
+          Long.parseLong(f[4]), Long.parseLong(f[5]), Long.parseLong(f[6]),
+          Integer.parseInt(f[7]), Integer.parseInt(f[8]), Integer.parseInt(f[9]),
+          Long.parseLong(f[10]), Long.parseLong(f[11]), Long.parseLong(f[12]));
+    }
+
+    private static String clean(String s) {
+      return s == null ? "" : s.replaceAll("[\t\r\n]+", " ");
+    }
+  }
+
+  /**
+   * Estimated time of a planned stage.
+   */
+  public static class Prediction {
+    /** How many past runs it's based on. */
+    public final int runs;
+    public final long wallMs;
+    public final long minMs;
+    public final long maxMs;
+
+    Prediction(int runs, long wallMs, long minMs, long maxMs) {
+      this.runs = runs;
+      this.wallMs = wallMs;
+      this.minMs = minMs;
+      this.maxMs = maxMs;
+    }
+  }
+
+  /**
+   * What a run is given to work on.
+   */
+  public static class Features {
+    public final int files;
+    public final long lcmsBytes;
+    public final long fastaBytes;
+
+    public Features(int files, long lcmsBytes, long fastaBytes) {
+      this.files = files;
+      this.lcmsBytes = lcmsBytes;
+      this.fastaBytes = fastaBytes;
+    }
+
+    public static Features of(WorkflowForm form) {
+      List<Path> lcms = form.getLcmsFileGroups().values().stream()
+          .flatMap(g -> g.lcmsFiles.stream()).map(InputLcmsFile::getPath)
+          .collect(Collectors.toList());
+      long lcmsBytes = 0;
+      for (Path p : lcms) {
+        long size = size(p);
+        if (size == UNKNOWN) {
+          lcmsBytes = UNKNOWN;
+          break;
+        }
+        lcmsBytes += size;
+      }
+      long fastaBytes = UNKNOWN;
+      if (!StringUtils.isNullOrWhitespace(form.getFastaPath())) {
+        try {
+          fastaBytes = size(Paths.get(form.getFastaPath()));
+        } catch (RuntimeException e) {
+          // not a valid path, the planner complains about it
+        }
+      }
+      return new Features(lcms.size(), lcmsBytes, fastaBytes);
+    }
+  }
+
+  /**
+   * Measures the stages of one run, to add them to the history once it's over.
+   */
+  public static class Recorder {
+    private final List<ProcessBuildersDescriptor> stages = new ArrayList<>();
+    private final Map<ProcessBuildersDescriptor, Record> planned = new IdentityHashMap<>();
+    private final Map<ProcessBuildersDescriptor, Timing> timings = new IdentityHashMap<>();
+
+    private static class Timing {
+      int finished = 0;
+      boolean isStarted = false;
+      boolean isFailed = false;
+      long startNanos;
+      long endNanos;
+      long inputBytes = UNKNOWN;
+    }
+
+    /**
+     * @param versions Versions of tools, by a lower case part of the name of their jar or
+     * binary, e.g. "msfragger".
+     */
+    public Recorder(List<ProcessBuilderInfo> pbis,
+        Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage, Features features,
+        Map<String, String> versions) {
+      final Map<ProcessBuildersDescriptor, Integer> tasks = new IdentityHashMap<>();
+      for (ProcessBuilderInfo pbi : pbis) {
+        ProcessBuildersDescriptor pbd = pbiToStage.get(pbi);
+        if (pbd != null && tasks.merge(pbd, 1, Integer::sum) == 1) {
+          stages.add(pbd);
+        }
+      }
+      final long now = System.currentTimeMillis();
+      for (ProcessBuildersDescriptor pbd : stages) {
+        List<ProcessBuilderInfo> own = pbis.stream().filter(pbi -> pbiToStage.get(pbi) == pbd)
+            .collect(Collectors.toList());
+        planned.put(pbd, new Record(now, pbd.name, version(own, versions), features.files,
+            features.lcmsBytes, features.fastaBytes, UNKNOWN,
+            own.stream().mapToInt(pbi -> pbi.ramGb).max().orElse(0),
+            own.stream().mapToInt(pbi -> pbi.threads).max().orElse(0),
+            tasks.get(pbd), UNKNOWN, UNKNOWN, UNKNOWN));
+        timings.put(pbd, new Timing());
+      }
+    }
+
+    /**
+     * Stages of the run, in the order they were planned.
+     */
+    public List<Record> getPlanned() {
+      return stages.stream().map(planned::get).collect(Collectors.toList());
+    }
+
+    /**
+     * @return The same tasks, timed.
+     */
+    public List<RunnableDescription> wrap(List<RunnableDescription> rds) {
+      List<RunnableDescription> wrapped = new ArrayList<>();
+      for (RunnableDescription rd : rds) {
+        final Timing t = rd.stage == null ? null : timings.get(rd.stage);
+        if (t == null) {
+          wrapped.add(rd);
+          continue;
+        }
+        Runnable r = () -> {
+          started(rd.stage, t);
+          boolean isOk = false;
+          try {
+            rd.runnable.run();
+            isOk = true;
+          } finally {
+            synchronized (t) {
+              t.endNanos = Math.max(t.endNanos, System.nanoTime());
+              if (isOk) {
+                t.finished++;
+              } else {
+                t.isFailed = true;
+              }
+            }
+          }
+        };
+        wrapped.add(new RunnableDescription(rd.description, r, rd.parallelGroup, rd.stage,
+            rd.ramGb, rd.threads));
+      }
+      return wrapped;
+    }
+
+    private static void started(ProcessBuildersDescriptor pbd, Timing t) {
+      synchronized (t) {
+        if (t.isStarted) {
+          return;
+        }
+        t.isStarted = true;
+        t.startNanos = System.nanoTime();
+      }
+      // inputs are complete once the stage can start
+      long bytes = UNKNOWN;
+      if (pbd.getInputs() != null) {
+        bytes = 0;
+        for (Path p : pbd.getInputs()) {
+          bytes += Math.max(0, size(p));
+        }
+      }
+      synchronized (t) {
+        t.inputBytes = bytes;
+      }
+    }
+
+    /**
+     * @param usage Resources used by the processes of the run, can be null.
+     * @return Stages all of whose tasks finished successfully.
+     */
+    public List<Record> getFinished(RunUsageReport usage) {
+      final long now = System.currentTimeMillis();
+      List<Record> finished = new ArrayList<>();
+      for (ProcessBuildersDescriptor pbd : stages) {
+        final Record p = planned.get(pbd);
+        final Timing t = timings.get(pbd);
+        final long wallMs;
+        final long inputBytes;
+        synchronized (t) {
+          if (t.isFailed || t.finished < p.tasks) {
+            continue;
+          }
+          wallMs = TimeUnit.NANOSECONDS.toMillis(t.endNanos - t.startNanos);
+          inputBytes = t.inputBytes;
+        }
+        long cpuMs = UNKNOWN;
+        long peakRssBytes = UNKNOWN;
+        List<ProcessUsage> used = usage == null ? new ArrayList<>() : usage.getRecords(pbd);
+        if (!used.isEmpty() && used.stream().allMatch(ProcessUsage::isSampled)) {
+          cpuMs = used.stream().mapToLong(u -> u.cpuMs).sum();
+          peakRssBytes = used.stream().mapToLong(u -> u.peakRssBytes).max().orElse(UNKNOWN);
+        }
+        finished.add(new Record(now, p.stage, p.version, p.files, p.lcmsBytes, p.fastaBytes,
+            inputBytes, p.ramGb, p.threads, p.tasks, wallMs, cpuMs, peakRssBytes));
+      }
+      return finished;
+    }
+  }
+
+  public RunHistory(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * The history shared by all runs on this machine.
+   */
+  public static RunHistory get() {
+    return new RunHistory(CacheUtils.getTempDir().resolve(FILE_NAME));
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Reads the file again every time, other FragPipe processes may have added to it.
+   *
+   * @return Oldest first, empty if there's no history.
+   */
+  public List<Record> load() {
+    List<Record> records = new ArrayList<>();
+    if (!Files.exists(path)) {
+      return records;
+    }
+    try (Stream<String> lines = Files.lines(path, UTF_8)) {
+      lines.forEach(line -> {
+        if (line.isEmpty() || line.startsWith(HEADER)) {
+          return;
+        }
+        try {
+          records.add(Record.parse(line));
+        } catch (RuntimeException e) {
+          log.debug("Skipping broken run history line: {}", line);
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not read run history: " + path, e);
+    }
+    return records;
+  }
+
+  public synchronized void append(Collection<Record> records) {
+    if (records.isEmpty()) {
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Record r : records) {
+      sb.append(r.toLine()).append('\n');
+    }
+    try {
+      if (!Files.exists(path)) {
+        Files.createDirectories(path.getParent());
+        sb.insert(0, HEADER + "\n");
+      }
+      // one write, so lines of runs finishing at the same time don't interleave
+      Files.write(path, sb.toString().getBytes(UTF_8), StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      log.warn("Could not write run history: " + path, e);
+    }
+  }
+
+  /**
+   * @return Null if the stage never finished before.
+   */
+  static Prediction predict(List<Record> past, Record planned) {
+    // a stage can be in a run several times, e.g. once per experiment, one of them is enough
+    final Set<Long> runs = new HashSet<>();
+    List<Record> same = past.stream()
+        .filter(r -> r.stage.equals(planned.stage) && r.wallMs >= 0)
+        .sorted(Comparator.comparingDouble((Record r) -> distance(r, planned))
+            .thenComparing(r -> -r.time))
+        .filter(r -> runs.add(r.time))
+        .limit(NEIGHBOURS)
+        .collect(Collectors.toList());
+    if (same.isEmpty()) {
+      return null;
+    }
+    long[] walls = same.stream().mapToLong(r -> r.wallMs).sorted().toArray();
+    return new Prediction(walls.length, median(walls), walls[0], walls[walls.length - 1]);
+  }
+
+  /**
+   * Zero for runs on the same data with the same settings. A unit is roughly "twice as
+   * much data" or "another version".
+   */
+  static double distance(Record a, Record b) {
+    return logRatio(a.lcmsBytes, b.lcmsBytes) + logRatio(a.files, b.files)
+        + logRatio(a.fastaBytes, b.fastaBytes) + 0.5 * logRatio(a.threads, b.threads)
+        + (Objects.equals(a.version, b.version) ? 0 : 1);
+  }
+
+  /**
+   * Unknown values don't make runs any different.
+   */
+  private static double logRatio(long a, long b) {
+    if (a < 0 || b < 0) {
+      return 0;
+    }
+    return Math.abs(Math.log((a + 1.0) / (b + 1.0)) / Math.log(2));
+  }
+
+  private static long median(long[] sorted) {
+    final int n = sorted.length;
+    return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+  }
+
+  /**
+   * Estimated time of each planned stage, for the console. Stages with the same name are
+   * shown once.
+   *
+   * @return Empty if none of the stages ran before.
+   */
+  public String estimates(List<Record> planned) {
+    final List<Record> past = load();
+    if (past.isEmpty()) {
+      return "";
+    }
+    final Map<String, List<Record>> byName = planned.stream()
+        .collect(Collectors.groupingBy(r -> r.stage, LinkedHashMap::new, Collectors.toList()));
+    final String fmt = "  %-" + NAME_WIDTH + "s %10s   %s\n";
+    StringBuilder sb = new StringBuilder();
+    boolean isAny = false;
+    for (Map.Entry<String, List<Record>> e : byName.entrySet()) {
+      final int n = e.getValue().size();
+      final String name = n == 1 ? e.getKey()
+          : String.format(Locale.ROOT, "%s (%d stages)", e.getKey(), n);
+      final Prediction p = predict(past, e.getValue().get(0));
+      if (p == null) {
+        sb.append(String.format(Locale.ROOT, fmt, name, "?", "never ran before"));
+        continue;
+      }
+      isAny = true;
+      String range = p.runs == 1 ? "from 1 past run" : String.format(Locale.ROOT,
+          "%s - %s in %d similar past runs", RunUsageReport.duration(p.minMs),
+          RunUsageReport.duration(p.maxMs), p.runs);
+      sb.append(String.format(Locale.ROOT, fmt, name,
+          (n == 1 ? "" : "each ") + RunUsageReport.duration(p.wallMs), range));
+    }
+    if (!isAny) {
+      return "";
+    }
+    return "Estimated time of each stage, from the run history in " + path + ":\n" + sb;
+  }
+
+  /**
+   * How the time of each stage changed over the runs in the history, for display. Stages
+   * with the same name in one run are added up.
+   */
+  public static String trends(List<Record> records) {
+    if (records.isEmpty()) {
+      return "No runs in the history yet.\n";
+    }
+    // most recently run stages first, then one entry per run, newest first
+    final Map<String, Map<Long, Record>> byStage = new LinkedHashMap<>();
+    for (int i = records.size() - 1; i >= 0; i--) {
+      final Record r = records.get(i);
+      byStage.computeIfAbsent(r.stage, k -> new LinkedHashMap<>()).merge(r.time, r,
+          (a, b) -> new Record(a.time, a.stage, a.version, a.files, a.lcmsBytes, a.fastaBytes,
+              UNKNOWN, Math.max(a.ramGb, b.ramGb), Math.max(a.threads, b.threads),
+              a.tasks + b.tasks, a.wallMs + b.wallMs, UNKNOWN,
+              Math.max(a.peakRssBytes, b.peakRssBytes)));
+    }
+    final String fmt = "%-" + NAME_WIDTH + "s %5s %10s %10s %10s %7s %10s  %s\n";
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, fmt, "Stage", "Runs", "Last", "Median", "Fastest",
+        "Change", "Peak RSS", "Version"));
+    for (Map.Entry<String, Map<Long, Record>> e : byStage.entrySet()) {
+      final List<Record> runs = new ArrayList<>(e.getValue().values());
+      final Record last = runs.get(0);
+      final long[] all = runs.stream().mapToLong(r -> r.wallMs).sorted().toArray();
+      String change = "";
+      if (runs.size() > 1) {
+        long before = median(runs.subList(1, runs.size()).stream().mapToLong(r -> r.wallMs)
+            .sorted().toArray());
+        if (before > 0) {
+          change = String.format(Locale.ROOT, "%+.0f%%", 100.0 * (last.wallMs - before) / before);
+        }
+      }
+      String name = e.getKey();
+      if (name.length() > NAME_WIDTH) {
+        name = name.substring(0, NAME_WIDTH - 1) + "~";
+      }
+      sb.append(String.format(Locale.ROOT, fmt, name, runs.size(),
+          RunUsageReport.duration(last.wallMs), RunUsageReport.duration(median(all)),
+          RunUsageReport.duration(all[0]), change, RunUsageReport.bytes(last.peakRssBytes),
+          last.version));
+    }
+    sb.append("Change is the last run compared to the median of the runs before it.\n");
+    return sb.toString();
+  }
+
+  /**
+   * @return The version if the jar or binary of the stage is among the known ones, the
+   * name of the jar or binary otherwise, which often has the version in it.
+   */
+  static String version(List<ProcessBuilderInfo> pbis, Map<String, String> versions) {
+    for (ProcessBuilderInfo pbi : pbis) {
+      if (pbi.fileOps != null || pbi.pb == null || pbi.pb.command().isEmpty()) {
+        continue;
+      }
+      final String program = program(pbi.pb.command());
+      final String lower = program.toLowerCase(Locale.ROOT);
+      for (Map.Entry<String, String> e : versions.entrySet()) {
+        if (lower.contains(e.getKey())) {
+          return e.getValue();
+        }
+      }
+      return program;
+    }
+    return Version.PROGRAM_TITLE + " " + Version.version();
+  }
+
+  /**
+   * The jar of java commands, the binary otherwise.
+   */
+  static String program(List<String> command) {
+    for (int i = 0; i < command.size() - 1; i++) {
+      final String arg = command.get(i);
+      if (arg.equals("-jar")) {
+        // JVM options are sometimes put between -jar and the jar
+        for (int j = i + 1; j < command.size(); j++) {
+          if (!command.get(j).startsWith("-")) {
+            return fileName(command.get(j));
+          }
+        }
+      }
+      if (arg.equals("-cp") || arg.equals("-classpath")) {
+        return fileName(command.get(i + 1).split(File.pathSeparator)[0]);
+      }
+    }
+    return fileName(command.get(0));
+  }
+
+  private static String fileName(String path) {
+    final int i = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+    return path.substring(i + 1);
+  }
+
+  /**
+   * Size of a file, or of everything in a directory (e.g. Bruker .d).
+   */
+  static long size(Path p) {
+    try {
+      if (Files.isRegularFile(p)) {
+        return Files.size(p);
+      }
+      if (Files.isDirectory(p)) {
+        try (Stream<Path> s = Files.walk(p)) {
+          return s.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      log.debug("Could not get size of: {}", p);
+    }
+    return UNKNOWN;
+  }
+}
@@ -0,0 +1,164 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import umich.swing.console.AnsiParser;
+
+/**
+ * Appends everything that goes to the console during a run to a log file as it happens,
+ * so the log survives a crash or a kill of the GUI. Writing is done by a background thread,
+ * callers only put text into a queue. ANSI color codes are stripped, the same way they are
+ * not present in the text of the console.
+ * <p>
+ * The queue is bounded, if the disk can't keep up callers wait for space rather than
+ * losing lines.
+ */
+public class RunLogWriter implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(RunLogWriter.class);
+  private static final int QUEUE_CAPACITY = 16 * 1024;
+  private static final long CLOSE_TIMEOUT_MS = 10000;
+  private static final Entry END = new Entry(null, "");
+
+  private static class Entry {
+    final String source;
+    final String text;
+
+    Entry(String source, String text) {
+      this.source = source;
+      this.text = text;
+    }
+  }
+
+  private final Path path;
+  private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+  /** Output of each process is parsed separately, escape sequences can be split between chunks. */
+  private final Map<String, AnsiParser> parsers = new HashMap<>();
+  private final Writer writer;
+  private final Thread thread;
+  private volatile boolean isClosed = false;
+
+  public RunLogWriter(Path path) throws IOException {
+    this.path = path;
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), UTF_8), 1 << 16);
+    thread = new Thread(this::run, "run-log-writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Text printed by the GUI itself.
+   */
+  public void append(String text) {
+    append(null, text);
+  }
+
+  /**
+   * @param source Name of the process that produced the text, can contain ANSI codes.
+   */
+  public void append(String source, String text) {
+    if (isClosed || text == null || text.isEmpty()) {
+      return;
+    }
+    try {
+      queue.put(new Entry(source, text));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        Entry e = queue.take();
+        // write everything that's already queued, then flush
+        while (e != null && e != END) {
+          write(e);
+          e = queue.poll();
+        }
+        writer.flush();
+        if (e == END) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      log.error("Error writing run log to " + path, e);
+      isClosed = true;
+      queue.clear();
+    } catch (InterruptedException e) {
+      log.debug("Run log writer interrupted");
+    } finally {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        log.error("Error closing run log " + path, e);
+      }
+    }
+  }
+
+  private void write(Entry e) throws IOException {
+    if (e.source == null) {
+      writer.write(normalizeNewlines(e.text));
+      return;
+    }
+    AnsiParser parser = parsers.computeIfAbsent(e.source, s -> new AnsiParser());
+    final IOException[] error = new IOException[1];
+    parser.parse(e.text, (attrs, text) -> {
+      try {
+        writer.write(normalizeNewlines(text));
+      } catch (IOException ex) {
+        error[0] = ex;
+      }
+    });
+    if (error[0] != null) {
+      throw error[0];
+    }
+  }
+
+  /**
+   * Same as in the console, where a bare carriage return starts a new line.
+   */
+  private static String normalizeNewlines(String s) {
+    return s.indexOf('\r') < 0 ? s : s.replace("\r\n", "\n").replace('\r', '\n');
+  }
+
+  /**
+   * Writes out everything queued so far and closes the file.
+   */
+  @Override
+  public void close() {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    try {
+      if (!queue.offer(END, CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        log.warn("Run log writer didn't accept end of log in time: {}", path);
+      }
+      thread.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,368 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import umich.msfragger.cmd.CmdBase;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.gui.StageGraph.Stage;
+
+/**
+ * Remembers which stages finished successfully in a working directory, keyed by a hash of
+ * everything their results depend on: the command lines, the files the commands reference
+ * (tool binaries and jars, parameter files) and the declared inputs. Together with the
+ * fingerprints of the outputs this allows re-runs to skip stages that would produce the
+ * same results again.
+ * <p>
+ * Only stages whose descriptor is {@link ProcessBuildersDescriptor#isSkippable() skippable}
+ * are considered. A stage always runs if a stage it reads outputs of runs.
+ */
+public class RunManifest {
+  private static final Logger log = LoggerFactory.getLogger(RunManifest.class);
+  public static final String FN = "fragpipe-run-manifest.properties";
+  /** Files up to this size are fingerprinted by content, larger ones by size and time. */
+  private static final long HASH_MAX_BYTES = 1 << 20;
+  private static final String PREFIX = "stage.";
+  private static final Pattern MEMORY_OPTION = Pattern.compile("(?:^|\\s+|(?<=\"))-Xm[xs][^\\s\"]*");
+  /** Content hashes of files referenced by commands, which are rewritten on every run. */
+  private static final Map<String, String> hashCache = new ConcurrentHashMap<>();
+
+  private final Path path;
+  private final Properties props = new Properties();
+
+  private RunManifest(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * A missing or unreadable manifest is treated as empty.
+   */
+  public static RunManifest load(Path wd) {
+    RunManifest m = new RunManifest(wd.resolve(FN));
+    if (Files.exists(m.path)) {
+      try (InputStream is = Files.newInputStream(m.path)) {
+        m.props.load(is);
+      } catch (IOException e) {
+        log.warn("Could not read run manifest, all stages will run: " + m.path, e);
+        m.props.clear();
+      }
+    }
+    return m;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Outputs of all the stages recorded in the manifest of the given working directory.
+   * These are not stale leftovers: a stage either reuses them or overwrites them.
+   */
+  public static Set<Path> trackedOutputs(Path wd) {
+    RunManifest m = load(wd);
+    Set<Path> paths = new HashSet<>();
+    for (String name : m.props.stringPropertyNames()) {
+      if (name.startsWith(PREFIX) && name.contains(".output.")) {
+        String v = m.props.getProperty(name);
+        int tab = v.indexOf('\t');
+        if (tab >= 0) {
+          paths.add(Paths.get(v.substring(tab + 1)));
+        }
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Decides which stages don't need to run. Stages are visited in order, a stage is up to
+   * date if its key and outputs match the manifest, and no stage producing files it reads
+   * is going to run.
+   */
+  public synchronized Set<ProcessBuildersDescriptor> findUpToDate(StageGraph graph) {
+    Set<ProcessBuildersDescriptor> upToDate = new LinkedHashSet<>();
+    Set<Stage> running = new HashSet<>();
+    for (Stage stage : graph.getStages()) {
+      boolean isUpToDate = !stage.isBarrier() && stage.descriptor != null
+          && stage.descriptor.isSkippable() && isUpToDate(stage.descriptor);
+      if (isUpToDate) {
+        for (Stage dep : stage.deps) {
+          if (running.contains(dep) && (dep.isBarrier() || feeds(dep, stage))) {
+            log.debug("Stage {} has to run after {}", stage, dep);
+            isUpToDate = false;
+            break;
+          }
+        }
+      }
+      if (isUpToDate) {
+        upToDate.add(stage.descriptor);
+      } else {
+        running.add(stage);
+      }
+    }
+    return upToDate;
+  }
+
+  /**
+   * Earlier stage writes files the later one reads. A shared Philosopher workspace doesn't
+   * count, it only orders the stages.
+   */
+  static boolean feeds(Stage earlier, Stage later) {
+    for (Path out : earlier.outputs) {
+      if (isWorkspace(out)) {
+        continue;
+      }
+      for (Path in : later.inputs) {
+        if (!isWorkspace(in) && (in.startsWith(out) || out.startsWith(in))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isWorkspace(Path p) {
+    return p.getParent() != null && CmdBase.philosopherWorkspace(p.getParent()).equals(p);
+  }
+
+  synchronized boolean isUpToDate(ProcessBuildersDescriptor pbd) {
+    final String prefix = PREFIX + pbd.name + ".";
+    String key = props.getProperty(prefix + "key");
+    int numOutputs = Integer.parseInt(props.getProperty(prefix + "outputs", "0"));
+    if (key == null || numOutputs == 0) {
+      return false;
+    }
+    try {
+      if (!key.equals(computeKey(pbd))) {
+        log.debug("Stage key changed: {}", pbd.name);
+        return false;
+      }
+      for (int i = 0; i < numOutputs; i++) {
+        String v = props.getProperty(prefix + "output." + i, "");
+        int tab = v.indexOf('\t');
+        if (tab < 0 || !v.substring(0, tab).equals(fingerprint(Paths.get(v.substring(tab + 1))))) {
+          log.debug("Output of stage {} changed: {}", pbd.name, v);
+          return false;
+        }
+      }
+    } catch (IOException e) {
+      log.debug("Could not check if stage is up to date: " + pbd.name, e);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Description of when the stage was last run, for messages.
+   */
+  public synchronized String getFinished(ProcessBuildersDescriptor pbd) {
+    return props.getProperty(PREFIX + pbd.name + ".finished", "");
+  }
+
+  /**
+   * Forgets the stages, to be called before running them, so that an interrupted run never
+   * leaves them marked as up to date.
+   */
+  public synchronized void invalidate(Collection<ProcessBuildersDescriptor> pbds)
+      throws IOException {
+    boolean isChanged = false;
+    for (ProcessBuildersDescriptor pbd : pbds) {
+      final String prefix = PREFIX + pbd.name + ".";
+      for (String name : props.stringPropertyNames()) {
+        if (name.startsWith(prefix)) {
+          props.remove(name);
+          isChanged = true;
+        }
+      }
+    }
+    if (isChanged) {
+      save();
+    }
+  }
+
+  /**
+   * Records a successfully finished stage, together with the outputs that exist now.
+   */
+  public synchronized void record(ProcessBuildersDescriptor pbd) throws IOException {
+    if (!pbd.isSkippable()) {
+      return;
+    }
+    final String prefix = PREFIX + pbd.name + ".";
+    List<String> outputs = new ArrayList<>();
+    for (Path out : new TreeSet<>(pbd.getOutputs())) {
+      if (Files.isRegularFile(out)) {
+        outputs.add(fingerprint(out) + "\t" + out);
+      }
+    }
+    props.setProperty(prefix + "key", computeKey(pbd));
+    props.setProperty(prefix + "finished",
+        LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+    props.setProperty(prefix + "outputs", Integer.toString(outputs.size()));
+    for (int i = 0; i < outputs.size(); i++) {
+      props.setProperty(prefix + "output." + i, outputs.get(i));
+    }
+    save();
+  }
+
+  private void save() throws IOException {
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (OutputStream os = Files.newOutputStream(tmp)) {
+      props.store(os, "FragPipe stages finished in this directory, used to skip up to date stages");
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Hash of everything the results of the stage depend on.
+   */
+  static String computeKey(ProcessBuildersDescriptor pbd) throws IOException {
+    final Set<Path> inputs = pbd.getInputs();
+    StringBuilder sb = new StringBuilder();
+    sb.append("stage\t").append(pbd.name).append('\n');
+    for (ProcessBuilderInfo pbi : pbd.pbis) {
+      if (pbi.fileOps != null) {
+        sb.append("files\t").append(String.join("\n", pbi.fileOps.describe())).append('\n');
+        continue;
+      }
+      final Path dir = pbi.pb.directory() == null ? null : pbi.pb.directory().toPath();
+      sb.append("dir\t").append(dir).append('\n');
+      for (String arg : pbi.pb.command()) {
+        final String normalized = withoutMemoryOptions(arg);
+        if (normalized.isEmpty()) {
+          continue;
+        }
+        sb.append("arg\t").append(normalized).append('\n');
+        for (Path file : referencedFiles(arg, dir)) {
+          if (inputs == null || !inputs.contains(file)) {
+            // tools and parameter files, which are rewritten on every run
+            sb.append("file\t").append(file).append('\t').append(contentHash(file)).append('\n');
+          }
+        }
+      }
+    }
+    if (inputs != null) {
+      for (Path in : new TreeSet<>(inputs)) {
+        sb.append("in\t").append(in).append('\t').append(fingerprint(in)).append('\n');
+      }
+    }
+    return toHex(sha256().digest(sb.toString().getBytes(UTF_8)));
+  }
+
+  /**
+   * Removes JVM memory options (-Xmx, -Xms) from a command or an argument, also when they're
+   * inside it, like the java command passed to the database slicing script. Memory is often
+   * computed from what's free at the moment and doesn't change results.
+   */
+  static String withoutMemoryOptions(String command) {
+    return MEMORY_OPTION.matcher(command).replaceAll("").trim();
+  }
+
+  /**
+   * Existing regular files a command line argument refers to, classpaths are split.
+   */
+  private static List<Path> referencedFiles(String arg, Path dir) {
+    List<Path> files = new ArrayList<>();
+    String s = arg.length() >= 2 && arg.startsWith("\"") && arg.endsWith("\"")
+        ? arg.substring(1, arg.length() - 1) : arg;
+    for (String part : s.split(File.pathSeparator)) {
+      if (part.isEmpty() || part.startsWith("-")) {
+        continue;
+      }
+      try {
+        Path p = Paths.get(part);
+        if (!p.isAbsolute() && dir != null) {
+          p = dir.resolve(p);
+        }
+        p = p.toAbsolutePath().normalize();
+        if (Files.isRegularFile(p)) {
+          files.add(p);
+        }
+      } catch (InvalidPathException ignored) {
+        // not a path
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Content hash for small files, size and modification time for large ones.
+   */
+  static String fingerprint(Path p) throws IOException {
+    final BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(p, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return "missing";
+    }
+    if (attrs.isDirectory()) {
+      return "dir";
+    }
+    if (attrs.size() <= HASH_MAX_BYTES) {
+      return contentHash(p);
+    }
+    return "size:" + attrs.size() + ",time:" + attrs.lastModifiedTime().toMillis();
+  }
+
+  private static String contentHash(Path p) throws IOException {
+    BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+    final String cacheKey = p + "\t" + attrs.size() + "\t" + attrs.lastModifiedTime().toMillis();
+    String cached = hashCache.get(cacheKey);
+    if (cached != null) {
+      return cached;
+    }
+    MessageDigest md = sha256();
+    byte[] buf = new byte[1 << 16];
+    try (InputStream is = Files.newInputStream(p)) {
+      int read;
+      while ((read = is.read(buf)) >= 0) {
+        md.update(buf, 0, read);
+      }
+    }
+    String hash = "sha256:" + toHex(md.digest());
+    hashCache.put(cacheKey, hash);
+    return hash;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is always available", e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,593 @@
+package umich.msfragger.gui;
+
+import java.awt.Component;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.swing.JCheckBox;
+import javax.swing.JOptionPane;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import umich.msfragger.cmd.CmdCrystalc;
+import umich.msfragger.cmd.CmdImquant;
+import umich.msfragger.cmd.CmdIprophet;
+import umich.msfragger.cmd.CmdMsAdjuster;
+import umich.msfragger.cmd.CmdMsfragger;
+import umich.msfragger.cmd.CmdPeptideProphet;
+import umich.msfragger.cmd.CmdPhilosopherWorkspaceClean;
+import umich.msfragger.cmd.CmdPhilosopherWorkspaceCleanInit;
+import umich.msfragger.cmd.CmdProteinProphet;
+import umich.msfragger.cmd.CmdPtmshepherd;
+import umich.msfragger.cmd.CmdReportAbacus;
+import umich.msfragger.cmd.CmdReportDbAnnotate;
+import umich.msfragger.cmd.CmdReportFilter;
+import umich.msfragger.cmd.CmdReportFreequant;
+import umich.msfragger.cmd.CmdReportReport;
+import umich.msfragger.cmd.CmdSpecLibGen;
+import umich.msfragger.cmd.CmdUmpireSe;
+import umich.msfragger.cmd.PbiBuilder;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.params.ThisAppProps;
+import umich.msfragger.params.crystalc.CrystalcParams;
+import umich.msfragger.params.fragger.FraggerMigPanel;
+import umich.msfragger.params.imquant.QuantJPanel;
+import umich.msfragger.params.philosopher.ReportPanel;
+import umich.msfragger.params.ptmshepherd.PtmshepherdJPanel;
+import umich.msfragger.util.Diagnostics;
+import umich.msfragger.util.Dialogs;
+import umich.msfragger.util.OsUtils;
+import umich.msfragger.util.StringUtils;
+import umich.msfragger.util.UsageTrigger;
+import umich.msfragger.worker.WorkerDispatcher;
+
+/**
+ * Turns the settings of a {@link WorkflowForm} into the list of tasks of a run. Used by the
+ * main window and by {@link FragpipeHeadless}, so that both run exactly the same commands.
+ */
+public class RunPlanner {
+  private static final Logger log = LoggerFactory.getLogger(RunPlanner.class);
+
+  private RunPlanner() {}
+
+  /**
+   * Configures all the tools enabled in the form.
+   *
+   * @param parent Parent for error dialogs, null is ok.
+   * @param pbDescsToFill Receives the configured tools, sorted by priority.
+   * @return False if the run can't proceed, the user has been told why.
+   */
+  public static boolean plan(Component parent, WorkflowForm form, Path wd, boolean isDryRun,
+      final List<ProcessBuildersDescriptor> pbDescsToFill) {
+    final Diagnostics.Op op = Diagnostics.plan(wd);
+    boolean isOk = false;
+    try {
+      isOk = plan0(parent, form, wd, isDryRun, pbDescsToFill);
+      return isOk;
+    } finally {
+      op.end(isOk);
+    }
+  }
+
+  private static boolean plan0(Component parent, WorkflowForm form, Path wd, boolean isDryRun,
+      final List<ProcessBuildersDescriptor> pbDescsToFill) {
+
+    final List<ProcessBuildersDescriptor> pbDescs = new ArrayList<>();
+
+    // Collect input LCMS files
+    final Map<String, LcmsFileGroup> lcmsFileGroups = form.getLcmsFileGroups();
+    List<InputLcmsFile> lcmsFiles = lcmsFileGroups.values().stream()
+        .flatMap(g -> g.lcmsFiles.stream())
+        .collect(Collectors.toList());
+
+    final UsageTrigger usePhi = new UsageTrigger(form.getPhilosopherBin(), "Philosopher");
+
+
+    // run DIA-Umpire SE
+    final CmdUmpireSe cmdUmpireSe = new CmdUmpireSe(form.isRunUmpireSe(), wd);
+    if (cmdUmpireSe.isRun()) {
+      if (!Diagnostics.configure(cmdUmpireSe.getCmdName()).end(
+          cmdUmpireSe.configure(parent, isDryRun, usePhi,
+              form.getUmpirePanel(), lcmsFiles)))
+        return false;
+      pbDescs.add(cmdUmpireSe.getBuilderDescriptor());
+      lcmsFiles = cmdUmpireSe.outputs(lcmsFiles);
+    }
+
+
+    final FraggerMigPanel fp = form.getFraggerPanel();
+
+    // run MSAdjuster
+    final CmdMsAdjuster cmdMsAdjuster = new CmdMsAdjuster(fp.isRun() && fp.isMsadjuster(), wd);
+    if (cmdMsAdjuster.isRun()) {
+      if (!Diagnostics.configure(cmdMsAdjuster.getCmdName()).end(
+          cmdMsAdjuster.configure(parent,
+              fp, lcmsFiles, false, 49))) {
+        return false;
+      }
+      pbDescs.add(cmdMsAdjuster.getBuilderDescriptor());
+      // MsAdjuster only makes files that are discovered by MsFragger
+      // automatically, so no file-list changes are needed
+    }
+
+
+    // run MsFragger
+    final String fastaFile = form.getFastaPath();
+    final UsageTrigger binMsfragger = new UsageTrigger(
+        form.getMsfraggerBin(), "MsFragger");
+    final CmdMsfragger cmdMsfragger = new CmdMsfragger(fp.isRun(), wd);
+    if (cmdMsfragger.isRun()) {
+      final String decoyTag = form.getDecoyTag();
+      if (!Diagnostics.configure(cmdMsfragger.getCmdName()).end(
+          cmdMsfragger.configure(parent,
+              isDryRun, fp, binMsfragger, fastaFile, lcmsFiles, decoyTag))) {
+        return false;
+      }
+      pbDescs.add(cmdMsfragger.getBuilderDescriptor());
+
+      String warn = ThisAppProps.load(ThisAppProps.PROP_MGF_WARNING, Boolean.TRUE.toString());
+      if (warn != null && Boolean.valueOf(warn)) {
+        for (InputLcmsFile f : lcmsFiles) {
+          if (f.getPath().toString().toLowerCase().endsWith(".mgf")) {
+            JCheckBox checkbox = new JCheckBox("Do not show this message again.");
+            String msg = "The list of input files contains MGF entries.\n"
+                + "MSFragger has limited MGF support (ProteoWizard output is OK).\n"
+                + "The search might fail unexpectedly with errors.\n"
+                + "Please consider converting files to mzML/mzXML with ProteoWizard.";
+            Object[] params = {msg, checkbox};
+            Dialogs.showMessageDialog(parent, params, "Warning",
+                JOptionPane.WARNING_MESSAGE);
+            if (checkbox.isSelected()) {
+              ThisAppProps.save(ThisAppProps.PROP_MGF_WARNING, Boolean.FALSE.toString());
+            }
+            break;
+          }
+        }
+      }
+    }
+    Map<InputLcmsFile, Path> pepxmlFiles = cmdMsfragger.outputs(
+        lcmsFiles, fp.getOutputFileExt(), wd);
+    final Map<InputLcmsFile, Path> pepxmlFilesFromMsfragger = new HashMap<>(pepxmlFiles);
+
+
+    // run MsAdjuster Cleanup
+    if (cmdMsAdjuster.isRun()) {
+      if (!Diagnostics.configure(cmdMsAdjuster.getCmdName()).end(
+          cmdMsAdjuster.configure(parent,
+              fp, lcmsFiles, true, 51))) {
+        return false;
+      }
+      pbDescs.add(cmdMsAdjuster.getBuilderDescriptor());
+    }
+
+
+    // run Crystalc
+    final CmdCrystalc cmdCrystalc = new CmdCrystalc(form.getCrystalcPanel().isRun(), wd);
+    if (cmdCrystalc.isRun()) {
+      CrystalcParams ccParams = form.getCrystalcPanel().toParams();
+      final int fraggerThreads = fp.getThreads();
+      if (fraggerThreads > 0) {
+        ccParams.setThread(fraggerThreads);
+      }
+      if (!Diagnostics.configure(cmdCrystalc.getCmdName()).end(
+          cmdCrystalc.configure(parent,
+              fp, isDryRun, Paths.get(binMsfragger.getBin()), ccParams, fastaFile, pepxmlFiles))) {
+        return false;
+      }
+      pbDescs.add(cmdCrystalc.getBuilderDescriptor());
+      pepxmlFiles = cmdCrystalc.outputs(pepxmlFiles, fp.getOutputFileExt());
+    }
+
+    // run Peptide Prophet
+    final boolean isCombinedPepxml = form.isCombinedPepxml();
+    final String decoyTag = form.getDecoyTag();
+    CmdPeptideProphet cmdPeptideProphet = new CmdPeptideProphet(
+        form.isRunPeptideProphet(), wd);
+    if (cmdPeptideProphet.isRun()) {
+      final String pepProphCmd = form.getPeptideProphetCmd();
+      final String enzymeName = fp.getEnzymeName();
+      if (!Diagnostics.configure(cmdPeptideProphet.getCmdName()).end(
+          cmdPeptideProphet.configure(parent, usePhi, isDryRun,
+              fastaFile, decoyTag, pepProphCmd, isCombinedPepxml, enzymeName, pepxmlFiles))) {
+        return false;
+      }
+      pbDescs.add(cmdPeptideProphet.getBuilderDescriptor());
+    }
+    pepxmlFiles = cmdPeptideProphet.outputs(pepxmlFiles, fp.getOutputFileExt(), isCombinedPepxml);
+
+
+    // run Protein Prophet
+    final boolean isRunProteinProphet = form.isRunProteinProphet();
+    final boolean isProcessGroupsSeparately = form.isProcessGroupsSeparately();
+    final ReportPanel report = form.getReportPanel();
+    final boolean isMuiltiExperimentReport = report.isMultiExpReport();
+    final CmdProteinProphet cmdProteinProphet = new CmdProteinProphet(isRunProteinProphet, wd);
+    if (cmdProteinProphet.isRun()) {
+      final String protProphCmdStr = form.getProteinProphetCmd();
+      if (!Diagnostics.configure(cmdProteinProphet.getCmdName()).end(
+          cmdProteinProphet.configure(parent,
+              usePhi, protProphCmdStr, isMuiltiExperimentReport,
+              isProcessGroupsSeparately, pepxmlFiles))) {
+        return false;
+      }
+      pbDescs.add(cmdProteinProphet.getBuilderDescriptor());
+    }
+    Map<LcmsFileGroup, Path> mapGroupsToProtxml = cmdProteinProphet.outputs(pepxmlFiles, isProcessGroupsSeparately, isMuiltiExperimentReport);
+
+
+    if (cmdPeptideProphet.isRun() || cmdProteinProphet.isRun()) {
+      // Check Decoy tags if any of the downstream tools are requested
+      if (StringUtils.isNullOrWhitespace(decoyTag)) {
+        int confirm = Dialogs.showConfirmDialog(parent,
+            "Downstream analysis tools require decoys in the database,\n"
+                + "but the decoy tag was left empty. It's recommended that\n"
+                + "you set it.\n\n"
+                + "Cancel operation and fix the problem (manually)?",
+            "Cancel run and fix parameters?\n", JOptionPane.YES_NO_OPTION,
+            JOptionPane.QUESTION_MESSAGE, JOptionPane.NO_OPTION);
+        if (JOptionPane.YES_OPTION == confirm) {
+          return false;
+        }
+      }
+    }
+
+    final boolean isReport = report.isGenerateReport();
+    if (isReport) {
+      // run Report - DbAnnotate
+      final boolean isDbAnnotate = true;
+      final CmdReportDbAnnotate cmdReportDbAnnotate = new CmdReportDbAnnotate(isDbAnnotate, wd);
+      if (cmdReportDbAnnotate.isRun()) {
+        if (!Diagnostics.configure(cmdReportDbAnnotate.getCmdName()).end(
+            cmdReportDbAnnotate.configure(parent, usePhi, fastaFile, decoyTag, pepxmlFiles, mapGroupsToProtxml))) {
+          return false;
+        }
+        pbDescs.add(cmdReportDbAnnotate.getBuilderDescriptor());
+      }
+
+      // run Report - Filter
+      final boolean isFilter = isReport;
+      final CmdReportFilter cmdReportFilter = new CmdReportFilter(isFilter, wd);
+      if (cmdReportFilter.isRun()) {
+        final boolean isCheckFilterNoProtxml = report.isNoProtXml();
+
+        // if ProtProph is not run but protxml is there - query the user
+        boolean dontUseProtxmlInFilter;
+        if (!isRunProteinProphet) {
+          dontUseProtxmlInFilter = true; // default, but we will ask the user if the files are already there
+          boolean allProtxmlsExist = true;
+          String paths = mapGroupsToProtxml.values().stream().map(path -> "- " + path.toString()).collect(Collectors.joining("\n"));
+          log.debug("Checking for existence of all protxml files:\n{}\n", paths);
+          for (Entry<LcmsFileGroup, Path> kv : mapGroupsToProtxml.entrySet()) {
+            Path protxml = kv.getValue();
+            try {
+              if (protxml == null || !Files.exists(protxml)) {
+                allProtxmlsExist = false;
+                break;
+              }
+            } catch (Exception e) {
+              allProtxmlsExist = false;
+              break;
+            }
+          }
+          if (allProtxmlsExist) {
+            // ProtProph is not run, but all protxmls are there
+            int confirm = Dialogs.showConfirmDialog(parent,
+                "Protein Prophet is not run, but prot.xml files for all groups\n"
+                    + "do already exist:\n\n"
+                    + paths
+                    + "\n\n"
+                    + "Do you want to use them for the Filter command?\n",
+                "Use previously existing prot.xml files?\n", JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE, JOptionPane.NO_OPTION);
+            if (JOptionPane.YES_OPTION == confirm) {
+              dontUseProtxmlInFilter = false;
+            }
+          }
+        } else { // if (!isRunProteinProphet) {
+          // protein prophet is run, respenct the checkFilterNoProtxml checkbox
+          dontUseProtxmlInFilter = isCheckFilterNoProtxml;
+        }
+
+        if (!Diagnostics.configure(cmdReportFilter.getCmdName()).end(
+            cmdReportFilter.configure(parent, usePhi,
+                decoyTag, report.getFilterCmdText(), dontUseProtxmlInFilter, mapGroupsToProtxml))) {
+          return false;
+        }
+        pbDescs.add(cmdReportFilter.getBuilderDescriptor());
+      }
+
+      // run Report - Report command itself
+      final CmdReportReport cmdReportReport = new CmdReportReport(isReport, wd);
+      final boolean doPrintDecoys = report.isPrintDecoys();
+//      final boolean doMzid = comboReportOutputFormat.getSelectedItem().toString().toLowerCase().contains("mzid");
+      final boolean doMzid = report.isWriteMzid();
+      if (cmdReportReport.isRun()) {
+        if (!Diagnostics.configure(cmdReportReport.getCmdName()).end(
+            cmdReportReport.configure(parent, usePhi, doPrintDecoys, doMzid, mapGroupsToProtxml))) {
+          return false;
+        }
+        pbDescs.add(cmdReportReport.getBuilderDescriptor());
+      }
+
+      // run Report - Multi-Experiment report
+      final int nThreads = fp.getThreads();
+      final CmdReportAbacus cmdReportAbacus = new CmdReportAbacus(isMuiltiExperimentReport, wd);
+      final boolean isMultiexpPepLevelSummary = report.isPepSummary();
+      if (cmdReportAbacus.isRun()) {
+
+        // run iProphet, will run right after Peptide Prophet because of priority setting
+        if (isMultiexpPepLevelSummary) { // iProphet is not needed if we don't generate peptide level summry
+          final CmdIprophet cmdIprophet = new CmdIprophet(cmdReportAbacus.isRun(), wd);
+          if (!Diagnostics.configure(cmdIprophet.getCmdName()).end(
+              cmdIprophet.configure(parent, usePhi, decoyTag, nThreads, pepxmlFiles))) {
+            return false;
+          }
+          pbDescs.add(cmdIprophet.getBuilderDescriptor());
+        }
+
+        // run Abacus
+        if (!Diagnostics.configure(cmdReportAbacus.getCmdName()).end(
+            cmdReportAbacus.configure(parent, usePhi, report.getFilterCmdText(),
+                isMultiexpPepLevelSummary, decoyTag, mapGroupsToProtxml))) {
+          return false;
+        }
+        pbDescs.add(cmdReportAbacus.getBuilderDescriptor());
+      }
+
+      // run Report - Freequant (Labelfree)
+      final QuantJPanel quant = form.getQuantPanel();
+      final boolean isFreequant = quant.isFreequant();
+      final CmdReportFreequant cmdReportFreequant = new CmdReportFreequant(isFreequant, wd);
+      if (cmdReportFreequant.isRun()) {
+        if (!Diagnostics.configure(cmdReportFreequant.getCmdName()).end(
+            cmdReportFreequant.configure(parent, usePhi, quant.getFreequantOptsAsText(), mapGroupsToProtxml))) {
+          return false;
+        }
+        pbDescs.add(cmdReportFreequant.getBuilderDescriptor());
+      }
+
+      // run Report - IMQuant (Labelfree)
+      final boolean isImquant = quant.isImquant();
+      final CmdImquant cmdImquant = new CmdImquant(isImquant, wd);
+      if (cmdImquant.isRun()) {
+        final int ramGb = fp.getRamGb() > 0 ? fp.getRamGb() : OsUtils.getFreePhysicalMemoryGb();
+        if (!Diagnostics.configure(cmdImquant.getCmdName()).end(
+            cmdImquant.configure(parent, isDryRun, Paths.get(binMsfragger.getBin()), ramGb, quant.toMap(),
+                pepxmlFilesFromMsfragger, mapGroupsToProtxml))) {
+          return false;
+        }
+        pbDescs.add(cmdImquant.getBuilderDescriptor());
+      }
+    }
+
+    // run PTMShepherd
+    final PtmshepherdJPanel ptmshepherdPanel = form.getPtmshepherdPanel();
+    final boolean isRunShepherd = ptmshepherdPanel.isRunShepherd();
+    final boolean isPtmsFormValid = ptmshepherdPanel.validateForm();
+    final CmdPtmshepherd cmdPtmshepherd = new CmdPtmshepherd(isRunShepherd, wd);
+    if (cmdPtmshepherd.isRun()) {
+      if (!isPtmsFormValid) {
+        Dialogs.showMessageDialog(parent,
+            "There are errors in PTM-Shepherd configuraiton panel on Report tab.",
+            "PTMShepherd Error", JOptionPane.ERROR_MESSAGE);
+        return false;
+      }
+      Path fastaPath = Paths.get(fastaFile);
+      int ramGb = fp.getRamGb();
+      int threads = fp.getThreads();
+      Map<String, String> additionalShepherdParams = ptmshepherdPanel.toMap();
+      if (threads > 0) {
+        additionalShepherdParams.put("threads", Integer.toString(threads));
+      }
+      if (!Diagnostics.configure(cmdPtmshepherd.getCmdName()).end(
+          cmdPtmshepherd.configure(parent, isDryRun, Paths.get(binMsfragger.getBin()),
+              ramGb, fastaPath, mapGroupsToProtxml, additionalShepherdParams))) {
+        return false;
+      }
+      pbDescs.add(cmdPtmshepherd.getBuilderDescriptor());
+    }
+
+
+    // run Spectral library generation
+    final boolean isRunSpeclibgen = form.isGenerateSpecLib();
+    final CmdSpecLibGen cmdSpecLibGen = new CmdSpecLibGen(isRunSpeclibgen, wd);
+    if (cmdSpecLibGen.isRun()) {
+      if (!Diagnostics.configure(cmdSpecLibGen.getCmdName()).end(
+          cmdSpecLibGen.configure(parent, usePhi,
+              mapGroupsToProtxml, fastaFile, isRunProteinProphet))) {
+        return false;
+      }
+      pbDescs.add(cmdSpecLibGen.getBuilderDescriptor());
+    }
+
+
+    // run Philosopher clean/init in all directories where Philosopher will be invoked
+    for (Path pathPhiIsRunIn : usePhi.getWorkDirs()) {
+      CmdPhilosopherWorkspaceCleanInit cmdPhiCleanInit = new CmdPhilosopherWorkspaceCleanInit(
+          true, pathPhiIsRunIn);
+      cmdPhiCleanInit.configure(usePhi);
+      pbDescs.add(cmdPhiCleanInit.getBuilderDescriptor());
+      CmdPhilosopherWorkspaceClean cmdPhiClean = new CmdPhilosopherWorkspaceClean(
+          true, pathPhiIsRunIn);
+      cmdPhiClean.configure(usePhi);
+      pbDescs.add(cmdPhiClean.getBuilderDescriptor());
+    }
+
+    // make sure that all subfolders are created for groups/experiments
+    if (!isDryRun) {
+      List<Path> paths = Stream
+          .concat(pepxmlFiles.values().stream(), mapGroupsToProtxml.values().stream())
+          .map(Path::getParent).collect(Collectors.toList());
+      try {
+        for (Path path : paths) {
+          if (!Files.exists(path)) {
+            Files.createDirectories(path);
+          }
+        }
+      } catch (IOException e) {
+        Dialogs.showMessageDialog(parent,
+            "Not all directories could be created:\n" + e.getMessage());
+        return false;
+      }
+    }
+
+    final StringBuilder sb = new StringBuilder();
+    pbDescs.forEach(pbd -> sb.append(String.format("%03d", pbd.priority)).append(" : ").append(pbd.name).append("\n"));
+    log.debug("Descriptors before sorting:\n{}", sb.toString());
+
+    pbDescs.sort(Comparator.comparing(pbDesc -> pbDesc.priority, Integer::compare));
+    sb.setLength(0);
+    pbDescs.forEach(pbd -> sb.append(String.format("%03d", pbd.priority)).append(" : ").append(pbd.name).append("\n"));
+    log.debug("Descriptors after sorting:\n{}", sb.toString());
+
+    pbDescsToFill.addAll(pbDescs);
+    return true;
+  }
+
+  /**
+   * Flattens the configured tools into individual tasks, filling in the defaults from the
+   * descriptors they came from.
+   *
+   * @param processLogsDir Where output of processes that don't redirect it goes.
+   * @param pbiToStage Receives the descriptor each task came from.
+   */
+  public static List<ProcessBuilderInfo> toPbis(List<ProcessBuildersDescriptor> pbds,
+      Path processLogsDir, Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage) {
+    final List<ProcessBuilderInfo> pbis = new ArrayList<>();
+    for (ProcessBuildersDescriptor pbd : pbds) {
+      for (ProcessBuilderInfo pbi : pbd.pbis) {
+        PbiBuilder b = new PbiBuilder();
+        b.setPb(pbi.pb);
+        b.setFileOps(pbi.fileOps);
+        final String name = pbi.name != null ? pbi.name : pbd.name;
+        b.setName(name);
+        // commands leave the capture files empty rather than null when they don't set them
+        String fnStdout = !StringUtils.isNullOrWhitespace(pbi.fnStdout) ? pbi.fnStdout : pbd.fnStdout;
+        String fnStderr = !StringUtils.isNullOrWhitespace(pbi.fnStderr) ? pbi.fnStderr : pbd.fnStderr;
+        if (StringUtils.isNullOrWhitespace(fnStdout) && StringUtils.isNullOrWhitespace(fnStderr)
+            && pbi.fileOps == null) {
+          String fn = String.format(Locale.ROOT, "%02d_%s.log", pbis.size() + 1,
+              String.valueOf(name).replaceAll("[^A-Za-z0-9._-]+", "-"));
+          fnStdout = fnStderr = processLogsDir.resolve(fn).toString();
+        }
+        b.setFnStdOut(fnStdout);
+        b.setFnStdErr(fnStderr);
+        b.setParallelGroup(pbi.parallelGroup != null ? pbi.parallelGroup : pbd.getParallelGroup());
+        b.setRamGb(pbi.ramGb);
+        b.setThreads(pbi.threads);
+        ProcessBuilderInfo created = b.create();
+        pbis.add(created);
+        pbiToStage.put(created, pbd);
+      }
+    }
+    return pbis;
+  }
+
+  /**
+   * Removes tasks of stages that would produce the same results as last time.
+   */
+  public static void skipUpToDate(List<ProcessBuilderInfo> pbis,
+      Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage, RunManifest manifest,
+      Consumer<String> out) {
+    List<RunnableDescription> planned = new ArrayList<>();
+    for (ProcessBuilderInfo pbi : pbis) {
+      planned.add(new RunnableDescription(new ProcessDescription.Builder().setName(pbi.name).create(),
+          null, pbi.parallelGroup, pbiToStage.get(pbi)));
+    }
+    final Set<ProcessBuildersDescriptor> upToDate =
+        manifest.findUpToDate(StageGraph.build(planned));
+    for (ProcessBuildersDescriptor pbd : upToDate) {
+      out.accept(String.format(Locale.ROOT, "Skipping %s, up to date since %s",
+          pbd.name, manifest.getFinished(pbd)));
+    }
+    if (!upToDate.isEmpty()) {
+      out.accept("");
+    }
+    pbis.removeIf(pbi -> upToDate.contains(pbiToStage.get(pbi)));
+  }
+
+  /**
+   * Removes tasks of stages whose every task finished in the run being resumed. A stage that
+   * was interrupted midway is run again from its start.
+   */
+  public static void skipFinished(List<ProcessBuilderInfo> pbis,
+      Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage, Path wd,
+      Consumer<String> out) {
+    final Set<String> done = RunCheckpoint.loadDone(wd);
+    final Set<ProcessBuildersDescriptor> unfinished = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (ProcessBuilderInfo pbi : pbis) {
+      ProcessBuildersDescriptor pbd = pbiToStage.get(pbi);
+      if (!done.contains(RunCheckpoint.key(pbd.name, describe(pbi)))) {
+        unfinished.add(pbd);
+      }
+    }
+    final List<ProcessBuildersDescriptor> finished = pbis.stream().map(pbiToStage::get)
+        .distinct().filter(pbd -> !unfinished.contains(pbd)).collect(Collectors.toList());
+    for (ProcessBuildersDescriptor pbd : finished) {
+      out.accept(String.format(Locale.ROOT, "Skipping %s, finished in the resumed run", pbd.name));
+    }
+    if (finished.isEmpty() && !done.isEmpty()) {
+      out.accept("Nothing finished in the resumed run matches the current settings, running everything");
+    }
+    out.accept("");
+    pbis.removeIf(pbi -> !unfinished.contains(pbiToStage.get(pbi)));
+  }
+
+  /**
+   * Tasks for {@link ProcessManager}, in the order given.
+   *
+   * @param printer Prints the description of a task when it starts.
+   * @param workers Where to send the tasks that can run on other machines, null to run
+   * everything here. Tasks sent to workers don't count against the resources of this
+   * machine, the workers limit how many of them run at once.
+   * @param usage Receives the resources used by the processes run on this machine, null
+   * to not measure them.
+   */
+  public static List<RunnableDescription> toRunnables(List<ProcessBuilderInfo> pbis,
+      Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage, Path wd,
+      Consumer<ProcessBuilderInfo> printer, WorkerDispatcher workers, RunUsageReport usage) {
+    List<RunnableDescription> toRun = new ArrayList<>();
+    for (final ProcessBuilderInfo pbi : pbis) {
+      if (workers != null && workers.isRemotable(pbi)) {
+        toRun.add(new RunnableDescription(describe(pbi), workers.toRunnable(pbi, printer),
+            pbi.parallelGroup, pbiToStage.get(pbi), 0, 0));
+        continue;
+      }
+      Runnable runnable = ProcessBuilderInfo.toRunnable(pbi, wd, printer,
+          usage == null ? null : u -> usage.add(pbiToStage.get(pbi), u));
+      // every external process occupies at least one core
+      toRun.add(new RunnableDescription(describe(pbi), runnable, pbi.parallelGroup,
+          pbiToStage.get(pbi), pbi.ramGb, Math.max(1, pbi.threads)));
+    }
+    return toRun;
+  }
+
+  public static ProcessDescription describe(ProcessBuilderInfo pbi) {
+    ProcessDescription.Builder b = new ProcessDescription.Builder().setName(pbi.name);
+    if (pbi.fileOps != null) {
+      b.setCommand(String.join("; ", pbi.fileOps.describe()));
+    } else {
+      if (pbi.pb.directory() != null) {
+        b.setWorkDir(pbi.pb.directory().toString());
+      }
+      if (pbi.pb.command() != null && !pbi.pb.command().isEmpty()) {
+        b.setCommand(String.join(" ", pbi.pb.command()));
+      }
+    }
+    return b.create();
+  }
+}
@@ -0,0 +1,255 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeline of a run: when each stage, parallel group and task started and stopped. Written
+ * in the trace event format of Chrome, which chrome://tracing and ui.perfetto.dev can open,
+ * to see where a run is serialized and where cores sit idle.
+ * <p>
+ * Spans that overlap in time are put on separate rows ("threads" in the viewer), each row
+ * is reused as soon as it's free, so the number of rows used at any moment is the number of
+ * tasks running in parallel.
+ */
+public class RunTrace {
+  public static final String FILE_NAME_PREFIX = "run-trace_";
+  public static final String FILE_NAME_EXT = ".json";
+
+  /**
+   * Each track is shown as a separate process in the viewer.
+   */
+  public enum Track {
+    STAGES(1, "Stages", "stage"),
+    TASKS(2, "Tasks", "slot");
+
+    final int pid;
+    final String title;
+    final String rowName;
+
+    Track(int pid, String title, String rowName) {
+      this.pid = pid;
+      this.title = title;
+      this.rowName = rowName;
+    }
+  }
+
+  private final String name;
+  private final long startNanos = System.nanoTime();
+  private final long startEpochMs = System.currentTimeMillis();
+  private final List<Event> events = new ArrayList<>();
+  private final Map<Track, BitSet> busy = new EnumMap<>(Track.class);
+  private final Map<Track, Integer> rows = new EnumMap<>(Track.class);
+
+  private static class Event {
+    final Track track;
+    final int row;
+    final String name;
+    final String category;
+    final long startUs;
+    final long durationUs;
+    final Map<String, Object> args;
+
+    Event(Track track, int row, String name, String category, long startUs, long durationUs,
+        Map<String, Object> args) {
+      this.track = track;
+      this.row = row;
+      this.name = name;
+      this.category = category;
+      this.startUs = startUs;
+      this.durationUs = durationUs;
+      this.args = args;
+    }
+  }
+
+  /**
+   * Something that runs for a while. Ended exactly once.
+   */
+  public class Span {
+    private final Track track;
+    private final int row;
+    /** Frees the row when ended. */
+    private final boolean isOwner;
+    private final String name;
+    private final String category;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Object> args = new LinkedHashMap<>();
+    private boolean isEnded = false;
+
+    private Span(Track track, int row, boolean isOwner, String name, String category) {
+      this.track = track;
+      this.row = row;
+      this.isOwner = isOwner;
+      this.name = name;
+      this.category = category;
+    }
+
+    /**
+     * Shown when the span is selected in the viewer.
+     */
+    public Span arg(String key, Object value) {
+      synchronized (RunTrace.this) {
+        args.put(key, value);
+      }
+      return this;
+    }
+
+    /**
+     * Starts a span on the same row, it must end before this one.
+     */
+    public Span child(String name, String category) {
+      return new Span(track, row, false, name, category);
+    }
+
+    public void end() {
+      final long endNanos = System.nanoTime();
+      synchronized (RunTrace.this) {
+        if (isEnded) {
+          return;
+        }
+        isEnded = true;
+        events.add(new Event(track, row, name, category, micros(startNanos),
+            TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos), new LinkedHashMap<>(args)));
+        if (isOwner) {
+          busy.get(track).clear(row);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param name Of the run, shown in the viewer.
+   */
+  public RunTrace(String name) {
+    this.name = name;
+    for (Track t : Track.values()) {
+      busy.put(t, new BitSet());
+      rows.put(t, 0);
+    }
+  }
+
+  /**
+   * @param timestamp Of the run, the same as in the name of the run log.
+   */
+  public static Path path(Path wd, String timestamp) {
+    return wd.resolve(FILE_NAME_PREFIX + timestamp + FILE_NAME_EXT);
+  }
+
+  /**
+   * Starts a span on the first free row of the track.
+   */
+  public synchronized Span begin(Track track, String name, String category) {
+    final BitSet b = busy.get(track);
+    final int row = b.nextClearBit(0);
+    b.set(row);
+    rows.put(track, Math.max(rows.get(track), row + 1));
+    return new Span(track, row, true, name, category);
+  }
+
+  /**
+   * Ended spans only, a span still running when the run was stopped is left out.
+   */
+  public synchronized int size() {
+    return events.size();
+  }
+
+  private long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos - startNanos);
+  }
+
+  public void write(Path path) throws IOException {
+    try (Writer w = new BufferedWriter(Files.newBufferedWriter(path, UTF_8))) {
+      write(w);
+    }
+  }
+
+  public synchronized void write(Writer w) throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (Track t : Track.values()) {
+      lines.add(meta(t.pid, 0, "process_name", t.title));
+      lines.add(meta(t.pid, 0, "process_sort_index", t.pid));
+      for (int row = 0; row < rows.get(t); row++) {
+        lines.add(meta(t.pid, row, "thread_name", t.rowName + " " + (row + 1)));
+        lines.add(meta(t.pid, row, "thread_sort_index", row));
+      }
+    }
+    List<Event> sorted = new ArrayList<>(events);
+    sorted.sort(Comparator.comparingLong((Event e) -> e.startUs)
+        .thenComparing(e -> -e.durationUs));
+    for (Event e : sorted) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("{\"ph\":\"X\",\"pid\":").append(e.track.pid)
+          .append(",\"tid\":").append(e.row)
+          .append(",\"ts\":").append(e.startUs)
+          .append(",\"dur\":").append(e.durationUs)
+          .append(",\"name\":").append(json(e.name))
+          .append(",\"cat\":").append(json(e.category));
+      if (!e.args.isEmpty()) {
+        sb.append(",\"args\":{");
+        String sep = "";
+        for (Map.Entry<String, Object> kv : e.args.entrySet()) {
+          sb.append(sep).append(json(kv.getKey())).append(':').append(json(kv.getValue()));
+          sep = ",";
+        }
+        sb.append('}');
+      }
+      lines.add(sb.append('}').toString());
+    }
+
+    w.write("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"run\":" + json(name)
+        + ",\"startEpochMs\":" + startEpochMs + "},\"traceEvents\":[\n");
+    for (int i = 0; i < lines.size(); i++) {
+      w.write(lines.get(i));
+      w.write(i < lines.size() - 1 ? ",\n" : "\n");
+    }
+    w.write("]}\n");
+  }
+
+  private static String meta(int pid, int tid, String name, Object value) {
+    final String key = name.endsWith("_sort_index") ? "sort_index" : "name";
+    return "{\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + tid + ",\"name\":" + json(name)
+        + ",\"args\":{\"" + key + "\":" + json(value) + "}}";
+  }
+
+  static String json(Object value) {
+    if (value == null) {
+      return "null";
+    }
+    if (value instanceof Number || value instanceof Boolean) {
+      return value.toString();
+    }
+    final String s = value.toString();
+    StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"': sb.append("\\\""); break;
+        case '\\': sb.append("\\\\"); break;
+        case '\n': sb.append("\\n"); break;
+        case '\r': sb.append("\\r"); break;
+        case '\t': sb.append("\\t"); break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
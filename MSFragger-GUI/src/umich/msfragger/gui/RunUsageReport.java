@@ -0,0 +1,184 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.util.ProcessUsage;
+
+/**
+ * Resources used by the processes of a run. Every finished process is appended to a tab
+ * separated file in the output directory right away, so the file is complete up to the
+ * point where a run failed. At the end of a run a summary table goes to the console.
+ * <p>
+ * Columns of the file: process name, exit code, wall time (ms), CPU time (ms), peak
+ * resident memory (bytes), bytes read, bytes written, command. Values that couldn't be
+ * measured are left empty, the exit code of killed processes too.
+ */
+public class RunUsageReport {
+  private static final Logger log = LoggerFactory.getLogger(RunUsageReport.class);
+  public static final String FILE_NAME_PREFIX = "resource-usage_";
+  public static final String FILE_NAME_EXT = ".tsv";
+  static final String HEADER = "name\texit_code\twall_ms\tcpu_ms\tpeak_rss_bytes"
+      + "\tread_bytes\twrite_bytes\tcommand";
+  private static final int NAME_WIDTH = 24;
+
+  private final Path path;
+  private final List<ProcessUsage> records = new ArrayList<>();
+  private final Map<ProcessUsage, ProcessBuildersDescriptor> stages = new IdentityHashMap<>();
+  private boolean isFileBroken = false;
+
+  /**
+   * @param path Where to write the records, null to only keep them in memory.
+   */
+  public RunUsageReport(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * @param timestamp Of the run, the same as in the name of the run log.
+   */
+  public static Path path(Path wd, String timestamp) {
+    return wd.resolve(FILE_NAME_PREFIX + timestamp + FILE_NAME_EXT);
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public void add(ProcessUsage u) {
+    add(null, u);
+  }
+
+  /**
+   * @param stage Where the process came from, can be null.
+   */
+  public synchronized void add(ProcessBuildersDescriptor stage, ProcessUsage u) {
+    records.add(u);
+    if (stage != null) {
+      stages.put(u, stage);
+    }
+    if (path == null || isFileBroken) {
+      return;
+    }
+    try {
+      final boolean isNew = !Files.exists(path);
+      try (Writer w = new BufferedWriter(Files.newBufferedWriter(path, UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+        if (isNew) {
+          w.write(HEADER + "\n");
+        }
+        w.write(toLine(u) + "\n");
+      }
+    } catch (IOException e) {
+      isFileBroken = true;
+      log.warn("Could not write resource usage to: " + path, e);
+    }
+  }
+
+  public synchronized List<ProcessUsage> getRecords() {
+    return new ArrayList<>(records);
+  }
+
+  /**
+   * Processes that came from one stage.
+   */
+  public synchronized List<ProcessUsage> getRecords(ProcessBuildersDescriptor stage) {
+    return records.stream().filter(u -> stages.get(u) == stage).collect(Collectors.toList());
+  }
+
+  static String toLine(ProcessUsage u) {
+    return String.join("\t", clean(u.name),
+        u.exitCode == ProcessUsage.UNKNOWN ? "" : Integer.toString(u.exitCode),
+        Long.toString(u.wallMs), known(u.cpuMs), known(u.peakRssBytes), known(u.readBytes),
+        known(u.writeBytes), clean(u.command));
+  }
+
+  private static String known(long v) {
+    return v == ProcessUsage.UNKNOWN ? "" : Long.toString(v);
+  }
+
+  private static String clean(String s) {
+    return s == null ? "" : s.replaceAll("[\t\r\n]+", " ");
+  }
+
+  /**
+   * Table with one line per process and the totals, for the console.
+   */
+  public synchronized String summary() {
+    StringBuilder sb = new StringBuilder();
+    final String fmt = "%-" + NAME_WIDTH + "s %10s %10s %6s %10s %10s %10s\n";
+    sb.append(String.format(Locale.ROOT, fmt, "Process", "Wall", "CPU", "Cores", "Peak RSS",
+        "Read", "Written"));
+    long wall = 0;
+    long cpu = 0;
+    long peak = 0;
+    long read = 0;
+    long written = 0;
+    boolean isAnySampled = false;
+    for (ProcessUsage u : records) {
+      String name = u.name == null ? "" : u.name;
+      if (name.length() > NAME_WIDTH) {
+        name = name.substring(0, NAME_WIDTH - 1) + "~";
+      }
+      sb.append(String.format(Locale.ROOT, fmt, name, duration(u.wallMs),
+          u.isSampled() ? duration(u.cpuMs) : "-",
+          u.isSampled() ? String.format(Locale.ROOT, "%.1f", u.avgCores()) : "-",
+          bytes(u.peakRssBytes), bytes(u.readBytes), bytes(u.writeBytes)));
+      wall += u.wallMs;
+      if (u.isSampled()) {
+        isAnySampled = true;
+        cpu += u.cpuMs;
+        peak = Math.max(peak, u.peakRssBytes);
+        read += u.readBytes;
+        written += u.writeBytes;
+      }
+    }
+    sb.append(String.format(Locale.ROOT, fmt, "Total (" + records.size() + " processes)",
+        duration(wall), isAnySampled ? duration(cpu) : "-", "",
+        isAnySampled ? bytes(peak) : "-", isAnySampled ? bytes(read) : "-",
+        isAnySampled ? bytes(written) : "-"));
+    if (!isAnySampled && !records.isEmpty()) {
+      sb.append("CPU, memory and I/O are only measured on Linux.\n");
+    }
+    return sb.toString();
+  }
+
+  static String duration(long ms) {
+    long s = ms / 1000;
+    if (s < 60) {
+      return String.format(Locale.ROOT, "%.1fs", ms / 1000.0);
+    }
+    if (s < 3600) {
+      return String.format(Locale.ROOT, "%dm%02ds", s / 60, s % 60);
+    }
+    return String.format(Locale.ROOT, "%dh%02dm", s / 3600, (s % 3600) / 60);
+  }
+
+  static String bytes(long b) {
+    if (b == ProcessUsage.UNKNOWN) {
+      return "-";
+    }
+    final String[] units = {"B", "KB", "MB", "GB", "TB"};
+    double v = b;
+    int u = 0;
+    while (v >= 1024 && u < units.length - 1) {
+      v /= 1024;
+      u++;
+    }
+    return u == 0 ? b + " B" : String.format(Locale.ROOT, "%.1f %s", v, units[u]);
+  }
+}
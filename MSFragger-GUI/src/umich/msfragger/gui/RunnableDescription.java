@@ -1,10 +1,21 @@
 package umich.msfragger.gui;
 
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+
 public class RunnableDescription {
 
   public final ProcessDescription description;
   public final Runnable runnable;
   public final String parallelGroup;
+  /**
+   * The descriptor this task was created from. Null for internal tasks, which are then
+   * treated as barriers by {@link StageGraph}.
+   */
+  public final ProcessBuildersDescriptor stage;
+  /** Memory the task needs, zero if not accounted for. */
+  public final int ramGb;
+  /** Threads the task needs, zero if not accounted for. */
+  public final int threads;
 
   public RunnableDescription(ProcessDescription description,
       Runnable runnable) {
@@ -14,8 +25,24 @@ public class RunnableDescription {
   public RunnableDescription(
       ProcessDescription description,
       Runnable runnable, String parallelGroup) {
+    this(description, runnable, parallelGroup, null);
+  }
+
+  public RunnableDescription(
+      ProcessDescription description,
+      Runnable runnable, String parallelGroup, ProcessBuildersDescriptor stage) {
+    this(description, runnable, parallelGroup, stage, 0, 0);
+  }
+
+  public RunnableDescription(
+      ProcessDescription description,
+      Runnable runnable, String parallelGroup, ProcessBuildersDescriptor stage,
+      int ramGb, int threads) {
     this.description = description;
     this.runnable = runnable;
     this.parallelGroup = parallelGroup;
+    this.stage = stage;
+    this.ramGb = ramGb;
+    this.threads = threads;
   }
 }
@@ -0,0 +1,185 @@
+package umich.msfragger.gui;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+
+/**
+ * Dependency graph between stages of a run. A stage is a run of consecutive
+ * {@link RunnableDescription}s coming from the same {@link ProcessBuildersDescriptor}.
+ * <p>
+ * A stage depends on an earlier stage if one of them writes a path the other one reads or
+ * writes. Paths are compared by prefix, so declaring a directory covers everything inside it.
+ * Stages that didn't declare their inputs and outputs act as barriers.
+ */
+public class StageGraph {
+
+  public static class Stage {
+    public final int index;
+    public final String name;
+    /** Null for internal tasks. */
+    public final ProcessBuildersDescriptor descriptor;
+    /** Null if not declared. */
+    public final Set<Path> inputs;
+    /** Null if not declared. */
+    public final Set<Path> outputs;
+    /** Groups are run one after another, tasks within each group in parallel. */
+    public final List<List<RunnableDescription>> groups;
+    public final Set<Stage> deps = new LinkedHashSet<>();
+    private final Set<Path> inputsWithParents;
+    private final Set<Path> outputsWithParents;
+
+    Stage(int index, String name, ProcessBuildersDescriptor descriptor, Set<Path> inputs,
+        Set<Path> outputs, List<List<RunnableDescription>> groups) {
+      this.index = index;
+      this.name = name;
+      this.descriptor = descriptor;
+      this.inputs = inputs;
+      this.outputs = outputs;
+      this.groups = groups;
+      this.inputsWithParents = inputs == null ? null : withParents(inputs);
+      this.outputsWithParents = outputs == null ? null : withParents(outputs);
+    }
+
+    public boolean isBarrier() {
+      return inputs == null || outputs == null;
+    }
+
+    public List<RunnableDescription> tasks() {
+      return groups.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+      return "#" + index + " " + name;
+    }
+  }
+
+  private final List<Stage> stages;
+
+  private StageGraph(List<Stage> stages) {
+    this.stages = Collections.unmodifiableList(stages);
+  }
+
+  public List<Stage> getStages() {
+    return stages;
+  }
+
+  /**
+   * @param runDescs In the order they would be executed sequentially.
+   */
+  public static StageGraph build(List<RunnableDescription> runDescs) {
+    List<Stage> stages = new ArrayList<>();
+    int i = 0;
+    while (i < runDescs.size()) {
+      final ProcessBuildersDescriptor pbd = runDescs.get(i).stage;
+      int j = i + 1;
+      while (pbd != null && j < runDescs.size() && runDescs.get(j).stage == pbd) {
+        j++;
+      }
+      List<RunnableDescription> rds = runDescs.subList(i, j);
+      String name = pbd != null ? pbd.name : rds.get(0).description.name;
+      Set<Path> inputs = pbd != null && pbd.isIoDeclared() ? pbd.getInputs() : null;
+      Set<Path> outputs = pbd != null && pbd.isIoDeclared() ? pbd.getOutputs() : null;
+      stages.add(new Stage(stages.size(), name, pbd, inputs, outputs, splitIntoGroups(rds)));
+      i = j;
+    }
+
+    for (int k = 1; k < stages.size(); k++) {
+      Stage later = stages.get(k);
+      for (int m = 0; m < k; m++) {
+        Stage earlier = stages.get(m);
+        if (isConflict(earlier, later)) {
+          later.deps.add(earlier);
+        }
+      }
+    }
+    return new StageGraph(stages);
+  }
+
+  /**
+   * Contiguous tasks with the same parallel group form a group, tasks without a group or
+   * marked with {@link ProcessBuilderInfo#GROUP_SEQUENTIAL} are groups of their own.
+   */
+  static List<List<RunnableDescription>> splitIntoGroups(List<RunnableDescription> rds) {
+    List<List<RunnableDescription>> groups = new ArrayList<>();
+    List<RunnableDescription> group = new ArrayList<>();
+    for (RunnableDescription rd : rds) {
+      if (!group.isEmpty() && !isSameParallelGroup(group.get(group.size() - 1), rd)) {
+        groups.add(group);
+        group = new ArrayList<>();
+      }
+      group.add(rd);
+    }
+    if (!group.isEmpty()) {
+      groups.add(group);
+    }
+    return groups;
+  }
+
+  private static boolean isSameParallelGroup(RunnableDescription a, RunnableDescription b) {
+    if (a.parallelGroup == null || ProcessBuilderInfo.GROUP_SEQUENTIAL.equals(a.parallelGroup)) {
+      return false;
+    }
+    return a.parallelGroup.equals(b.parallelGroup);
+  }
+
+  static boolean isConflict(Stage earlier, Stage later) {
+    if (earlier.isBarrier() || later.isBarrier()) {
+      return true;
+    }
+    return overlaps(earlier.outputs, earlier.outputsWithParents, later.inputs)
+        || overlaps(earlier.outputs, earlier.outputsWithParents, later.outputs)
+        || overlaps(earlier.inputs, earlier.inputsWithParents, later.outputs);
+  }
+
+  /**
+   * True if any of `paths` is equal to, a parent of or a child of any path in `set`.
+   */
+  private static boolean overlaps(Set<Path> set, Set<Path> setWithParents, Set<Path> paths) {
+    for (Path p : paths) {
+      if (setWithParents.contains(p)) {
+        return true;
+      }
+      for (Path parent = p.getParent(); parent != null; parent = parent.getParent()) {
+        if (set.contains(parent)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static Set<Path> withParents(Set<Path> paths) {
+    Set<Path> s = new HashSet<>();
+    for (Path p : paths) {
+      for (Path cur = p; cur != null && s.add(cur); cur = cur.getParent()) {
+        // all the parents are added by the loop condition
+      }
+    }
+    return s;
+  }
+
+  public String describe() {
+    StringBuilder sb = new StringBuilder();
+    for (Stage s : stages) {
+      sb.append(s).append(" (").append(s.tasks().size()).append(" tasks)");
+      if (s.isBarrier()) {
+        sb.append(" [barrier]");
+      }
+      if (!s.deps.isEmpty()) {
+        sb.append(" waits for: ").append(
+            s.deps.stream().map(Stage::toString).collect(Collectors.joining(", ")));
+      }
+      sb.append("\n");
+    }
+    return sb.toString();
+  }
+}
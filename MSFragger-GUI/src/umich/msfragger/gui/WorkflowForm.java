@@ -0,0 +1,54 @@
+package umich.msfragger.gui;
+
+import java.util.Map;
+import umich.msfragger.params.crystalc.CrystalcPanel;
+import umich.msfragger.params.fragger.FraggerMigPanel;
+import umich.msfragger.params.imquant.QuantJPanel;
+import umich.msfragger.params.philosopher.ReportPanel;
+import umich.msfragger.params.ptmshepherd.PtmshepherdJPanel;
+import umich.msfragger.params.umpire.UmpirePanel;
+
+/**
+ * Settings that {@link RunPlanner} turns into the commands of a run. Implemented by the main
+ * window, and by {@link FragpipeHeadless} from a saved config file.
+ */
+public interface WorkflowForm {
+
+  Map<String, LcmsFileGroup> getLcmsFileGroups();
+
+  String getMsfraggerBin();
+
+  String getPhilosopherBin();
+
+  String getFastaPath();
+
+  String getDecoyTag();
+
+  boolean isRunUmpireSe();
+
+  UmpirePanel getUmpirePanel();
+
+  FraggerMigPanel getFraggerPanel();
+
+  CrystalcPanel getCrystalcPanel();
+
+  boolean isRunPeptideProphet();
+
+  String getPeptideProphetCmd();
+
+  boolean isCombinedPepxml();
+
+  boolean isRunProteinProphet();
+
+  String getProteinProphetCmd();
+
+  boolean isProcessGroupsSeparately();
+
+  ReportPanel getReportPanel();
+
+  QuantJPanel getQuantPanel();
+
+  PtmshepherdJPanel getPtmshepherdPanel();
+
+  boolean isGenerateSpecLib();
+}
@@ -0,0 +1,262 @@
+package umich.msfragger.gui;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs independent workflows one after another, or several at a time. A job is planned
+ * before it's added, so it runs with the settings it had at that moment no matter what
+ * is changed afterwards. Running jobs share the resource budget of {@link ProcessManager},
+ * so with more than one job at a time the tasks of the next job use the memory and cores
+ * the current one leaves idle. A failed job doesn't stop the others.
+ */
+public class WorkflowQueue {
+  private static final Logger log = LoggerFactory.getLogger(WorkflowQueue.class);
+
+  public enum State {QUEUED, RUNNING, DONE, FAILED, CANCELLED}
+
+  public static class Job {
+    public final String name;
+    /** Output directory, also where the run checkpoint is kept. */
+    public final Path wd;
+    public final List<RunnableDescription> runDescs;
+    public final boolean isResume;
+    private volatile State state = State.QUEUED;
+    private volatile Throwable failure;
+    private CompletableFuture<Void> running;
+    /** Cancelled while being started. */
+    private boolean isCancelRequested = false;
+    /** The listener has been told that the job finished. */
+    private boolean isFinishReported = false;
+
+    private Job(String name, Path wd, List<RunnableDescription> runDescs, boolean isResume) {
+      this.name = name;
+      this.wd = wd;
+      this.runDescs = Collections.unmodifiableList(new ArrayList<>(runDescs));
+      this.isResume = isResume;
+    }
+
+    public State getState() {
+      return state;
+    }
+
+    /**
+     * @return What made the job fail, null unless the state is {@link State#FAILED}.
+     */
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    public boolean isFinished() {
+      State s = state;
+      return s == State.DONE || s == State.FAILED || s == State.CANCELLED;
+    }
+
+    @Override
+    public String toString() {
+      return name + " [" + state + "]";
+    }
+  }
+
+  private final Function<Job, CompletableFuture<Void>> runner;
+  private final Consumer<Job> listener;
+  private final List<Job> jobs = new ArrayList<>();
+  private int maxConcurrent;
+  private int running = 0;
+
+  /**
+   * Runs jobs with {@link ProcessManager}.
+   *
+   * @param maxConcurrent How many jobs can run at the same time.
+   * @param listener Notified every time a job changes state, can be null.
+   */
+  public WorkflowQueue(int maxConcurrent, Consumer<Job> listener) {
+    this(maxConcurrent, listener,
+        job -> ProcessManager.get().start(job.name, job.runDescs, job.wd, job.isResume));
+  }
+
+  /**
+   * @param runner Starts a job, the returned future completes when the job has finished.
+   * Cancelling the future must stop the job.
+   */
+  WorkflowQueue(int maxConcurrent, Consumer<Job> listener,
+      Function<Job, CompletableFuture<Void>> runner) {
+    this.maxConcurrent = Math.max(1, maxConcurrent);
+    this.listener = listener;
+    this.runner = runner;
+  }
+
+  /**
+   * @param runDescs Planned tasks of the job, copied.
+   * @throws IllegalArgumentException If an unfinished job already writes to the same
+   * directory.
+   */
+  public Job add(String name, Path wd, List<RunnableDescription> runDescs, boolean isResume) {
+    final Job job = new Job(name, wd, runDescs, isResume);
+    synchronized (this) {
+      for (Job other : jobs) {
+        if (!other.isFinished() && other.wd.equals(wd)) {
+          throw new IllegalArgumentException(String.format(
+              "Jobs '%s' and '%s' would both write to: %s", other.name, name, wd));
+        }
+      }
+      jobs.add(job);
+    }
+    log.debug("Queued job '{}' in: {}", name, wd);
+    notifyListener(job);
+    dispatch();
+    return job;
+  }
+
+  public synchronized List<Job> getJobs() {
+    return new ArrayList<>(jobs);
+  }
+
+  public synchronized int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  /**
+   * Takes effect right away when raised. When lowered, running jobs are let to finish.
+   */
+  public void setMaxConcurrent(int maxConcurrent) {
+    synchronized (this) {
+      this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+    dispatch();
+  }
+
+  /**
+   * Removes a job from the queue if it hasn't started, stops it if it's running. Does nothing
+   * if the job has already finished.
+   */
+  public void cancel(Job job) {
+    CompletableFuture<Void> f;
+    final boolean isDequeued;
+    synchronized (this) {
+      if (job.isFinished()) {
+        return;
+      }
+      isDequeued = job.state == State.QUEUED;
+      if (isDequeued) {
+        job.state = State.CANCELLED;
+        f = null;
+      } else {
+        f = job.running;
+        if (f == null && job.state == State.RUNNING) {
+          job.isCancelRequested = true;
+        }
+      }
+    }
+    if (f != null) {
+      f.cancel(true);
+    } else if (isDequeued) {
+      reportFinished(job);
+    }
+  }
+
+  public void cancelAll() {
+    // queued jobs first, so that none of them starts in place of a cancelled running one
+    List<Job> all = getJobs();
+    all.stream().filter(j -> j.state == State.QUEUED).forEach(this::cancel);
+    all.stream().filter(j -> j.state == State.RUNNING).forEach(this::cancel);
+  }
+
+  /**
+   * Waits until all added jobs have finished and the listener has been told so.
+   *
+   * @return True if all of them finished successfully.
+   */
+  public synchronized boolean awaitAll() throws InterruptedException {
+    while (jobs.stream().anyMatch(j -> !j.isFinishReported)) {
+      wait();
+    }
+    return jobs.stream().allMatch(j -> j.state == State.DONE);
+  }
+
+  private void dispatch() {
+    List<Job> toStart = new ArrayList<>();
+    synchronized (this) {
+      for (Job job : jobs) {
+        if (running >= maxConcurrent) {
+          break;
+        }
+        if (job.state == State.QUEUED) {
+          job.state = State.RUNNING;
+          running++;
+          toStart.add(job);
+        }
+      }
+    }
+    for (Job job : toStart) {
+      log.debug("Starting job '{}'", job.name);
+      notifyListener(job);
+      CompletableFuture<Void> f;
+      try {
+        f = runner.apply(job);
+      } catch (RuntimeException e) {
+        f = new CompletableFuture<>();
+        f.completeExceptionally(e);
+      }
+      boolean isCancelRequested;
+      synchronized (this) {
+        job.running = f;
+        isCancelRequested = job.isCancelRequested;
+      }
+      if (isCancelRequested) {
+        f.cancel(true);
+      }
+      f.whenComplete((v, t) -> onFinished(job, t));
+    }
+  }
+
+  private void onFinished(Job job, Throwable t) {
+    synchronized (this) {
+      if (job.isFinished()) {
+        return;
+      }
+      Throwable cause = t instanceof CompletionException && t.getCause() != null
+          ? t.getCause() : t;
+      if (cause == null) {
+        job.state = State.DONE;
+      } else if (cause instanceof CancellationException) {
+        job.state = State.CANCELLED;
+      } else {
+        job.state = State.FAILED;
+        job.failure = cause;
+      }
+      job.running = null;
+      running--;
+    }
+    log.debug("Job '{}' finished: {}", job.name, job.state);
+    reportFinished(job);
+    dispatch();
+  }
+
+  private void reportFinished(Job job) {
+    notifyListener(job);
+    synchronized (this) {
+      job.isFinishReported = true;
+      notifyAll();
+    }
+  }
+
+  private void notifyListener(Job job) {
+    if (listener != null) {
+      try {
+        listener.accept(job);
+      } catch (Exception e) {
+        log.error("Error in job state listener", e);
+      }
+    }
+  }
+}
@@ -5,8 +5,22 @@ package umich.msfragger.messages;
  */
 public class MessageRun {
   public final boolean isDryRun;
+  /** Don't run stages whose results are up to date, see {@code RunManifest}. */
+  public final boolean isSkipUpToDate;
+  /** Continue an unfinished run, see {@code RunCheckpoint}. */
+  public final boolean isResume;
 
   public MessageRun(boolean isDryRun) {
+    this(isDryRun, false);
+  }
+
+  public MessageRun(boolean isDryRun, boolean isSkipUpToDate) {
+    this(isDryRun, isSkipUpToDate, false);
+  }
+
+  public MessageRun(boolean isDryRun, boolean isSkipUpToDate, boolean isResume) {
     this.isDryRun = isDryRun;
+    this.isSkipUpToDate = isSkipUpToDate;
+    this.isResume = isResume;
   }
 }
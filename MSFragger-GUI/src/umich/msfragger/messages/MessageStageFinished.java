@@ -0,0 +1,14 @@
+package umich.msfragger.messages;
+
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+
+/**
+ * Posted when all the tasks of a stage finished successfully.
+ */
+public class MessageStageFinished {
+  public final ProcessBuildersDescriptor descriptor;
+
+  public MessageStageFinished(ProcessBuildersDescriptor descriptor) {
+    this.descriptor = descriptor;
+  }
+}
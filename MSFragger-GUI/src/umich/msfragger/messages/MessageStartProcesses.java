@@ -1,12 +1,23 @@
 package umich.msfragger.messages;
 
+import java.nio.file.Path;
 import java.util.List;
 import umich.msfragger.gui.RunnableDescription;
 
 public class MessageStartProcesses {
   public final List<RunnableDescription> runDescs;
+  /** Where to keep the run checkpoint, null to not keep one. */
+  public final Path checkpointDir;
+  public final boolean isResume;
 
   public MessageStartProcesses(List<RunnableDescription> pbi) {
+    this(pbi, null, false);
+  }
+
+  public MessageStartProcesses(List<RunnableDescription> pbi, Path checkpointDir,
+      boolean isResume) {
     this.runDescs = pbi;
+    this.checkpointDir = checkpointDir;
+    this.isResume = isResume;
   }
 }
@@ -95,6 +95,12 @@ public class ThisAppProps extends Properties {
 
   public static final String PROP_MGF_WARNING = "warn.mgf";
 
+  /** Limits of text kept in the GUI console, the run log on disk has all of it. */
+  public static final String PROP_CONSOLE_MAX_LINES = "console.max.lines";
+  public static final String PROP_CONSOLE_MAX_CHARS = "console.max.chars";
+  public static final String PROP_RUN_SKIP_UP_TO_DATE = "run.skip.up-to-date";
+  public static final String PROP_RUN_RECORD_DIAGNOSTICS = "run.record.diagnostics";
+
   public static final String JAR_FILE_AS_RESOURCE_EXT = ".jazz";
   public static final Path UNPACK_TEMP_SUBDIR = Paths.get("fragpipe");
   public static final String DEFAULT_LCMS_EXP_NAME = "";
@@ -0,0 +1,119 @@
+package umich.msfragger.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+
+/**
+ * Starts a java program whose arguments are read from a file, one argument per line, so
+ * that the length of the command line doesn't depend on the number of input files.
+ * <p>
+ * The file mirrors the tail of a java command line. It starts either with {@code -jar} and
+ * the path to the jar, or with {@code -cp}, the classpath and the main class. All the
+ * following lines are passed to the main method as is.
+ * <p>
+ * Runs in a separate JVM started by FragPipe, the program is loaded with its own class
+ * loader so that classes of FragPipe don't interfere with it. Only uses the JDK, as nothing
+ * else is on the classpath of that JVM.
+ */
+public class ArgFileLauncher {
+
+  private ArgFileLauncher() {}
+
+  public static void main(String[] args) throws Throwable {
+    if (args.length != 1) {
+      throw new IllegalArgumentException("Must provide exactly one argument - the argument file.");
+    }
+    List<String> lines = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+    if (lines.size() < 2) {
+      throw new IllegalArgumentException("Argument file must start with '-jar <file>' or '-cp <classpath> <main class>'");
+    }
+
+    final List<URL> urls = new ArrayList<>();
+    final String mainClass;
+    int argsStart;
+    if ("-jar".equals(lines.get(0))) {
+      Path jar = Paths.get(unquote(lines.get(1)));
+      urls.add(jar.toUri().toURL());
+      try (JarFile jf = new JarFile(jar.toFile())) {
+        mainClass = jf.getManifest() == null ? null
+            : jf.getManifest().getMainAttributes().getValue("Main-Class");
+      }
+      if (mainClass == null) {
+        throw new IllegalArgumentException("No Main-Class in manifest of: " + jar);
+      }
+      argsStart = 2;
+    } else if ("-cp".equals(lines.get(0)) || "-classpath".equals(lines.get(0))) {
+      if (lines.size() < 3) {
+        throw new IllegalArgumentException("Main class is missing after the classpath");
+      }
+      for (String entry : unquote(lines.get(1)).split(File.pathSeparator)) {
+        if (!entry.isEmpty()) {
+          urls.add(Paths.get(entry).toUri().toURL());
+        }
+      }
+      mainClass = lines.get(2);
+      argsStart = 3;
+    } else {
+      throw new IllegalArgumentException("Argument file must start with '-jar' or '-cp', found: " + lines.get(0));
+    }
+
+    String[] programArgs = lines.subList(argsStart, lines.size()).toArray(new String[0]);
+    ClassLoader parent = ClassLoader.getSystemClassLoader().getParent();
+    URLClassLoader cl = new URLClassLoader(urls.toArray(new URL[0]), parent);
+    Thread.currentThread().setContextClassLoader(cl);
+    Method main = Class.forName(mainClass, true, cl).getMethod("main", String[].class);
+    try {
+      main.invoke(null, (Object) programArgs);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Writes an argument file for the given program. The first lines come from {@code target},
+   * e.g. {@code -jar} and the jar, then the program arguments.
+   */
+  public static void write(Path argFile, List<String> target, List<String> programArgs)
+      throws IOException {
+    List<String> lines = new ArrayList<>(target.size() + programArgs.size());
+    lines.addAll(target);
+    lines.addAll(programArgs);
+    for (String line : lines) {
+      if (line.indexOf('\n') >= 0 || line.indexOf('\r') >= 0) {
+        throw new IllegalArgumentException("Arguments can't contain line breaks: " + line);
+      }
+    }
+    Files.write(argFile, lines, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Location of this class, to be put on the classpath of the JVM running the launcher.
+   */
+  public static Path classpathOfLauncher() {
+    try {
+      return Paths.get(ArgFileLauncher.class.getProtectionDomain().getCodeSource()
+          .getLocation().toURI()).toAbsolutePath().normalize();
+    } catch (Exception e) {
+      throw new IllegalStateException("Could not determine the location of FragPipe classes", e);
+    }
+  }
+
+  /**
+   * Classpath strings are quoted on Windows when put on a command line.
+   */
+  private static String unquote(String s) {
+    return s.length() >= 2 && s.startsWith("\"") && s.endsWith("\"")
+        ? s.substring(1, s.length() - 1) : s;
+  }
+}
@@ -0,0 +1,451 @@
+package umich.msfragger.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Guesses the decoy tag of a sequence database from the headers of its entries. Headers are
+ * split into columns at '|', prefixes and suffixes found in 30% to 70% of the entries of a
+ * column are the candidates.
+ */
+public class DecoyTagDetector {
+  /** Prefixes and suffixes longer than this are not looked for. */
+  public static final int MAX_DEPTH = 16;
+  private static final double PCT_MIN = 0.3;
+  private static final double PCT_MAX = 0.7;
+  static final int MIN_CHUNK_SIZE = 1 << 20;
+  static final int MAX_CHUNK_SIZE = 64 << 20;
+  /** How far past the end of its chunk a header is expected to be finished. */
+  private static final int HEADER_OVERHANG = 64 * 1024;
+
+  /**
+   * Candidates for each column of the headers, the best first. Only prefixes in the first
+   * column are supported by downstream tools.
+   */
+  public static class Candidates {
+    public final List<List<Tuple2<String, Double>>> prefixesByCol;
+    public final List<List<Tuple2<String, Double>>> suffixesByCol;
+
+    Candidates(List<List<Tuple2<String, Double>>> prefixesByCol,
+        List<List<Tuple2<String, Double>>> suffixesByCol) {
+      this.prefixesByCol = prefixesByCol;
+      this.suffixesByCol = suffixesByCol;
+    }
+  }
+
+  /**
+   * Prefix and suffix counts of each column of the headers.
+   */
+  private static class Counters {
+    final List<PrefixCounter> fwd = new ArrayList<>();
+    final List<PrefixCounter> rev = new ArrayList<>();
+    final List<long[]> totals = new ArrayList<>();
+
+    void add(int col, CharSequence descriptor) {
+      while (fwd.size() <= col) {
+        fwd.add(new PrefixCounter(PrefixCounter.Mode.FWD, MAX_DEPTH));
+        rev.add(new PrefixCounter(PrefixCounter.Mode.REV, MAX_DEPTH));
+        totals.add(new long[1]);
+      }
+      fwd.get(col).add(descriptor);
+      rev.get(col).add(descriptor);
+      totals.get(col)[0]++;
+    }
+
+    void addAll(Counters other) {
+      for (int col = 0; col < other.fwd.size(); col++) {
+        if (col < fwd.size()) {
+          fwd.get(col).addAll(other.fwd.get(col));
+          rev.get(col).addAll(other.rev.get(col));
+          totals.get(col)[0] += other.totals.get(col)[0];
+        } else {
+          fwd.add(other.fwd.get(col));
+          rev.add(other.rev.get(col));
+          totals.add(other.totals.get(col));
+        }
+      }
+    }
+
+    Candidates candidates() {
+      List<List<Tuple2<String, Double>>> prefixesByCol = new ArrayList<>();
+      List<List<Tuple2<String, Double>>> suffixesByCol = new ArrayList<>();
+      for (int col = 0; col < fwd.size(); col++) {
+        final long total = totals.get(col)[0];
+        // prefixes are collected walking up from the last character, so they are reversed
+        prefixesByCol.add(cleanUp(collect(fwd.get(col), total, true)));
+        suffixesByCol.add(cleanUp(collect(rev.get(col), total, false)));
+      }
+      return new Candidates(prefixesByCol, suffixesByCol);
+    }
+  }
+
+  /**
+   * A part of a char array, to feed the counters without making strings.
+   */
+  private static class CharSlice implements CharSequence {
+    char[] chars = new char[256];
+    int from;
+    int to;
+
+    @Override
+    public int length() {
+      return to - from;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return chars[from + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(chars, from + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, from, to - from);
+    }
+  }
+
+  private DecoyTagDetector() {}
+
+  /**
+   * Splits the header of every entry at '|'.
+   *
+   * @return The descriptors of each column.
+   */
+  public static List<List<String>> readHeaderColumns(Path fasta) throws IOException {
+    List<List<String>> ordered = new ArrayList<>();
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(Files.newInputStream(fasta),
+        StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        if (!line.startsWith(">")) {
+          continue;
+        }
+        int pos = 1, next;
+        int depth = 1;
+        while ((next = line.indexOf('|', pos)) >= 0 || pos < line.length() - 1) {
+          if (next < 0) {
+            next = line.length();
+          }
+          String desc = line.substring(pos, next).trim();
+          if (ordered.size() < depth) {
+            ordered.add(new ArrayList<>());
+          }
+          ordered.get(depth - 1).add(desc);
+          pos = next + 1;
+          depth++;
+        }
+      }
+    }
+    return ordered;
+  }
+
+  public static Candidates detect(List<List<String>> columns) {
+    Counters counters = new Counters();
+    for (int col = 0; col < columns.size(); col++) {
+      for (String descriptor : columns.get(col)) {
+        counters.add(col, descriptor);
+      }
+    }
+    return counters.candidates();
+  }
+
+  /**
+   * Same as {@code detect(readHeaderColumns(fasta))}, but the headers are counted as the file
+   * is read, nothing is kept per entry. The file is memory-mapped and split into chunks at
+   * entry boundaries, the chunks are scanned in parallel.
+   *
+   * @param progress Receives the fraction of the file scanned so far, from the scanning
+   * threads. Can be null.
+   * @param isCancelled Checked regularly, the scan stops with {@link CancellationException}
+   * once it returns true. Can be null.
+   */
+  public static Candidates scan(Path fasta, int threads, DoubleConsumer progress,
+      BooleanSupplier isCancelled) throws IOException {
+    try (FileChannel ch = FileChannel.open(fasta, StandardOpenOption.READ)) {
+      final long size = ch.size();
+      final long chunkSize = Math.max(MIN_CHUNK_SIZE,
+          Math.min(MAX_CHUNK_SIZE, size / (Math.max(1, threads) * 4L) + 1));
+      return scan(ch, chunkSize, threads, progress, isCancelled);
+    }
+  }
+
+  static Candidates scan(FileChannel ch, long chunkSize, int threads, DoubleConsumer progress,
+      BooleanSupplier isCancelled) throws IOException {
+    final long size = ch.size();
+    final int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+    final int workers = Math.max(1, Math.min(threads, chunks));
+    final AtomicInteger nextChunk = new AtomicInteger(0);
+    final AtomicLong scanned = new AtomicLong(0);
+    final BooleanSupplier cancelled = isCancelled != null ? isCancelled : () -> false;
+
+    ExecutorService exec = Executors.newFixedThreadPool(workers, r -> {
+      Thread t = new Thread(r, "decoy-tag-scan");
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      List<Future<Counters>> futures = new ArrayList<>();
+      for (int i = 0; i < workers; i++) {
+        futures.add(exec.submit(() -> {
+          Counters counters = new Counters();
+          CharSlice slice = new CharSlice();
+          int chunk;
+          while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+            if (cancelled.getAsBoolean()) {
+              throw new CancellationException("Decoy tag detection was cancelled");
+            }
+            final long from = chunk * chunkSize;
+            final long to = Math.min(size, from + chunkSize);
+            scanChunk(ch, from, to, size, counters, slice, cancelled);
+            long done = scanned.addAndGet(to - from);
+            if (progress != null) {
+              progress.accept(done / (double) size);
+            }
+          }
+          return counters;
+        }));
+      }
+      Counters all = new Counters();
+      for (Future<Counters> f : futures) {
+        all.addAll(f.get());
+      }
+      return all.candidates();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Decoy tag detection was interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof CancellationException) {
+        throw (CancellationException) e.getCause();
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Error while scanning headers", e.getCause());
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  /**
+   * Counts the headers starting in {@code [from, to)}. A header starts with '>' at the
+   * beginning of a line, it may end past {@code to}, the next chunk then skips the rest of it.
+   */
+  private static void scanChunk(FileChannel ch, long from, long to, long size, Counters counters,
+      CharSlice slice, BooleanSupplier cancelled) throws IOException {
+    // the byte before the chunk tells if the chunk starts at the beginning of a line
+    final long mapFrom = from == 0 ? 0 : from - 1;
+    MappedByteBuffer buf = ch.map(MapMode.READ_ONLY, mapFrom,
+        Math.min(size, to + HEADER_OVERHANG) - mapFrom);
+    final int end = (int) (to - mapFrom);
+    int pos = (int) (from - mapFrom);
+    boolean isLineStart = from == 0 || isLineBreak(buf.get(0));
+    int headers = 0;
+    while (pos < end) {
+      if (isLineStart && buf.get(pos) == '>') {
+        final int limit = buf.limit();
+        int eol = pos + 1;
+        while (eol < limit && !isLineBreak(buf.get(eol))) {
+          eol++;
+        }
+        if (eol == limit && mapFrom + limit < size) {
+          // the header goes on past the mapped part, rare enough to just read it on its own
+          countHeader(readLine(ch, mapFrom + pos, size), counters, slice);
+        } else {
+          countHeader(buf, pos, eol, counters, slice);
+        }
+        pos = eol;
+        if (++headers % 4096 == 0 && cancelled.getAsBoolean()) {
+          throw new CancellationException("Decoy tag detection was cancelled");
+        }
+        continue;
+      }
+      isLineStart = isLineBreak(buf.get(pos));
+      pos++;
+    }
+  }
+
+  /**
+   * Lines end the same as for {@link BufferedReader#readLine()}.
+   */
+  private static boolean isLineBreak(byte b) {
+    return b == '\n' || b == '\r';
+  }
+
+  private static ByteBuffer readLine(FileChannel ch, long from, long size)
+      throws IOException {
+    long len = Math.min(size - from, 2L * HEADER_OVERHANG);
+    while (true) {
+      MappedByteBuffer buf = ch.map(MapMode.READ_ONLY, from, len);
+      for (int i = 0; i < buf.limit(); i++) {
+        if (isLineBreak(buf.get(i))) {
+          buf.limit(i);
+          return buf;
+        }
+      }
+      if (from + len >= size || len >= Integer.MAX_VALUE) {
+        return buf;
+      }
+      len = Math.min(Math.min(size - from, Integer.MAX_VALUE), len * 2);
+    }
+  }
+
+  private static void countHeader(ByteBuffer line, Counters counters,
+      CharSlice slice) {
+    countHeader(line, 0, line.limit(), counters, slice);
+  }
+
+  /**
+   * Splits a header into columns at '|' exactly like {@link #readHeaderColumns}, including
+   * that the last column is only counted if it has at least 2 characters.
+   *
+   * @param from Position of the '>'.
+   * @param to Position of the line break, or the end of the file.
+   */
+  private static void countHeader(ByteBuffer buf, int from, int to, Counters counters,
+      CharSlice slice) {
+    final int len = decode(buf, from, to, slice);
+    final char[] line = slice.chars;
+    int pos = 1;
+    int col = 0;
+    while (true) {
+      int next = pos;
+      while (next < len && line[next] != '|') {
+        next++;
+      }
+      if (next == len && pos >= len - 1) {
+        break;
+      }
+      int a = pos;
+      int b = next;
+      while (a < b && line[a] <= ' ') {
+        a++;
+      }
+      while (b > a && line[b - 1] <= ' ') {
+        b--;
+      }
+      slice.from = a;
+      slice.to = b;
+      counters.add(col++, slice);
+      if (next == len) {
+        break;
+      }
+      pos = next + 1;
+    }
+  }
+
+  /**
+   * Decodes the line into the array of the slice.
+   *
+   * @return Number of chars.
+   */
+  private static int decode(ByteBuffer buf, int from, int to, CharSlice slice) {
+    final int n = to - from;
+    if (slice.chars.length < n) {
+      slice.chars = new char[Math.max(n, slice.chars.length * 2)];
+    }
+    for (int i = 0; i < n; i++) {
+      byte b = buf.get(from + i);
+      if (b < 0) {
+        // not ASCII, decode the whole line properly
+        byte[] bytes = new byte[n];
+        for (int k = 0; k < n; k++) {
+          bytes[k] = buf.get(from + k);
+        }
+        String s = new String(bytes, StandardCharsets.UTF_8);
+        if (slice.chars.length < s.length()) {
+          slice.chars = new char[s.length()];
+        }
+        s.getChars(0, s.length(), slice.chars, 0);
+        return s.length();
+      }
+      slice.chars[i] = (char) b;
+    }
+    return n;
+  }
+
+  private static List<Tuple2<String, Double>> collect(PrefixCounter counter, long total,
+      boolean isReverse) {
+    final List<Tuple2<String, Double>> result = new ArrayList<>();
+    final StringBuilder sb = new StringBuilder();
+    counter.iterPrefixCounts(MAX_DEPTH, (n, mode) -> {
+      if (n.getTerminals() > 0) {
+        return; // a prefix or a suffix can never be the whole protein id
+      }
+      double pct = n.getHits() / (double) total;
+      if (pct < PCT_MIN || pct > PCT_MAX) {
+        return;
+      }
+      sb.setLength(0);
+      for (PrefixCounter.Node cur = n; cur.getDepth() > 0; cur = cur.getParent()) {
+        sb.append(cur.getCh());
+      }
+      if (sb.length() < 2) {
+        return; // nothing shorter than 2 characters
+      }
+      result.add(new Tuple2<>(isReverse ? sb.reverse().toString() : sb.toString(), pct));
+    });
+    return result;
+  }
+
+  /**
+   * Sorts the candidates, the ones closest to half of the entries first, and drops those that
+   * are only a part of a longer candidate found in as many entries.
+   */
+  static List<Tuple2<String, Double>> cleanUp(List<Tuple2<String, Double>> candidates) {
+    List<Tuple2<String, Double>> result = new ArrayList<>();
+
+    Collections.sort(candidates, (t1, t2) -> {
+      int cmp0 = Double.compare(Math.abs(t1.item2 - 0.5), Math.abs(t2.item2 - 0.5));
+      if (cmp0 == 0) {
+        cmp0 = Integer.compare(t1.item1.length(), t2.item1.length());
+      }
+      return cmp0;
+    });
+
+    for (int i = 0; i < candidates.size(); i++) {
+      Tuple2<String, Double> cur = candidates.get(i);
+      String prefix = cur.item1;
+      double pct = cur.item2;
+
+      if (prefix.endsWith("-") || prefix.endsWith("_")) {
+        result.add(cur);
+        continue;
+      }
+
+      if (i + 1 < candidates.size()) {
+        Tuple2<String, Double> next = candidates.get(i + 1);
+        if (!next.item1.startsWith(prefix) || pct != next.item2) {
+          result.add(cur);
+        }
+      } else if (result.isEmpty()) {
+        result.add(cur);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,135 @@
+package umich.msfragger.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Custom JDK Flight Recorder events for the steps of a run and for slow GUI operations, so a
+ * {@code .jfr} file recorded by a user shows what FragPipe itself was doing next to the usual
+ * JVM events (GC, threads, I/O, method samples). Open it with JDK Mission Control, the events
+ * are under "FragPipe".
+ * <p>
+ * The events are written only while a recording is running, e.g. one started with
+ * {@link #record(Path)} or with {@code -XX:StartFlightRecording} on the command line.
+ * Otherwise every method here does next to nothing. On a Java runtime without Flight
+ * Recorder nothing is ever recorded.
+ * <p>
+ * Something that takes time is an {@link Op}, ended once when done:
+ * <pre>
+ * if (!Diagnostics.configure(cmd.getCmdName()).end(cmd.configure(...))) { ... }
+ * </pre>
+ */
+public class Diagnostics {
+  private static final Logger log = LoggerFactory.getLogger(Diagnostics.class);
+  public static final String FILE_EXT = ".jfr";
+  private static final boolean IS_AVAILABLE = isFlightRecorderAvailable();
+
+  /**
+   * Something that runs for a while.
+   */
+  public interface Op {
+    /**
+     * Ends the operation, call exactly once.
+     *
+     * @return {@code isOk}, to be able to wrap a call returning success.
+     */
+    boolean end(boolean isOk);
+  }
+
+  /**
+   * A running recording.
+   */
+  public interface Capture extends AutoCloseable {
+    Path getPath();
+
+    /**
+     * Stops the recording and writes it to {@link #getPath()}.
+     */
+    @Override
+    void close();
+  }
+
+  static final Op NOOP = isOk -> isOk;
+
+  private Diagnostics() {}
+
+  private static boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName("jdk.jfr.FlightRecorder");
+      return DiagnosticsEvents.isAvailable();
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return False if this Java runtime can't record, {@link #record(Path)} won't work.
+   */
+  public static boolean isAvailable() {
+    return IS_AVAILABLE;
+  }
+
+  /**
+   * Starts recording the events of FragPipe and the JVM to a file, with the "profile" settings
+   * of the JDK.
+   *
+   * @throws IOException If the recording can't be started, including when the runtime can't
+   * record at all.
+   */
+  public static Capture record(Path file) throws IOException {
+    if (!IS_AVAILABLE) {
+      throw new IOException("Java Flight Recorder is not available in this Java runtime: "
+          + OsUtils.JavaInfo().replace('\n', ' '));
+    }
+    Capture c = DiagnosticsEvents.record(file);
+    log.debug("Recording diagnostics to: {}", file);
+    return c;
+  }
+
+  /**
+   * Turning the settings of the forms into the commands of a run.
+   */
+  public static Op plan(Path workDir) {
+    return IS_AVAILABLE ? DiagnosticsEvents.plan(workDir) : NOOP;
+  }
+
+  /**
+   * Configuring one of the tools while planning a run.
+   */
+  public static Op configure(String tool) {
+    return IS_AVAILABLE ? DiagnosticsEvents.configure(tool) : NOOP;
+  }
+
+  /**
+   * A task of a run, from the moment it got its share of the resource budget until it
+   * finished.
+   *
+   * @param queuedMillis How long it waited for resources after being submitted.
+   */
+  public static Op task(String run, String stage, String name, long queuedMillis) {
+    return IS_AVAILABLE ? DiagnosticsEvents.task(run, stage, name, queuedMillis) : NOOP;
+  }
+
+  /**
+   * Writing a batch of pending text to the console.
+   */
+  public static Op consoleFlush(int chunks, int chars, int droppedLines) {
+    return IS_AVAILABLE ? DiagnosticsEvents.consoleFlush(chunks, chars, droppedLines) : NOOP;
+  }
+
+  /**
+   * Unpacking a file bundled in the jar to the temp directory.
+   */
+  public static Op jarUnpack(String resource, Path destination) {
+    return IS_AVAILABLE ? DiagnosticsEvents.jarUnpack(resource, destination) : NOOP;
+  }
+
+  /**
+   * Loading or saving the cached state of forms.
+   */
+  public static Op cache(Path path, boolean isSave) {
+    return IS_AVAILABLE ? DiagnosticsEvents.cache(path, isSave) : NOOP;
+  }
+}
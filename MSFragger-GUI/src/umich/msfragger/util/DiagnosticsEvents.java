@@ -0,0 +1,231 @@
+package umich.msfragger.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import umich.msfragger.util.Diagnostics.Capture;
+import umich.msfragger.util.Diagnostics.Op;
+
+/**
+ * The Flight Recorder events behind {@link Diagnostics}. Only loaded if the runtime has
+ * Flight Recorder, nothing else may refer to this class.
+ */
+class DiagnosticsEvents {
+  static final String PREFIX = "fragpipe.";
+
+  private DiagnosticsEvents() {}
+
+  static boolean isAvailable() {
+    return FlightRecorder.isAvailable();
+  }
+
+  @Name(PREFIX + "Plan")
+  @Label("Plan Run")
+  @Category({"FragPipe", "Run"})
+  @Description("Turning the settings of the forms into the commands of a run")
+  @StackTrace(false)
+  static class PlanEvent extends Event {
+    @Label("Work Dir")
+    String workDir;
+    @Label("Ok")
+    boolean ok;
+  }
+
+  @Name(PREFIX + "Configure")
+  @Label("Configure Tool")
+  @Category({"FragPipe", "Run"})
+  @Description("Configuring one of the tools while planning a run")
+  @StackTrace(false)
+  static class ConfigureEvent extends Event {
+    @Label("Tool")
+    String tool;
+    @Label("Ok")
+    boolean ok;
+  }
+
+  @Name(PREFIX + "Task")
+  @Label("Task")
+  @Category({"FragPipe", "Run"})
+  @Description("A task of a run, from getting its share of the resource budget until it finished")
+  @StackTrace(false)
+  static class TaskEvent extends Event {
+    @Label("Run")
+    String run;
+    @Label("Stage")
+    String stage;
+    @Label("Task")
+    String name;
+    @Label("Queued")
+    @Description("Time waited for resources after being submitted")
+    @Timespan(Timespan.MILLISECONDS)
+    long queued;
+    @Label("Ok")
+    boolean ok;
+  }
+
+  @Name(PREFIX + "ConsoleFlush")
+  @Label("Console Flush")
+  @Category({"FragPipe", "GUI"})
+  @Description("Writing a batch of pending text to the console")
+  @StackTrace(false)
+  static class ConsoleFlushEvent extends Event {
+    @Label("Chunks")
+    int chunks;
+    @Label("Characters")
+    int chars;
+    @Label("Dropped Lines")
+    int droppedLines;
+  }
+
+  @Name(PREFIX + "JarUnpack")
+  @Label("Unpack From Jar")
+  @Category({"FragPipe", "GUI"})
+  @Description("Unpacking a file bundled in the jar to the temp directory")
+  static class JarUnpackEvent extends Event {
+    @Label("Resource")
+    String resource;
+    @Label("Destination")
+    String destination;
+    @Label("Ok")
+    boolean ok;
+  }
+
+  @Name(PREFIX + "Cache")
+  @Label("Form Cache")
+  @Category({"FragPipe", "GUI"})
+  @Description("Loading or saving the cached state of forms")
+  static class CacheEvent extends Event {
+    @Label("Path")
+    String path;
+    @Label("Save")
+    boolean save;
+    @Label("Ok")
+    boolean ok;
+  }
+
+  static Capture record(Path file) throws IOException {
+    final Recording r;
+    try {
+      r = new Recording(Configuration.getConfiguration("profile"));
+    } catch (ParseException e) {
+      throw new IOException("Could not read Flight Recorder settings", e);
+    }
+    r.setName("FragPipe diagnostics");
+    r.setToDisk(true);
+    r.setDestination(file);
+    r.start();
+    return new Capture() {
+      @Override
+      public Path getPath() {
+        return file;
+      }
+
+      @Override
+      public void close() {
+        // written to the destination when stopped
+        r.stop();
+        r.close();
+      }
+    };
+  }
+
+  static Op plan(Path workDir) {
+    final PlanEvent e = new PlanEvent();
+    if (!e.isEnabled()) {
+      return Diagnostics.NOOP;
+    }
+    e.workDir = workDir.toString();
+    e.begin();
+    return isOk -> {
+      e.ok = isOk;
+      e.commit();
+      return isOk;
+    };
+  }
+
+  static Op configure(String tool) {
+    final ConfigureEvent e = new ConfigureEvent();
+    if (!e.isEnabled()) {
+      return Diagnostics.NOOP;
+    }
+    e.tool = tool;
+    e.begin();
+    return isOk -> {
+      e.ok = isOk;
+      e.commit();
+      return isOk;
+    };
+  }
+
+  static Op task(String run, String stage, String name, long queuedMillis) {
+    final TaskEvent e = new TaskEvent();
+    if (!e.isEnabled()) {
+      return Diagnostics.NOOP;
+    }
+    e.run = run;
+    e.stage = stage;
+    e.name = name;
+    e.queued = queuedMillis;
+    e.begin();
+    return isOk -> {
+      e.ok = isOk;
+      e.commit();
+      return isOk;
+    };
+  }
+
+  static Op consoleFlush(int chunks, int chars, int droppedLines) {
+    final ConsoleFlushEvent e = new ConsoleFlushEvent();
+    if (!e.isEnabled()) {
+      return Diagnostics.NOOP;
+    }
+    e.chunks = chunks;
+    e.chars = chars;
+    e.droppedLines = droppedLines;
+    e.begin();
+    return isOk -> {
+      e.commit();
+      return isOk;
+    };
+  }
+
+  static Op jarUnpack(String resource, Path destination) {
+    final JarUnpackEvent e = new JarUnpackEvent();
+    if (!e.isEnabled()) {
+      return Diagnostics.NOOP;
+    }
+    e.resource = resource;
+    e.destination = destination.toString();
+    e.begin();
+    return isOk -> {
+      e.ok = isOk;
+      e.commit();
+      return isOk;
+    };
+  }
+
+  static Op cache(Path path, boolean isSave) {
+    final CacheEvent e = new CacheEvent();
+    if (!e.isEnabled()) {
+      return Diagnostics.NOOP;
+    }
+    e.path = path.toString();
+    e.save = isSave;
+    e.begin();
+    return isOk -> {
+      e.ok = isOk;
+      e.commit();
+      return isOk;
+    };
+  }
+}
@@ -0,0 +1,136 @@
+package umich.msfragger.util;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JTable;
+import javax.swing.text.JTextComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drop-in replacements for {@link JOptionPane} dialogs used while configuring a run.
+ * When there is no display the message is logged instead, and questions get the answer
+ * given by the caller, which is always the one that doesn't change the user's setup.
+ */
+public class Dialogs {
+  private static final Logger log = LoggerFactory.getLogger(Dialogs.class);
+
+  private Dialogs() {}
+
+  public static boolean isHeadless() {
+    return GraphicsEnvironment.isHeadless();
+  }
+
+  public static void showMessageDialog(Component parent, Object message) {
+    showMessageDialog(parent, message, "Message", JOptionPane.INFORMATION_MESSAGE);
+  }
+
+  public static void showMessageDialog(Component parent, Object message, String title,
+      int messageType) {
+    if (!isHeadless()) {
+      JOptionPane.showMessageDialog(parent, message, title, messageType);
+      return;
+    }
+    String text = String.format("[%s]\n%s", title, toText(message));
+    if (messageType == JOptionPane.ERROR_MESSAGE) {
+      log.error(text);
+    } else if (messageType == JOptionPane.WARNING_MESSAGE) {
+      log.warn(text);
+    } else {
+      log.info(text);
+    }
+  }
+
+  /**
+   * @param headlessAnswer Returned without asking when there's no display.
+   */
+  public static int showConfirmDialog(Component parent, Object message, String title,
+      int optionType, int messageType, int headlessAnswer) {
+    if (!isHeadless()) {
+      return JOptionPane.showConfirmDialog(parent, message, title, optionType, messageType);
+    }
+    log.warn("[{}]\n{}\nNo display, answering: {}", title, toText(message),
+        answerText(headlessAnswer));
+    return headlessAnswer;
+  }
+
+  /**
+   * @param headlessAnswer Index of the option returned without asking when there's no display.
+   */
+  public static int showOptionDialog(Component parent, Object message, String title,
+      int optionType, int messageType, Object[] options, Object initialValue,
+      int headlessAnswer) {
+    if (!isHeadless()) {
+      return JOptionPane.showOptionDialog(parent, message, title, optionType, messageType, null,
+          options, initialValue);
+    }
+    log.warn("[{}]\n{}\nNo display, answering: {}", title, toText(message),
+        options[headlessAnswer]);
+    return headlessAnswer;
+  }
+
+  private static String answerText(int answer) {
+    switch (answer) {
+      case JOptionPane.YES_OPTION:
+        return "Yes";
+      case JOptionPane.NO_OPTION:
+        return "No";
+      case JOptionPane.CANCEL_OPTION:
+        return "Cancel";
+      default:
+        return Integer.toString(answer);
+    }
+  }
+
+  /**
+   * Plain text of a dialog message, which can be a string, a component or an array of those.
+   */
+  static String toText(Object message) {
+    List<String> lines = new ArrayList<>();
+    collectText(message, lines);
+    return String.join("\n", lines);
+  }
+
+  private static void collectText(Object o, List<String> lines) {
+    if (o == null) {
+      return;
+    }
+    if (o instanceof Object[]) {
+      for (Object item : (Object[]) o) {
+        collectText(item, lines);
+      }
+    } else if (o instanceof JLabel) {
+      collectText(((JLabel) o).getText(), lines);
+    } else if (o instanceof JTextComponent) {
+      collectText(((JTextComponent) o).getText(), lines);
+    } else if (o instanceof JTable) {
+      JTable t = (JTable) o;
+      for (int r = 0; r < t.getRowCount(); r++) {
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < t.getColumnCount(); c++) {
+          sb.append(c == 0 ? "  " : "\t").append(t.getValueAt(r, c));
+        }
+        lines.add(sb.toString());
+      }
+    } else if (o instanceof Container) {
+      for (Component c : ((Container) o).getComponents()) {
+        collectText(c, lines);
+      }
+    } else if (!(o instanceof Component)) {
+      String s = o.toString()
+          .replaceAll("(?is)<(head|style)[^>]*>.*?</\\1>", "")
+          .replaceAll("(?i)<br\\s*/?>|</?(li|ul|p)>", "\n")
+          .replaceAll("<[^>]*>", "");
+      for (String line : s.split("\n")) {
+        if (!line.trim().isEmpty()) {
+          lines.add(line);
+        }
+      }
+    }
+  }
+}
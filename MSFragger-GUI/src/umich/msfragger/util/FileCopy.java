@@ -19,6 +19,7 @@ package umich.msfragger.util;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
@@ -53,4 +54,18 @@ public class FileCopy {
 
         Files.copy(origin, destination, StandardCopyOption.REPLACE_EXISTING);
     }
+
+    /**
+     * Same as running this class with the given arguments, but in the current JVM.
+     */
+    public static void copy(Path origin, Path destination) throws IOException {
+        if (!Files.exists(origin)) {
+            throw new NoSuchFileException(origin.toString(), null, "Origin file does not exist");
+        }
+        if (!Files.exists(destination.getParent())) {
+            throw new NoSuchFileException(destination.getParent().toString(), null,
+                "Destination directory does not exist");
+        }
+        Files.copy(origin, destination, StandardCopyOption.REPLACE_EXISTING);
+    }
 }
@@ -19,6 +19,7 @@ package umich.msfragger.util;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
@@ -34,8 +35,16 @@ public class FileDelete {
     public static void main(String[] args) throws IOException {
         if (args.length != 1)
             throw new IllegalArgumentException("Must provide exactly one argument - the file or directory to delete.");
-        Path path = Paths.get(args[0]);
-        if (!Files.exists(path))
+        delete(Paths.get(args[0]));
+    }
+
+    /**
+     * Same as running this class with the given argument, but in the current JVM.
+     * Paths that don't exist are ignored.
+     */
+    public static void delete(Path path) throws IOException {
+        // a link to a file that's gone is still there to be deleted
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
             return;
         deleteFileOrFolder(path);
     }
@@ -18,6 +18,7 @@ package umich.msfragger.util;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
@@ -52,9 +53,21 @@ public class FileMove {
             System.err.printf("File does not exist: %s", origin.toString());
             System.exit(1);
         }
+        move(origin, destination, noErrors);
+    }
+
+    /**
+     * Same as running this class with the given arguments, but in the current JVM.
+     * @param noErrors If true, missing origin and move errors are ignored.
+     * @throws NoSuchFileException If the origin doesn't exist and errors are not ignored.
+     */
+    public static void move(Path origin, Path destination, boolean noErrors) throws IOException {
+        if (!noErrors && !Files.exists(origin)) {
+            throw new NoSuchFileException(origin.toString(), null, "File does not exist");
+        }
         try {
             Files.move(origin, destination, StandardCopyOption.REPLACE_EXISTING);
-        } catch (Exception e) {
+        } catch (IOException e) {
             if (!noErrors)
                 throw e;
         }
@@ -0,0 +1,69 @@
+package umich.msfragger.util;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes a file available at another location without duplicating its data when possible.
+ * A hard link is tried first, then a symbolic link, and only if neither can be created
+ * the file is copied.
+ * <p>
+ * Hard links don't work across file systems, symbolic links need special privileges on
+ * Windows, so depending on the setup any of the three can end up being used. Deleting the
+ * staged file never touches the original in any of the cases.
+ */
+public class FileStage {
+    private static final Logger log = LoggerFactory.getLogger(FileStage.class);
+
+    public enum Method {
+        HARDLINK("hard link"), SYMLINK("symbolic link"), COPY("copy");
+
+        public final String description;
+
+        Method(String description) {
+            this.description = description;
+        }
+    }
+
+    private FileStage() {}
+
+    /**
+     * @param origin Existing file.
+     * @param destination Path at which the file should become available, must not exist.
+     * @return How the file was staged.
+     */
+    public static Method stage(Path origin, Path destination) throws IOException {
+        if (!Files.isRegularFile(origin)) {
+            throw new NoSuchFileException(origin.toString(), null, "Origin file does not exist");
+        }
+        if (Files.exists(destination, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(destination.toString());
+        }
+        if (destination.getParent() != null && !Files.exists(destination.getParent())) {
+            throw new NoSuchFileException(destination.getParent().toString(), null,
+                "Destination directory does not exist");
+        }
+
+        try {
+            Files.createLink(destination, origin);
+            return Method.HARDLINK;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            log.debug("Could not hard link {} -> {}: {}", origin, destination, e.toString());
+        }
+        try {
+            FileSymlink.createSymlink(origin, destination);
+            return Method.SYMLINK;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            log.debug("Could not symlink {} -> {}: {}", origin, destination, e.toString());
+        }
+        Files.copy(origin, destination, StandardCopyOption.COPY_ATTRIBUTES);
+        return Method.COPY;
+    }
+}
@@ -32,6 +32,15 @@ public class FileSymlink {
                     + " the link to and the symlink file path itself.");
         Path origin = Paths.get(args[0]);
         Path symlink = Paths.get(args[1]);
-        Files.createSymbolicLink(origin, symlink);
+        createSymlink(origin, symlink);
+    }
+
+    /**
+     * Same as running this class with the given arguments, but in the current JVM.
+     * The link points to the absolute path of the origin, so it stays valid no matter
+     * where it is created.
+     */
+    public static void createSymlink(Path origin, Path symlink) throws IOException {
+        Files.createSymbolicLink(symlink, origin.toAbsolutePath().normalize());
     }
 }
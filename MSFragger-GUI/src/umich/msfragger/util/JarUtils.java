@@ -46,7 +46,14 @@ public class JarUtils {
           ? Files.createTempFile("fragpipe-", "-" + resourceNameDest)
           : Paths.get(CacheUtils.SYS_TEMP_DIR, resourceNameDest);
 
-      Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+      final Diagnostics.Op op = Diagnostics.jarUnpack(resourceLocation, tempFile);
+      boolean isOk = false;
+      try {
+        Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        isOk = true;
+      } finally {
+        op.end(isOk);
+      }
       if (scheduleForDeletion) {
         tempFile.toFile().deleteOnExit();
       }
@@ -91,7 +98,14 @@ public class JarUtils {
         }
       }
 
-      Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+      final Diagnostics.Op op = Diagnostics.jarUnpack(resourceLocation, tempFile);
+      boolean isOk = false;
+      try {
+        Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        isOk = true;
+      } finally {
+        op.end(isOk);
+      }
       if (scheduleForDeletion) {
         tempFile.toFile().deleteOnExit();
       }
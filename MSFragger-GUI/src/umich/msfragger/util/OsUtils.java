@@ -57,6 +57,28 @@ public class OsUtils {
         return sb.toString();
     }
 
+    /**
+     * Total physical memory of the machine in GB, rounded down.
+     */
+    // getTotalPhysicalMemorySize() is deprecated since Java 14 in favor of getTotalMemorySize(),
+    // which Java 8 doesn't have
+    @SuppressWarnings("deprecation")
+    public static int getTotalPhysicalMemoryGb() {
+        return (int) (((com.sun.management.OperatingSystemMXBean) java.lang.management.ManagementFactory
+            .getOperatingSystemMXBean()).getTotalPhysicalMemorySize() / 1024.0 / 1024.0 / 1024.0);
+    }
+
+    /**
+     * Free physical memory of the machine in GB, rounded down.
+     */
+    // getFreePhysicalMemorySize() is deprecated since Java 14 in favor of getFreeMemorySize(),
+    // which Java 8 doesn't have
+    @SuppressWarnings("deprecation")
+    public static int getFreePhysicalMemoryGb() {
+        return (int) (((com.sun.management.OperatingSystemMXBean) java.lang.management.ManagementFactory
+            .getOperatingSystemMXBean()).getFreePhysicalMemorySize() / 1024.0 / 1024.0 / 1024.0);
+    }
+
     public static boolean isWindows() {
         String osName = System.getProperty("os.name");
         if (osName == null) {
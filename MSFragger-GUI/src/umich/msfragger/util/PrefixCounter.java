@@ -16,13 +16,16 @@
  */
 package umich.msfragger.util;
 
-import java.util.ArrayDeque;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * A trie like structure that counts the prefixes or suffixes in a corpus of words.
  * Used to determine common 
+ * <p>
+ * The trie is kept in primitive arrays indexed by node number, children of a node are in a
+ * small table sorted by character, so adding a word allocates nothing unless the arrays need
+ * to grow. Nodes deeper than {@link #maxDepth} are not kept. {@link Node} is only a view of
+ * one node.
  * @author Dmitry Avtonomov
  */
 public class PrefixCounter {
@@ -30,68 +33,98 @@ public class PrefixCounter {
     public enum Mode {FWD, REV};
     public enum IterationOrder {BREADTH, DEPTH}
     
-    protected Node root;
+    private static final int ROOT = 0;
+    private static final int NO_PARENT = -1;
+    private static final int INITIAL_CAPACITY = 64;
+    
     public final Mode mode;
     public final int maxDepth;
     
+    /** Number of nodes. */
+    private int size;
+    private char[] chars;
+    private int[] parents;
+    private long[] hits;
+    private long[] terminals;
+    /** Where the child table of a node starts in {@link #childChars} and {@link #childNodes}. */
+    private int[] childOffsets;
+    /** The capacity of a child table is the count rounded up to a power of two. */
+    private int[] childCounts;
+    
+    /** Child tables of all nodes, each sorted by character. */
+    private char[] childChars;
+    private int[] childNodes;
+    /** Used length of the child tables, tables that had to grow leave a gap behind. */
+    private int childSize;
+    
     public PrefixCounter(Mode mode, int maxDepth) {
         this.mode = mode;
         this.maxDepth = maxDepth;
-        this.root = new Node(null, '\uFFFF', 0); // \uFFFF is 'not a character'
+        chars = new char[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        hits = new long[INITIAL_CAPACITY];
+        terminals = new long[INITIAL_CAPACITY];
+        childOffsets = new int[INITIAL_CAPACITY];
+        childCounts = new int[INITIAL_CAPACITY];
+        childChars = new char[INITIAL_CAPACITY];
+        childNodes = new int[INITIAL_CAPACITY];
+        newNode(NO_PARENT, '\uFFFF'); // \uFFFF is 'not a character'
     }
     
+    /**
+     * A node of the trie. Reads the counts of the counter, so stays up to date while words are
+     * added.
+     */
     public class Node {
-        public final Node parent;
-        private final TreeMap<Character, Node> map;
-        public final char ch;
-        public final int depth;
-        private long hits;
-        private long terminals;
+        private int index;
+        private int depth;
 
-        protected Node(Node parent, char ch, int depth) {
-            this.parent = parent;
-            this.ch = ch;
+        protected Node(int index, int depth) {
+            this.index = index;
             this.depth = depth;
-            map = new TreeMap<>();
-            hits = 0;
-            terminals = 0;
         }
         
-        protected Node getChild(char ch) {
-            Node child = map.get(ch);
-            if (child == null) {
-                child = new Node(this, ch, this.depth + 1);
-                map.put(child.ch, child);
-            }
-            return child;
+        /**
+         * @return Null for the root.
+         */
+        public Node getParent() {
+            return parents[index] == NO_PARENT ? null : new Node(parents[index], depth - 1);
+        }
+        
+        public char getCh() {
+            return chars[index];
+        }
+        
+        public int getDepth() {
+            return depth;
         }
         
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder("Node{");
             sb.append(" parent_char=");
-            if (parent != null)
-                sb.append(parent.ch);
+            if (parents[index] != NO_PARENT)
+                sb.append(chars[parents[index]]);
             else 
                 sb.append("None");
-            sb.append(", char=").append(ch).append(", depth=").append(depth)
-              .append(", size=").append(map.size()).append(", hits").append(hits)
-              .append(", terminals=").append(terminals);
+            sb.append(", char=").append(getCh()).append(", depth=").append(depth)
+              .append(", size=").append(childCounts[index]).append(", hits").append(getHits())
+              .append(", terminals=").append(getTerminals());
             sb.append('}');
             return sb.toString();
         }
         
         public long getHits() {
-            return hits;
+            return hits[index];
         }
         
         public long getTerminals() {
-            return terminals;
+            return terminals[index];
         }
     }
 
     public Node getRoot() {
-        return root;
+        return new Node(ROOT, 0);
     }
 
     public Mode getMode() {
@@ -101,69 +134,171 @@ public class PrefixCounter {
     public void add(CharSequence csq) {
         switch (mode) {
             case FWD: {
-                int pos = -1;
                 int len = csq.length();
-                Node n = root;
-                n.hits++;
+                int n = ROOT;
+                hits[n]++;
                 if (len == 0)
-                    n.terminals++;
-                while (++pos < len) {
-                    Node nn = n.getChild(csq.charAt(pos));
-                    if (nn.depth > maxDepth)
+                    terminals[n]++;
+                for (int pos = 0; pos < len; pos++) {
+                    if (pos + 1 > maxDepth)
                         return;
-                    nn.hits++;
+                    n = child(n, csq.charAt(pos));
+                    hits[n]++;
                     if (pos == len - 1)
-                        nn.terminals++;
-                    
-                    n = nn;
+                        terminals[n]++;
                 }
                 break;
             }
             
             case REV: {
-                int pos = csq.length();
-                Node n = root;
-                n.hits++;
-                while (--pos >= 0) {
-                    Node nn = n.getChild(csq.charAt(pos));
-                    if (nn.depth > maxDepth)
+                int len = csq.length();
+                int n = ROOT;
+                hits[n]++;
+                for (int pos = len - 1; pos >= 0; pos--) {
+                    if (len - pos > maxDepth)
                         return;
-                    nn.hits++;
-                    n = nn;
+                    n = child(n, csq.charAt(pos));
+                    hits[n]++;
                     if (pos == 0)
-                        nn.terminals++;
+                        terminals[n]++;
                 }
                 break;
             }
         }
     }
     
+    /**
+     * Adds the counts of another counter, as if the words added to it were added to this one.
+     * Used to count parts of a corpus in parallel, each thread with its own counter.
+     */
+    public void addAll(PrefixCounter other) {
+        if (other.mode != mode)
+            throw new IllegalArgumentException("Can't add counts of a counter in a different mode");
+        // a node is always created after its parent, so parents are mapped first
+        final int[] mapped = new int[other.size];
+        final int[] depths = new int[other.size];
+        mapped[ROOT] = ROOT;
+        hits[ROOT] += other.hits[ROOT];
+        terminals[ROOT] += other.terminals[ROOT];
+        for (int src = ROOT + 1; src < other.size; src++) {
+            final int srcParent = other.parents[src];
+            depths[src] = depths[srcParent] + 1;
+            if (mapped[srcParent] < 0 || depths[src] > maxDepth) {
+                mapped[src] = -1;
+                continue;
+            }
+            final int dst = child(mapped[srcParent], other.chars[src]);
+            hits[dst] += other.hits[src];
+            terminals[dst] += other.terminals[src];
+            mapped[src] = dst;
+        }
+    }
+    
+    /**
+     * Calls the action for every node up to a depth, breadth first, children in the order of
+     * their characters. The node given to the action is reused for the next call, use
+     * {@link Node#getParent()} to get to the nodes above it.
+     */
     public void iterPrefixCounts(int maxDepth, Proc2<Node, Mode> action) {
         
-        final ArrayDeque<Node> deque = new ArrayDeque<>();
-        deque.add(root);
-        while (!deque.isEmpty()) {
-            Node head = deque.removeFirst();
-            if (head.depth > maxDepth)
+        final int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = ROOT;
+        final Node node = new Node(ROOT, 0);
+        // nodes before levelEnd in the queue are at the current depth
+        int levelEnd = tail;
+        while (head < tail) {
+            if (head == levelEnd) {
+                node.depth++;
+                levelEnd = tail;
+            }
+            if (node.depth > maxDepth)
                 break;
-            for (Map.Entry<Character, Node> e : head.map.entrySet()) {
-                deque.addLast(e.getValue());
+            node.index = queue[head++];
+            if (node.depth < maxDepth) {
+                final int from = childOffsets[node.index];
+                final int to = from + childCounts[node.index];
+                for (int i = from; i < to; i++) {
+                    queue[tail++] = childNodes[i];
+                }
             }
-            action.call(head, mode);
+            action.call(node, mode);
         }
     }
     
     public void printPrefixCounts(int maxDepth) {
-        ArrayDeque<Node> deque = new ArrayDeque<>();
-        deque.add(root);
-        while (!deque.isEmpty()) {
-            Node head = deque.removeFirst();
-            if (head.depth > maxDepth)
-                break;
-            for (Map.Entry<Character, Node> e : head.map.entrySet()) {
-                deque.addLast(e.getValue());
+        iterPrefixCounts(maxDepth, (node, mode) -> System.out.println(node));
+    }
+    
+    /**
+     * Finds the child of a node for a character, creating it if needed.
+     * @return Index of the child node.
+     */
+    private int child(int node, char ch) {
+        final int offset = childOffsets[node];
+        final int count = childCounts[node];
+        int lo = offset;
+        int hi = offset + count - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final char midCh = childChars[mid];
+            if (midCh < ch)
+                lo = mid + 1;
+            else if (midCh > ch)
+                hi = mid - 1;
+            else
+                return childNodes[mid];
+        }
+        
+        final int created = newNode(node, ch);
+        int at = lo;
+        if ((count & (count - 1)) == 0) {
+            // full, the count is a power of two or zero
+            final int capacity = count == 0 ? 1 : count * 2;
+            if (count > 0 && offset + count == childSize) {
+                // the last table, can grow in place
+                ensureChildCapacity(offset + capacity);
+            } else {
+                final int moved = childSize;
+                ensureChildCapacity(moved + capacity);
+                System.arraycopy(childChars, offset, childChars, moved, count);
+                System.arraycopy(childNodes, offset, childNodes, moved, count);
+                childOffsets[node] = moved;
+                at = lo - offset + moved;
             }
-            System.out.println(head);
+            childSize = childOffsets[node] + capacity;
+        }
+        final int end = childOffsets[node] + count;
+        System.arraycopy(childChars, at, childChars, at + 1, end - at);
+        System.arraycopy(childNodes, at, childNodes, at + 1, end - at);
+        childChars[at] = ch;
+        childNodes[at] = created;
+        childCounts[node] = count + 1;
+        return created;
+    }
+    
+    private int newNode(int parent, char ch) {
+        if (size == chars.length) {
+            final int capacity = size * 2;
+            chars = Arrays.copyOf(chars, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            hits = Arrays.copyOf(hits, capacity);
+            terminals = Arrays.copyOf(terminals, capacity);
+            childOffsets = Arrays.copyOf(childOffsets, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+        }
+        final int n = size++;
+        chars[n] = ch;
+        parents[n] = parent;
+        return n;
+    }
+    
+    private void ensureChildCapacity(int capacity) {
+        if (capacity > childChars.length) {
+            final int grown = Math.max(capacity, childChars.length * 2);
+            childChars = Arrays.copyOf(childChars, grown);
+            childNodes = Arrays.copyOf(childNodes, grown);
         }
     }
 }
@@ -0,0 +1,60 @@
+package umich.msfragger.util;
+
+/**
+ * Resources used by an external process and everything it started. Values that couldn't be
+ * measured, e.g. on systems without {@code /proc}, are {@link #UNKNOWN}.
+ */
+public class ProcessUsage {
+  public static final long UNKNOWN = -1;
+
+  public final String name;
+  /** Command line, for telling apart processes with the same name. */
+  public final String command;
+  /** Exit code, {@link #UNKNOWN} if the process was killed. */
+  public final int exitCode;
+  public final long wallMs;
+  /** User plus system time. */
+  public final long cpuMs;
+  /** Highest resident memory of the process tree. */
+  public final long peakRssBytes;
+  /** Bytes passed to read calls, including ones served from the page cache. */
+  public final long readBytes;
+  /** Bytes passed to write calls. */
+  public final long writeBytes;
+
+  public ProcessUsage(String name, String command, int exitCode, long wallMs, long cpuMs,
+      long peakRssBytes, long readBytes, long writeBytes) {
+    this.name = name;
+    this.command = command;
+    this.exitCode = exitCode;
+    this.wallMs = wallMs;
+    this.cpuMs = cpuMs;
+    this.peakRssBytes = peakRssBytes;
+    this.readBytes = readBytes;
+    this.writeBytes = writeBytes;
+  }
+
+  public boolean isSampled() {
+    return cpuMs != UNKNOWN;
+  }
+
+  /**
+   * Average number of busy cores, {@link #UNKNOWN} if not known.
+   */
+  public double avgCores() {
+    return cpuMs == UNKNOWN || wallMs <= 0 ? UNKNOWN : cpuMs / (double) wallMs;
+  }
+
+  @Override
+  public String toString() {
+    return "ProcessUsage{" +
+        "name='" + name + '\'' +
+        ", exitCode=" + exitCode +
+        ", wallMs=" + wallMs +
+        ", cpuMs=" + cpuMs +
+        ", peakRssBytes=" + peakRssBytes +
+        ", readBytes=" + readBytes +
+        ", writeBytes=" + writeBytes +
+        '}';
+  }
+}
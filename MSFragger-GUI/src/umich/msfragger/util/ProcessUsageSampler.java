@@ -0,0 +1,378 @@
+package umich.msfragger.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the resources used by external processes by reading {@code /proc} on Linux.
+ * A process is measured together with all its descendants, e.g. the tools started by a
+ * wrapper script.
+ * <p>
+ * One background thread samples all tracked processes at a fixed interval. CPU time and
+ * I/O of descendants that already exited are still counted, the kernel adds them to their
+ * parent, but whatever happens after the last sample of a process is missed. Peak memory is
+ * the highest of the sampled totals and of the peaks the kernel recorded for each process.
+ * On other systems only the wall time is measured.
+ */
+public class ProcessUsageSampler {
+  private static final Logger log = LoggerFactory.getLogger(ProcessUsageSampler.class);
+  public static final long DEFAULT_INTERVAL_MS = 1000;
+  /** Unit of the times in /proc/[pid]/stat, fixed by the kernel ABI. */
+  private static final long USER_HZ = 100;
+  private static final Path PROC = Paths.get("/proc");
+  private static volatile ProcessUsageSampler instance;
+
+  private final long intervalMs;
+  private final boolean isSupported;
+  private final Set<Tracker> active = ConcurrentHashMap.newKeySet();
+  private ScheduledExecutorService timer;
+
+  /**
+   * What one sample says about one process.
+   */
+  static class ProcStat {
+    final long pid;
+    final long ppid;
+    /** Own user and system time. */
+    final long cpuTicks;
+    /** User and system time of the children that exited and were waited for. */
+    final long childCpuTicks;
+    final int threads;
+    long rssBytes = 0;
+    long hwmBytes = 0;
+    long readBytes = 0;
+    long writeBytes = 0;
+
+    ProcStat(long pid, long ppid, long cpuTicks, long childCpuTicks, int threads) {
+      this.pid = pid;
+      this.ppid = ppid;
+      this.cpuTicks = cpuTicks;
+      this.childCpuTicks = childCpuTicks;
+      this.threads = threads;
+    }
+  }
+
+  /**
+   * Usage of one process tree, updated by the sampling thread.
+   */
+  public class Tracker {
+    public final String name;
+    public final String command;
+    private final long rootPid;
+    private final long startNanos = System.nanoTime();
+    private long cpuMs = 0;
+    private long rssBytes = 0;
+    private long peakRssBytes = 0;
+    private long readBytes = 0;
+    private long writeBytes = 0;
+    private int threads = 0;
+    private boolean isSampled = false;
+    private ProcessUsage finished;
+
+    private Tracker(String name, String command, long rootPid) {
+      this.name = name;
+      this.command = command;
+      this.rootPid = rootPid;
+    }
+
+    /**
+     * Resident memory of the process tree at the last sample, zero if not known.
+     */
+    public synchronized long getRssBytes() {
+      return rssBytes;
+    }
+
+    /**
+     * CPU time used by the process tree up to the last sample, zero if not known.
+     */
+    public synchronized long getCpuMs() {
+      return cpuMs;
+    }
+
+    /**
+     * Threads of all processes of the tree at the last sample, zero if not known.
+     */
+    public synchronized int getThreads() {
+      return threads;
+    }
+
+    /**
+     * Bytes read and written by the process tree up to the last sample, zero if not known.
+     */
+    public synchronized long getIoBytes() {
+      return readBytes + writeBytes;
+    }
+
+    public long getWallMs() {
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    synchronized void update(List<ProcStat> tree) {
+      if (finished != null) {
+        return;
+      }
+      long ticks = 0;
+      long rss = 0;
+      long read = 0;
+      long written = 0;
+      int threadCount = 0;
+      for (ProcStat p : tree) {
+        // times and I/O of exited descendants are in the counters of their parents
+        ticks += p.cpuTicks + p.childCpuTicks;
+        rss += p.rssBytes;
+        read += p.readBytes;
+        written += p.writeBytes;
+        threadCount += p.threads;
+        peakRssBytes = Math.max(peakRssBytes, p.hwmBytes);
+      }
+      isSampled = true;
+      cpuMs = Math.max(cpuMs, ticks * 1000 / USER_HZ);
+      rssBytes = rss;
+      threads = threadCount;
+      peakRssBytes = Math.max(peakRssBytes, rss);
+      readBytes = Math.max(readBytes, read);
+      writeBytes = Math.max(writeBytes, written);
+    }
+
+    /**
+     * Stops tracking. Can be called more than once, later calls return the same result.
+     *
+     * @param exitCode Of the process, {@link ProcessUsage#UNKNOWN} if it was killed.
+     */
+    public ProcessUsage finish(int exitCode) {
+      active.remove(this);
+      synchronized (this) {
+        if (finished == null) {
+          finished = isSampled
+              ? new ProcessUsage(name, command, exitCode, getWallMs(), cpuMs, peakRssBytes,
+                  readBytes, writeBytes)
+              : new ProcessUsage(name, command, exitCode, getWallMs(), ProcessUsage.UNKNOWN,
+                  ProcessUsage.UNKNOWN, ProcessUsage.UNKNOWN, ProcessUsage.UNKNOWN);
+        }
+        return finished;
+      }
+    }
+  }
+
+  public ProcessUsageSampler(long intervalMs) {
+    this.intervalMs = intervalMs;
+    this.isSupported = Files.isReadable(PROC.resolve("self").resolve("stat"));
+  }
+
+  public static ProcessUsageSampler get() {
+    ProcessUsageSampler s = instance;
+    if (s == null) {
+      synchronized (ProcessUsageSampler.class) {
+        s = instance;
+        if (s == null) {
+          s = instance = new ProcessUsageSampler(DEFAULT_INTERVAL_MS);
+        }
+      }
+    }
+    return s;
+  }
+
+  /**
+   * True if more than the wall time can be measured on this system.
+   */
+  public boolean isSupported() {
+    return isSupported;
+  }
+
+  /**
+   * Starts measuring a process that was just started. Call {@link Tracker#finish} once it
+   * has exited.
+   */
+  public Tracker track(String name, String command, Process process) {
+    final long pid = isSupported ? pid(process) : -1;
+    Tracker t = new Tracker(name, command, pid);
+    if (pid > 0) {
+      active.add(t);
+      startTimer();
+      // short processes would otherwise have no sample at all
+      sample(Collections.singleton(t));
+    }
+    return t;
+  }
+
+  /**
+   * Trackers of the processes running now.
+   */
+  public List<Tracker> getActive() {
+    return new ArrayList<>(active);
+  }
+
+  private synchronized void startTimer() {
+    if (timer != null) {
+      return;
+    }
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "process-usage-sampler");
+      t.setDaemon(true);
+      return t;
+    });
+    timer.scheduleWithFixedDelay(() -> {
+      try {
+        if (!active.isEmpty()) {
+          sample(active);
+        }
+      } catch (Exception e) {
+        // an exception would cancel the schedule
+        log.warn("Could not sample process usage", e);
+      }
+    }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void sample(Collection<Tracker> trackers) {
+    final Map<Long, List<ProcStat>> children = new HashMap<>();
+    final Map<Long, ProcStat> all = new HashMap<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(PROC, "[0-9]*")) {
+      for (Path dir : ds) {
+        ProcStat ps = readStat(dir);
+        if (ps != null) {
+          all.put(ps.pid, ps);
+          children.computeIfAbsent(ps.ppid, k -> new ArrayList<>()).add(ps);
+        }
+      }
+    } catch (IOException e) {
+      log.debug("Could not list processes", e);
+      return;
+    }
+    for (Tracker t : trackers) {
+      ProcStat root = all.get(t.rootPid);
+      if (root == null) {
+        continue; // exited
+      }
+      List<ProcStat> tree = new ArrayList<>();
+      Deque<ProcStat> todo = new ArrayDeque<>();
+      todo.add(root);
+      while (!todo.isEmpty()) {
+        ProcStat p = todo.poll();
+        readDetails(p);
+        tree.add(p);
+        todo.addAll(children.getOrDefault(p.pid, Collections.emptyList()));
+      }
+      t.update(tree);
+    }
+  }
+
+  /**
+   * @return Null if the process has exited or the file can't be read.
+   */
+  private static ProcStat readStat(Path dir) {
+    try {
+      return parseStat(new String(Files.readAllBytes(dir.resolve("stat")), UTF_8));
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static void readDetails(ProcStat p) {
+    final Path dir = PROC.resolve(Long.toString(p.pid));
+    try {
+      String status = new String(Files.readAllBytes(dir.resolve("status")), UTF_8);
+      p.rssBytes = Math.max(0, field(status, "VmRSS:")) * 1024;
+      p.hwmBytes = Math.max(0, field(status, "VmHWM:")) * 1024;
+    } catch (IOException e) {
+      // exited in the meantime
+    }
+    try {
+      String io = new String(Files.readAllBytes(dir.resolve("io")), UTF_8);
+      p.readBytes = Math.max(0, field(io, "rchar:"));
+      p.writeBytes = Math.max(0, field(io, "wchar:"));
+    } catch (IOException e) {
+      // exited, or not ours to read
+    }
+  }
+
+  /**
+   * Parses /proc/[pid]/stat. The command name is in parentheses and may itself contain
+   * spaces and parentheses, so fields are counted from the last closing one.
+   */
+  static ProcStat parseStat(String stat) {
+    final int open = stat.indexOf('(');
+    final int close = stat.lastIndexOf(')');
+    if (open < 0 || close < open) {
+      throw new IllegalArgumentException("Not a stat line: " + stat);
+    }
+    final long pid = Long.parseLong(stat.substring(0, open).trim());
+    // f[0] is field 3 (state) in proc(5)
+    final String[] f = stat.substring(close + 1).trim().split("\\s+");
+    final long ppid = Long.parseLong(f[1]);
+    final long utime = Long.parseLong(f[11]);
+    final long stime = Long.parseLong(f[12]);
+    final long cutime = Long.parseLong(f[13]);
+    final long cstime = Long.parseLong(f[14]);
+    final int threads = Integer.parseInt(f[17]);
+    return new ProcStat(pid, ppid, utime + stime, cutime + cstime, threads);
+  }
+
+  /**
+   * Value of a "Key: value [unit]" line of /proc/[pid]/status or /proc/[pid]/io.
+   *
+   * @return -1 if the key is not there.
+   */
+  static long field(String text, String key) {
+    int i = text.startsWith(key) ? 0 : text.indexOf("\n" + key);
+    if (i < 0) {
+      return -1;
+    }
+    if (i > 0) {
+      i++;
+    }
+    int end = text.indexOf('\n', i);
+    String[] parts = text.substring(i + key.length(), end < 0 ? text.length() : end)
+        .trim().split("\\s+");
+    try {
+      return Long.parseLong(parts[0]);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Process#pid() only exists since Java 9, on Java 8 the pid is a private field.
+   *
+   * @return -1 if not available.
+   */
+  static long pid(Process process) {
+    try {
+      Method m = Process.class.getMethod("pid");
+      return (Long) m.invoke(process);
+    } catch (NoSuchMethodException e) {
+      try {
+        Field f = process.getClass().getDeclaredField("pid");
+        f.setAccessible(true);
+        return f.getInt(process);
+      } catch (Exception ex) {
+        log.debug("Could not get pid of process", ex);
+        return -1;
+      }
+    } catch (Exception e) {
+      log.debug("Could not get pid of process", e);
+      return -1;
+    }
+  }
+}
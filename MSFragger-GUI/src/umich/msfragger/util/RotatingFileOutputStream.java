@@ -0,0 +1,100 @@
+package umich.msfragger.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes to a file, and once the file reaches the size limit, renames it to {@code <file>.1}
+ * (shifting older backups to {@code .2}, {@code .3} and so on) and starts a new one. Only the
+ * configured number of backups is kept, so the total disk usage is bounded.
+ * <p>
+ * Opening truncates the file and removes backups left from before.
+ */
+public class RotatingFileOutputStream extends OutputStream {
+  private final Path path;
+  private final long maxBytes;
+  private final int maxBackups;
+  private OutputStream os;
+  private long written;
+
+  /**
+   * @param maxBytes Size at which the file is rotated. Zero or less means no limit.
+   * @param maxBackups Number of rotated files to keep. Zero means the file is simply
+   * truncated when it reaches the limit.
+   */
+  public RotatingFileOutputStream(Path path, long maxBytes, int maxBackups) throws IOException {
+    this.path = path;
+    this.maxBytes = maxBytes;
+    this.maxBackups = Math.max(0, maxBackups);
+    for (int i = 1; i <= this.maxBackups; i++) {
+      Files.deleteIfExists(backup(i));
+    }
+    open();
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  private Path backup(int i) {
+    return Paths.get(path.toString() + "." + i);
+  }
+
+  private void open() throws IOException {
+    os = Files.newOutputStream(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    written = 0;
+  }
+
+  private void rotate() throws IOException {
+    os.close();
+    if (maxBackups > 0) {
+      Files.deleteIfExists(backup(maxBackups));
+      for (int i = maxBackups - 1; i >= 1; i--) {
+        if (Files.exists(backup(i))) {
+          Files.move(backup(i), backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      Files.move(path, backup(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+    open();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (maxBytes > 0 && written >= maxBytes) {
+      rotate();
+    }
+    os.write(b);
+    written++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (maxBytes > 0 && written >= maxBytes) {
+        rotate();
+      }
+      int n = maxBytes > 0 ? (int) Math.min(len, maxBytes - written) : len;
+      os.write(b, off, n);
+      written += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    os.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    os.close();
+  }
+}
@@ -497,7 +497,7 @@ public class SwingUtils {
    * @param component The component to be used as the message.
    */
   public static void showDialog(Component parent, final Component component, String title, int msgType) {
-    JOptionPane.showMessageDialog(parent, wrapInScrollForDialog(component), title, msgType);
+    Dialogs.showMessageDialog(parent, wrapInScrollForDialog(component), title, msgType);
   }
 
   /**
@@ -0,0 +1,73 @@
+package umich.msfragger.worker;
+
+import java.io.IOException;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Tells which workers of a {@link Spool} are alive, as seen from the machine that submits
+ * tasks. Heartbeat files get their modification time from the clock of the worker, which can
+ * be off from the clock here, so the time is only checked for change. A worker is gone when
+ * its heartbeat hasn't changed for the timeout, measured with {@link System#nanoTime()} here.
+ * A heartbeat seen for the first time counts as a change.
+ */
+public class HeartbeatWatch {
+  private final Spool spool;
+  private final long timeoutNanos;
+  private final LongSupplier nanoTime;
+  /** Last heartbeat of each worker and when it was seen to change. */
+  private final Map<String, Seen> seen = new HashMap<>();
+
+  private static class Seen {
+    FileTime heartbeat;
+    long changedAt;
+  }
+
+  public HeartbeatWatch(Spool spool, long timeoutMillis) {
+    this(spool, timeoutMillis, System::nanoTime);
+  }
+
+  HeartbeatWatch(Spool spool, long timeoutMillis, LongSupplier nanoTime) {
+    this.spool = spool;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.nanoTime = nanoTime;
+  }
+
+  public synchronized boolean isAlive(String worker) throws IOException {
+    FileTime heartbeat = spool.heartbeatOf(worker);
+    if (heartbeat == null) {
+      seen.remove(worker);
+      return false;
+    }
+    long now = nanoTime.getAsLong();
+    Seen s = seen.get(worker);
+    if (s == null) {
+      s = new Seen();
+      seen.put(worker, s);
+    }
+    if (!heartbeat.equals(s.heartbeat)) {
+      s.heartbeat = heartbeat;
+      s.changedAt = now;
+      return true;
+    }
+    return now - s.changedAt < timeoutNanos;
+  }
+
+  /**
+   * @return Names of the workers whose heartbeat changed within the timeout.
+   */
+  public List<String> aliveWorkers() throws IOException {
+    List<String> alive = new ArrayList<>();
+    for (String name : spool.workers()) {
+      if (isAlive(name)) {
+        alive.add(name);
+      }
+    }
+    return alive;
+  }
+}
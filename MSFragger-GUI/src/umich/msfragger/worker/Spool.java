@@ -0,0 +1,268 @@
+package umich.msfragger.worker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Directory on a filesystem shared by FragPipe and its workers, through which tasks are
+ * handed out and results collected. All state changes are file renames, which are atomic
+ * on local filesystems and NFS, so no locking is needed:
+ * <ul>
+ *   <li>{@code tasks/<id>.task} - submitted, waiting for a worker</li>
+ *   <li>{@code claimed/<id>@<worker>.task} - taken by a worker, moved here from tasks</li>
+ *   <li>{@code out/<id>.out}, {@code out/<id>.err} - output of the process, appended as
+ *   it's written</li>
+ *   <li>{@code done/<id>.exit} - exit code, written last</li>
+ *   <li>{@code cancel/<id>} - the submitter wants the task stopped</li>
+ *   <li>{@code workers/<worker>.alive} - touched by every live worker</li>
+ * </ul>
+ */
+public class Spool {
+  private static final String EXT_TASK = ".task";
+  private static final String EXT_EXIT = ".exit";
+  private static final String EXT_ALIVE = ".alive";
+  private static final String KEY_EXIT = "exit";
+  private static final String KEY_ERROR = "error";
+
+  private final Path root;
+  private final Path tasks;
+  private final Path claimed;
+  private final Path out;
+  private final Path done;
+  private final Path cancel;
+  private final Path workers;
+
+  /**
+   * Outcome of a task, as reported by the worker.
+   */
+  public static class Result {
+    public final int exitCode;
+    /** Why the process couldn't be started, null if it ran. */
+    public final String error;
+
+    public Result(int exitCode, String error) {
+      this.exitCode = exitCode;
+      this.error = error;
+    }
+  }
+
+  public Spool(Path root) {
+    this.root = root;
+    this.tasks = root.resolve("tasks");
+    this.claimed = root.resolve("claimed");
+    this.out = root.resolve("out");
+    this.done = root.resolve("done");
+    this.cancel = root.resolve("cancel");
+    this.workers = root.resolve("workers");
+  }
+
+  /**
+   * Creates the directory structure if it doesn't exist yet.
+   */
+  public Spool init() throws IOException {
+    for (Path dir : new Path[]{tasks, claimed, out, done, cancel, workers}) {
+      Files.createDirectories(dir);
+    }
+    return this;
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * Worker names become part of file names.
+   */
+  public static String toFileName(String s) {
+    return s.replaceAll("[^A-Za-z0-9._-]+", "-");
+  }
+
+  public void submit(WorkerTask task) throws IOException {
+    Path tmp = tasks.resolve(task.id + ".tmp");
+    task.write(tmp);
+    Files.move(tmp, tasks.resolve(task.id + EXT_TASK), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Takes the oldest waiting task.
+   *
+   * @return Null if there's nothing to do.
+   */
+  public WorkerTask claim(String worker) throws IOException {
+    List<Path> waiting = new ArrayList<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(tasks, "*" + EXT_TASK)) {
+      ds.forEach(waiting::add);
+    }
+    // ids start with the submission time
+    Collections.sort(waiting);
+    for (Path path : waiting) {
+      String id = stripExt(path.getFileName().toString(), EXT_TASK);
+      Path to = claimed.resolve(id + "@" + toFileName(worker) + EXT_TASK);
+      try {
+        Files.move(path, to, StandardCopyOption.ATOMIC_MOVE);
+      } catch (NoSuchFileException | FileAlreadyExistsException e) {
+        // another worker was faster, or the task was withdrawn
+        continue;
+      }
+      return WorkerTask.read(to);
+    }
+    return null;
+  }
+
+  /**
+   * @return Name of the worker running the task, null if no worker has taken it.
+   */
+  public String claimedBy(String id) throws IOException {
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(claimed, id + "@*" + EXT_TASK)) {
+      for (Path path : ds) {
+        String fn = stripExt(path.getFileName().toString(), EXT_TASK);
+        return fn.substring(id.length() + 1);
+      }
+    }
+    return null;
+  }
+
+  public Path stdout(String id) {
+    return out.resolve(id + ".out");
+  }
+
+  public Path stderr(String id) {
+    return out.resolve(id + ".err");
+  }
+
+  /**
+   * Called by the worker once the process has finished and all its output is written.
+   */
+  public void complete(String id, Result result) throws IOException {
+    Properties p = new Properties();
+    p.setProperty(KEY_EXIT, Integer.toString(result.exitCode));
+    if (result.error != null) {
+      p.setProperty(KEY_ERROR, result.error);
+    }
+    Path tmp = done.resolve(id + ".tmp");
+    try (Writer w = Files.newBufferedWriter(tmp, UTF_8)) {
+      p.store(w, null);
+    }
+    Files.move(tmp, done.resolve(id + EXT_EXIT), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * @return Null while the task hasn't finished.
+   */
+  public Result result(String id) throws IOException {
+    Path path = done.resolve(id + EXT_EXIT);
+    if (!Files.exists(path)) {
+      return null;
+    }
+    Properties p = new Properties();
+    try (Reader r = Files.newBufferedReader(path, UTF_8)) {
+      p.load(r);
+    }
+    try {
+      return new Result(Integer.parseInt(p.getProperty(KEY_EXIT, "")), p.getProperty(KEY_ERROR));
+    } catch (NumberFormatException e) {
+      throw new IOException("Broken exit code file: " + path, e);
+    }
+  }
+
+  /**
+   * Withdraws the task if no worker has taken it yet, otherwise asks the worker to stop it.
+   *
+   * @return True if the task was withdrawn before starting.
+   */
+  public boolean cancel(String id) throws IOException {
+    if (Files.deleteIfExists(tasks.resolve(id + EXT_TASK))) {
+      return true;
+    }
+    Path flag = cancel.resolve(id);
+    if (!Files.exists(flag)) {
+      try {
+        Files.createFile(flag);
+      } catch (FileAlreadyExistsException ignored) {
+      }
+    }
+    return false;
+  }
+
+  public boolean isCancelled(String id) {
+    return Files.exists(cancel.resolve(id));
+  }
+
+  /**
+   * Removes all files of a finished task.
+   */
+  public void cleanup(String id) throws IOException {
+    Files.deleteIfExists(tasks.resolve(id + EXT_TASK));
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(claimed, id + "@*" + EXT_TASK)) {
+      for (Path path : ds) {
+        Files.deleteIfExists(path);
+      }
+    }
+    Files.deleteIfExists(stdout(id));
+    Files.deleteIfExists(stderr(id));
+    Files.deleteIfExists(done.resolve(id + EXT_EXIT));
+    Files.deleteIfExists(cancel.resolve(id));
+  }
+
+  public void heartbeat(String worker) throws IOException {
+    Path path = workers.resolve(toFileName(worker) + EXT_ALIVE);
+    if (!Files.exists(path)) {
+      Files.write(path, new byte[0]);
+    }
+    Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+  }
+
+  /**
+   * Worker is about to stop.
+   */
+  public void leave(String worker) throws IOException {
+    Files.deleteIfExists(workers.resolve(toFileName(worker) + EXT_ALIVE));
+  }
+
+  /**
+   * @return Modification time of the heartbeat file of the worker, null if the worker has left.
+   * It's set by the clock of the worker, so it should only be compared to earlier values
+   * for change, see {@link HeartbeatWatch}.
+   */
+  public FileTime heartbeatOf(String worker) throws IOException {
+    try {
+      return Files.getLastModifiedTime(workers.resolve(toFileName(worker) + EXT_ALIVE));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return Names of the workers that have a heartbeat file, including ones that died
+   * without removing it.
+   */
+  public List<String> workers() throws IOException {
+    List<String> names = new ArrayList<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(workers, "*" + EXT_ALIVE)) {
+      for (Path path : ds) {
+        names.add(stripExt(path.getFileName().toString(), EXT_ALIVE));
+      }
+    }
+    Collections.sort(names);
+    return names;
+  }
+
+  private static String stripExt(String fn, String ext) {
+    return fn.substring(0, fn.length() - ext.length());
+  }
+}
@@ -0,0 +1,82 @@
+package umich.msfragger.worker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reads a file that another process is still writing to. At the end of the file it waits
+ * for more data, until the writer is known to have finished, so the file can be read like
+ * the output stream of a local process.
+ */
+class TailInputStream extends InputStream {
+  private final Path path;
+  private final BooleanSupplier isWriterDone;
+  private final long pollMs;
+  private RandomAccessFile raf;
+  private long pos = 0;
+  private volatile boolean isClosed = false;
+
+  /**
+   * @param isWriterDone True once nothing more will be appended. The file doesn't need to
+   * exist before that.
+   */
+  TailInputStream(Path path, BooleanSupplier isWriterDone, long pollMs) {
+    this.path = path;
+    this.isWriterDone = isWriterDone;
+    this.pollMs = pollMs;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n == -1 ? -1 : b[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (true) {
+      if (isClosed) {
+        throw new IOException("Stream closed: " + path);
+      }
+      // check before reading, so that data written right before finishing isn't missed
+      final boolean isDone = isWriterDone.getAsBoolean();
+      if (raf == null && Files.exists(path)) {
+        raf = new RandomAccessFile(path.toFile(), "r");
+      }
+      if (raf != null && raf.length() > pos) {
+        raf.seek(pos);
+        int n = raf.read(b, off, len);
+        if (n > 0) {
+          pos += n;
+          return n;
+        }
+      }
+      if (isDone) {
+        return -1;
+      }
+      try {
+        Thread.sleep(pollMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for: " + path);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    isClosed = true;
+    if (raf != null) {
+      raf.close();
+    }
+  }
+}
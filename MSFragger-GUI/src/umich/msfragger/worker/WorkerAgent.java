@@ -0,0 +1,218 @@
+package umich.msfragger.worker;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks handed out through a {@link Spool}. Started on every machine that should take
+ * part in processing:
+ * <pre>
+ * java -cp FragPipe.jar umich.msfragger.worker.WorkerAgent --spool /shared/spool --slots 2
+ * </pre>
+ * The commands are run as they are given, so tools, input files and the output directory
+ * must be at the same paths on the worker as on the machine running FragPipe.
+ * <p>
+ * The same agent can run on a thread inside FragPipe, see {@link #startLoopback}, which
+ * exercises the whole remote execution path on a single machine.
+ */
+public class WorkerAgent {
+  private static final Logger log = LoggerFactory.getLogger(WorkerAgent.class);
+  /** How often the spool is checked for new tasks and cancellation requests. */
+  public static final long POLL_MS = 500;
+  /** How often the worker reports that it's alive. */
+  public static final long HEARTBEAT_MS = 5000;
+  /** A worker that didn't report for this long is considered gone. */
+  public static final long HEARTBEAT_TIMEOUT_MS = 6 * HEARTBEAT_MS;
+
+  private static final String USAGE = "Options:\n"
+      + "  --spool <dir>   Directory shared with FragPipe, required.\n"
+      + "  --slots <n>     How many tasks to run at the same time, default 1.\n"
+      + "  --name <name>   Name of this worker, default is the host name.\n";
+
+  private final Spool spool;
+  private final String name;
+  private final int slots;
+  private final List<Thread> threads = new ArrayList<>();
+  private final List<Process> running = new ArrayList<>();
+  private volatile boolean isStopped = false;
+
+  public WorkerAgent(Spool spool, String name, int slots) {
+    this.spool = spool;
+    this.name = Spool.toFileName(name);
+    this.slots = Math.max(1, slots);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public static void main(String[] args) {
+    Path spoolDir = null;
+    int slots = 1;
+    String name = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for option: " + args[i]);
+        }
+        switch (args[i]) {
+          case "--spool": spoolDir = Paths.get(args[++i]); break;
+          case "--slots": slots = Integer.parseInt(args[++i]); break;
+          case "--name": name = args[++i]; break;
+          default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+      }
+      if (spoolDir == null) {
+        throw new IllegalArgumentException("--spool is required");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println();
+      System.err.print(USAGE);
+      System.exit(2);
+    }
+    try {
+      if (name == null) {
+        name = InetAddress.getLocalHost().getHostName();
+      }
+      WorkerAgent agent = new WorkerAgent(new Spool(spoolDir).init(), name, slots);
+      Runtime.getRuntime().addShutdownHook(new Thread(agent::stop));
+      agent.start();
+      log.info("Worker '{}' with {} slots is waiting for tasks in: {}", agent.name, slots,
+          spoolDir);
+      agent.join();
+    } catch (Exception e) {
+      log.error("Worker failed", e);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Starts a worker on daemon threads of this JVM.
+   */
+  public static WorkerAgent startLoopback(Spool spool, int slots) throws IOException {
+    WorkerAgent agent = new WorkerAgent(spool, "loopback", slots);
+    agent.start();
+    return agent;
+  }
+
+  public synchronized void start() throws IOException {
+    spool.heartbeat(name);
+    Thread hb = new Thread(this::heartbeatLoop, "worker-" + name + "-heartbeat");
+    threads.add(hb);
+    for (int i = 0; i < slots; i++) {
+      threads.add(new Thread(this::slotLoop, "worker-" + name + "-slot-" + (i + 1)));
+    }
+    for (Thread t : threads) {
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  public void join() throws InterruptedException {
+    for (Thread t : new ArrayList<>(threads)) {
+      t.join();
+    }
+  }
+
+  /**
+   * Kills running processes and stops taking tasks. Tasks being run are reported as failed.
+   */
+  public void stop() {
+    isStopped = true;
+    synchronized (running) {
+      running.forEach(Process::destroyForcibly);
+    }
+    try {
+      spool.leave(name);
+    } catch (IOException e) {
+      log.warn("Could not remove heartbeat of worker '{}'", name, e);
+    }
+  }
+
+  private void heartbeatLoop() {
+    while (!isStopped) {
+      try {
+        spool.heartbeat(name);
+        Thread.sleep(HEARTBEAT_MS);
+      } catch (InterruptedException e) {
+        return;
+      } catch (IOException e) {
+        log.warn("Could not update heartbeat of worker '{}'", name, e);
+      }
+    }
+  }
+
+  private void slotLoop() {
+    while (!isStopped) {
+      try {
+        WorkerTask task = spool.claim(name);
+        if (task == null) {
+          Thread.sleep(POLL_MS);
+        } else {
+          Spool.Result result = execute(task);
+          if (spool.isCancelled(task.id)) {
+            // nobody is waiting for the result
+            spool.cleanup(task.id);
+          } else {
+            spool.complete(task.id, result);
+          }
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (IOException e) {
+        log.warn("Worker '{}' could not access the spool", name, e);
+        try {
+          Thread.sleep(POLL_MS);
+        } catch (InterruptedException ie) {
+          return;
+        }
+      }
+    }
+  }
+
+  private Spool.Result execute(WorkerTask task) throws InterruptedException {
+    if (spool.isCancelled(task.id)) {
+      return new Spool.Result(1, "Cancelled before start");
+    }
+    log.debug("Worker '{}' starting: {}", name, task);
+    ProcessBuilder pb = task.toProcessBuilder();
+    pb.redirectOutput(spool.stdout(task.id).toFile());
+    pb.redirectError(spool.stderr(task.id).toFile());
+    Process proc;
+    try {
+      proc = pb.start();
+    } catch (IOException e) {
+      log.warn("Worker '{}' could not start: {}", name, task, e);
+      return new Spool.Result(1, e.toString());
+    }
+    synchronized (running) {
+      running.add(proc);
+    }
+    try {
+      while (!proc.waitFor(POLL_MS, TimeUnit.MILLISECONDS)) {
+        if (isStopped || spool.isCancelled(task.id)) {
+          log.debug("Worker '{}' stopping: {}", name, task);
+          proc.destroyForcibly();
+        }
+      }
+      int exitCode = proc.exitValue();
+      log.debug("Worker '{}' finished with exit code {}: {}", name, exitCode, task);
+      return new Spool.Result(exitCode, null);
+    } finally {
+      synchronized (running) {
+        running.remove(proc);
+      }
+      if (proc.isAlive()) {
+        proc.destroyForcibly();
+      }
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package umich.msfragger.worker;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.greenrobot.eventbus.EventBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import umich.msfragger.cmd.CmdCrystalc;
+import umich.msfragger.cmd.CmdMsfragger;
+import umich.msfragger.cmd.CmdPeptideProphet;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuilderInfo.TaskFailedException;
+import umich.msfragger.gui.MsfraggerGuiFrame;
+import umich.msfragger.gui.ProcessResult;
+import umich.msfragger.messages.MessageAppendToConsole;
+import umich.msfragger.messages.MessageExternalProcessOutput;
+import umich.msfragger.messages.MessageKillAll.REASON;
+
+/**
+ * Sends tasks to workers through a {@link Spool} instead of running them on this machine.
+ * The task runnables behave like the ones of local processes: the command is printed, the
+ * output streams to the console and to the process log file, and a non-zero exit code
+ * fails the task. Stopping the run cancels the task on the worker.
+ */
+public class WorkerDispatcher {
+  private static final Logger log = LoggerFactory.getLogger(WorkerDispatcher.class);
+  /**
+   * Tools whose processes only touch the files on their command line and in their working
+   * directory, so they can run on any machine that sees the same filesystem.
+   */
+  public static final Set<String> REMOTABLE = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList(CmdMsfragger.NAME, CmdCrystalc.NAME, CmdPeptideProphet.NAME)));
+  /** How long to wait for the output of a finished task to be read. */
+  private static final long PUMP_DRAIN_TIMEOUT_MS = 5000;
+  /** Tell the user if no worker took a task for this long. */
+  private static final long WAITING_NOTICE_MS = 30000;
+
+  private final Spool spool;
+  private final HeartbeatWatch heartbeats;
+  private final String idPrefix = UUID.randomUUID().toString().substring(0, 8);
+  private final AtomicInteger seq = new AtomicInteger(0);
+
+  public WorkerDispatcher(Spool spool) {
+    this.spool = spool;
+    this.heartbeats = new HeartbeatWatch(spool, WorkerAgent.HEARTBEAT_TIMEOUT_MS);
+  }
+
+  public Spool getSpool() {
+    return spool;
+  }
+
+  public boolean isRemotable(ProcessBuilderInfo pbi) {
+    return pbi.pb != null && REMOTABLE.contains(pbi.name);
+  }
+
+  /**
+   * Task ids sort in submission order, workers take the oldest task first.
+   */
+  private String newId(String name) {
+    return String.format(Locale.ROOT, "%013d-%s-%05d-%s", System.currentTimeMillis(), idPrefix,
+        seq.incrementAndGet(), Spool.toFileName(String.valueOf(name)));
+  }
+
+  /**
+   * @return Throws {@link TaskFailedException} if the task couldn't be submitted, was
+   * interrupted, its worker disappeared or it returned a non-zero exit code.
+   */
+  public Runnable toRunnable(final ProcessBuilderInfo pbi,
+      final Consumer<ProcessBuilderInfo> pbiPrinter) {
+    return () -> {
+      final WorkerTask task = WorkerTask.from(newId(pbi.name), pbi.name, pbi.pb);
+      final AtomicBoolean isFinished = new AtomicBoolean(false);
+      final TailInputStream out = new TailInputStream(spool.stdout(task.id), isFinished::get,
+          WorkerAgent.POLL_MS);
+      final TailInputStream err = new TailInputStream(spool.stderr(task.id), isFinished::get,
+          WorkerAgent.POLL_MS);
+      final ProcessResult pr = new ProcessResult(pbi);
+      // a cancelled task is cleaned up by the worker once the process is gone
+      boolean isCancelled = false;
+      try {
+        log.debug("Submitting to workers: {}", task);
+        if (pbiPrinter != null) {
+          pbiPrinter.accept(pbi);
+        }
+        try {
+          spool.submit(task);
+          pr.attach(out, err);
+        } catch (IOException e) {
+          log.error("Error while submitting task to workers: " + pbi.name + ", stopping", e);
+          throw new TaskFailedException(REASON.CANT_START_PROCESS,
+              "Could not submit to workers: " + pbi.name);
+        }
+        pr.startPumps(
+            s -> EventBus.getDefault().post(new MessageExternalProcessOutput(false, s, pbi.name)),
+            s -> EventBus.getDefault().post(new MessageExternalProcessOutput(true, s, pbi.name)));
+
+        Spool.Result result;
+        try {
+          result = awaitResult(task);
+        } catch (InterruptedException e) {
+          isCancelled = true;
+          cancel(task);
+          String msg = "Processing interrupted, stopping " + pbi.name;
+          log.debug(msg, e);
+          EventBus.getDefault()
+              .post(new MessageAppendToConsole(msg, MsfraggerGuiFrame.COLOR_RED_DARKEST));
+          throw new TaskFailedException("Interrupted: " + pbi.name);
+        } finally {
+          isFinished.set(true);
+        }
+        try {
+          pr.awaitPumps(PUMP_DRAIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+          throw new TaskFailedException("Interrupted: " + pbi.name);
+        }
+        if (result.error != null) {
+          EventBus.getDefault().post(new MessageExternalProcessOutput(true,
+              result.error + "\n", pbi.name));
+          throw new TaskFailedException(REASON.CANT_START_PROCESS,
+              "Worker could not start: " + pbi.name);
+        }
+        ProcessBuilderInfo.reportExitValue(pbi, result.exitCode);
+
+      } finally {
+        try {
+          out.close();
+          err.close();
+          pr.close();
+        } catch (Exception e) {
+          log.error("Error closing output of remote task", e);
+        }
+        if (!isCancelled) {
+          try {
+            spool.cleanup(task.id);
+          } catch (IOException e) {
+            log.warn("Could not remove spool files of task: {}", task, e);
+          }
+        }
+      }
+    };
+  }
+
+  private Spool.Result awaitResult(WorkerTask task) throws InterruptedException {
+    final long submitted = System.nanoTime();
+    boolean isWaitingReported = false;
+    String worker = null;
+    try {
+      // the heartbeats seen now tell if they changed by the time the waiting notice is shown
+      heartbeats.aliveWorkers();
+    } catch (IOException e) {
+      log.warn("Could not list workers in spool: {}", spool.getRoot(), e);
+    }
+    while (true) {
+      try {
+        Spool.Result result = spool.result(task.id);
+        if (result != null) {
+          return result;
+        }
+        if (worker == null) {
+          worker = spool.claimedBy(task.id);
+          if (worker != null) {
+            log.debug("Task taken by worker '{}': {}", worker, task);
+            EventBus.getDefault().post(new MessageAppendToConsole(String.format(Locale.ROOT,
+                "Worker '%s' is running '%s'", worker, task.name),
+                MsfraggerGuiFrame.COLOR_GREEN_DARKEST));
+          } else if (!isWaitingReported && System.nanoTime() - submitted
+              > TimeUnit.MILLISECONDS.toNanos(WAITING_NOTICE_MS)) {
+            isWaitingReported = true;
+            int alive = heartbeats.aliveWorkers().size();
+            EventBus.getDefault().post(new MessageAppendToConsole(String.format(Locale.ROOT,
+                "'%s' is waiting for a free worker, %d workers are running, spool: %s",
+                task.name, alive, spool.getRoot()), MsfraggerGuiFrame.COLOR_RED_DARKEST));
+          }
+        } else if (!heartbeats.isAlive(worker)
+            && spool.result(task.id) == null) {
+          String msg = String.format(Locale.ROOT,
+              "Worker '%s' stopped responding while running: %s", worker, task.name);
+          EventBus.getDefault().post(new MessageAppendToConsole(msg, MsfraggerGuiFrame.COLOR_RED));
+          throw new TaskFailedException(msg);
+        }
+      } catch (IOException e) {
+        log.warn("Could not check the state of task: {}", task, e);
+      }
+      Thread.sleep(WorkerAgent.POLL_MS);
+    }
+  }
+
+  private void cancel(WorkerTask task) {
+    try {
+      spool.cancel(task.id);
+    } catch (IOException e) {
+      log.warn("Could not cancel task on worker: {}", task, e);
+    }
+  }
+}
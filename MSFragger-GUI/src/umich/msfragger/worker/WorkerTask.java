@@ -0,0 +1,130 @@
+package umich.msfragger.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A command to be run by a worker, with everything the worker needs to know about it.
+ * Stored as a properties file in the {@link Spool}.
+ */
+public class WorkerTask {
+  private static final String KEY_ID = "id";
+  private static final String KEY_NAME = "name";
+  private static final String KEY_DIR = "dir";
+  private static final String KEY_CMD_COUNT = "cmd.count";
+  private static final String KEY_CMD = "cmd.";
+  private static final String KEY_ENV = "env.";
+
+  public final String id;
+  public final String name;
+  public final List<String> command;
+  /** Working directory of the process, null to use the one of the worker. */
+  public final String workDir;
+  /** Environment variables to set on top of the environment of the worker. */
+  public final Map<String, String> env;
+
+  public WorkerTask(String id, String name, List<String> command, String workDir,
+      Map<String, String> env) {
+    this.id = id;
+    this.name = name;
+    this.command = Collections.unmodifiableList(new ArrayList<>(command));
+    this.workDir = workDir;
+    this.env = Collections.unmodifiableMap(new TreeMap<>(env));
+  }
+
+  /**
+   * Only the environment variables the process builder changed are passed on, the rest
+   * comes from the worker's own environment.
+   */
+  public static WorkerTask from(String id, String name, ProcessBuilder pb) {
+    return new WorkerTask(id, name, pb.command(),
+        pb.directory() == null ? null : pb.directory().getAbsolutePath(), changedEnv(pb));
+  }
+
+  /**
+   * @return Environment variables the process builder sets to something else than the
+   * environment of this JVM, sorted by name.
+   */
+  public static Map<String, String> changedEnv(ProcessBuilder pb) {
+    Map<String, String> env = new TreeMap<>();
+    Map<String, String> ours = System.getenv();
+    pb.environment().forEach((k, v) -> {
+      if (!Objects.equals(ours.get(k), v)) {
+        env.put(k, v);
+      }
+    });
+    return env;
+  }
+
+  public ProcessBuilder toProcessBuilder() {
+    ProcessBuilder pb = new ProcessBuilder(command);
+    if (workDir != null) {
+      pb.directory(new File(workDir));
+    }
+    pb.environment().putAll(env);
+    return pb;
+  }
+
+  public void write(Path path) throws IOException {
+    Properties p = new Properties();
+    p.setProperty(KEY_ID, id);
+    p.setProperty(KEY_NAME, name);
+    if (workDir != null) {
+      p.setProperty(KEY_DIR, workDir);
+    }
+    p.setProperty(KEY_CMD_COUNT, Integer.toString(command.size()));
+    for (int i = 0; i < command.size(); i++) {
+      p.setProperty(KEY_CMD + i, command.get(i));
+    }
+    env.forEach((k, v) -> p.setProperty(KEY_ENV + k, v));
+    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(path))) {
+      p.store(os, "FragPipe worker task");
+    }
+  }
+
+  public static WorkerTask read(Path path) throws IOException {
+    Properties p = new Properties();
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+      p.load(is);
+    }
+    String id = p.getProperty(KEY_ID);
+    String count = p.getProperty(KEY_CMD_COUNT);
+    if (id == null || count == null) {
+      throw new IOException("Not a worker task file: " + path);
+    }
+    List<String> command = new ArrayList<>();
+    try {
+      for (int i = 0; i < Integer.parseInt(count); i++) {
+        command.add(p.getProperty(KEY_CMD + i, ""));
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException("Broken worker task file: " + path, e);
+    }
+    Map<String, String> env = new TreeMap<>();
+    for (String key : p.stringPropertyNames()) {
+      if (key.startsWith(KEY_ENV)) {
+        env.put(key.substring(KEY_ENV.length()), p.getProperty(key));
+      }
+    }
+    return new WorkerTask(id, p.getProperty(KEY_NAME, id), command, p.getProperty(KEY_DIR),
+        env);
+  }
+
+  @Override
+  public String toString() {
+    return name + " [" + id + "]";
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2018 Dmitry Avtonomov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package umich.swing.console;
+
+import java.awt.Color;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
+
+/**
+ * Single pass parser of text containing ANSI escape sequences. Runs of plain text are passed
+ * to the sink together with the attributes set by the SGR ("...m") sequences before them,
+ * other escape sequences are skipped.
+ * <p>
+ * Supported SGR codes: 0 (reset), 1/22 (bold), 3/23 (italic), 4/24 (underline), 30-37, 39,
+ * 90-97 (foreground), 40-47, 49, 100-107 (background). The 256 color and RGB forms (38;5;n,
+ * 38;2;r;g;b) are understood for the first 16 colors and skipped otherwise.
+ * <p>
+ * The parser keeps its state between calls, so sequences split between chunks of output are
+ * handled. Attribute sets are created once per combination of styles and shared.
+ */
+public class AnsiParser {
+
+    public interface Sink {
+        void text(AttributeSet attrs, String text);
+    }
+
+    private static final char ESC = '\u001B';
+    private static final Color[] COLORS = {
+        TextConsole.D_Black, TextConsole.D_Red, TextConsole.D_Green, TextConsole.D_Yellow,
+        TextConsole.D_Blue, TextConsole.D_Magenta, TextConsole.D_Cyan, TextConsole.D_White,
+        TextConsole.B_Black, TextConsole.B_Red, TextConsole.B_Green, TextConsole.B_Yellow,
+        TextConsole.B_Blue, TextConsole.B_Magenta, TextConsole.B_Cyan, TextConsole.B_White,
+    };
+    /** Index into {@link #COLORS} meaning "no color set". */
+    private static final int COLOR_DEFAULT = 16;
+    private static final int BITS_COLOR = 5;
+    private static final int BOLD = 1 << (2 * BITS_COLOR);
+    private static final int ITALIC = BOLD << 1;
+    private static final int UNDERLINE = BOLD << 2;
+    private static final int STYLE_DEFAULT = COLOR_DEFAULT | COLOR_DEFAULT << BITS_COLOR;
+    private static final AttributeSet[] STYLES = new AttributeSet[UNDERLINE << 1];
+    private static final int MAX_PARAMS = 16;
+    private static final int MAX_PARAM_VALUE = 9999;
+
+    private static final int STATE_TEXT = 0;
+    private static final int STATE_ESC = 1;
+    private static final int STATE_CSI = 2;
+
+    private int state = STATE_TEXT;
+    private final int[] params = new int[MAX_PARAMS];
+    private int numParams = 0;
+    private int param = 0;
+    private int fg = COLOR_DEFAULT;
+    private int bg = COLOR_DEFAULT;
+    private int flags = 0;
+
+    /**
+     * Parses the next chunk of text.
+     */
+    public void parse(String s, Sink sink) {
+        int textStart = 0;
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            switch (state) {
+                case STATE_TEXT:
+                    if (c == ESC) {
+                        if (i > textStart) {
+                            sink.text(style(), s.substring(textStart, i));
+                        }
+                        state = STATE_ESC;
+                    }
+                    break;
+
+                case STATE_ESC:
+                    if (c == '[') {
+                        state = STATE_CSI;
+                        numParams = 0;
+                        param = 0;
+                    } else {
+                        // two character escape sequence, nothing to do with colors
+                        state = STATE_TEXT;
+                        textStart = i + 1;
+                    }
+                    break;
+
+                case STATE_CSI:
+                    if (c >= '0' && c <= '9') {
+                        param = Math.min(MAX_PARAM_VALUE, param * 10 + (c - '0'));
+                    } else if (c == ';') {
+                        pushParam();
+                    } else if (c >= 0x40 && c <= 0x7E) {
+                        pushParam();
+                        if (c == 'm') {
+                            applySgr();
+                        }
+                        state = STATE_TEXT;
+                        textStart = i + 1;
+                    }
+                    // intermediate bytes and private markers like '?' are ignored
+                    break;
+            }
+        }
+        if (state == STATE_TEXT && textStart < len) {
+            sink.text(style(), textStart == 0 ? s : s.substring(textStart));
+        }
+    }
+
+    /**
+     * Attributes for text that is not preceded by any escape sequences.
+     */
+    static AttributeSet defaultStyle() {
+        return styleFor(STYLE_DEFAULT);
+    }
+
+    private void pushParam() {
+        if (numParams < MAX_PARAMS) {
+            params[numParams++] = param;
+        }
+        param = 0;
+    }
+
+    private void applySgr() {
+        for (int k = 0; k < numParams; k++) {
+            final int p = params[k];
+            if (p == 0) {
+                fg = COLOR_DEFAULT;
+                bg = COLOR_DEFAULT;
+                flags = 0;
+            } else if (p == 1) {
+                flags |= BOLD;
+            } else if (p == 3) {
+                flags |= ITALIC;
+            } else if (p == 4) {
+                flags |= UNDERLINE;
+            } else if (p == 22) {
+                flags &= ~BOLD;
+            } else if (p == 23) {
+                flags &= ~ITALIC;
+            } else if (p == 24) {
+                flags &= ~UNDERLINE;
+            } else if (p >= 30 && p <= 37) {
+                fg = p - 30;
+            } else if (p == 39) {
+                fg = COLOR_DEFAULT;
+            } else if (p >= 40 && p <= 47) {
+                bg = p - 40;
+            } else if (p == 49) {
+                bg = COLOR_DEFAULT;
+            } else if (p >= 90 && p <= 97) {
+                fg = p - 90 + 8;
+            } else if (p >= 100 && p <= 107) {
+                bg = p - 100 + 8;
+            } else if (p == 38 || p == 48) {
+                int color = -1;
+                if (k + 2 < numParams && params[k + 1] == 5) {
+                    color = params[k + 2] < 16 ? params[k + 2] : -1;
+                    k += 2;
+                } else if (k + 4 < numParams && params[k + 1] == 2) {
+                    k += 4;
+                }
+                if (color >= 0) {
+                    if (p == 38) {
+                        fg = color;
+                    } else {
+                        bg = color;
+                    }
+                }
+            }
+        }
+    }
+
+    private AttributeSet style() {
+        // bold turns the 8 basic colors into their bright versions, like most terminals do
+        int fgEffective = (flags & BOLD) != 0 && fg < 8 ? fg + 8 : fg;
+        return styleFor(fgEffective | bg << BITS_COLOR | flags);
+    }
+
+    private static AttributeSet styleFor(int key) {
+        AttributeSet a = STYLES[key];
+        if (a == null) {
+            // racing threads would build equal sets, no need to synchronize
+            a = createStyle(key);
+            STYLES[key] = a;
+        }
+        return a;
+    }
+
+    private static AttributeSet createStyle(int key) {
+        final int mask = (1 << BITS_COLOR) - 1;
+        final int fg = key & mask;
+        final int bg = (key >> BITS_COLOR) & mask;
+        final boolean isBold = (key & BOLD) != 0;
+        SimpleAttributeSet sas = new SimpleAttributeSet();
+        StyleConstants.setForeground(sas, fg == COLOR_DEFAULT ? TextConsole.cReset : COLORS[fg]);
+        if (bg != COLOR_DEFAULT) {
+            StyleConstants.setBackground(sas, COLORS[bg]);
+        }
+        if (isBold && fg == COLOR_DEFAULT) {
+            StyleConstants.setBold(sas, true);
+        }
+        if ((key & ITALIC) != 0) {
+            StyleConstants.setItalic(sas, true);
+        }
+        if ((key & UNDERLINE) != 0) {
+            StyleConstants.setUnderline(sas, true);
+        }
+        StyleContext sc = StyleContext.getDefaultStyleContext();
+        return sc.addAttributes(SimpleAttributeSet.EMPTY, sas);
+    }
+}
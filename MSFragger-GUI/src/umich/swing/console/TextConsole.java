@@ -19,15 +19,27 @@ package umich.swing.console;
 import java.awt.Color;
 import java.awt.Font;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 import javax.swing.JTextPane;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyleContext;
 import javax.swing.text.StyledDocument;
 
 /**
+ * Text pane that understands ANSI color codes.
+ * <p>
+ * The amount of text kept can be limited with {@link #setMaxLines(int)} and
+ * {@link #setMaxChars(int)}. When a limit is exceeded, the oldest paragraphs are removed
+ * until the text is down to {@link #EVICT_TO_FRACTION} of the limit, so the cost of removal
+ * is spread over many appends. Removed text is passed to the eviction listener, e.g. to keep
+ * it on disk.
  *
  * @author dmitriya
  */
@@ -51,12 +63,83 @@ public class TextConsole extends JTextPane implements Appendable {
     public static final Color B_White = Color.getHSBColor(0.000f, 0.000f, 1.000f);
     
     static final Color cReset = Color.getHSBColor(0.000f, 0.000f, 0.000f);
-    static Color colorCurrent = cReset;
-    
-    protected String remaining = "";
+
+    private final AnsiParser ansiParser = new AnsiParser();
+    private final Map<Color, AttributeSet> colorStyles = new HashMap<>();
+
+    /** After exceeding a limit, text is evicted down to this fraction of the limit. */
+    public static final double EVICT_TO_FRACTION = 0.8;
+    private int maxLines = 0;
+    private int maxChars = 0;
+    private Consumer<String> evictionListener;
     
     public TextConsole() {
     }
+
+    /**
+     * @param maxLines Zero or less means no limit.
+     */
+    public void setMaxLines(int maxLines) {
+        this.maxLines = maxLines;
+        evictIfNeeded();
+    }
+
+    /**
+     * @param maxChars Zero or less means no limit.
+     */
+    public void setMaxChars(int maxChars) {
+        this.maxChars = maxChars;
+        evictIfNeeded();
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    /**
+     * @param evictionListener Receives text removed from the beginning of the console because
+     * of the limits, in the order it was removed. Called on the thread appending the text.
+     */
+    public void setEvictionListener(Consumer<String> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Removes whole paragraphs from the beginning of the document if any limit is exceeded.
+     * Locating the cut point is a lookup in the paragraph list of the root element.
+     */
+    protected void evictIfNeeded() {
+        final Document doc = getDocument();
+        final Element root = doc.getDefaultRootElement();
+        final int len = doc.getLength();
+        int removeTo = 0;
+        final int lines = root.getElementCount();
+        if (maxLines > 0 && lines > maxLines) {
+            int keep = Math.max(1, (int) (maxLines * EVICT_TO_FRACTION));
+            removeTo = root.getElement(lines - keep).getStartOffset();
+        }
+        if (maxChars > 0 && len > maxChars) {
+            int target = len - Math.max(1, (int) (maxChars * EVICT_TO_FRACTION));
+            Element p = root.getElement(root.getElementIndex(target));
+            int cut = p.getStartOffset() == target ? target : p.getEndOffset();
+            removeTo = Math.max(removeTo, Math.min(cut, len));
+        }
+        if (removeTo <= 0) {
+            return;
+        }
+        try {
+            if (evictionListener != null) {
+                evictionListener.accept(doc.getText(0, removeTo));
+            }
+            doc.remove(0, removeTo);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
     
     
     @Override
@@ -102,132 +185,50 @@ public class TextConsole extends JTextPane implements Appendable {
         } catch (BadLocationException e) {
             e.printStackTrace();
         }
+        evictIfNeeded();
         return this;
     }
     
     public void append(Color c, String s) {
-        StyleContext sc = StyleContext.getDefaultStyleContext();
-        AttributeSet aset = sc.addAttribute(SimpleAttributeSet.EMPTY, StyleConstants.Foreground, c);
-        int len = getDocument().getLength(); // same value as getText().length();
-        setCaretPosition(len);  // place caret at the end (with no selection)
-        setCharacterAttributes(aset, false);
+        AttributeSet aset = colorStyles.computeIfAbsent(c, color -> StyleContext
+            .getDefaultStyleContext().addAttribute(SimpleAttributeSet.EMPTY, StyleConstants.Foreground, color));
+        append(aset, s);
+    }
+
+    /**
+     * Appends text at the end of the document and moves the caret there.
+     */
+    public void append(AttributeSet aset, String s) {
         // In JTextPane, only "\n" is recognized as a newline, so replace "\r\n" with "\n"
         // https://download.java.net/java/early_access/jdk12/docs/api/java.desktop/javax/swing/text/DefaultEditorKit.html
         // “But while the document is in memory, the "\n" character is used to define a newline, regardless of how the newline is defined when the document is on disk.”
         // JTextPane doesn't print "\r", so replace it with "\n"
-        replaceSelection(s.replace("\r\n", "\n").replace("\r", "\n")); // there is no selection, so inserts at caret
+        if (s.indexOf('\r') >= 0) {
+            s = s.replace("\r\n", "\n").replace('\r', '\n');
+        }
+        StyledDocument doc = getStyledDocument();
+        try {
+            doc.insertString(doc.getLength(), s, aset);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        evictIfNeeded();
+        setCaretPosition(doc.getLength());  // place caret at the end (with no selection)
     }
-    
-    public void appendANSI(String s) { // convert ANSI color codes first
-        int aPos = 0;   // current char position in addString
-        int aIndex = 0; // index of next Escape sequence
-        int mIndex = 0; // index of "m" terminating Escape sequence
-        String tmpString = "";
-        boolean stillSearching = true; // true until no more Escape sequences
-        String addString = remaining + s;
-        remaining = "";
-
-        if (addString.length() > 0) {
-            aIndex = addString.indexOf("\u001B"); // find first escape
-            if (aIndex == -1) { // no escape/color change in this string, so just send it with current color
-                append(colorCurrent, addString);
-                return;
-            }
-            // otherwise There is an escape character in the string, so we must process it
 
-            if (aIndex > 0) { // Escape is not first char, so send text up to first escape
-                tmpString = addString.substring(0, aIndex);
-                append(colorCurrent, tmpString);
-                aPos = aIndex;
-            }
-            // aPos is now at the beginning of the first escape sequence
-
-            stillSearching = true;
-            while (stillSearching) {
-                mIndex = addString.indexOf("m", aPos); // find the end of the escape sequence
-                if (mIndex < 0) { // the buffer ends halfway through the ansi string!
-                    remaining = addString.substring(aPos, addString.length());
-                    stillSearching = false;
-                    continue;
-                } else {
-                    tmpString = addString.substring(aPos, mIndex + 1);
-                    colorCurrent = getANSIColor(tmpString);
-                }
-                aPos = mIndex + 1;
-                // now we have the color, send text that is in that color (up to next escape)
-
-                aIndex = addString.indexOf("\u001B", aPos);
-
-                if (aIndex == -1) { // if that was the last sequence of the input, send remaining text
-                    tmpString = addString.substring(aPos, addString.length());
-                    append(colorCurrent, tmpString);
-                    stillSearching = false;
-                    continue; // jump out of loop early, as the whole string has been sent now
-                }
-
-                // there is another escape sequence, so send part of the string and prepare for the next
-                tmpString = addString.substring(aPos, aIndex);
-                aPos = aIndex;
-                append(colorCurrent, tmpString);
-
-            } // while there's text in the input buffer
-        }
+    /**
+     * Appends text that may contain ANSI escape sequences, colors are converted to text
+     * attributes. Sequences split between consecutive calls are handled.
+     */
+    public void appendANSI(String s) {
+        appendANSI(ansiParser, s);
     }
-    
-    public Color getANSIColor(String ANSIColor) {
-        if (ANSIColor.equals("\u001B[30m")) {
-            return D_Black;
-        } else if (ANSIColor.equals("\u001B[31m")) {
-            return D_Red;
-        } else if (ANSIColor.equals("\u001B[32m")) {
-            return D_Green;
-        } else if (ANSIColor.equals("\u001B[33m")) {
-            return D_Yellow;
-        } else if (ANSIColor.equals("\u001B[34m")) {
-            return D_Blue;
-        } else if (ANSIColor.equals("\u001B[35m")) {
-            return D_Magenta;
-        } else if (ANSIColor.equals("\u001B[36m")) {
-            return D_Cyan;
-        } else if (ANSIColor.equals("\u001B[37m")) {
-            return D_White;
-        } else if (ANSIColor.equals("\u001B[0;30m")) {
-            return D_Black;
-        } else if (ANSIColor.equals("\u001B[0;31m")) {
-            return D_Red;
-        } else if (ANSIColor.equals("\u001B[0;32m")) {
-            return D_Green;
-        } else if (ANSIColor.equals("\u001B[0;33m")) {
-            return D_Yellow;
-        } else if (ANSIColor.equals("\u001B[0;34m")) {
-            return D_Blue;
-        } else if (ANSIColor.equals("\u001B[0;35m")) {
-            return D_Magenta;
-        } else if (ANSIColor.equals("\u001B[0;36m")) {
-            return D_Cyan;
-        } else if (ANSIColor.equals("\u001B[0;37m")) {
-            return D_White;
-        } else if (ANSIColor.equals("\u001B[1;30m")) {
-            return B_Black;
-        } else if (ANSIColor.equals("\u001B[1;31m")) {
-            return B_Red;
-        } else if (ANSIColor.equals("\u001B[1;32m")) {
-            return B_Green;
-        } else if (ANSIColor.equals("\u001B[1;33m")) {
-            return B_Yellow;
-        } else if (ANSIColor.equals("\u001B[1;34m")) {
-            return B_Blue;
-        } else if (ANSIColor.equals("\u001B[1;35m")) {
-            return B_Magenta;
-        } else if (ANSIColor.equals("\u001B[1;36m")) {
-            return B_Cyan;
-        } else if (ANSIColor.equals("\u001B[1;37m")) {
-            return B_White;
-        } else if (ANSIColor.equals("\u001B[0m")) {
-            return cReset;
-        } else {
-            //return B_White;
-            return D_Black; // return black instead of white by default
-        }
+
+    /**
+     * Same as {@link #appendANSI(String)}, but keeps the state of escape sequences in the
+     * given parser, for text of a source that must not mix with output of others.
+     */
+    public void appendANSI(AnsiParser parser, String s) {
+        parser.parse(s, this::append);
     }
 }
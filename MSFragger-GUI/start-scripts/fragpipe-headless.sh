@@ -0,0 +1 @@
+java -Djava.awt.headless=true -cp FragPipe.jar umich.msfragger.gui.FragpipeHeadless "$@"
@@ -0,0 +1 @@
+java -cp FragPipe.jar umich.msfragger.worker.WorkerAgent "$@"
@@ -0,0 +1,58 @@
+package umich.msfragger.cmd;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.util.ArgFileLauncher;
+import umich.msfragger.util.FileDelete;
+
+public class CmdBaseTest {
+
+  /** Started through {@link ArgFileLauncher}, writes the arguments it got to a file. */
+  public static class Echo {
+    public static void main(String[] args) throws Exception {
+      Files.write(Paths.get(args[0]), Arrays.asList(args), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void shortCommandIsNotChanged() throws Exception {
+    List<String> cmd = Arrays.asList("java", "-Xmx1G", "-jar", "tool.jar", "a.mzML");
+    Assert.assertSame(cmd, CmdBase.fitJavaCommandLine(cmd, Paths.get("x.args"), true));
+  }
+
+  @Test
+  public void longCommandRunsThroughArgFile() throws Throwable {
+    Path dir = Files.createTempDirectory("argfile-test");
+    try {
+      Path echoed = dir.resolve("echoed.txt");
+      String classpath = Paths.get(Echo.class.getProtectionDomain().getCodeSource()
+          .getLocation().toURI()).toString();
+      List<String> programArgs = new ArrayList<>();
+      programArgs.add(echoed.toString());
+      for (int i = 0; i < 5000; i++) {
+        programArgs.add("/data/experiment/file_" + i + ".mzML");
+      }
+      List<String> cmd = new ArrayList<>(Arrays.asList("java", "-Xmx1G", "-cp", classpath,
+          Echo.class.getName()));
+      cmd.addAll(programArgs);
+
+      Path argFile = dir.resolve("tool.args");
+      List<String> fitted = CmdBase.fitJavaCommandLine(cmd, argFile, false);
+      Assert.assertTrue(CmdBase.commandLength(fitted) <= CmdBase.COMMAND_LENGTH_LIMIT);
+      Assert.assertEquals("-Xmx1G", fitted.get(1));
+      Assert.assertEquals(ArgFileLauncher.class.getName(), fitted.get(fitted.size() - 2));
+
+      ArgFileLauncher.main(new String[]{argFile.toString()});
+      Assert.assertEquals(programArgs, Files.readAllLines(echoed, StandardCharsets.UTF_8));
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package umich.msfragger.cmd;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.greenrobot.eventbus.EventBus;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.messages.MessageDeletePaths;
+import umich.msfragger.util.FileDelete;
+
+public class ToolingUtilsTest {
+
+  @Test
+  public void filesAreMovedInOneTaskPerDestination() throws Exception {
+    Path dir = Files.createTempDirectory("tooling-test");
+    try {
+      Path dest = Files.createDirectories(dir.resolve("dest"));
+      Path a = Files.write(dir.resolve("a.txt"), new byte[]{1});
+      Path b = Files.write(dir.resolve("b.txt"), new byte[]{2});
+      Path already = Files.write(dest.resolve("c.txt"), new byte[]{3});
+
+      List<ProcessBuilderInfo> pbis = ToolingUtils.pbisMoveFiles(dest,
+          Arrays.asList(a, b, already));
+      Assert.assertEquals(1, pbis.size());
+      Assert.assertNull(pbis.get(0).pb);
+      Assert.assertEquals(Arrays.asList(a, b), pbis.get(0).fileOps.files);
+
+      pbis.get(0).fileOps.run();
+      Assert.assertFalse(Files.exists(a));
+      Assert.assertTrue(Files.exists(dest.resolve("a.txt")));
+      Assert.assertTrue(Files.exists(dest.resolve("b.txt")));
+
+      List<ProcessBuilderInfo> deletes = ToolingUtils.pbisDeleteFiles(
+          Arrays.asList(dest.resolve("a.txt"), dest.resolve("b.txt"), already, dest.resolve("x")));
+      Assert.assertEquals(1, deletes.size());
+      deletes.get(0).fileOps.run();
+      Assert.assertFalse(Files.exists(already));
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void stagedFileIsScheduledForDeletionOnceCreated() throws Exception {
+    Path dir = Files.createTempDirectory("tooling-test");
+    try {
+      Path dest = Files.createDirectories(dir.resolve("dest"));
+      Path a = Files.write(dir.resolve("a.mzML"), new byte[]{1});
+      Path staged = dest.resolve("a.mzML");
+      EventBus.getDefault().postSticky(new MessageDeletePaths(Collections.emptySet()));
+
+      List<ProcessBuilderInfo> pbis = ToolingUtils.pbisStageFiles(dest,
+          Collections.singletonList(a));
+      Assert.assertFalse(toDelete().contains(staged));
+
+      pbis.get(0).fileOps.run();
+      Assert.assertTrue(Files.exists(staged));
+      Assert.assertTrue(toDelete().contains(staged));
+    } finally {
+      EventBus.getDefault().postSticky(new MessageDeletePaths(Collections.emptySet()));
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  private static Set<Path> toDelete() {
+    return EventBus.getDefault().getStickyEvent(MessageDeletePaths.class).toDelete;
+  }
+}
@@ -0,0 +1,152 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.cmd.FileOps;
+import umich.msfragger.cmd.PbiBuilder;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.gui.ClusterScripts.Job;
+import umich.msfragger.util.FileDelete;
+import umich.msfragger.util.OsUtils;
+
+public class ClusterScriptsTest {
+
+  /**
+   * Three tasks writing a file each in parallel, one merging them, one copying the result.
+   */
+  private static List<Job> plan(Path wd, String mergeCmd) {
+    List<ProcessBuilderInfo> pbis = new ArrayList<>();
+    Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage = new IdentityHashMap<>();
+
+    ProcessBuildersDescriptor write = new ProcessBuildersDescriptor("Write", 10, null, null);
+    write.setIo(Collections.emptyList(), Arrays.asList(wd.resolve("a0.txt"),
+        wd.resolve("a1.txt"), wd.resolve("a2.txt")));
+    for (int i = 0; i < 3; i++) {
+      ProcessBuilder pb = new ProcessBuilder("sh", "-c", "echo \"$WORD it's " + i + "\" > a" + i + ".txt");
+      pb.directory(wd.toFile());
+      pb.environment().put("WORD", "task");
+      ProcessBuilderInfo pbi = new PbiBuilder().setPb(pb).setName("Write")
+          .setParallelGroup("Write").setRamGb(2).setThreads(1).create();
+      pbis.add(pbi);
+      pbiToStage.put(pbi, write);
+    }
+
+    ProcessBuildersDescriptor merge = new ProcessBuildersDescriptor("Merge", 20, null, null);
+    merge.setIo(Arrays.asList(wd.resolve("a0.txt"), wd.resolve("a1.txt"), wd.resolve("a2.txt")),
+        Collections.singletonList(wd.resolve("merged.txt")));
+    ProcessBuilder pb = new ProcessBuilder("sh", "-c", mergeCmd);
+    pb.directory(wd.toFile());
+    ProcessBuilderInfo pbi = new PbiBuilder().setPb(pb).setName("Merge").setThreads(4).create();
+    pbis.add(pbi);
+    pbiToStage.put(pbi, merge);
+
+    ProcessBuildersDescriptor copy = new ProcessBuildersDescriptor("Copy", 30, null, null);
+    copy.setIo(Collections.singletonList(wd.resolve("merged.txt")),
+        Collections.singletonList(wd.resolve("out")));
+    pbi = new PbiBuilder().setName("Copy").setFileOps(new FileOps(FileOps.Op.COPY,
+        wd.resolve("out"), false, Collections.singletonList(wd.resolve("merged.txt")))).create();
+    pbis.add(pbi);
+    pbiToStage.put(pbi, copy);
+
+    return ClusterScripts.toJobs(pbis, pbiToStage);
+  }
+
+  @Test
+  public void parallelTasksBecomeArrayJob() throws Exception {
+    Path wd = Files.createTempDirectory("cluster-test");
+    try {
+      List<Job> jobs = plan(wd, "cat a0.txt a1.txt a2.txt > merged.txt");
+      Assert.assertEquals(3, jobs.size());
+      Assert.assertEquals("01-Write", jobs.get(0).name);
+      Assert.assertTrue(jobs.get(0).isArray);
+      Assert.assertEquals(3, jobs.get(0).tasks.size());
+      Assert.assertEquals(2, jobs.get(0).ramGb());
+      Assert.assertFalse(jobs.get(1).isArray);
+      Assert.assertEquals(Collections.singletonList(jobs.get(0)), jobs.get(1).deps);
+      Assert.assertEquals(Collections.singletonList(jobs.get(1)), jobs.get(2).deps);
+
+      String script = ClusterScripts.jobScript(jobs.get(0), wd, wd.resolve("logs"));
+      Assert.assertTrue(script.contains("#SBATCH --array=0-2\n"));
+      Assert.assertTrue(script.contains("#SBATCH --mem=2G\n"));
+      Assert.assertTrue(script.contains("export WORD='task'\n"));
+      Assert.assertTrue(ClusterScripts.jobScript(jobs.get(1), wd, wd.resolve("logs"))
+          .contains("#SBATCH --cpus-per-task=4\n"));
+      Assert.assertTrue(ClusterScripts.submitScript(jobs)
+          .contains("--dependency=afterok:$JOB_01 "));
+    } finally {
+      FileDelete.deleteFileOrFolder(wd);
+    }
+  }
+
+  @Test
+  public void localRunnerRunsAllJobs() throws Exception {
+    if (OsUtils.isWindows()) {
+      return;
+    }
+    Path wd = Files.createTempDirectory("cluster-test");
+    try {
+      Files.createDirectories(wd.resolve("out"));
+      List<Job> jobs = plan(wd, "cat a0.txt a1.txt a2.txt > merged.txt");
+      Path dir = wd.resolve("scripts");
+      ClusterScripts.write(dir, wd, jobs);
+
+      Assert.assertEquals(0, runLocal(dir));
+      Assert.assertEquals(Arrays.asList("task it's 0", "task it's 1", "task it's 2"),
+          Files.readAllLines(wd.resolve("out").resolve("merged.txt"), UTF_8));
+    } finally {
+      FileDelete.deleteFileOrFolder(wd);
+    }
+  }
+
+  @Test
+  public void localRunnerStopsAtFailedJob() throws Exception {
+    if (OsUtils.isWindows()) {
+      return;
+    }
+    Path wd = Files.createTempDirectory("cluster-test");
+    try {
+      Files.createDirectories(wd.resolve("out"));
+      List<Job> jobs = plan(wd, "exit 3");
+      Path dir = wd.resolve("scripts");
+      ClusterScripts.write(dir, wd, jobs);
+
+      Assert.assertNotEquals(0, runLocal(dir));
+      Assert.assertTrue(Files.exists(wd.resolve("a2.txt")));
+      Assert.assertFalse(Files.exists(wd.resolve("out").resolve("merged.txt")));
+    } finally {
+      FileDelete.deleteFileOrFolder(wd);
+    }
+  }
+
+  @Test
+  public void quotingKeepsArgumentsIntact() {
+    Assert.assertEquals("'a b'", ClusterScripts.quote("a b"));
+    Assert.assertEquals("'it'\\''s $HOME'", ClusterScripts.quote("it's $HOME"));
+  }
+
+  private static int runLocal(Path dir) throws IOException, InterruptedException {
+    ProcessBuilder pb = new ProcessBuilder("bash", dir.resolve(ClusterScripts.LOCAL_SCRIPT).toString());
+    pb.environment().put("FRAGPIPE_LOCAL_SLOTS", "2");
+    pb.redirectErrorStream(true);
+    pb.redirectOutput(dir.resolve("run-local.out").toFile());
+    Process proc = pb.start();
+    if (!proc.waitFor(60, TimeUnit.SECONDS)) {
+      proc.destroyForcibly();
+      Assert.fail("Local runner didn't finish");
+    }
+    return proc.exitValue();
+  }
+}
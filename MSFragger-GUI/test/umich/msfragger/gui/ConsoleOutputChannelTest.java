@@ -0,0 +1,89 @@
+package umich.msfragger.gui;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.swing.console.TextConsole;
+
+public class ConsoleOutputChannelTest {
+
+  private static class RecordingSink implements ConsoleOutputChannel.Sink {
+    final List<String> writes = new ArrayList<>();
+
+    @Override
+    public void write(String source, Color color, String text) {
+      writes.add(text);
+    }
+  }
+
+  @Test
+  public void outputOfSameSourceIsMerged() {
+    RecordingSink sink = new RecordingSink();
+    ConsoleOutputChannel ch = new ConsoleOutputChannel(sink, 1000, 0);
+    ch.offer("a", null, "a1\n");
+    ch.offer("b", null, "b1\n");
+    ch.offer("a", null, "a2\n");
+    ch.flush();
+    Assert.assertEquals(2, sink.writes.size());
+    Assert.assertEquals("a1\na2\n", sink.writes.get(0));
+    Assert.assertEquals("b1\n", sink.writes.get(1));
+  }
+
+  @Test
+  public void outputIsNotMergedAcrossGuiMessages() {
+    RecordingSink sink = new RecordingSink();
+    ConsoleOutputChannel ch = new ConsoleOutputChannel(sink, 1000, 0);
+    ch.offer("a", null, "a1\n");
+    ch.offerAlways(Color.BLACK, "done\n");
+    ch.offer("a", null, "a2\n");
+    ch.flush();
+    Assert.assertEquals(3, sink.writes.size());
+    Assert.assertEquals("done\n", sink.writes.get(1));
+    Assert.assertEquals("a2\n", sink.writes.get(2));
+  }
+
+  @Test
+  public void overflowDropsWholeLinesAndSummarizes() {
+    RecordingSink sink = new RecordingSink();
+    ConsoleOutputChannel ch = new ConsoleOutputChannel(sink, 10, 0);
+    for (int i = 0; i < 5; i++) {
+      ch.offer("a", null, "line" + i + "\n");
+    }
+    ch.flush();
+    Assert.assertEquals(2, sink.writes.size());
+    Assert.assertTrue(sink.writes.get(0).contains("4 lines"));
+    Assert.assertEquals("line4\n", sink.writes.get(1));
+  }
+
+  @Test
+  public void ansiStateIsKeptPerSource() throws Exception {
+    TextConsole console = new TextConsole();
+    ConsoleOutputChannel ch = new ConsoleOutputChannel(
+        ConsoleOutputChannel.consoleSink(console), 1000, 0);
+    ch.offer("a", null, "\u001B[31mred ");
+    ch.offer("b", null, "plain1\n");
+    ch.flush();
+    // escape sequence of "a" split between batches, with output of "b" in between
+    ch.offer("a", null, "\u001B[");
+    ch.offer("b", null, "plain2\n");
+    ch.flush();
+    ch.offer("a", null, "32mgreen\n");
+    ch.flush();
+
+    StyledDocument doc = console.getStyledDocument();
+    String text = doc.getText(0, doc.getLength());
+    Assert.assertEquals("red plain1\nplain2\ngreen\n", text);
+    Assert.assertEquals(TextConsole.D_Red, foreground(doc, text.indexOf("red")));
+    Assert.assertNotEquals(TextConsole.D_Red, foreground(doc, text.indexOf("plain1")));
+    Assert.assertNotEquals(TextConsole.D_Red, foreground(doc, text.indexOf("plain2")));
+    Assert.assertEquals(TextConsole.D_Green, foreground(doc, text.indexOf("green")));
+  }
+
+  private static Color foreground(StyledDocument doc, int offset) {
+    return StyleConstants.getForeground(doc.getCharacterElement(offset).getAttributes());
+  }
+}
@@ -0,0 +1,86 @@
+package umich.msfragger.gui;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.util.FileDelete;
+
+public class FragpipeHeadlessTest {
+
+  @Test
+  public void manifestFilesAreGroupedByExperiment() throws Exception {
+    Path dir = Files.createTempDirectory("headless-test");
+    try {
+      Path manifest = dir.resolve("files.tsv");
+      Files.write(manifest, Arrays.asList(
+          "# comment",
+          "a.mzML\tctrl",
+          "b.mzML\tctrl",
+          "",
+          "/data/c.mzML\ttreated\t2",
+          "d.mzML"), StandardCharsets.UTF_8);
+
+      Map<String, LcmsFileGroup> groups = FragpipeHeadless.loadManifest(manifest);
+      Assert.assertEquals(Arrays.asList("", "ctrl", "treated_2"),
+          Arrays.asList(groups.keySet().toArray()));
+      Assert.assertEquals(2, groups.get("ctrl").lcmsFiles.size());
+      Assert.assertEquals(dir.toAbsolutePath().resolve("a.mzML"),
+          groups.get("ctrl").lcmsFiles.get(0).getPath());
+      Assert.assertEquals("/data/c.mzML",
+          groups.get("treated_2").lcmsFiles.get(0).getPath().toString());
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void queuePathsAreRelativeToQueueFile() throws Exception {
+    Path dir = Files.createTempDirectory("headless-test");
+    try {
+      Path queue = dir.resolve("queue.tsv");
+      Files.write(queue, Arrays.asList(
+          "# config\tmanifest\tworkdir\tfasta",
+          "a.config\ta.tsv\tout/a",
+          "/cfg/b.config\tb.tsv\tout/b\tdb/human.fasta"), StandardCharsets.UTF_8);
+
+      List<FragpipeHeadless.JobSpec> specs = FragpipeHeadless.loadQueue(queue);
+      Assert.assertEquals(2, specs.size());
+      Path base = dir.toAbsolutePath();
+      Assert.assertEquals(base.resolve("a.config"), specs.get(0).config);
+      Assert.assertEquals(base.resolve("out/a"), specs.get(0).wd);
+      Assert.assertNull(specs.get(0).fasta);
+      Assert.assertEquals("/cfg/b.config", specs.get(1).config.toString());
+      Assert.assertEquals(base.resolve("db/human.fasta").toString(), specs.get(1).fasta);
+
+      Files.write(queue, Arrays.asList("a.config\ta.tsv\tout", "b.config\tb.tsv\tout/"),
+          StandardCharsets.UTF_8);
+      try {
+        FragpipeHeadless.loadQueue(queue);
+        Assert.fail("Same workdir twice must be rejected");
+      } catch (IllegalArgumentException expected) {
+      }
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void combinedPepxmlIsTakenFromConfig() {
+    Map<String, String> config = new HashMap<>();
+    FragpipeHeadless fp = new FragpipeHeadless(config, new LinkedHashMap<>());
+    Assert.assertFalse(fp.isCombinedPepxml());
+    fp.isCombinedPepxml = true;
+    Assert.assertTrue(fp.isCombinedPepxml());
+
+    config.put(FragpipeHeadless.UI_COMBINE_PEPXML, "true");
+    fp = new FragpipeHeadless(config, new LinkedHashMap<>());
+    Assert.assertTrue(fp.isCombinedPepxml());
+  }
+}
@@ -0,0 +1,37 @@
+package umich.msfragger.gui;
+
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.gui.ProcessMonitorPanel.Row;
+
+public class ProcessMonitorPanelTest {
+
+  @Test
+  public void cpuAndIoAreRatesSinceLastRefresh() {
+    Row first = ProcessMonitorPanel.next("a", "tool", 1000, 500, 100, 4, 1000, null);
+    Assert.assertEquals(50.0, first.cpuPercent, 1e-9);
+    Assert.assertEquals(1000, first.ioBytesPerSec);
+
+    // 4 busy cores and no I/O for the next two seconds
+    Row second = ProcessMonitorPanel.next("a", "tool", 3000, 8500, 100, 4, 1000, first);
+    Assert.assertEquals(400.0, second.cpuPercent, 1e-9);
+    Assert.assertEquals(0, second.ioBytesPerSec);
+  }
+
+  @Test
+  public void heapLimitIsTakenFromCommandLine() {
+    // options after the jar or main class belong to the program
+    Assert.assertEquals(4L << 30,
+        ProcessMonitorPanel.maxHeapBytes("java -Xmx4G -jar x.jar -Xmx8g"));
+    Assert.assertEquals(512L << 20,
+        ProcessMonitorPanel.maxHeapBytes("java -Xmx512m -cp a Main -Xmx8g"));
+    Assert.assertEquals(56L << 30, ProcessMonitorPanel.maxHeapBytes(
+        "java -jar -Dfile.encoding=UTF-8 -Xmx56G MSFragger.jar fragger.params a.mzML"));
+    Assert.assertEquals(2L << 30, ProcessMonitorPanel.maxHeapBytes("java -cp lib/a.jar -Xmx2g Main"));
+    Assert.assertEquals(0, ProcessMonitorPanel.maxHeapBytes("philosopher filter --Xmx4G"));
+    Assert.assertEquals(0, ProcessMonitorPanel.maxHeapBytes(null));
+
+    Row row = ProcessMonitorPanel.next("a", "java -Xmx1G -jar a.jar", 1000, 0, 1000L << 20, 1, 0, null);
+    Assert.assertTrue(row.isRssNearMaxHeap());
+  }
+}
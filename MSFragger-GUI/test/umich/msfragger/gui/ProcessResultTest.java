@@ -0,0 +1,26 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProcessResultTest {
+
+  @Test
+  public void asciiIsAlwaysComplete() {
+    byte[] b = "abc".getBytes(UTF_8);
+    Assert.assertEquals(3, ProcessResult.utf8CompleteLength(b, b.length));
+  }
+
+  @Test
+  public void splitMultiByteCharIsCarriedOver() {
+    byte[] b = "abµ€".getBytes(UTF_8); // 2 + 2 + 3 bytes
+    Assert.assertEquals(7, b.length);
+    Assert.assertEquals(7, ProcessResult.utf8CompleteLength(b, 7));
+    Assert.assertEquals(4, ProcessResult.utf8CompleteLength(b, 6));
+    Assert.assertEquals(4, ProcessResult.utf8CompleteLength(b, 5));
+    Assert.assertEquals(4, ProcessResult.utf8CompleteLength(b, 4));
+    Assert.assertEquals(2, ProcessResult.utf8CompleteLength(b, 3));
+  }
+}
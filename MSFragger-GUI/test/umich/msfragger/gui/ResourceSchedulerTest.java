@@ -0,0 +1,62 @@
+package umich.msfragger.gui;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResourceSchedulerTest {
+
+  private static RunnableDescription rd(String name, int ramGb, int threads) {
+    return new RunnableDescription(new ProcessDescription(name, null, null), () -> {}, null,
+        null, ramGb, threads);
+  }
+
+  @Test
+  public void tasksNotFittingInMemoryWait() throws Exception {
+    ExecutorService exec = Executors.newCachedThreadPool();
+    try {
+      ResourceScheduler sched = new ResourceScheduler(10, 8, exec, null);
+      CountDownLatch started = new CountDownLatch(2);
+      CountDownLatch release = new CountDownLatch(1);
+      AtomicInteger running = new AtomicInteger();
+      AtomicInteger maxRunning = new AtomicInteger();
+      Runnable task = () -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        started.countDown();
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+        running.decrementAndGet();
+      };
+      CompletableFuture<Void> a = sched.submit(rd("a", 6, 1), task);
+      CompletableFuture<Void> b = sched.submit(rd("b", 6, 1), task);
+      CompletableFuture<Void> c = sched.submit(rd("c", 4, 1), task);
+      // 'a' and 'c' fill the memory, 'b' can only start once they are released
+      Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+      Assert.assertFalse(b.isDone());
+      Assert.assertEquals(2, running.get());
+      release.countDown();
+      CompletableFuture.allOf(a, b, c).get(5, TimeUnit.SECONDS);
+      Assert.assertEquals(2, maxRunning.get());
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  @Test
+  public void oversizedTaskRunsAlone() throws Exception {
+    ExecutorService exec = Executors.newCachedThreadPool();
+    try {
+      ResourceScheduler sched = new ResourceScheduler(4, 2, exec, null);
+      sched.submit(rd("huge", 100, 64), () -> {}).get(5, TimeUnit.SECONDS);
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package umich.msfragger.gui;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.cmd.PbiBuilder;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.util.FileDelete;
+
+public class RunCheckpointTest {
+
+  private static RunnableDescription task(ProcessBuildersDescriptor pbd, String cmd) {
+    return new RunnableDescription(new ProcessDescription(pbd.name, "/wd", cmd), null, null, pbd);
+  }
+
+  @Test
+  public void finishedTasksSurviveResumeUntilRunCompletes() throws Exception {
+    Path wd = Files.createTempDirectory("checkpoint-test");
+    try {
+      ProcessBuildersDescriptor search = new ProcessBuildersDescriptor("search", 100, null, null);
+      ProcessBuildersDescriptor prophet = new ProcessBuildersDescriptor("prophet", 200, null, null);
+      RunnableDescription a = task(search, "fragger a.mzML");
+      RunnableDescription b = task(prophet, "prophet a.pepXML");
+      RunnableDescription finalizer = new RunnableDescription(
+          new ProcessDescription("Finalizer", null, null), null);
+      List<RunnableDescription> plan = Arrays.asList(a, b, finalizer);
+
+      Assert.assertFalse(RunCheckpoint.exists(wd));
+      RunCheckpoint c = RunCheckpoint.start(wd, plan, false);
+      Assert.assertTrue(RunCheckpoint.exists(wd));
+      Assert.assertTrue(RunCheckpoint.loadDone(wd).isEmpty());
+      c.markDone(a);
+      c.markDone(finalizer);
+      Set<String> done = RunCheckpoint.loadDone(wd);
+      Assert.assertEquals(1, done.size());
+      Assert.assertTrue(done.contains(RunCheckpoint.key("search", a.description)));
+      Assert.assertFalse(done.contains(
+          RunCheckpoint.key("search", new ProcessDescription("search", "/wd", "fragger b.mzML"))));
+
+      // resuming keeps what was done before, a new run starts over
+      RunCheckpoint.start(wd, Arrays.asList(b, finalizer), true).markDone(b);
+      Assert.assertEquals(2, RunCheckpoint.loadDone(wd).size());
+      c = RunCheckpoint.start(wd, plan, false);
+      Assert.assertTrue(RunCheckpoint.loadDone(wd).isEmpty());
+
+      c.finish();
+      Assert.assertFalse(RunCheckpoint.exists(wd));
+    } finally {
+      FileDelete.deleteFileOrFolder(wd);
+    }
+  }
+
+  @Test
+  public void finishedStageIsSkippedWhenFreeMemoryChanged() throws Exception {
+    Path wd = Files.createTempDirectory("checkpoint-test");
+    try {
+      // -Xmx of MSFragger follows the free memory when RAM is left at 0
+      List<ProcessBuilderInfo> pbis = new ArrayList<>();
+      Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage = new HashMap<>();
+      plan(wd, "-Xmx20G", pbis, pbiToStage);
+      List<RunnableDescription> rds = RunPlanner.toRunnables(pbis, pbiToStage, wd, pbi -> {},
+          null, null);
+      RunCheckpoint.start(wd, rds, false).markDone(rds.get(0));
+
+      pbis.clear();
+      pbiToStage.clear();
+      plan(wd, "-Xmx31G", pbis, pbiToStage);
+      RunPlanner.skipFinished(pbis, pbiToStage, wd, s -> {});
+      Assert.assertTrue(pbis.isEmpty());
+    } finally {
+      FileDelete.deleteFileOrFolder(wd);
+    }
+  }
+
+  private static void plan(Path wd, String xmx, List<ProcessBuilderInfo> pbis,
+      Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage) {
+    ProcessBuildersDescriptor search = new ProcessBuildersDescriptor("MSFragger", 100, null, null);
+    ProcessBuilderInfo pbi = PbiBuilder.from(new ProcessBuilder("java", "-jar",
+        "-Dfile.encoding=UTF-8", xmx, "MSFragger.jar", "fragger.params", "a.mzML")
+        .directory(wd.toFile()));
+    search.add(pbi);
+    pbis.add(pbi);
+    pbiToStage.put(pbi, search);
+  }
+}
@@ -0,0 +1,137 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.cmd.PbiBuilder;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.gui.RunHistory.Features;
+import umich.msfragger.gui.RunHistory.Prediction;
+import umich.msfragger.gui.RunHistory.Record;
+import umich.msfragger.gui.RunHistory.Recorder;
+import umich.msfragger.util.FileDelete;
+
+public class RunHistoryTest {
+
+  private static Record record(long time, String stage, long lcmsBytes, long wallMs) {
+    return new Record(time, stage, "v1", 2, lcmsBytes, 1000, RunHistory.UNKNOWN, 8, 4, 1,
+        wallMs, RunHistory.UNKNOWN, RunHistory.UNKNOWN);
+  }
+
+  @Test
+  public void recordsSurviveBrokenLines() throws Exception {
+    Path dir = Files.createTempDirectory("history-test");
+    try {
+      RunHistory history = new RunHistory(dir.resolve("sub").resolve(RunHistory.FILE_NAME));
+      history.append(Collections.singletonList(new Record(1, "Msfragger\tx", "MSFragger-2.2.jar",
+          3, 3000, 100, 50, 16, 8, 3, 60000, 240000, 1L << 30)));
+      Files.write(history.getPath(), "garbage\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+      history.append(Collections.singletonList(record(2, "PeptideProphet", 3000, 1000)));
+
+      List<Record> records = history.load();
+      Assert.assertEquals(2, records.size());
+      Record r = records.get(0);
+      Assert.assertEquals("Msfragger x", r.stage);
+      Assert.assertEquals("MSFragger-2.2.jar", r.version);
+      Assert.assertEquals(240000, r.cpuMs);
+      Assert.assertEquals(1L << 30, r.peakRssBytes);
+      Assert.assertEquals("PeptideProphet", records.get(1).stage);
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void predictionComesFromSimilarRuns() {
+    List<Record> past = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      past.add(record(i, "MsFragger", 1L << 30, 100_000 + i * 1000));
+      past.add(record(10 + i, "MsFragger", 20L << 30, 2_000_000 + i * 1000));
+    }
+    past.add(record(20, "Other", 20L << 30, 5));
+
+    Prediction big = RunHistory.predict(past, record(0, "MsFragger", 18L << 30, -1));
+    Assert.assertEquals(5, big.runs);
+    Assert.assertEquals(2_002_000, big.wallMs);
+    Assert.assertEquals(2_000_000, big.minMs);
+    Assert.assertEquals(2_004_000, big.maxMs);
+
+    Prediction small = RunHistory.predict(past, record(0, "MsFragger", 1L << 30, -1));
+    Assert.assertEquals(102_000, small.wallMs);
+
+    Assert.assertNull(RunHistory.predict(past, record(0, "Crystal-C", 1L << 30, -1)));
+  }
+
+  @Test
+  public void onlyStagesThatFinishedAreRecorded() {
+    List<ProcessBuilderInfo> pbis = new ArrayList<>();
+    Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage = new IdentityHashMap<>();
+    ProcessBuildersDescriptor ok = new ProcessBuildersDescriptor("Ok", 10, null, null);
+    ProcessBuildersDescriptor failing = new ProcessBuildersDescriptor("Failing", 20, null, null);
+    for (ProcessBuildersDescriptor pbd : Arrays.asList(ok, ok, failing)) {
+      ProcessBuilderInfo pbi = new PbiBuilder()
+          .setPb(new ProcessBuilder("java", "-jar", "-Xmx2G", "/opt/tools/MSFragger-2.2.jar"))
+          .setName(pbd.name).setThreads(pbd == ok ? 4 : 1).create();
+      pbis.add(pbi);
+      pbiToStage.put(pbi, pbd);
+    }
+    Recorder recorder = new Recorder(pbis, pbiToStage, new Features(2, 100, 10),
+        Collections.singletonMap("msfragger", "2.2"));
+    Assert.assertEquals(2, recorder.getPlanned().size());
+    Assert.assertEquals("2.2", recorder.getPlanned().get(0).version);
+
+    List<RunnableDescription> rds = new ArrayList<>();
+    for (ProcessBuilderInfo pbi : pbis) {
+      ProcessBuildersDescriptor pbd = pbiToStage.get(pbi);
+      Runnable r = pbd == ok ? () -> { } : () -> {
+        throw new IllegalStateException("failed");
+      };
+      rds.add(new RunnableDescription(RunPlanner.describe(pbi), r, null, pbd));
+    }
+    for (RunnableDescription rd : recorder.wrap(rds)) {
+      try {
+        rd.runnable.run();
+      } catch (IllegalStateException ignored) {
+      }
+    }
+
+    List<Record> finished = recorder.getFinished(null);
+    Assert.assertEquals(1, finished.size());
+    Record r = finished.get(0);
+    Assert.assertEquals("Ok", r.stage);
+    Assert.assertEquals(2, r.tasks);
+    Assert.assertEquals(4, r.threads);
+    Assert.assertEquals(100, r.lcmsBytes);
+    Assert.assertTrue(r.wallMs >= 0);
+    Assert.assertEquals(RunHistory.UNKNOWN, r.cpuMs);
+  }
+
+  @Test
+  public void programIsTheJarOrBinary() {
+    Assert.assertEquals("MSFragger-2.2.jar", RunHistory.program(Arrays.asList(
+        "java", "-jar", "-Dfile.encoding=UTF-8", "-Xmx4G", "/opt/MSFragger-2.2.jar", "a.params")));
+    Assert.assertEquals("philosopher_v2", RunHistory.program(Arrays.asList(
+        "/opt/philosopher_v2", "workspace", "--init")));
+  }
+
+  @Test
+  public void trendsAddUpStagesOfARun() {
+    List<Record> records = Arrays.asList(
+        record(1, "Workspace", 10, 1000), record(1, "Workspace", 10, 1000),
+        record(2, "Workspace", 10, 3000), record(2, "Workspace", 10, 3000));
+    String trends = RunHistory.trends(records);
+    Assert.assertTrue(trends, trends.contains("Workspace                        2       6.0s"));
+    Assert.assertTrue(trends, trends.contains("+200%"));
+  }
+}
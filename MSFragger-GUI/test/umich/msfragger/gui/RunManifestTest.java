@@ -0,0 +1,119 @@
+package umich.msfragger.gui;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.cmd.PbiBuilder;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.util.FileDelete;
+
+public class RunManifestTest {
+
+  private static ProcessBuildersDescriptor stage(String name, Path wd, Path params, Path in,
+      Path out) {
+    ProcessBuilder pb = new ProcessBuilder("tool", "-Xmx12G", params.toString(), in.toString());
+    pb.directory(wd.toFile());
+    ProcessBuildersDescriptor pbd = new ProcessBuildersDescriptor(name, 100, null, null);
+    pbd.add(PbiBuilder.from(pb));
+    pbd.setIo(Collections.singletonList(in), Arrays.asList(params, out));
+    pbd.setSkippable(true);
+    return pbd;
+  }
+
+  private static StageGraph graph(ProcessBuildersDescriptor... pbds) {
+    List<RunnableDescription> rds = new ArrayList<>();
+    for (ProcessBuildersDescriptor pbd : pbds) {
+      rds.add(new RunnableDescription(new ProcessDescription(pbd.name, null, "cmd"), null,
+          null, pbd));
+    }
+    return StageGraph.build(rds);
+  }
+
+  @Test
+  public void unchangedStagesAreSkippedUntilSomethingUpstreamChanges() throws Exception {
+    Path wd = Files.createTempDirectory("manifest-test").toRealPath();
+    try {
+      Path lcms = Files.write(wd.resolve("a.mzML"), "spectra".getBytes("UTF-8"));
+      Path searchParams = Files.write(wd.resolve("search.params"), "tol=10".getBytes("UTF-8"));
+      Path pepxml = Files.write(wd.resolve("a.pepXML"), "psms".getBytes("UTF-8"));
+      Path prophetParams = Files.write(wd.resolve("prophet.params"), "x".getBytes("UTF-8"));
+      Path interact = Files.write(wd.resolve("interact-a.pep.xml"), "probs".getBytes("UTF-8"));
+
+      ProcessBuildersDescriptor search = stage("search", wd, searchParams, lcms, pepxml);
+      ProcessBuildersDescriptor prophet = stage("prophet", wd, prophetParams, pepxml, interact);
+      RunManifest manifest = RunManifest.load(wd);
+      Assert.assertTrue(manifest.findUpToDate(graph(search, prophet)).isEmpty());
+      manifest.record(search);
+      manifest.record(prophet);
+
+      // memory given to the tool doesn't matter
+      search = stage("search", wd, searchParams, lcms, pepxml);
+      search.pbis.set(0, PbiBuilder.from(new ProcessBuilder("tool", "-Xmx30G",
+          searchParams.toString(), lcms.toString()).directory(wd.toFile())));
+      Set<ProcessBuildersDescriptor> upToDate = RunManifest.load(wd)
+          .findUpToDate(graph(search, prophet));
+      Assert.assertEquals(2, upToDate.size());
+
+      // changing downstream parameters only re-runs the downstream stage
+      Files.write(prophetParams, "y".getBytes("UTF-8"));
+      upToDate = RunManifest.load(wd).findUpToDate(graph(search, prophet));
+      Assert.assertEquals(Collections.singleton(search), upToDate);
+
+      // changing search parameters re-runs everything after it
+      Files.write(prophetParams, "x".getBytes("UTF-8"));
+      Files.write(searchParams, "tol=20".getBytes("UTF-8"));
+      Assert.assertTrue(RunManifest.load(wd).findUpToDate(graph(search, prophet)).isEmpty());
+
+      // invalidated stages are never up to date, even if nothing changed
+      Files.write(searchParams, "tol=10".getBytes("UTF-8"));
+      manifest = RunManifest.load(wd);
+      Assert.assertEquals(2, manifest.findUpToDate(graph(search, prophet)).size());
+      manifest.invalidate(Collections.singletonList(prophet));
+      Assert.assertEquals(Collections.singleton(search),
+          RunManifest.load(wd).findUpToDate(graph(search, prophet)));
+      Assert.assertTrue(RunManifest.trackedOutputs(wd).contains(pepxml));
+      Assert.assertFalse(RunManifest.trackedOutputs(wd).contains(interact));
+    } finally {
+      FileDelete.deleteFileOrFolder(wd);
+    }
+  }
+
+  @Test
+  public void memoryInsideSlicingCommandDoesNotMatter() throws Exception {
+    Path wd = Files.createTempDirectory("manifest-test").toRealPath();
+    try {
+      Path lcms = Files.write(wd.resolve("a.mzML"), "spectra".getBytes("UTF-8"));
+      Path params = Files.write(wd.resolve("fragger.params"), "tol=10".getBytes("UTF-8"));
+      Path pepxml = Files.write(wd.resolve("a.pepXML"), "psms".getBytes("UTF-8"));
+      ProcessBuildersDescriptor search = slicedSearch(wd, "-Xmx20G", params, lcms, pepxml);
+      RunManifest.load(wd).record(search);
+
+      search = slicedSearch(wd, "-Xmx31G", params, lcms, pepxml);
+      Assert.assertEquals(Collections.singleton(search),
+          RunManifest.load(wd).findUpToDate(graph(search)));
+      Assert.assertEquals("\"java -jar -Dfile.encoding=UTF-8\"",
+          RunManifest.withoutMemoryOptions("\"java -jar -Dfile.encoding=UTF-8 -Xmx31G\""));
+    } finally {
+      FileDelete.deleteFileOrFolder(wd);
+    }
+  }
+
+  private static ProcessBuildersDescriptor slicedSearch(Path wd, String xmx, Path params,
+      Path in, Path out) {
+    ProcessBuilder pb = new ProcessBuilder("python", "msfragger_pep_split.py", "4",
+        "java -jar -Dfile.encoding=UTF-8 " + xmx, "MSFragger.jar", params.toString(),
+        in.toString());
+    pb.directory(wd.toFile());
+    ProcessBuildersDescriptor pbd = new ProcessBuildersDescriptor("MSFragger", 100, null, null);
+    pbd.add(PbiBuilder.from(pb));
+    pbd.setIo(Collections.singletonList(in), Arrays.asList(params, out));
+    pbd.setSkippable(true);
+    return pbd;
+  }
+}
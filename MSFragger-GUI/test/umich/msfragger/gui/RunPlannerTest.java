@@ -0,0 +1,35 @@
+package umich.msfragger.gui;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.cmd.CmdPhilosopherWorkspaceClean;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.util.UsageTrigger;
+
+public class RunPlannerTest {
+
+  @Test
+  public void stageWithoutCaptureFileGetsProcessLog() {
+    Path wd = Paths.get("run-planner-test").toAbsolutePath();
+    Path processLogsDir = wd.resolve("logs");
+    CmdPhilosopherWorkspaceClean cmd = new CmdPhilosopherWorkspaceClean(true, wd);
+    Assert.assertTrue(cmd.configure(new UsageTrigger("philosopher", "Philosopher")));
+
+    Map<ProcessBuilderInfo, ProcessBuildersDescriptor> pbiToStage = new HashMap<>();
+    List<ProcessBuilderInfo> pbis = RunPlanner.toPbis(
+        Collections.singletonList(cmd.getBuilderDescriptor()), processLogsDir, pbiToStage);
+
+    Assert.assertEquals(1, pbis.size());
+    ProcessBuilderInfo pbi = pbis.get(0);
+    Assert.assertNotNull(pbi.fnStdout);
+    Assert.assertEquals(processLogsDir, Paths.get(pbi.fnStdout).getParent());
+    Assert.assertEquals(pbi.fnStdout, pbi.fnStderr);
+  }
+}
@@ -0,0 +1,64 @@
+package umich.msfragger.gui;
+
+import java.io.StringWriter;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.gui.RunTrace.Span;
+import umich.msfragger.gui.RunTrace.Track;
+
+public class RunTraceTest {
+
+  @Test
+  public void overlappingSpansGetTheirOwnRows() throws Exception {
+    RunTrace trace = new RunTrace("test");
+    Span a = trace.begin(Track.TASKS, "a", "task");
+    Span b = trace.begin(Track.TASKS, "b", "task");
+    a.end();
+    // the first row is free again
+    Span c = trace.begin(Track.TASKS, "c", "task");
+    b.end();
+    c.end();
+    c.end();
+    Assert.assertEquals(3, trace.size());
+
+    StringWriter w = new StringWriter();
+    trace.write(w);
+    String json = w.toString();
+    Assert.assertTrue(json, json.contains("\"tid\":1,\"ts\":"));
+    Assert.assertFalse(json, json.contains("\"tid\":2,"));
+    Assert.assertTrue(json, json.contains("\"args\":{\"name\":\"slot 2\"}"));
+  }
+
+  @Test
+  public void childrenStayOnTheRowOfTheirParent() throws Exception {
+    RunTrace trace = new RunTrace("test");
+    Span stage = trace.begin(Track.STAGES, "MSFragger", "stage");
+    Span other = trace.begin(Track.STAGES, "Other", "stage");
+    stage.child("group", "group").arg("tasks", 2).arg("parallel group", null).end();
+    stage.end();
+    other.end();
+
+    StringWriter w = new StringWriter();
+    trace.write(w);
+    String json = w.toString();
+    Assert.assertTrue(json, json.contains("\"tid\":0,\"ts\":"));
+    Assert.assertTrue(json, json.contains(
+        "\"name\":\"group\",\"cat\":\"group\",\"args\":{\"tasks\":2,\"parallel group\":null}"));
+    Assert.assertEquals(1, count(json, "\"tid\":1,\"ts\":"));
+  }
+
+  @Test
+  public void stringsAreEscaped() {
+    Assert.assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", RunTrace.json("a\"b\\c\n\u0001"));
+    Assert.assertEquals("12", RunTrace.json(12));
+    Assert.assertEquals("null", RunTrace.json(null));
+  }
+
+  private static int count(String s, String sub) {
+    int n = 0;
+    for (int i = s.indexOf(sub); i >= 0; i = s.indexOf(sub, i + 1)) {
+      n++;
+    }
+    return n;
+  }
+}
@@ -0,0 +1,49 @@
+package umich.msfragger.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.util.FileDelete;
+import umich.msfragger.util.ProcessUsage;
+
+public class RunUsageReportTest {
+
+  @Test
+  public void recordsAreAppendedAsTheyCome() throws Exception {
+    Path dir = Files.createTempDirectory("usage-test");
+    try {
+      RunUsageReport report = new RunUsageReport(RunUsageReport.path(dir, "2020-01-01_00-00-00"));
+      report.add(new ProcessUsage("MSFragger", "java -jar\tMSFragger.jar", 0, 65000, 240000,
+          8L << 30, 1000, 2000));
+      List<String> lines = Files.readAllLines(report.getPath(), UTF_8);
+      Assert.assertEquals(2, lines.size());
+      Assert.assertEquals(RunUsageReport.HEADER, lines.get(0));
+
+      report.add(new ProcessUsage("Killed", "x", (int) ProcessUsage.UNKNOWN, 10,
+          ProcessUsage.UNKNOWN, ProcessUsage.UNKNOWN, ProcessUsage.UNKNOWN, ProcessUsage.UNKNOWN));
+      lines = Files.readAllLines(report.getPath(), UTF_8);
+      Assert.assertEquals(3, lines.size());
+      Assert.assertEquals("MSFragger\t0\t65000\t240000\t8589934592\t1000\t2000\tjava -jar MSFragger.jar",
+          lines.get(1));
+      Assert.assertEquals("Killed\t\t10\t\t\t\t\tx", lines.get(2));
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void summaryHasTotals() {
+    RunUsageReport report = new RunUsageReport(null);
+    report.add(new ProcessUsage("A", "a", 0, 2000, 4000, 1 << 20, 0, 0));
+    report.add(new ProcessUsage("B", "b", 0, 120000, 1000, 3 << 20, 0, 0));
+    String summary = report.summary();
+    Assert.assertTrue(summary, summary.contains("Total (2 processes)"));
+    Assert.assertTrue(summary, summary.contains("2m02s"));
+    Assert.assertTrue(summary, summary.contains("3.0 MB"));
+    Assert.assertTrue(summary, summary.contains("2.0"));
+  }
+}
@@ -0,0 +1,95 @@
+package umich.msfragger.gui;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.cmd.ProcessBuilderInfo;
+import umich.msfragger.cmd.ProcessBuildersDescriptor;
+import umich.msfragger.gui.StageGraph.Stage;
+
+public class StageGraphTest {
+
+  private static ProcessBuildersDescriptor pbd(String name, List<Path> in, List<Path> out) {
+    ProcessBuildersDescriptor pbd = new ProcessBuildersDescriptor(name, 100, null, null);
+    if (in != null) {
+      pbd.setIo(in, out);
+    }
+    return pbd;
+  }
+
+  private static void add(List<RunnableDescription> rds, ProcessBuildersDescriptor pbd,
+      int count, String parallelGroup) {
+    for (int i = 0; i < count; i++) {
+      ProcessDescription desc = new ProcessDescription(pbd.name + i, null, "cmd");
+      rds.add(new RunnableDescription(desc, () -> {}, parallelGroup, pbd));
+    }
+  }
+
+  private static Path p(String path) {
+    return Paths.get("/wd").resolve(path);
+  }
+
+  @Test
+  public void independentBranchesDontWaitForEachOther() {
+    List<RunnableDescription> rds = new ArrayList<>();
+    ProcessBuildersDescriptor report = pbd("report", Collections.singletonList(p("exp/.meta")),
+        Arrays.asList(p("exp/.meta"), p("exp/psm.tsv")));
+    ProcessBuildersDescriptor shepherd = pbd("shepherd", Collections.singletonList(p("exp/psm.tsv")),
+        Collections.singletonList(p("global.profile.tsv")));
+    ProcessBuildersDescriptor speclib = pbd("speclib", Collections.singletonList(p("exp/psm.tsv")),
+        Collections.singletonList(p("exp/lib")));
+    add(rds, report, 1, null);
+    add(rds, shepherd, 1, null);
+    add(rds, speclib, 1, null);
+
+    List<Stage> stages = StageGraph.build(rds).getStages();
+    Assert.assertEquals(3, stages.size());
+    Assert.assertEquals(Collections.singleton(stages.get(0)), stages.get(1).deps);
+    Assert.assertEquals(Collections.singleton(stages.get(0)), stages.get(2).deps);
+  }
+
+  @Test
+  public void directoryOutputCoversFilesInside() {
+    List<RunnableDescription> rds = new ArrayList<>();
+    add(rds, pbd("a", Collections.singletonList(p("in")), Collections.singletonList(p("exp"))), 1, null);
+    add(rds, pbd("b", Collections.singletonList(p("exp/x.pepxml")), Collections.singletonList(p("y"))), 1, null);
+    add(rds, pbd("c", Collections.singletonList(p("other")), Collections.singletonList(p("exp-other"))), 1, null);
+
+    List<Stage> stages = StageGraph.build(rds).getStages();
+    Assert.assertTrue(stages.get(1).deps.contains(stages.get(0)));
+    Assert.assertTrue(stages.get(2).deps.isEmpty());
+  }
+
+  @Test
+  public void undeclaredStageIsBarrier() {
+    List<RunnableDescription> rds = new ArrayList<>();
+    add(rds, pbd("a", Collections.singletonList(p("a.in")), Collections.singletonList(p("a.out"))), 1, null);
+    add(rds, pbd("barrier", null, null), 1, null);
+    add(rds, pbd("b", Collections.singletonList(p("b.in")), Collections.singletonList(p("b.out"))), 1, null);
+
+    List<Stage> stages = StageGraph.build(rds).getStages();
+    Assert.assertTrue(stages.get(1).deps.contains(stages.get(0)));
+    Assert.assertTrue(stages.get(2).deps.contains(stages.get(1)));
+  }
+
+  @Test
+  public void parallelGroupsWithinStage() {
+    List<RunnableDescription> rds = new ArrayList<>();
+    ProcessBuildersDescriptor pp = pbd("pp", Collections.singletonList(p("in")),
+        Collections.singletonList(p("out")));
+    add(rds, pp, 2, ProcessBuilderInfo.GROUP_SEQUENTIAL);
+    add(rds, pp, 3, "PeptideProphet");
+    add(rds, pp, 1, null);
+
+    List<Stage> stages = StageGraph.build(rds).getStages();
+    Assert.assertEquals(1, stages.size());
+    List<List<RunnableDescription>> groups = stages.get(0).groups;
+    Assert.assertEquals(4, groups.size());
+    Assert.assertEquals(3, groups.get(2).size());
+  }
+}
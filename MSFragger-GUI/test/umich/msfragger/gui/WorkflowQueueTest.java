@@ -0,0 +1,115 @@
+package umich.msfragger.gui;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.gui.WorkflowQueue.Job;
+import umich.msfragger.gui.WorkflowQueue.State;
+
+public class WorkflowQueueTest {
+
+  /** Jobs are started by name, the test completes them. */
+  private final Map<String, CompletableFuture<Void>> started = new HashMap<>();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  private WorkflowQueue queue(int maxConcurrent) {
+    return new WorkflowQueue(maxConcurrent, null, job -> {
+      CompletableFuture<Void> f = new CompletableFuture<>();
+      started.put(job.name, f);
+      long running = started.values().stream().filter(cf -> !cf.isDone()).count();
+      maxRunning.accumulateAndGet((int) running, Math::max);
+      return f;
+    });
+  }
+
+  private static Job add(WorkflowQueue q, String name) {
+    return q.add(name, Paths.get("/out", name), Collections.emptyList(), false);
+  }
+
+  @Test
+  public void jobsRunBackToBack() throws Exception {
+    WorkflowQueue q = queue(1);
+    Job a = add(q, "a");
+    Job b = add(q, "b");
+    Assert.assertEquals(State.RUNNING, a.getState());
+    Assert.assertEquals(State.QUEUED, b.getState());
+
+    started.get("a").complete(null);
+    Assert.assertEquals(State.DONE, a.getState());
+    Assert.assertEquals(State.RUNNING, b.getState());
+    started.get("b").complete(null);
+    Assert.assertTrue(q.awaitAll());
+    Assert.assertEquals(1, maxRunning.get());
+  }
+
+  @Test
+  public void failedJobDoesNotStopOthers() throws Exception {
+    WorkflowQueue q = queue(2);
+    Job a = add(q, "a");
+    Job b = add(q, "b");
+    Job c = add(q, "c");
+    Assert.assertEquals(State.QUEUED, c.getState());
+
+    started.get("a").completeExceptionally(new IllegalStateException("boom"));
+    Assert.assertEquals(State.FAILED, a.getState());
+    Assert.assertEquals("boom", a.getFailure().getMessage());
+    Assert.assertEquals(State.RUNNING, b.getState());
+    Assert.assertEquals(State.RUNNING, c.getState());
+
+    started.get("b").complete(null);
+    started.get("c").complete(null);
+    Assert.assertFalse(q.awaitAll());
+    Assert.assertEquals(2, maxRunning.get());
+  }
+
+  @Test
+  public void cancelAllStopsRunningAndDropsQueued() throws Exception {
+    WorkflowQueue q = queue(1);
+    Job a = add(q, "a");
+    Job b = add(q, "b");
+    q.cancelAll();
+    Assert.assertTrue(started.get("a").isCancelled());
+    Assert.assertEquals(State.CANCELLED, a.getState());
+    Assert.assertEquals(State.CANCELLED, b.getState());
+    Assert.assertFalse(started.containsKey("b"));
+    Assert.assertFalse(q.awaitAll());
+  }
+
+  @Test
+  public void cancellingFinishedJobDoesNothing() throws Exception {
+    Map<String, Integer> notified = new HashMap<>();
+    WorkflowQueue q = new WorkflowQueue(1, job -> notified.merge(job.name, 1, Integer::sum),
+        job -> started.computeIfAbsent(job.name, k -> new CompletableFuture<>()));
+    Job a = add(q, "a");
+    Job b = add(q, "b");
+    q.cancel(b);
+    q.cancel(b);
+    started.get("a").complete(null);
+    q.cancel(a);
+    Assert.assertFalse(q.awaitAll());
+    Assert.assertEquals(State.DONE, a.getState());
+    Assert.assertEquals(State.CANCELLED, b.getState());
+    // b: added, cancelled
+    Assert.assertEquals(Integer.valueOf(2), notified.get("b"));
+    // a: added, started, done
+    Assert.assertEquals(Integer.valueOf(3), notified.get("a"));
+  }
+
+  @Test
+  public void sameOutputDirIsRejectedWhileRunning() {
+    WorkflowQueue q = queue(2);
+    add(q, "a");
+    try {
+      q.add("a again", Paths.get("/out", "a"), Collections.emptyList(), false);
+      Assert.fail("Two unfinished jobs can't share an output directory");
+    } catch (IllegalArgumentException expected) {
+    }
+    started.get("a").complete(null);
+    q.add("a again", Paths.get("/out", "a"), Collections.emptyList(), false);
+  }
+}
@@ -0,0 +1,114 @@
+package umich.msfragger.util;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DecoyTagDetectorTest {
+
+  @Test
+  public void decoyPrefixIsFoundInFirstColumn() throws Exception {
+    Path dir = Files.createTempDirectory("decoy-test");
+    try {
+      List<String> lines = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        String acc = String.format("P%05d", i * 7919 % 100000);
+        lines.add(">sp|" + acc + "|PROT" + i + "_HUMAN Protein " + i);
+        lines.add("MPEPTIDEK");
+        lines.add(">rev_sp|" + acc + "|PROT" + i + "_HUMAN Protein " + i);
+        lines.add("KEDITPEPM");
+      }
+      Path fasta = dir.resolve("db.fasta");
+      Files.write(fasta, lines, StandardCharsets.UTF_8);
+
+      List<List<String>> columns = DecoyTagDetector.readHeaderColumns(fasta);
+      Assert.assertEquals(3, columns.size());
+      Assert.assertEquals(40, columns.get(0).size());
+      Assert.assertEquals("rev_sp", columns.get(0).get(1));
+
+      DecoyTagDetector.Candidates found = DecoyTagDetector.detect(columns);
+      Assert.assertEquals("rev_", found.prefixesByCol.get(0).get(0).item1);
+      Assert.assertEquals(0.5, found.prefixesByCol.get(0).get(0).item2, 1e-9);
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void partsOfLongerCandidatesAreDropped() {
+    List<Tuple2<String, Double>> candidates = new ArrayList<>(Arrays.asList(
+        new Tuple2<>("DE", 0.5), new Tuple2<>("DEC", 0.5), new Tuple2<>("DECOY", 0.5),
+        new Tuple2<>("XX", 0.35), new Tuple2<>("XY", 0.4)));
+    List<Tuple2<String, Double>> result = DecoyTagDetector.cleanUp(candidates);
+    Assert.assertEquals(2, result.size());
+    Assert.assertEquals("DECOY", result.get(0).item1);
+    Assert.assertEquals("XY", result.get(1).item1);
+  }
+
+  @Test
+  public void scanFindsSameAsReadingAllHeaders() throws Exception {
+    Path dir = Files.createTempDirectory("decoy-test");
+    try {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 300; i++) {
+        String acc = String.format("Q%05d", i * 7919 % 100000);
+        String eol = i % 7 == 0 ? "\r\n" : i % 11 == 0 ? "\r" : "\n";
+        String desc = i % 5 == 0 ? " Prot\u00e9ine > " + i + " " : " Protein " + i;
+        sb.append('>').append(i % 2 == 0 ? "" : "DECOY_").append("tr|").append(acc).append('|')
+            .append(desc).append(i % 3 == 0 ? "|x" : "").append(eol);
+        sb.append("MPEPTIDEKRLLL").append(eol);
+      }
+      // longer than what's mapped past the end of a chunk
+      sb.append(">DECOY_sp|LONG|");
+      for (int i = 0; i < 100_000; i++) {
+        sb.append((char) ('a' + i % 26));
+      }
+      sb.append("\nMPEPTIDE\n");
+      Path fasta = dir.resolve("db.fasta");
+      Files.write(fasta, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+      DecoyTagDetector.Candidates expected = DecoyTagDetector.detect(
+          DecoyTagDetector.readHeaderColumns(fasta));
+      Assert.assertEquals("DECOY_", expected.prefixesByCol.get(0).get(0).item1);
+      try (FileChannel ch = FileChannel.open(fasta, StandardOpenOption.READ)) {
+        for (long chunkSize : new long[]{97, 4096, 65536, Files.size(fasta)}) {
+          DecoyTagDetector.Candidates actual = DecoyTagDetector.scan(ch, chunkSize, 3, null, null);
+          Assert.assertEquals("Chunk size " + chunkSize,
+              describe(expected.prefixesByCol), describe(actual.prefixesByCol));
+          Assert.assertEquals("Chunk size " + chunkSize,
+              describe(expected.suffixesByCol), describe(actual.suffixesByCol));
+        }
+      }
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test(expected = CancellationException.class)
+  public void scanStopsWhenCancelled() throws Exception {
+    Path dir = Files.createTempDirectory("decoy-test");
+    try {
+      Path fasta = dir.resolve("db.fasta");
+      Files.write(fasta, Arrays.asList(">sp|P1|A", "MPEP", ">rev_sp|P1|A", "PEPM"),
+          StandardCharsets.UTF_8);
+      DecoyTagDetector.scan(fasta, 1, null, () -> true);
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  private static List<String> describe(List<List<Tuple2<String, Double>>> byCol) {
+    return byCol.stream()
+        .map(list -> list.stream().map(t -> t.item1 + "=" + t.item2).collect(Collectors.joining(", ")))
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,56 @@
+package umich.msfragger.util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class DiagnosticsTest {
+
+  @Test
+  public void opReturnsOutcomeWhenNotRecording() {
+    Assert.assertTrue(Diagnostics.configure("MSFragger").end(true));
+    Assert.assertFalse(Diagnostics.configure("MSFragger").end(false));
+  }
+
+  @Test
+  public void eventsAreWrittenToRecording() throws Exception {
+    Assume.assumeTrue(Diagnostics.isAvailable());
+    Path dir = Files.createTempDirectory("diagnostics-test");
+    try {
+      Path jfr = dir.resolve("run" + Diagnostics.FILE_EXT);
+      try (Diagnostics.Capture c = Diagnostics.record(jfr)) {
+        Assert.assertEquals(jfr, c.getPath());
+        Diagnostics.plan(dir).end(true);
+        Diagnostics.configure("PeptideProphet").end(false);
+        Diagnostics.task("run", "MSFragger", "MSFragger", 42).end(true);
+      }
+      Assert.assertTrue(Files.size(jfr) > 0);
+
+      List<RecordedEvent> events = RecordingFile.readAllEvents(jfr).stream()
+          .filter(e -> e.getEventType().getName().startsWith(DiagnosticsEvents.PREFIX))
+          .collect(Collectors.toList());
+      Assert.assertEquals(3, events.size());
+      RecordedEvent configure = events.stream()
+          .filter(e -> e.getEventType().getName().equals(DiagnosticsEvents.PREFIX + "Configure"))
+          .findFirst().orElseThrow(AssertionError::new);
+      Assert.assertEquals("PeptideProphet", configure.getString("tool"));
+      Assert.assertFalse(configure.getBoolean("ok"));
+      RecordedEvent task = events.stream()
+          .filter(e -> e.getEventType().getName().equals(DiagnosticsEvents.PREFIX + "Task"))
+          .findFirst().orElseThrow(AssertionError::new);
+      Assert.assertEquals(42, task.getDuration("queued").toMillis());
+      RecordedEvent plan = events.stream()
+          .filter(e -> e.getEventType().getName().equals(DiagnosticsEvents.PREFIX + "Plan"))
+          .findFirst().orElseThrow(AssertionError::new);
+      Assert.assertEquals(dir.toString(), plan.getString("workDir"));
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package umich.msfragger.util;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileStageTest {
+
+  @Test
+  public void stagedFileHasSameContentAndDeletingItKeepsOrigin() throws Exception {
+    Path dir = Files.createTempDirectory("stage-test");
+    try {
+      Path origin = Files.write(dir.resolve("a.mzML"), "spectra".getBytes("UTF-8"));
+      Path dest = Files.createDirectories(dir.resolve("group"));
+      Path staged = dest.resolve("a.mzML");
+
+      FileStage.Method method = FileStage.stage(origin, staged);
+      // same file system, a hard link should always work here
+      Assert.assertEquals(FileStage.Method.HARDLINK, method);
+      Assert.assertEquals("spectra", new String(Files.readAllBytes(staged), "UTF-8"));
+
+      try {
+        FileStage.stage(origin, staged);
+        Assert.fail("Staging over an existing file must fail");
+      } catch (FileAlreadyExistsException expected) {
+        // ok
+      }
+
+      FileDelete.delete(staged);
+      Assert.assertFalse(Files.exists(staged));
+      Assert.assertTrue(Files.exists(origin));
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package umich.msfragger.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrefixCounterTest {
+
+  private static List<String> words(long seed, int count) {
+    final String alphabet = "ABCXYZ_|012é";
+    Random rnd = new Random(seed);
+    List<String> words = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      StringBuilder sb = new StringBuilder();
+      int len = rnd.nextInt(12);
+      for (int j = 0; j < len; j++) {
+        sb.append(alphabet.charAt(rnd.nextInt(rnd.nextBoolean() ? 3 : alphabet.length())));
+      }
+      words.add(sb.toString());
+    }
+    return words;
+  }
+
+  /**
+   * Node path from the root, hits and terminals of all nodes, in iteration order.
+   */
+  private static List<String> dump(PrefixCounter counter, int maxDepth) {
+    List<String> nodes = new ArrayList<>();
+    counter.iterPrefixCounts(maxDepth, (n, mode) -> {
+      StringBuilder path = new StringBuilder();
+      for (PrefixCounter.Node cur = n; cur.getParent() != null; cur = cur.getParent()) {
+        path.append(cur.getCh());
+      }
+      Assert.assertEquals(path.length(), n.getDepth());
+      nodes.add(path.reverse() + " " + n.getHits() + " " + n.getTerminals());
+    });
+    return nodes;
+  }
+
+  /**
+   * What {@link #dump(PrefixCounter, int)} should be, counted the slow way.
+   */
+  private static List<String> expected(List<String> words, PrefixCounter.Mode mode,
+      int maxDepth) {
+    Map<String, long[]> counts = new TreeMap<>(
+        Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()));
+    for (String w : words) {
+      String path = mode == PrefixCounter.Mode.FWD ? w : new StringBuilder(w).reverse().toString();
+      for (int len = 0; len <= Math.min(path.length(), maxDepth); len++) {
+        long[] c = counts.computeIfAbsent(path.substring(0, len), k -> new long[2]);
+        c[0]++;
+        // a reversed empty word is not counted as a terminal of the root
+        if (len == path.length() && (len > 0 || mode == PrefixCounter.Mode.FWD)) {
+          c[1]++;
+        }
+      }
+    }
+    List<String> nodes = new ArrayList<>();
+    counts.forEach((path, c) -> nodes.add(path + " " + c[0] + " " + c[1]));
+    return nodes;
+  }
+
+  @Test
+  public void countsPrefixesAndSuffixes() {
+    List<String> words = words(1, 2000);
+    for (PrefixCounter.Mode mode : PrefixCounter.Mode.values()) {
+      PrefixCounter counter = new PrefixCounter(mode, 6);
+      words.forEach(counter::add);
+      Assert.assertEquals(mode.toString(), expected(words, mode, 6), dump(counter, 6));
+      Assert.assertEquals(mode.toString(), expected(words, mode, 3), dump(counter, 3));
+    }
+  }
+
+  @Test
+  public void addAllSameAsAddingAllWords() {
+    List<String> words = words(2, 3000);
+    for (PrefixCounter.Mode mode : PrefixCounter.Mode.values()) {
+      PrefixCounter all = new PrefixCounter(mode, 8);
+      words.forEach(all::add);
+
+      PrefixCounter merged = new PrefixCounter(mode, 8);
+      for (int part = 0; part < 3; part++) {
+        PrefixCounter counter = new PrefixCounter(mode, 8);
+        for (int i = part; i < words.size(); i += 3) {
+          counter.add(words.get(i));
+        }
+        merged.addAll(counter);
+      }
+      Assert.assertEquals(mode.toString(), dump(all, 8), dump(merged, 8));
+
+      PrefixCounter shallow = new PrefixCounter(mode, 4);
+      shallow.addAll(all);
+      Assert.assertEquals(mode.toString(), expected(words, mode, 4), dump(shallow, 8));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void addAllRejectsOtherMode() {
+    new PrefixCounter(PrefixCounter.Mode.FWD, 4)
+        .addAll(new PrefixCounter(PrefixCounter.Mode.REV, 4));
+  }
+}
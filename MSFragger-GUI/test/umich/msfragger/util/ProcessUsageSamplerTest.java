@@ -0,0 +1,53 @@
+package umich.msfragger.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.util.ProcessUsageSampler.ProcStat;
+
+public class ProcessUsageSamplerTest {
+
+  @Test
+  public void statIsParsedAfterCommandName() {
+    String stat = "4242 (my (weird) cmd) S 17 4242 17 0 -1 4194304 2710 0 0 0 "
+        + "150 30 7 3 20 0 4 0 123456 1000000 500 18446744073709551615";
+    ProcStat ps = ProcessUsageSampler.parseStat(stat);
+    Assert.assertEquals(4242, ps.pid);
+    Assert.assertEquals(17, ps.ppid);
+    Assert.assertEquals(180, ps.cpuTicks);
+    Assert.assertEquals(10, ps.childCpuTicks);
+    Assert.assertEquals(4, ps.threads);
+  }
+
+  @Test
+  public void keyedFieldsAreFound() {
+    String status = "Name:\tjava\nVmHWM:\t  204800 kB\nVmRSS:\t  102400 kB\nThreads:\t12\n";
+    Assert.assertEquals(204800, ProcessUsageSampler.field(status, "VmHWM:"));
+    Assert.assertEquals(102400, ProcessUsageSampler.field(status, "VmRSS:"));
+    Assert.assertEquals(-1, ProcessUsageSampler.field(status, "VmSwap:"));
+    String io = "rchar: 5000\nwchar: 1200\nsyscr: 10\n";
+    Assert.assertEquals(5000, ProcessUsageSampler.field(io, "rchar:"));
+    Assert.assertEquals(1200, ProcessUsageSampler.field(io, "wchar:"));
+  }
+
+  @Test
+  public void childProcessesAreMeasured() throws Exception {
+    ProcessUsageSampler sampler = new ProcessUsageSampler(50);
+    if (!sampler.isSupported()) {
+      return;
+    }
+    // the busy loop runs in a child of the shell, the shell only waits for it
+    Process p = new ProcessBuilder("sh", "-c",
+        "sh -c 'i=0; while [ $i -lt 400000 ]; do i=$((i+1)); done'; head -c 100000 /dev/zero > /dev/null")
+        .start();
+    ProcessUsageSampler.Tracker t = sampler.track("busy", "sh", p);
+    int exitCode = p.waitFor();
+    ProcessUsage u = t.finish(exitCode);
+
+    Assert.assertEquals(0, u.exitCode);
+    Assert.assertTrue(u.isSampled());
+    Assert.assertTrue("CPU time not measured: " + u, u.cpuMs > 0);
+    Assert.assertTrue("Memory not measured: " + u, u.peakRssBytes > 0);
+    Assert.assertTrue(u.wallMs >= u.cpuMs / 2);
+    Assert.assertSame(u, t.finish(1));
+  }
+}
@@ -0,0 +1,38 @@
+package umich.msfragger.util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RotatingFileOutputStreamTest {
+
+  @Test
+  public void rotatesAndKeepsLimitedBackups() throws Exception {
+    Path dir = Files.createTempDirectory("rotating-test");
+    try {
+      Path log = dir.resolve("proc.log");
+      try (RotatingFileOutputStream os = new RotatingFileOutputStream(log, 10, 2)) {
+        for (int i = 0; i < 5; i++) {
+          os.write(String.format("%09d\n", i).getBytes("UTF-8"));
+        }
+      }
+      Assert.assertEquals("000000004\n", new String(Files.readAllBytes(log), "UTF-8"));
+      Assert.assertEquals("000000003\n",
+          new String(Files.readAllBytes(Paths.get(log + ".1")), "UTF-8"));
+      Assert.assertEquals("000000002\n",
+          new String(Files.readAllBytes(Paths.get(log + ".2")), "UTF-8"));
+      Assert.assertFalse(Files.exists(Paths.get(log + ".3")));
+
+      // a write larger than the limit is split between files
+      try (RotatingFileOutputStream os = new RotatingFileOutputStream(log, 4, 1)) {
+        os.write("abcdefgh".getBytes("UTF-8"));
+      }
+      Assert.assertEquals("efgh", new String(Files.readAllBytes(log), "UTF-8"));
+      Assert.assertEquals("abcd", new String(Files.readAllBytes(Paths.get(log + ".1")), "UTF-8"));
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+}
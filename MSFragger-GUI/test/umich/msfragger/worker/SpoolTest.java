@@ -0,0 +1,151 @@
+package umich.msfragger.worker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Test;
+import umich.msfragger.util.FileDelete;
+
+public class SpoolTest {
+
+  private static WorkerTask task(String id, String... cmd) {
+    return new WorkerTask(id, "task " + id, Arrays.asList(cmd), null,
+        Collections.singletonMap("FOO", "bar"));
+  }
+
+  @Test
+  public void taskSurvivesRoundTrip() throws Exception {
+    Path dir = Files.createTempDirectory("spool-test");
+    try {
+      WorkerTask t = new WorkerTask("1", "name", Arrays.asList("a b", "", "c=d"), "/work",
+          Collections.singletonMap("X", "y z"));
+      Path file = dir.resolve("t.task");
+      t.write(file);
+      WorkerTask read = WorkerTask.read(file);
+      Assert.assertEquals(t.id, read.id);
+      Assert.assertEquals(t.name, read.name);
+      Assert.assertEquals(t.command, read.command);
+      Assert.assertEquals(t.workDir, read.workDir);
+      Assert.assertEquals(t.env, read.env);
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void tasksAreClaimedOnceOldestFirst() throws Exception {
+    Path dir = Files.createTempDirectory("spool-test");
+    try {
+      Spool spool = new Spool(dir).init();
+      spool.submit(task("002", "b"));
+      spool.submit(task("001", "a"));
+      Assert.assertEquals("001", spool.claim("w1").id);
+      Assert.assertEquals("w1", spool.claimedBy("001"));
+      Assert.assertEquals("002", spool.claim("w2").id);
+      Assert.assertNull(spool.claim("w1"));
+      Assert.assertNull(spool.result("001"));
+
+      spool.complete("001", new Spool.Result(3, null));
+      Assert.assertEquals(3, spool.result("001").exitCode);
+      spool.cleanup("001");
+      Assert.assertNull(spool.result("001"));
+      Assert.assertNull(spool.claimedBy("001"));
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void unclaimedTaskIsWithdrawn() throws Exception {
+    Path dir = Files.createTempDirectory("spool-test");
+    try {
+      Spool spool = new Spool(dir).init();
+      spool.submit(task("001", "a"));
+      Assert.assertTrue(spool.cancel("001"));
+      Assert.assertNull(spool.claim("w1"));
+
+      spool.submit(task("002", "b"));
+      spool.claim("w1");
+      Assert.assertFalse(spool.cancel("002"));
+      Assert.assertTrue(spool.isCancelled("002"));
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void loopbackWorkerRunsTask() throws Exception {
+    Path dir = Files.createTempDirectory("spool-test");
+    WorkerAgent agent = null;
+    try {
+      Spool spool = new Spool(dir).init();
+      agent = WorkerAgent.startLoopback(spool, 1);
+      Assert.assertEquals(Collections.singletonList("loopback"),
+          new HeartbeatWatch(spool, WorkerAgent.HEARTBEAT_TIMEOUT_MS).aliveWorkers());
+      String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+      spool.submit(task("001", java, "-version"));
+
+      Spool.Result result = null;
+      for (int i = 0; i < 100 && result == null; i++) {
+        Thread.sleep(100);
+        result = spool.result("001");
+      }
+      Assert.assertNotNull("Worker didn't finish the task", result);
+      Assert.assertEquals(0, result.exitCode);
+      Assert.assertNull(result.error);
+      Assert.assertTrue(readAll(spool.stderr("001")).contains("version"));
+    } finally {
+      if (agent != null) {
+        agent.stop();
+      }
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  @Test
+  public void workerIsGoneWhenHeartbeatStopsChanging() throws Exception {
+    Path dir = Files.createTempDirectory("spool-test");
+    try {
+      Spool spool = new Spool(dir).init();
+      long[] now = {0};
+      HeartbeatWatch watch = new HeartbeatWatch(spool, 1000, () -> now[0]);
+      Path alive = dir.resolve("workers").resolve("w1.alive");
+      // the clock of the worker is a day behind
+      long workerClock = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+      spool.heartbeat("w1");
+      Files.setLastModifiedTime(alive, FileTime.fromMillis(workerClock));
+      Assert.assertTrue(watch.isAlive("w1"));
+
+      now[0] = TimeUnit.MILLISECONDS.toNanos(900);
+      Assert.assertTrue(watch.isAlive("w1"));
+      now[0] = TimeUnit.MILLISECONDS.toNanos(1000);
+      Assert.assertFalse(watch.isAlive("w1"));
+
+      Files.setLastModifiedTime(alive, FileTime.fromMillis(workerClock + 5000));
+      Assert.assertTrue(watch.isAlive("w1"));
+      now[0] = TimeUnit.MILLISECONDS.toNanos(1900);
+      Assert.assertEquals(Collections.singletonList("w1"), watch.aliveWorkers());
+
+      spool.leave("w1");
+      Assert.assertFalse(watch.isAlive("w1"));
+      Assert.assertEquals(Collections.emptyList(), watch.aliveWorkers());
+    } finally {
+      FileDelete.deleteFileOrFolder(dir);
+    }
+  }
+
+  private static String readAll(Path path) throws IOException {
+    try (Stream<String> lines = Files.lines(path, UTF_8)) {
+      return String.join("\n", (Iterable<String>) lines::iterator);
+    }
+  }
+}
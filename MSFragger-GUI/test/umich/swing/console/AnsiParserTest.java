@@ -0,0 +1,74 @@
+package umich.swing.console;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AnsiParserTest {
+
+  private static class Recorder implements AnsiParser.Sink {
+    final List<AttributeSet> attrs = new ArrayList<>();
+    final List<String> texts = new ArrayList<>();
+
+    @Override
+    public void text(AttributeSet a, String text) {
+      attrs.add(a);
+      texts.add(text);
+    }
+
+    Color fg(int i) {
+      return StyleConstants.getForeground(attrs.get(i));
+    }
+  }
+
+  @Test
+  public void philosopherLogLine() {
+    Recorder r = new Recorder();
+    new AnsiParser().parse("\u001B[36mINFO\u001B[0m[12:00:00] Executing PeptideProphet\n", r);
+    Assert.assertEquals(2, r.texts.size());
+    Assert.assertEquals("INFO", r.texts.get(0));
+    Assert.assertEquals(TextConsole.D_Cyan, r.fg(0));
+    Assert.assertEquals("[12:00:00] Executing PeptideProphet\n", r.texts.get(1));
+    Assert.assertEquals(TextConsole.cReset, r.fg(1));
+  }
+
+  @Test
+  public void sequenceSplitBetweenChunks() {
+    Recorder r = new Recorder();
+    AnsiParser p = new AnsiParser();
+    p.parse("a\u001B[1;3", r);
+    p.parse("1mb", r);
+    Assert.assertEquals(2, r.texts.size());
+    Assert.assertEquals("a", r.texts.get(0));
+    Assert.assertEquals("b", r.texts.get(1));
+    Assert.assertEquals(TextConsole.B_Red, r.fg(1));
+  }
+
+  @Test
+  public void widerSgrCodes() {
+    Recorder r = new Recorder();
+    new AnsiParser().parse("\u001B[93;44;4mx\u001B[39;49;24my\u001B[38;5;2mz\u001B[2Kw", r);
+    Assert.assertEquals(TextConsole.B_Yellow, r.fg(0));
+    Assert.assertEquals(TextConsole.D_Blue, StyleConstants.getBackground(r.attrs.get(0)));
+    Assert.assertTrue(StyleConstants.isUnderline(r.attrs.get(0)));
+    Assert.assertEquals(TextConsole.cReset, r.fg(1));
+    Assert.assertFalse(StyleConstants.isUnderline(r.attrs.get(1)));
+    Assert.assertEquals(TextConsole.D_Green, r.fg(2));
+    // non-SGR sequences are dropped and don't change the style
+    Assert.assertEquals("w", r.texts.get(3));
+    Assert.assertEquals(TextConsole.D_Green, r.fg(3));
+  }
+
+  @Test
+  public void attributeSetsAreShared() {
+    Recorder r = new Recorder();
+    AnsiParser p = new AnsiParser();
+    p.parse("\u001B[32ma\u001B[0mb\u001B[32mc", r);
+    Assert.assertSame(r.attrs.get(0), r.attrs.get(2));
+    Assert.assertSame(AnsiParser.defaultStyle(), r.attrs.get(1));
+  }
+}
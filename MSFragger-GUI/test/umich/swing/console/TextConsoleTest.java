@@ -0,0 +1,43 @@
+package umich.swing.console;
+
+import java.awt.Color;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextConsoleTest {
+
+  @Test
+  public void lineLimitEvictsOldestParagraphs() {
+    TextConsole c = new TextConsole();
+    StringBuilder evicted = new StringBuilder();
+    c.setEvictionListener(evicted::append);
+    c.setMaxLines(10);
+    for (int i = 0; i < 20; i++) {
+      c.append(Color.BLACK, "line " + i + "\n");
+    }
+    String text = c.getText();
+    Assert.assertTrue(c.getDocument().getDefaultRootElement().getElementCount() <= 10);
+    Assert.assertTrue(text.endsWith("line 19\n"));
+    Assert.assertEquals(0, c.getDocument().getDefaultRootElement().getElement(0).getStartOffset());
+    // nothing is lost: evicted + kept text is everything that was appended
+    StringBuilder all = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      all.append("line ").append(i).append("\n");
+    }
+    Assert.assertEquals(all.toString(), evicted + text);
+  }
+
+  @Test
+  public void charLimitEvictsWholeParagraphs() {
+    TextConsole c = new TextConsole();
+    StringBuilder evicted = new StringBuilder();
+    c.setEvictionListener(evicted::append);
+    c.setMaxChars(100);
+    for (int i = 0; i < 50; i++) {
+      c.append(Color.BLACK, String.format("%09d\n", i));
+    }
+    Assert.assertTrue(c.getDocument().getLength() <= 100);
+    Assert.assertTrue(evicted.toString().endsWith("\n"));
+    Assert.assertEquals(500, evicted.length() + c.getDocument().getLength());
+  }
+}